@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPAccountLockCache;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies the account lock policy to TOTP verifications of local users, so that every entry point verifying codes,
+ * such as the authenticator and the admin service, counts failed attempts and locks accounts in the same way.
+ */
+public class TOTPAccountLockHandler {
+
+    private static final Log log = LogFactory.getLog(TOTPAccountLockHandler.class);
+
+    private TOTPAccountLockHandler() {
+
+    }
+
+    /**
+     * Check whether the account is locked. Accounts which are known to be locked are rejected from memory, without
+     * accessing the account lock service. The account lock service is not accessed either if the lock status was
+     * already prefetched.
+     *
+     * @param authenticatedUser    Authenticated user.
+     * @param username             Fully qualified username.
+     * @param tenantDomain         Tenant domain of the user.
+     * @param userStoreDomain      User store domain of the user.
+     * @param prefetchedLockStatus Lock status prefetched for the authentication, or null if it is not prefetched.
+     * @return True if the account is locked.
+     * @throws AuthenticationFailedException If the account lock status could not be retrieved.
+     */
+    public static boolean isAccountLocked(AuthenticatedUser authenticatedUser, String username, String tenantDomain,
+                                          String userStoreDomain, Boolean prefetchedLockStatus)
+            throws AuthenticationFailedException {
+
+        TOTPAccountLockCache accountLockCache = TOTPDataHolder.getInstance().getAccountLockCache();
+        String key = TOTPFailedAttemptCounter.buildKey(tenantDomain, userStoreDomain, authenticatedUser.getUserName());
+        if (accountLockCache.isLocked(key)) {
+            return true;
+        }
+        boolean locked = prefetchedLockStatus != null ? prefetchedLockStatus :
+                TOTPUtil.isAccountLocked(authenticatedUser.getUserName(), tenantDomain, userStoreDomain);
+        if (!locked) {
+            return false;
+        }
+        // The account is locked, possibly by another handler. Cache it until the unlock time set on the account.
+        Map<String, String> claimValues = getUserClaimValues(authenticatedUser, username,
+                TOTPAuthenticatorConstants.ACCOUNT_UNLOCK_TIME_CLAIM);
+        long unlockTime = 0;
+        if (claimValues != null &&
+                NumberUtils.isNumber(claimValues.get(TOTPAuthenticatorConstants.ACCOUNT_UNLOCK_TIME_CLAIM))) {
+            unlockTime = Long.parseLong(claimValues.get(TOTPAuthenticatorConstants.ACCOUNT_UNLOCK_TIME_CLAIM));
+        }
+        accountLockCache.markLocked(key, unlockTime);
+        return true;
+    }
+
+    /**
+     * Count a failed TOTP verification of a local user, and lock the account once the configured maximum number of
+     * failed attempts is reached.
+     *
+     * @param authenticatedUser User whose verification failed.
+     * @param username          Fully qualified username.
+     * @param failure           Result of the failed verification.
+     * @return Account locked result if the account is locked by this failure, otherwise the given failure.
+     * @throws AuthenticationFailedException If the account lock flow could not be completed.
+     */
+    public static TOTPVerificationResult handleFailedAttempt(AuthenticatedUser authenticatedUser, String username,
+                                                             TOTPVerificationResult failure)
+            throws AuthenticationFailedException {
+
+		/*
+		Check whether account locking enabled for TOTP to keep backward compatibility.
+		No need to continue if the account is already locked. The lock status of the account has already been
+		validated against the account lock service for this request, hence only the cached status is checked here.
+		 */
+        TOTPAccountLockCache accountLockCache = TOTPDataHolder.getInstance().getAccountLockCache();
+        if (!TOTPUtil.isAccountLockingEnabledForTotp() ||
+                accountLockCache.isLocked(TOTPFailedAttemptCounter.buildKey(authenticatedUser))) {
+            return failure;
+        }
+        int maxAttempts = 0;
+        long unlockTimePropertyValue = 0;
+        double unlockTimeRatio = 1;
+
+        Property[] connectorConfigs = TOTPUtil.getAccountLockConnectorConfigs(authenticatedUser.getTenantDomain());
+        for (Property connectorConfig : connectorConfigs) {
+            switch (connectorConfig.getName()) {
+                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE:
+                    if (!Boolean.parseBoolean(connectorConfig.getValue())) {
+                        return failure;
+                    }
+                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE_MAX:
+                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
+                        maxAttempts = Integer.parseInt(connectorConfig.getValue());
+                    }
+                    break;
+                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_TIME:
+                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
+                        unlockTimePropertyValue = Integer.parseInt(connectorConfig.getValue());
+                    }
+                    break;
+                case TOTPAuthenticatorConstants.PROPERTY_LOGIN_FAIL_TIMEOUT_RATIO:
+                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
+                        double value = Double.parseDouble(connectorConfig.getValue());
+                        if (value > 0) {
+                            unlockTimeRatio = value;
+                        }
+                    }
+                    break;
+            }
+        }
+        TOTPFailedAttemptCounter failedAttemptCounter = TOTPDataHolder.getInstance().getFailedAttemptCounter();
+        int currentAttempts = failedAttemptCounter.incrementFailedAttempts(authenticatedUser, username);
+        if (currentAttempts >= maxAttempts) {
+            TOTPVerificationResult accountLocked = TOTPVerificationResult.failure(
+                    TOTPVerificationStatus.ACCOUNT_LOCKED,
+                    "User account: " + authenticatedUser.getUserName() + " is locked.");
+            if (!failedAttemptCounter.markLocked(authenticatedUser, currentAttempts)) {
+                // A concurrent failure of the same user has already taken over locking the account.
+                return accountLocked;
+            }
+            Map<String, String> claimValues = getUserClaimValues(authenticatedUser, username,
+                    TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM);
+            if (claimValues == null) {
+                claimValues = new HashMap<>();
+            }
+            int failedLoginLockoutCountValue = 0;
+            if (NumberUtils.isNumber(claimValues.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM))) {
+                failedLoginLockoutCountValue =
+                        Integer.parseInt(claimValues.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM));
+            }
+            // Calculate the incremental unlock-time-interval in milli seconds.
+            unlockTimePropertyValue = (long) (unlockTimePropertyValue * 1000 * 60 * Math.pow(unlockTimeRatio,
+                    failedLoginLockoutCountValue));
+            // Calculate unlock-time by adding current-time and unlock-time-interval in milli seconds.
+            long unlockTime = System.currentTimeMillis() + unlockTimePropertyValue;
+            Map<String, String> updatedClaims = new HashMap<>();
+            updatedClaims.put(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM, Boolean.TRUE.toString());
+            updatedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
+            updatedClaims.put(TOTPAuthenticatorConstants.ACCOUNT_UNLOCK_TIME_CLAIM, String.valueOf(unlockTime));
+            updatedClaims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM,
+                    String.valueOf(failedLoginLockoutCountValue + 1));
+            IdentityUtil.threadLocalProperties.get().put(TOTPAuthenticatorConstants.ADMIN_INITIATED, false);
+            setUserClaimValues(authenticatedUser, username, updatedClaims);
+            failedAttemptCounter.recordLockoutCount(authenticatedUser, failedLoginLockoutCountValue + 1);
+            accountLockCache.markLocked(TOTPFailedAttemptCounter.buildKey(authenticatedUser), unlockTime);
+            return accountLocked;
+        }
+        return failure;
+    }
+
+    /**
+     * Reset the failed TOTP attempts of a local user after a successful verification.
+     *
+     * @param authenticatedUser User whose verification succeeded.
+     * @param username          Fully qualified username.
+     * @throws AuthenticationFailedException If the failed attempts could not be reset.
+     */
+    public static void resetFailedAttempts(AuthenticatedUser authenticatedUser, String username)
+            throws AuthenticationFailedException {
+
+        // Check whether account locking enabled for TOTP to keep backward compatibility.
+        if (!TOTPUtil.isAccountLockingEnabledForTotp()) {
+            return;
+        }
+        Property[] connectorConfigs = TOTPUtil.getAccountLockConnectorConfigs(authenticatedUser.getTenantDomain());
+
+        // Return if account lock handler is not enabled.
+        for (Property connectorConfig : connectorConfigs) {
+            if ((TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE.equals(connectorConfig.getName())) &&
+                    !Boolean.parseBoolean(connectorConfig.getValue())) {
+                return;
+            }
+        }
+
+        // Avoid updating the claims if they are already zero.
+        TOTPDataHolder.getInstance().getFailedAttemptCounter().resetFailedAttempts(authenticatedUser, username);
+    }
+
+    private static Map<String, String> getUserClaimValues(AuthenticatedUser authenticatedUser, String username,
+                                                          String... claimUris) throws AuthenticationFailedException {
+
+        Map<String, String> claimValues;
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
+            claimValues = userStoreManager.getUserClaimValues(IdentityUtil.addDomainToName(
+                    authenticatedUser.getUserName(), authenticatedUser.getUserStoreDomain()), claimUris,
+                    UserCoreConstants.DEFAULT_PROFILE);
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while reading user claims of user: " + authenticatedUser.getUserName(), e);
+            }
+            String errorMessage = "Failed to read user claims for user : " + authenticatedUser.getUserName();
+            throw new AuthenticationFailedException(errorMessage, e);
+        }
+        return claimValues;
+    }
+
+    private static void setUserClaimValues(AuthenticatedUser authenticatedUser, String username,
+                                           Map<String, String> updatedClaims)
+            throws AuthenticationFailedException {
+
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
+            userStoreManager.setUserClaimValues(IdentityUtil.addDomainToName(authenticatedUser.getUserName(),
+                    authenticatedUser.getUserStoreDomain()), updatedClaims, UserCoreConstants.DEFAULT_PROFILE);
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while updating user claims of user: " + authenticatedUser.getUserName(), e);
+            }
+            String errorMessage = "Failed to update user claims for user : " + authenticatedUser.getUserName();
+            throw new AuthenticationFailedException(errorMessage, e);
+        }
+    }
+}
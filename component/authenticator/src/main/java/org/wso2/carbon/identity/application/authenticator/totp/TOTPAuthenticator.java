@@ -19,10 +19,8 @@
 package org.wso2.carbon.identity.application.authenticator.totp;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.extension.identity.helper.FederatedAuthenticatorUtil;
 import org.wso2.carbon.extension.identity.helper.util.IdentityHelperUtil;
@@ -35,19 +33,24 @@ import org.wso2.carbon.identity.application.authentication.framework.exception.A
 import org.wso2.carbon.identity.application.authentication.framework.exception.LogoutFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
 import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkUtils;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPClaimPrefetcher;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailSendTracker;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPVerificationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPRateLimiter;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
-import org.wso2.carbon.identity.application.common.model.Property;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationContext;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationPipeline;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
 import org.wso2.carbon.identity.core.ServiceURLBuilder;
 import org.wso2.carbon.identity.core.URLBuilderException;
-import org.wso2.carbon.identity.core.util.IdentityUtil;
-import org.wso2.carbon.user.api.UserRealm;
-import org.wso2.carbon.user.api.UserStoreException;
-import org.wso2.carbon.user.api.UserStoreManager;
-import org.wso2.carbon.user.core.UserCoreConstants;
 import org.wso2.carbon.user.core.util.UserCoreUtil;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
@@ -75,6 +78,9 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
 
     private static final long serialVersionUID = 2009231028659744926L;
     private static final Log log = LogFactory.getLog(TOTPAuthenticator.class);
+    private static final int MAX_TOKEN_LENGTH = 9;
+
+    private transient volatile TOTPVerificationPipeline verificationPipeline;
 
     /**
      * Check whether token or action are in request.
@@ -110,7 +116,18 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
         if (context.isLogoutRequest()) {
             return AuthenticatorFlowStatus.SUCCESS_COMPLETED;
         } else if (request.getParameter(TOTPAuthenticatorConstants.SEND_TOKEN) != null) {
+            if (isRateLimited(context)) {
+                context.setProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS,
+                        TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_THROTTLED);
+                response.setHeader(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_HEADER,
+                        TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_THROTTLED);
+                return AuthenticatorFlowStatus.INCOMPLETE;
+            }
             if (generateOTPAndSendByEmail(context)) {
+                Object sendStatus = context.getProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS);
+                if (sendStatus != null) {
+                    response.setHeader(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_HEADER, sendStatus.toString());
+                }
                 return AuthenticatorFlowStatus.INCOMPLETE;
             } else {
                 return AuthenticatorFlowStatus.FAIL_COMPLETED;
@@ -138,6 +155,35 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
         }
     }
 
+    /**
+     * Check whether the request exceeds the rate limit of the user or the tenant. This is checked from memory only,
+     * before the request accesses the user store, so that abusive clients are rejected without consuming its
+     * capacity.
+     *
+     * @param context Authentication context.
+     * @return True if the request should be rejected.
+     */
+    private boolean isRateLimited(AuthenticationContext context) {
+
+        TOTPRateLimiter userRateLimiter = TOTPDataHolder.getInstance().getUserRateLimiter();
+        TOTPRateLimiter tenantRateLimiter = TOTPDataHolder.getInstance().getTenantRateLimiter();
+        String username = getUsernameFromContext(context);
+        if (userRateLimiter != null && username != null && !userRateLimiter.tryAcquire(username)) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP request rate limit exceeded for user: " + username);
+            }
+            return true;
+        }
+        String tenantDomain = context.getTenantDomain();
+        if (tenantRateLimiter != null && tenantDomain != null && !tenantRateLimiter.tryAcquire(tenantDomain)) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP request rate limit exceeded for tenant: " + tenantDomain);
+            }
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Initiate authentication request.
      *
@@ -174,10 +220,10 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
             if (context.isRetrying()) {
                 retryParam = "&authFailure=true&authFailureMsg=login.fail.message";
             }
-            boolean isTOTPEnabled = isTOTPEnabledForLocalUser(username);
-            if (log.isDebugEnabled()) {
-                log.debug("TOTP is enabled by user: " + isTOTPEnabled);
-            }
+            // The user store lookup runs concurrently with the lookups below, which only read the configuration.
+            String enrolledUsername = username;
+            TOTPLookupExecutor.Lookup<Boolean, TOTPException> totpEnabledLookup =
+                    submitLookup(() -> isTOTPEnabledForLocalUser(enrolledUsername));
             boolean isTOTPEnabledByAdmin = IdentityHelperUtil.checkSecondStepEnableByAdmin(context);
             if (log.isDebugEnabled()) {
                 log.debug("TOTP  is enabled by admin: " + isTOTPEnabledByAdmin);
@@ -186,10 +232,15 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
             // This multi option URI is used to navigate back to multi option page to select a different
             // authentication option from TOTP pages.
             String multiOptionURI = getMultiOptionURIQueryParam(request);
+            boolean isTOTPEnabled = totpEnabledLookup.get();
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP is enabled by user: " + isTOTPEnabled);
+            }
 
             if (isTOTPEnabled && request.getParameter(TOTPAuthenticatorConstants.ENABLE_TOTP) == null) {
                 //if TOTP is enabled for the user.
                 String totpLoginPageUrl = buildTOTPLoginPageURL(context, username, retryParam, multiOptionURI);
+                prefetchClaims(context, username, authenticatedUser);
                 response.sendRedirect(totpLoginPageUrl);
             } else {
                 if (TOTPUtil.isEnrolUserInAuthenticationFlowEnabled(context)
@@ -198,12 +249,10 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
                     if (log.isDebugEnabled()) {
                         log.debug("User has not enabled TOTP: " + username);
                     }
-                    Map<String, String> claims = TOTPKeyGenerator.generateClaims(username, false, context);
-                    context.setProperty(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL,
-                            claims.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL));
-                    context.setProperty(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL,
-                            claims.get(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL));
-                    String qrURL = claims.get(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL);
+                    // Only the encrypted secret key is kept in the context, which is persisted with the session.
+                    String encryptedSecretKey = TOTPKeyGenerator.generateEncryptedSecretKey(username, context);
+                    context.setProperty(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, encryptedSecretKey);
+                    String qrURL = TOTPKeyGenerator.buildEnrolmentQRCodeURL(username, encryptedSecretKey, context);
                     TOTPUtil.redirectToEnableTOTPReqPage(request, response, context, qrURL);
                 } else if (Boolean.valueOf(request.getParameter(TOTPAuthenticatorConstants.ENABLE_TOTP))) {
                     //if TOTP is not enabled for the user and user continued the enrolment.
@@ -292,38 +341,205 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
 
         String token = request.getParameter(TOTPAuthenticatorConstants.TOKEN);
         String username = context.getProperty("username").toString();
-        validateAccountLockStatusForLocalUser(context, username);
+        TOTPVerificationContext verificationContext = new TOTPVerificationContext(context, username, token);
+        TOTPClaimPrefetcher claimPrefetcher = TOTPDataHolder.getInstance().getClaimPrefetcher();
+        if (claimPrefetcher != null) {
+            verificationContext.setPrefetchedClaims(claimPrefetcher.take(context.getContextIdentifier(), username));
+        }
+        if (!getVerificationPipeline().execute(verificationContext)) {
+            throw new TOTPVerificationFailedException(verificationContext.getResult());
+        }
+        if (StringUtils.isNotBlank(username)) {
+            AuthenticatedUser authenticatedUser = new AuthenticatedUser();
+            authenticatedUser.setAuthenticatedSubjectIdentifier(username);
+            authenticatedUser.setUserName(UserCoreUtil.removeDomainFromName(
+                    MultitenantUtils.getTenantAwareUsername(username)));
+            authenticatedUser.setUserStoreDomain(UserCoreUtil.extractDomainFromName(username));
+            authenticatedUser.setTenantDomain(MultitenantUtils.getTenantDomain(username));
+            context.setSubject(authenticatedUser);
+        } else {
+            context.setSubject(AuthenticatedUser.createLocalAuthenticatedUserFromSubjectIdentifier(username));
+        }
+    }
+
+    /**
+     * Get the pipeline verifying the TOTP of a request. The stages are ordered by their cost, so that malformed,
+     * replayed and locked out requests are rejected before the secret key is retrieved from the user store and the
+     * HMAC is computed.
+     *
+     * @return TOTP verification pipeline.
+     */
+    private TOTPVerificationPipeline getVerificationPipeline() {
+
+        if (verificationPipeline == null) {
+            verificationPipeline = new TOTPVerificationPipeline(TOTPDataHolder.getInstance().getVerificationListeners())
+                    .addStage("syntax", this::verifyTokenSyntax)
+                    .addStage("rateLimit", this::verifyRateLimit)
+                    .addStage("lockStatus", this::verifyAccountLockStatus)
+                    .addStage("replay", this::verifyTokenNotUsed)
+                    .addStage("enrolment", this::verifyEnrolment)
+                    .addStage("secretFetch", this::fetchSecretKey)
+                    .addStage("hmac", this::verifyToken)
+                    .addStage("counterUpdate", this::updateFailedAttempts);
+        }
+        return verificationPipeline;
+    }
+
+    /**
+     * Check the format of the token without accessing any store. Malformed tokens can never match, hence they are
+     * not counted as failed attempts.
+     *
+     * @param verificationContext TOTP verification context.
+     * @return True if the token is a code within the legal bounds.
+     */
+    private boolean verifyTokenSyntax(TOTPVerificationContext verificationContext) {
+
+        String token = verificationContext.getToken();
+        String username = verificationContext.getUsername();
         if (StringUtils.isBlank(token)) {
-            handleTotpVerificationFail(context);
-            throw new AuthenticationFailedException("Empty TOTP in the request. Authentication Failed for user: " +
-                    username);
+            return verificationContext.reject(TOTPVerificationStatus.EMPTY_TOKEN,
+                    "Empty TOTP in the request. Authentication Failed for user: " + username);
+        }
+        if (token.length() > MAX_TOKEN_LENGTH || !StringUtils.isNumeric(token)) {
+            return verificationContext.reject(TOTPVerificationStatus.MALFORMED_TOKEN,
+                    "Invalid Token. Authentication failed, user :  " + username);
+        }
+        TOTPAuthenticatorCredentials credentials =
+                buildCredentials(username, verificationContext.getAuthenticationContext());
+        int code = Integer.parseInt(token);
+        if (!credentials.isValidCodeRange(code)) {
+            return verificationContext.reject(TOTPVerificationStatus.MALFORMED_TOKEN,
+                    "Invalid Token. Authentication failed, user :  " + username);
         }
-        checkTotpEnabled(context, username);
+        verificationContext.setCode(code);
+        verificationContext.setCredentials(credentials);
+        return true;
+    }
+
+    /**
+     * Reject the request if it exceeds the rate limit of the user or the tenant. Rejected requests are not counted as
+     * failed attempts, since the token is not verified.
+     *
+     * @param verificationContext TOTP verification context.
+     * @return True if the request is within the rate limits.
+     */
+    private boolean verifyRateLimit(TOTPVerificationContext verificationContext) {
+
+        if (!isRateLimited(verificationContext.getAuthenticationContext())) {
+            return true;
+        }
+        return verificationContext.reject(TOTPVerificationStatus.RATE_LIMITED,
+                "Too many TOTP requests. Authentication failed for user: " + verificationContext.getUsername());
+    }
+
+    private boolean verifyAccountLockStatus(TOTPVerificationContext verificationContext)
+            throws AuthenticationFailedException {
+
+        TOTPVerificationResult result = validateAccountLockStatusForLocalUser(
+                verificationContext.getAuthenticationContext(), verificationContext.getUsername(),
+                verificationContext.getPrefetchedClaims());
+        return result.isValid() || verificationContext.reject(result);
+    }
+
+    /**
+     * Reject a code already accepted for the user, before the secret key is retrieved.
+     *
+     * @param verificationContext TOTP verification context.
+     * @return True if the code was not used.
+     * @throws AuthenticationFailedException If the state store could not be accessed or the account gets locked.
+     */
+    private boolean verifyTokenNotUsed(TOTPVerificationContext verificationContext)
+            throws AuthenticationFailedException {
+
+        if (!TOTPUtil.isTokenReusePrevented()) {
+            return true;
+        }
+        String username = verificationContext.getUsername();
         try {
-            int tokenValue = Integer.parseInt(token);
-            if (!isValidTokenLocalUser(tokenValue, username, context)) {
-                handleTotpVerificationFail(context);
-                throw new AuthenticationFailedException("Invalid Token. Authentication failed, user :  " + username);
+            if (!verificationContext.getCredentials().isUsed(verificationContext.getCode(), username,
+                    TOTPDataHolder.getInstance().getStateStore())) {
+                return true;
             }
-            if (StringUtils.isNotBlank(username)) {
-                AuthenticatedUser authenticatedUser = new AuthenticatedUser();
-                authenticatedUser.setAuthenticatedSubjectIdentifier(username);
-                authenticatedUser.setUserName(UserCoreUtil.removeDomainFromName(
-                        MultitenantUtils.getTenantAwareUsername(username)));
-                authenticatedUser.setUserStoreDomain(UserCoreUtil.extractDomainFromName(username));
-                authenticatedUser.setTenantDomain(MultitenantUtils.getTenantDomain(username));
-                context.setSubject(authenticatedUser);
-            } else {
-                context.setSubject(AuthenticatedUser.createLocalAuthenticatedUserFromSubjectIdentifier(username));
+        } catch (TOTPException e) {
+            throw new AuthenticationFailedException("TOTP Authentication process failed for user " + username, e);
+        }
+        return verificationContext.reject(handleTotpVerificationFail(verificationContext.getAuthenticationContext(),
+                TOTPVerificationResult.failure(TOTPVerificationStatus.REUSED_TOKEN,
+                        "Invalid Token. Authentication failed, user :  " + username)));
+    }
+
+    private boolean verifyEnrolment(TOTPVerificationContext verificationContext)
+            throws AuthenticationFailedException {
+
+        checkTotpEnabled(verificationContext.getAuthenticationContext(), verificationContext.getUsername());
+        return true;
+    }
+
+    /**
+     * Retrieve and decrypt the secret key of the user, using the prefetched secret key if it is already loaded.
+     *
+     * @param verificationContext TOTP verification context.
+     * @return True once the secret key is set to the verification context.
+     * @throws AuthenticationFailedException If the secret key could not be read from the user store or could not be
+     *                                       decrypted.
+     */
+    private boolean fetchSecretKey(TOTPVerificationContext verificationContext)
+            throws AuthenticationFailedException {
+
+        String username = verificationContext.getUsername();
+        TOTPClaimPrefetcher.PrefetchedClaims prefetchedClaims = verificationContext.getPrefetchedClaims();
+        try {
+            String encryptedSecretKey = prefetchedClaims == null ? null : prefetchedClaims.getEncryptedSecretKey();
+            if (StringUtils.isBlank(encryptedSecretKey)) {
+                encryptedSecretKey = TOTPDataHolder.getInstance().getSecretKeyCache().getEncryptedSecretKey(username);
             }
-        } catch (NumberFormatException e) {
-            handleTotpVerificationFail(context);
+            verificationContext.setSecretKey(TOTPUtil.decrypt(encryptedSecretKey));
+            return true;
+        } catch (CryptoException e) {
+            throw new AuthenticationFailedException("TOTP Authentication process failed for user " + username,
+                    new TOTPException("Error while decrypting the key", e));
+        } catch (TOTPException e) {
             throw new AuthenticationFailedException("TOTP Authentication process failed for user " + username, e);
+        }
+    }
+
+    /**
+     * Verify the token against the secret key of the user, counting a failed attempt if it does not match.
+     *
+     * @param verificationContext TOTP verification context.
+     * @return True if the token is valid.
+     * @throws AuthenticationFailedException If the state store could not be accessed or the account gets locked.
+     */
+    private boolean verifyToken(TOTPVerificationContext verificationContext) throws AuthenticationFailedException {
+
+        String username = verificationContext.getUsername();
+        TOTPAuthenticatorCredentials credentials = verificationContext.getCredentials();
+        boolean valid;
+        try {
+            if (TOTPUtil.isTokenReusePrevented()) {
+                valid = credentials.authorize(verificationContext.getSecretKey(), verificationContext.getCode(),
+                        username, TOTPDataHolder.getInstance().getStateStore());
+            } else {
+                valid = credentials.authorize(verificationContext.getSecretKey(), verificationContext.getCode());
+            }
         } catch (TOTPException e) {
             throw new AuthenticationFailedException("TOTP Authentication process failed for user " + username, e);
         }
+        if (!valid) {
+            return verificationContext.reject(handleTotpVerificationFail(
+                    verificationContext.getAuthenticationContext(), TOTPVerificationResult.failure(
+                            TOTPVerificationStatus.INVALID_TOKEN,
+                            "Invalid Token. Authentication failed, user :  " + username)));
+        }
+        return true;
+    }
+
+    private boolean updateFailedAttempts(TOTPVerificationContext verificationContext)
+            throws AuthenticationFailedException {
+
         // It reached here means the authentication was successful.
-        resetTotpFailedAttempts(context);
+        resetTotpFailedAttempts(verificationContext.getAuthenticationContext());
+        return true;
     }
 
     private void checkTotpEnabled(AuthenticationContext context, String username) throws AuthenticationFailedException {
@@ -336,10 +552,6 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
                 claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL,
                         context.getProperty(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL).toString());
             }
-            if (context.getProperty(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL) != null) {
-                claims.put(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL,
-                        context.getProperty(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL).toString());
-            }
             try {
                 TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(claims, username, context);
             } catch (TOTPException e) {
@@ -348,7 +560,17 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
         }
     }
 
-    private void validateAccountLockStatusForLocalUser(AuthenticationContext context, String username)
+    /**
+     * Check whether the account of a local user is locked.
+     *
+     * @param context          Authentication context.
+     * @param username         Fully qualified username.
+     * @param prefetchedClaims Claims prefetched for the authentication context, or null.
+     * @return Account locked result if the account is locked, otherwise {@link TOTPVerificationResult#VALID}.
+     * @throws AuthenticationFailedException If the account lock status could not be retrieved.
+     */
+    private TOTPVerificationResult validateAccountLockStatusForLocalUser(
+            AuthenticationContext context, String username, TOTPClaimPrefetcher.PrefetchedClaims prefetchedClaims)
             throws AuthenticationFailedException {
 
         boolean isLocalUser = TOTPUtil.isLocalUser(context);
@@ -356,16 +578,16 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
                 (AuthenticatedUser) context.getProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER);
         String tenantDomain = MultitenantUtils.getTenantDomain(username);
         String userStoreDomain = UserCoreUtil.extractDomainFromName(username);
-        if (isLocalUser &&
-                TOTPUtil.isAccountLocked(authenticatedUserObject.getUserName(), tenantDomain, userStoreDomain)) {
-            String errorMessage =
-                    String.format("Authentication failed since authenticated user: %s, account is locked.",
-                            getUserStoreAppendedName(username));
+        if (isLocalUser && TOTPAccountLockHandler.isAccountLocked(authenticatedUserObject, username, tenantDomain,
+                userStoreDomain, prefetchedClaims == null ? null : prefetchedClaims.isAccountLocked())) {
+            String errorMessage = "Authentication failed since authenticated user: " +
+                    getUserStoreAppendedName(username) + ", account is locked.";
             if (log.isDebugEnabled()) {
                 log.debug(errorMessage);
             }
-            throw new AuthenticationFailedException(errorMessage);
+            return TOTPVerificationResult.failure(TOTPVerificationStatus.ACCOUNT_LOCKED, errorMessage);
         }
+        return TOTPVerificationResult.VALID;
     }
 
     /**
@@ -438,12 +660,37 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
             log.error("No username found in the authentication context.");
             return false;
         } else {
+            TOTPEmailSendTracker emailSendTracker = TOTPDataHolder.getInstance().getEmailSendTracker();
+            AuthenticatedUser authenticatedUser =
+                    (AuthenticatedUser) context.getProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER);
+            String sendKey = authenticatedUser != null ? TOTPFailedAttemptCounter.buildKey(authenticatedUser) :
+                    username;
+            long timeIndex = -1;
             try {
-                TOTPTokenGenerator.generateTOTPTokenLocal(username, context);
+                timeIndex = TOTPTokenGenerator.getTimeIndex(context);
+                long stepSizeInMillis = TimeUnit.SECONDS.toMillis(TOTPUtil.getTimeStepSize(context));
+                // The code sent within a time step is the same, hence it is sent only once per time step.
+                if (!emailSendTracker.tryAcquire(sendKey, timeIndex, stepSizeInMillis)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("TOTP Token is already sent to the user: " + username + " in the current time " +
+                                "step. Skipping the duplicate send.");
+                    }
+                    context.setProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS,
+                            TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_DUPLICATE);
+                    return true;
+                }
+                // A queued email which finally fails to be delivered releases the send, so that the user can request
+                // the code again within the same time step.
+                long sendTimeIndex = timeIndex;
+                TOTPTokenGenerator.generateTOTPTokenLocal(username, context,
+                        () -> emailSendTracker.release(sendKey, sendTimeIndex));
+                context.setProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS,
+                        TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_SENT);
                 if (log.isDebugEnabled()) {
                     log.debug("TOTP Token is generated");
                 }
             } catch (TOTPException e) {
+                emailSendTracker.release(sendKey, timeIndex);
                 log.error("Error when generating the totp token", e);
                 return false;
             }
@@ -460,275 +707,116 @@ public class TOTPAuthenticator extends AbstractApplicationAuthenticator
         return context.getProperty("username").toString();
     }
 
+    /**
+     * Submit a lookup to be executed concurrently with the request thread, if parallel lookups are enabled.
+     *
+     * @param loader Lookup to execute.
+     * @param <T>    Type of the looked up value.
+     * @param <E>    Type of the exception thrown if the lookup fails.
+     * @return Pending result of the lookup, which is already completed if parallel lookups are disabled.
+     */
+    private <T, E extends Exception> TOTPLookupExecutor.Lookup<T, E> submitLookup(
+            TOTPLookupExecutor.Loader<T, E> loader) {
+
+        TOTPLookupExecutor lookupExecutor = TOTPDataHolder.getInstance().getLookupExecutor();
+        if (lookupExecutor == null) {
+            return TOTPLookupExecutor.Lookup.run(loader);
+        }
+        return lookupExecutor.submit(loader);
+    }
+
+    /**
+     * Start loading the secret key and the account lock status of the user in the background while the TOTP login
+     * page is displayed, if claim prefetching is enabled.
+     *
+     * @param context           Authentication context.
+     * @param username          Fully qualified username.
+     * @param authenticatedUser User authenticated in the previous step.
+     */
+    private void prefetchClaims(AuthenticationContext context, String username, AuthenticatedUser authenticatedUser) {
+
+        TOTPClaimPrefetcher claimPrefetcher = TOTPDataHolder.getInstance().getClaimPrefetcher();
+        if (claimPrefetcher == null) {
+            return;
+        }
+        TOTPClaimPrefetcher.Loader<Boolean> lockStatusLoader = null;
+        if (TOTPUtil.isLocalUser(context)) {
+            String userName = authenticatedUser.getUserName();
+            String tenantDomain = MultitenantUtils.getTenantDomain(username);
+            String userStoreDomain = UserCoreUtil.extractDomainFromName(username);
+            lockStatusLoader = () -> TOTPUtil.isAccountLocked(userName, tenantDomain, userStoreDomain);
+        }
+        claimPrefetcher.prefetch(context.getContextIdentifier(), username,
+                () -> TOTPDataHolder.getInstance().getSecretKeyCache().getEncryptedSecretKey(username),
+                lockStatusLoader);
+    }
+
     /**
      * Check whether TOTP is enabled for local user or not.
      *
      * @param username Username of the user
      * @return true, if TOTP enable for local user
-     * @throws TOTPException when user realm is null or could not find user
+     * @throws TOTPException when the secret key of the user could not be read
      */
-    private boolean isTOTPEnabledForLocalUser(String username)
-            throws TOTPException, AuthenticationFailedException {
+    private boolean isTOTPEnabledForLocalUser(String username) throws TOTPException {
 
-        UserRealm userRealm = TOTPUtil.getUserRealm(username);
-        String tenantAwareUsername = null;
-        try {
-            tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
-            if (userRealm != null) {
-                Map<String, String> UserClaimValues =
-                        userRealm.getUserStoreManager().getUserClaimValues
-                                (tenantAwareUsername, new String[]
-                                        {TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
-                String secretKey =
-                        UserClaimValues.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL);
-                return StringUtils.isNotBlank(secretKey);
-            } else {
-                throw new TOTPException(
-                        "Cannot find the user realm for the given tenant domain : " +
-                                CarbonContext.getThreadLocalCarbonContext().getTenantDomain());
-            }
-        } catch (UserStoreException e) {
-            throw new TOTPException(
-                    "TOTPAccessController failed while trying to access userRealm of the user : " +
-                            tenantAwareUsername, e);
-        }
+        return TOTPDataHolder.getInstance().getSecretKeyCache().isEnrolled(username);
     }
 
     /**
-     * Verify whether a given token is valid for a stored local user.
+     * Build the credentials verifying the tokens of a local user.
      *
-     * @param token    TOTP Token which needs to be validated
-     * @param context  Authentication context
      * @param username Username of the user
-     * @return true if token is valid otherwise false
-     * @throws TOTPException UserRealm for user or tenant domain is null
+     * @param context  Authentication context
+     * @return TOTP authenticator credentials
      */
-    private boolean isValidTokenLocalUser(int token, String username, AuthenticationContext context)
-            throws TOTPException {
+    private TOTPAuthenticatorCredentials buildCredentials(String username, AuthenticationContext context) {
 
         TOTPKeyRepresentation encoding = TOTPKeyRepresentation.BASE32;
         String tenantDomain = MultitenantUtils.getTenantDomain(username);
-        String tenantAwareUsername = null;
-        try {
-            if (TOTPAuthenticatorConstants.BASE64
-                    .equals(TOTPUtil.getEncodingMethod(tenantDomain, context))) {
-                encoding = TOTPKeyRepresentation.BASE64;
-            }
-            long timeStep = TimeUnit.SECONDS.toMillis(TOTPUtil.getTimeStepSize(context));
-            int windowSize = TOTPUtil.getWindowSize(context);
-            TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder totpAuthenticatorConfigBuilder =
-                    new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
-                            .setKeyRepresentation(encoding).setWindowSize(windowSize)
-                            .setTimeStepSizeInMillis(timeStep);
-            TOTPAuthenticatorCredentials totpAuthenticator =
-                    new TOTPAuthenticatorCredentials(totpAuthenticatorConfigBuilder.build());
-            tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
-            UserRealm userRealm = TOTPUtil.getUserRealm(username);
-            if (userRealm != null) {
-                Map<String, String> userClaimValues = userRealm
-                        .getUserStoreManager().getUserClaimValues
-                                (tenantAwareUsername, new String[]
-                                        {TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
-                String secretKey = TOTPUtil.decrypt(
-                        userClaimValues.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL));
-                return totpAuthenticator.authorize(secretKey, token);
-            } else {
-                throw new TOTPException(
-                        "Cannot find the user realm for the given tenant domain : " +
-                                CarbonContext.getThreadLocalCarbonContext().getTenantDomain());
-            }
-        } catch (UserStoreException e) {
-            throw new TOTPException(
-                    "TOTPTokenVerifier failed while trying to access userRealm of the user : " +
-                            tenantAwareUsername, e);
-        } catch (CryptoException e) {
-            throw new TOTPException("Error while decrypting the key", e);
-        } catch (AuthenticationFailedException e) {
-            throw new TOTPException(
-                    "TOTPTokenVerifier cannot find the property value for encodingMethod");
+        if (TOTPAuthenticatorConstants.BASE64
+                .equals(TOTPUtil.getEncodingMethod(tenantDomain, context))) {
+            encoding = TOTPKeyRepresentation.BASE64;
         }
+        long timeStep = TimeUnit.SECONDS.toMillis(TOTPUtil.getTimeStepSize(context));
+        int windowSize = TOTPUtil.getWindowSize(context);
+        TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder totpAuthenticatorConfigBuilder =
+                new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
+                        .setKeyRepresentation(encoding).setWindowSize(windowSize)
+                        .setTimeStepSizeInMillis(timeStep);
+        return new TOTPAuthenticatorCredentials(totpAuthenticatorConfigBuilder.build());
     }
 
     /**
      * Execute account lock flow for TOTP verification failures.
      *
      * @param context Authentication context.
-     * @throws AuthenticationFailedException Exception on authentication failure.
+     * @param failure Result of the failed verification.
+     * @return Account locked result if the account is locked by this failure, otherwise the given failure.
+     * @throws AuthenticationFailedException If the account lock flow could not be completed.
      */
-    private void handleTotpVerificationFail(AuthenticationContext context) throws AuthenticationFailedException {
+    private TOTPVerificationResult handleTotpVerificationFail(AuthenticationContext context,
+                                                              TOTPVerificationResult failure)
+            throws AuthenticationFailedException {
 
+        // Account locking is not done for federated flows.
+        if (!TOTPUtil.isLocalUser(context)) {
+            return failure;
+        }
         AuthenticatedUser authenticatedUser =
                 (AuthenticatedUser) context.getProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER);
-		/*
-		Account locking is not done for federated flows.
-		Check whether account locking enabled for TOTP to keep backward compatibility.
-		No need to continue if the account is already locked.
-		 */
-        if (!TOTPUtil.isLocalUser(context) || !TOTPUtil.isAccountLockingEnabledForTotp() ||
-                TOTPUtil.isAccountLocked(authenticatedUser.getUserName(), authenticatedUser.getTenantDomain(),
-                        authenticatedUser.getUserStoreDomain())) {
-            return;
-        }
-        int maxAttempts = 0;
-        long unlockTimePropertyValue = 0;
-        double unlockTimeRatio = 1;
-
-        Property[] connectorConfigs = TOTPUtil.getAccountLockConnectorConfigs(authenticatedUser.getTenantDomain());
-        for (Property connectorConfig : connectorConfigs) {
-            switch (connectorConfig.getName()) {
-                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE:
-                    if (!Boolean.parseBoolean(connectorConfig.getValue())) {
-                        return;
-                    }
-                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE_MAX:
-                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
-                        maxAttempts = Integer.parseInt(connectorConfig.getValue());
-                    }
-                    break;
-                case TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_TIME:
-                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
-                        unlockTimePropertyValue = Integer.parseInt(connectorConfig.getValue());
-                    }
-                    break;
-                case TOTPAuthenticatorConstants.PROPERTY_LOGIN_FAIL_TIMEOUT_RATIO:
-                    if (NumberUtils.isNumber(connectorConfig.getValue())) {
-                        double value = Double.parseDouble(connectorConfig.getValue());
-                        if (value > 0) {
-                            unlockTimeRatio = value;
-                        }
-                    }
-                    break;
-            }
-        }
-        String username = context.getProperty("username").toString();
-        Map<String, String> claimValues = getUserClaimValues(authenticatedUser, username);
-        if (claimValues == null) {
-            claimValues = new HashMap<>();
-        }
-        int currentAttempts = 0;
-        if (NumberUtils.isNumber(claimValues.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM))) {
-            currentAttempts = Integer.parseInt(claimValues.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM));
-        }
-        int failedLoginLockoutCountValue = 0;
-        if (NumberUtils.isNumber(claimValues.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM))) {
-            failedLoginLockoutCountValue =
-                    Integer.parseInt(claimValues.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM));
-        }
-
-        Map<String, String> updatedClaims = new HashMap<>();
-        if ((currentAttempts + 1) >= maxAttempts) {
-            // Calculate the incremental unlock-time-interval in milli seconds.
-            unlockTimePropertyValue = (long) (unlockTimePropertyValue * 1000 * 60 * Math.pow(unlockTimeRatio,
-                    failedLoginLockoutCountValue));
-            // Calculate unlock-time by adding current-time and unlock-time-interval in milli seconds.
-            long unlockTime = System.currentTimeMillis() + unlockTimePropertyValue;
-            updatedClaims.put(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM, Boolean.TRUE.toString());
-            updatedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
-            updatedClaims.put(TOTPAuthenticatorConstants.ACCOUNT_UNLOCK_TIME_CLAIM, String.valueOf(unlockTime));
-            updatedClaims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM,
-                    String.valueOf(failedLoginLockoutCountValue + 1));
-            IdentityUtil.threadLocalProperties.get().put(TOTPAuthenticatorConstants.ADMIN_INITIATED, false);
-            setUserClaimValues(authenticatedUser, username, updatedClaims);
-            String errorMessage = String.format("User account: %s is locked.", authenticatedUser.getUserName());
-            throw new AuthenticationFailedException(errorMessage);
-        } else {
-            updatedClaims
-                    .put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, String.valueOf(currentAttempts + 1));
-            setUserClaimValues(authenticatedUser, username, updatedClaims);
-        }
+        return TOTPAccountLockHandler.handleFailedAttempt(authenticatedUser,
+                context.getProperty("username").toString(), failure);
     }
 
     private void resetTotpFailedAttempts(AuthenticationContext context) throws AuthenticationFailedException {
 
-		/*
-		Check whether account locking enabled for TOTP to keep backward compatibility.
-		Account locking is not done for federated flows.
-		 */
-        if (!TOTPUtil.isLocalUser(context) || !TOTPUtil.isAccountLockingEnabledForTotp()) {
+        // Account locking is not done for federated flows.
+        if (!TOTPUtil.isLocalUser(context)) {
             return;
         }
         AuthenticatedUser authenticatedUser =
                 (AuthenticatedUser) context.getProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER);
-        Property[] connectorConfigs = TOTPUtil.getAccountLockConnectorConfigs(authenticatedUser.getTenantDomain());
-
-        // Return if account lock handler is not enabled.
-        for (Property connectorConfig : connectorConfigs) {
-            if ((TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE.equals(connectorConfig.getName())) &&
-                    !Boolean.parseBoolean(connectorConfig.getValue())) {
-                return;
-            }
-        }
-
-        String username = context.getProperty("username").toString();
-        String usernameWithDomain = IdentityUtil.addDomainToName(authenticatedUser.getUserName(),
-                authenticatedUser.getUserStoreDomain());
-        try {
-            UserRealm userRealm = TOTPUtil.getUserRealm(username);
-            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
-
-            // Avoid updating the claims if they are already zero.
-            String[] claimsToCheck = {TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM,
-                    TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM};
-            Map<String, String> userClaims = userStoreManager.getUserClaimValues(usernameWithDomain, claimsToCheck,
-                    UserCoreConstants.DEFAULT_PROFILE);
-            String failedTotpAttempts = userClaims.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM);
-            String failedLoginLockoutCount =
-                    userClaims.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM);
-
-            if (NumberUtils.isNumber(failedTotpAttempts) && Integer.parseInt(failedTotpAttempts) > 0 ||
-                    NumberUtils.isNumber(failedLoginLockoutCount) && Integer.parseInt(failedLoginLockoutCount) > 0) {
-                Map<String, String> updatedClaims = new HashMap<>();
-                updatedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
-                updatedClaims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM, "0");
-                userStoreManager
-                        .setUserClaimValues(usernameWithDomain, updatedClaims, UserCoreConstants.DEFAULT_PROFILE);
-            }
-        } catch (UserStoreException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error while resetting failed TOTP attempts count for user: " + username, e);
-            }
-            String errorMessage = "Failed to reset failed attempts count for user : " + username;
-            throw new AuthenticationFailedException(errorMessage, e);
-        }
-    }
-
-    private Map<String, String> getUserClaimValues(AuthenticatedUser authenticatedUser, String username)
-            throws AuthenticationFailedException {
-
-        Map<String, String> claimValues;
-        try {
-            UserRealm userRealm = TOTPUtil.getUserRealm(username);
-            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
-            claimValues = userStoreManager.getUserClaimValues(IdentityUtil.addDomainToName(
-                    authenticatedUser.getUserName(), authenticatedUser.getUserStoreDomain()), new String[]{
-                            TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM,
-                            TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM},
-                    UserCoreConstants.DEFAULT_PROFILE);
-        } catch (UserStoreException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error while reading user claims of user: " + authenticatedUser.getUserName(), e);
-            }
-            String errorMessage = "Failed to read user claims for user : " + authenticatedUser.getUserName();
-            throw new AuthenticationFailedException(errorMessage, e);
-        }
-        return claimValues;
-    }
-
-    private void setUserClaimValues(AuthenticatedUser authenticatedUser, String username,
-                                    Map<String, String> updatedClaims)
-            throws AuthenticationFailedException {
-
-        try {
-            UserRealm userRealm = TOTPUtil.getUserRealm(username);
-            UserStoreManager userStoreManager = userRealm.getUserStoreManager();
-            userStoreManager.setUserClaimValues(IdentityUtil.addDomainToName(authenticatedUser.getUserName(),
-                    authenticatedUser.getUserStoreDomain()), updatedClaims, UserCoreConstants.DEFAULT_PROFILE);
-        } catch (UserStoreException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Error while updating user claims of user: " + authenticatedUser.getUserName(), e);
-            }
-            String errorMessage = "Failed to update user claims for user : " + authenticatedUser.getUserName();
-            throw new AuthenticationFailedException(errorMessage, e);
-        }
+        TOTPAccountLockHandler.resetFailedAttempts(authenticatedUser, context.getProperty("username").toString());
     }
 }
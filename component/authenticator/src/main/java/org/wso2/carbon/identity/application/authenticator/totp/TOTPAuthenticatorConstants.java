@@ -89,4 +89,78 @@ public abstract class TOTPAuthenticatorConstants {
 	public static final String ADMIN_INITIATED = "AdminInitiated";
 
 	public static final String ENABLE_SEND_VERIFICATION_CODE_BY_EMAIL = "AllowSendingVerificationCodeByEmail";
+	public static final String FAILED_ATTEMPTS_FLUSH_INTERVAL = "FailedAttemptsFlushInterval";
+	public static final long DEFAULT_FAILED_ATTEMPTS_FLUSH_INTERVAL = 10;
+	public static final String ACCOUNT_LOCK_STATUS_CACHE_TIMEOUT = "AccountLockStatusCacheTimeout";
+	public static final long DEFAULT_ACCOUNT_LOCK_STATUS_CACHE_TIMEOUT = 60;
+	public static final String ENABLE_ASYNC_EMAIL_DELIVERY = "EnableAsyncEmailDelivery";
+	public static final String EMAIL_DELIVERY_WORKER_COUNT = "EmailDeliveryWorkerCount";
+	public static final int DEFAULT_EMAIL_DELIVERY_WORKER_COUNT = 4;
+	public static final String EMAIL_DELIVERY_QUEUE_CAPACITY = "EmailDeliveryQueueCapacity";
+	public static final int DEFAULT_EMAIL_DELIVERY_QUEUE_CAPACITY = 1000;
+	public static final String EMAIL_DELIVERY_MAX_RETRIES = "EmailDeliveryMaxRetries";
+	public static final int DEFAULT_EMAIL_DELIVERY_MAX_RETRIES = 3;
+	public static final String EMAIL_DELIVERY_RETRY_DELAY = "EmailDeliveryRetryDelay";
+	public static final long DEFAULT_EMAIL_DELIVERY_RETRY_DELAY = 1000;
+	public static final String EMAIL_DELIVERY_REJECTION_POLICY = "EmailDeliveryRejectionPolicy";
+	public static final String EMAIL_DELIVERY_REJECTION_POLICY_CALLER_RUNS = "CallerRuns";
+	public static final String EMAIL_TEMPLATE_CACHE_TIMEOUT = "EmailTemplateCacheTimeout";
+	public static final long DEFAULT_EMAIL_TEMPLATE_CACHE_TIMEOUT = 300;
+	public static final String TOKEN_SEND_STATUS = "tokenSendStatus";
+	public static final String TOKEN_SEND_STATUS_HEADER = "X-TOTP-Token-Send-Status";
+	public static final String TOKEN_SEND_STATUS_SENT = "sent";
+	public static final String TOKEN_SEND_STATUS_DUPLICATE = "duplicate";
+	public static final String TOKEN_SEND_STATUS_THROTTLED = "throttled";
+	public static final String ENABLE_RATE_LIMITING = "EnableRateLimiting";
+	public static final String USER_RATE_LIMIT_CAPACITY = "UserRateLimitCapacity";
+	public static final long DEFAULT_USER_RATE_LIMIT_CAPACITY = 10;
+	public static final String USER_RATE_LIMIT_REFILL_PER_MINUTE = "UserRateLimitRefillPerMinute";
+	public static final long DEFAULT_USER_RATE_LIMIT_REFILL_PER_MINUTE = 10;
+	public static final String TENANT_RATE_LIMIT_CAPACITY = "TenantRateLimitCapacity";
+	public static final long DEFAULT_TENANT_RATE_LIMIT_CAPACITY = 1000;
+	public static final String TENANT_RATE_LIMIT_REFILL_PER_MINUTE = "TenantRateLimitRefillPerMinute";
+	public static final long DEFAULT_TENANT_RATE_LIMIT_REFILL_PER_MINUTE = 6000;
+	public static final String PREVENT_TOKEN_REUSE = "PreventTokenReuse";
+	public static final String STATE_STORE = "StateStore";
+	public static final String STATE_STORE_JDBC = "JDBC";
+	public static final String STATE_STORE_PARTITION_SIZE = "StateStorePartitionSize";
+	public static final long DEFAULT_STATE_STORE_PARTITION_SIZE = 60;
+	public static final String STATE_STORE_FAILED_ATTEMPTS_RETENTION = "StateStoreFailedAttemptsRetention";
+	public static final long DEFAULT_STATE_STORE_FAILED_ATTEMPTS_RETENTION = 86400;
+	public static final String SECRET_KEY_CACHE_TIMEOUT = "SecretKeyCacheTimeout";
+	public static final long DEFAULT_SECRET_KEY_CACHE_TIMEOUT = 0;
+	public static final String TENANT_CONFIG_CACHE_TIMEOUT = "TenantConfigCacheTimeout";
+	public static final long DEFAULT_TENANT_CONFIG_CACHE_TIMEOUT = 60;
+	public static final String CACHE_EARLY_REFRESH_RATIO = "CacheEarlyRefreshRatio";
+	public static final String ENABLE_CLAIM_PREFETCH = "EnableClaimPrefetch";
+	public static final String CLAIM_PREFETCH_WORKER_COUNT = "ClaimPrefetchWorkerCount";
+	public static final int DEFAULT_CLAIM_PREFETCH_WORKER_COUNT = 4;
+	public static final String CLAIM_PREFETCH_QUEUE_CAPACITY = "ClaimPrefetchQueueCapacity";
+	public static final int DEFAULT_CLAIM_PREFETCH_QUEUE_CAPACITY = 1000;
+	public static final String CLAIM_PREFETCH_TIMEOUT = "ClaimPrefetchTimeout";
+	public static final long DEFAULT_CLAIM_PREFETCH_TIMEOUT = 120;
+	public static final String ENABLE_PARALLEL_LOOKUPS = "EnableParallelLookups";
+	public static final String LOOKUP_WORKER_COUNT = "LookupWorkerCount";
+	public static final int DEFAULT_LOOKUP_WORKER_COUNT = 8;
+	public static final String LOOKUP_QUEUE_CAPACITY = "LookupQueueCapacity";
+	public static final int DEFAULT_LOOKUP_QUEUE_CAPACITY = 1000;
+	public static final String BULK_OPERATION_MAX_SIZE = "BulkOperationMaxSize";
+	public static final int DEFAULT_BULK_OPERATION_MAX_SIZE = 10000;
+	public static final String BULK_OPERATION_BATCH_SIZE = "BulkOperationBatchSize";
+	public static final int DEFAULT_BULK_OPERATION_BATCH_SIZE = 100;
+	public static final String BULK_OPERATION_WORKER_COUNT = "BulkOperationWorkerCount";
+	public static final int DEFAULT_BULK_OPERATION_WORKER_COUNT = 4;
+	public static final String PROVISIONING_BATCH_SIZE = "ProvisioningBatchSize";
+	public static final int DEFAULT_PROVISIONING_BATCH_SIZE = 500;
+	public static final String PROVISIONING_PAGE_SIZE = "ProvisioningPageSize";
+	public static final int DEFAULT_PROVISIONING_PAGE_SIZE = 1000;
+	public static final String ASYNC_WORKER_COUNT = "AsyncWorkerCount";
+	public static final int DEFAULT_ASYNC_WORKER_COUNT = 8;
+	public static final String ASYNC_QUEUE_CAPACITY = "AsyncQueueCapacity";
+	public static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 1000;
+	public static final String TOTP_MANAGEMENT_ENDPOINT = "/totpmanagement";
+	public static final String QR_CODE_CACHE_TIMEOUT = "QRCodeCacheTimeout";
+	public static final long DEFAULT_QR_CODE_CACHE_TIMEOUT = 60;
+	public static final String PENDING_ENROLMENT_TIMEOUT = "PendingEnrolmentTimeout";
+	public static final long DEFAULT_PENDING_ENROLMENT_TIMEOUT = 600;
 }
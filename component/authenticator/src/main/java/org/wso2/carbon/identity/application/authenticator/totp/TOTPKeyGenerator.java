@@ -24,6 +24,7 @@ import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorKey;
@@ -92,11 +93,7 @@ public class TOTPKeyGenerator {
                 }
 
                 String issuer = TOTPUtil.getTOTPIssuerDisplayName(tenantDomain, context);
-                String displayUsername = TOTPUtil.getTOTPDisplayUsername(tenantAwareUsername);
-                String qrCodeURL =
-                        "otpauth://totp/" + issuer + ":" + displayUsername + "?secret=" + secretKey + "&issuer=" +
-                                issuer + "&period=" + timeStep;
-                encodedQRCodeURL = Base64.encodeBase64String(qrCodeURL.getBytes());
+                encodedQRCodeURL = buildQRCodeURL(issuer, tenantAwareUsername, secretKey, timeStep);
                 claims.put(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL, encodedQRCodeURL);
             }
         } catch (UserStoreException e) {
@@ -112,6 +109,70 @@ public class TOTPKeyGenerator {
         return claims;
     }
 
+    /**
+     * Build the encoded QR code URL of a secret key.
+     *
+     * @param issuer              Issuer displayed by the authenticator application
+     * @param tenantAwareUsername Tenant aware username of the user
+     * @param secretKey           Secret key of the user
+     * @param timeStep            Time step size in seconds
+     * @return Base64 encoded QR code URL
+     */
+    public static String buildQRCodeURL(String issuer, String tenantAwareUsername, String secretKey, long timeStep) {
+
+        String displayUsername = TOTPUtil.getTOTPDisplayUsername(tenantAwareUsername);
+        String qrCodeURL = "otpauth://totp/" + issuer + ":" + displayUsername + "?secret=" + secretKey + "&issuer=" +
+                issuer + "&period=" + timeStep;
+        return Base64.encodeBase64String(qrCodeURL.getBytes());
+    }
+
+    /**
+     * Generate an encrypted TOTP secret key for a user who enrols in the authentication flow. Only the encrypted secret
+     * key is kept in the authentication context, and its QR code URL is built with
+     * {@link #buildEnrolmentQRCodeURL(String, String, AuthenticationContext)} when the enrolment page is shown.
+     *
+     * @param username Username of the user
+     * @param context  Authentication context
+     * @return Encrypted secret key
+     * @throws TOTPException when the encoding method is not found or while encrypting the key
+     */
+    public static String generateEncryptedSecretKey(String username, AuthenticationContext context)
+            throws TOTPException {
+
+        try {
+            return TOTPUtil.encrypt(generateKey(MultitenantUtils.getTenantDomain(username), context).getKey());
+        } catch (CryptoException e) {
+            throw new TOTPException("TOTPKeyGenerator failed while encrypting the secret key of the user : " +
+                    username, e);
+        } catch (AuthenticationFailedException e) {
+            throw new TOTPException("TOTPKeyGenerator cannot find the property value for encoding method", e);
+        }
+    }
+
+    /**
+     * Build the encoded QR code URL of the encrypted secret key issued to a user who enrols in the authentication flow.
+     *
+     * @param username           Username of the user
+     * @param encryptedSecretKey Encrypted secret key, as generated by
+     *                           {@link #generateEncryptedSecretKey(String, AuthenticationContext)}
+     * @param context            Authentication context
+     * @return Base64 encoded QR code URL
+     * @throws TOTPException when the issuer is not found or while decrypting the key
+     */
+    public static String buildEnrolmentQRCodeURL(String username, String encryptedSecretKey,
+                                                 AuthenticationContext context) throws TOTPException {
+
+        String tenantDomain = MultitenantUtils.getTenantDomain(username);
+        try {
+            return buildQRCodeURL(TOTPUtil.getTOTPIssuerDisplayName(tenantDomain, context),
+                    MultitenantUtils.getTenantAwareUsername(username), TOTPUtil.decrypt(encryptedSecretKey),
+                    TOTPUtil.getTimeStepSize(context));
+        } catch (CryptoException e) {
+            throw new TOTPException("TOTPKeyGenerator failed while decrypting the secret key of the user : " +
+                    username, e);
+        }
+    }
+
     /**
      * Generate TOTP secret key, encoding method and QR Code url for user.
      *
@@ -145,6 +206,7 @@ public class TOTPKeyGenerator {
                 tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
                 claims.remove(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL);
                 userRealm.getUserStoreManager().setUserClaimValues(tenantAwareUsername, claims, null);
+                TOTPDataHolder.getInstance().getSecretKeyCache().invalidate(username);
             }
         } catch (UserStoreException e) {
             throw new TOTPException("TOTPKeyGenerator failed while trying to access user store manager for the user : "
@@ -187,6 +249,7 @@ public class TOTPKeyGenerator {
                 claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, "");
                 userRealm.getUserStoreManager()
                         .setUserClaimValues(tenantAwareUsername, claims, null);
+                TOTPDataHolder.getInstance().getSecretKeyCache().invalidate(username);
                 return true;
             } else {
                 throw new TOTPException(
@@ -219,6 +282,17 @@ public class TOTPKeyGenerator {
         if (TOTPAuthenticatorConstants.BASE64.equals(encodingMethod)) {
             encoding = TOTPKeyRepresentation.BASE64;
         }
+        return generateKey(encoding);
+    }
+
+    /**
+     * Generate TOTPAuthenticator key.
+     *
+     * @param encoding Representation of the key
+     * @return TOTPAuthenticatorKey
+     */
+    public static TOTPAuthenticatorKey generateKey(TOTPKeyRepresentation encoding) {
+
         TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder configBuilder =
                 new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
                         .setKeyRepresentation(encoding);
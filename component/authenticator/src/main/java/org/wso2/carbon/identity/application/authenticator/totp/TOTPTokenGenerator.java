@@ -18,18 +18,20 @@
 
 package org.wso2.carbon.identity.application.authenticator.totp;
 
-import org.apache.axis2.context.ConfigurationContext;
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailConfigCache;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
 import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.notification.TOTPEmailDispatcher;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.event.IdentityEventConstants;
@@ -37,12 +39,7 @@ import org.wso2.carbon.identity.event.IdentityEventException;
 import org.wso2.carbon.identity.event.event.Event;
 import org.wso2.carbon.identity.mgt.IdentityMgtConfigException;
 import org.wso2.carbon.identity.mgt.IdentityMgtServiceException;
-import org.wso2.carbon.identity.mgt.NotificationSender;
 import org.wso2.carbon.identity.mgt.NotificationSendingModule;
-import org.wso2.carbon.identity.mgt.config.Config;
-import org.wso2.carbon.identity.mgt.config.ConfigBuilder;
-import org.wso2.carbon.identity.mgt.config.ConfigType;
-import org.wso2.carbon.identity.mgt.config.StorageType;
 import org.wso2.carbon.identity.mgt.dto.NotificationDataDTO;
 import org.wso2.carbon.identity.mgt.mail.DefaultEmailSendingModule;
 import org.wso2.carbon.identity.mgt.mail.Notification;
@@ -58,7 +55,6 @@ import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
-import java.util.Map;
 
 import static org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants.TOKEN;
 
@@ -82,7 +78,7 @@ public class TOTPTokenGenerator {
 	 *
 	 * @return Time index
 	 */
-	private static long getTimeIndex(AuthenticationContext context) throws TOTPException {
+	static long getTimeIndex(AuthenticationContext context) throws TOTPException {
 		return System.currentTimeMillis() / 1000 / TOTPUtil.getTimeStepSize(context);
 	}
 
@@ -97,6 +93,21 @@ public class TOTPTokenGenerator {
 	 */
 	public static String generateTOTPTokenLocal(String username, AuthenticationContext context)
 			throws TOTPException {
+		return generateTOTPTokenLocal(username, context, null);
+	}
+
+	/**
+	 * Generate TOTP token for a locally stored user.
+	 *
+	 * @param username          Username of the user
+	 * @param context           Authentication context
+	 * @param onDeliveryFailure Callback run if the email queued for asynchronous delivery finally fails, or null
+	 * @return TOTP token as a String
+	 * @throws TOTPException When could not find user realm for the given tenant domain, invalid
+	 * secret key, decrypting invalid key and could not find the configured hashing algorithm
+	 */
+	public static String generateTOTPTokenLocal(String username, AuthenticationContext context,
+												Runnable onDeliveryFailure) throws TOTPException {
 		long token = 0;
 		String tenantAwareUsername = null;
 		if (username != null) {
@@ -105,12 +116,8 @@ public class TOTPTokenGenerator {
 				UserRealm userRealm = TOTPUtil.getUserRealm(username);
 				tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
 				if (userRealm != null) {
-					Map<String, String> userClaimValues =
-							userRealm.getUserStoreManager().getUserClaimValues
-									(tenantAwareUsername, new String[] {
-											TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL }, null);
 					String secretKey = TOTPUtil.decrypt(
-							userClaimValues.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL));
+							TOTPDataHolder.getInstance().getSecretKeyCache().getEncryptedSecretKey(username));
 					String firstName = userRealm
 							.getUserStoreManager().getUserClaimValue
 									(tenantAwareUsername,
@@ -130,6 +137,9 @@ public class TOTPTokenGenerator {
 						secretKeyByteArray = codec64.decode(secretKey);
 					}
 					token = generateToken(username, tenantDomain, secretKeyByteArray, context);
+					String tokenValue = Long.toString(token);
+					String recipient = tenantAwareUsername;
+					TOTPEmailDispatcher.DeliveryTask deliveryTask;
 					// Check whether the authenticator is configured to use the event handler implementation.
 					if (TOTPUtil.isEventHandlerBasedEmailSenderEnabled()) {
 						if (log.isDebugEnabled()) {
@@ -137,12 +147,19 @@ public class TOTPTokenGenerator {
 						}
 						AuthenticatedUser authenticatedUser = (AuthenticatedUser) context
 								.getProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER);
-						triggerEvent(authenticatedUser.getUserName(), authenticatedUser.getTenantDomain(),
-								authenticatedUser.getUserStoreDomain(), TOTPAuthenticatorConstants.EVENT_NAME,
-								Long.toString(token));
+						deliveryTask = () -> {
+							try {
+								triggerEvent(authenticatedUser.getUserName(), authenticatedUser.getTenantDomain(),
+										authenticatedUser.getUserStoreDomain(), TOTPAuthenticatorConstants.EVENT_NAME,
+										tokenValue);
+							} catch (AuthenticationFailedException e) {
+								throw new TOTPException(e.getMessage(), e);
+							}
+						};
 					} else{
-						sendNotification(tenantAwareUsername, firstName, Long.toString(token), email);
+						deliveryTask = () -> sendNotification(recipient, firstName, tokenValue, email);
 					}
+					deliverEmail(tenantDomain, tenantAwareUsername, deliveryTask, onDeliveryFailure);
 					if (log.isDebugEnabled()) {
 						log.debug(
 								"Token is sent to via email to the user : " + tenantAwareUsername);
@@ -171,6 +188,41 @@ public class TOTPTokenGenerator {
 		return Long.toString(token);
 	}
 
+	/**
+	 * Deliver the TOTP email through the asynchronous email dispatcher if it is enabled, or on the calling thread
+	 * otherwise. Asynchronous deliveries run within the tenant flow of the user.
+	 *
+	 * @param tenantDomain        Tenant domain of the user.
+	 * @param tenantAwareUsername Tenant aware username of the user.
+	 * @param deliveryTask        Email delivery.
+	 * @param onFailure           Callback run if the queued email finally fails to be delivered, or null.
+	 * @throws TOTPException If the email could not be delivered or queued.
+	 */
+	private static void deliverEmail(String tenantDomain, String tenantAwareUsername,
+									 TOTPEmailDispatcher.DeliveryTask deliveryTask, Runnable onFailure)
+			throws TOTPException {
+
+		TOTPEmailDispatcher emailDispatcher = TOTPDataHolder.getInstance().getEmailDispatcher();
+		if (emailDispatcher == null) {
+			deliveryTask.deliver();
+			return;
+		}
+		TOTPEmailDispatcher.DeliveryTask tenantFlowDeliveryTask = () -> {
+			PrivilegedCarbonContext.startTenantFlow();
+			try {
+				PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(tenantDomain, true);
+				deliveryTask.deliver();
+			} finally {
+				PrivilegedCarbonContext.endTenantFlow();
+			}
+		};
+		if (!emailDispatcher.dispatch(tenantDomain, "TOTP email of user: " + tenantAwareUsername,
+				tenantFlowDeliveryTask, onFailure)) {
+			throw new TOTPException("Unable to queue the TOTP email of user : " + tenantAwareUsername +
+					" since the email delivery queue is full.");
+		}
+	}
+
 	/**
 	 * Generate 6 digit TOTP token for a given secret key and time index.
 	 *
@@ -270,24 +322,18 @@ public class TOTPTokenGenerator {
 	 */
 	private static void sendNotification(String tenantAwareUsername, String firstName, String token,
 	                                     String email) throws TOTPException {
-		ConfigurationContext configurationContext =
-				TOTPDataHolder.getInstance().getConfigurationContextService()
-				              .getServerConfigContext();
-		if (configurationContext.getAxisConfiguration().getTransportsOut()
-		                        .containsKey(TOTPAuthenticatorConstants.TRANSPORT_MAILTO)) {
-			NotificationSender notificationSender = new NotificationSender();
+		TOTPEmailConfigCache emailConfigCache = TOTPDataHolder.getInstance().getEmailConfigCache();
+		if (emailConfigCache.isMailTransportAvailable()) {
 			NotificationDataDTO notificationData = new NotificationDataDTO();
 			Notification emailNotification;
 			NotificationData emailNotificationData = new NotificationData();
-			ConfigBuilder configBuilder = ConfigBuilder.getInstance();
 			String tenantDomain = MultitenantUtils.getTenantDomain(tenantAwareUsername);
+			// The sending module holds the notification of a single email, hence it cannot be shared.
 			NotificationSendingModule module = new DefaultEmailSendingModule();
 			int tenantId = IdentityTenantUtil.getTenantId(tenantDomain);
-			String emailTemplate = null;
-			Config config;
+			String emailTemplate;
 			try {
-				config = configBuilder
-						.loadConfiguration(ConfigType.EMAIL, StorageType.REGISTRY, tenantId);
+				emailTemplate = emailConfigCache.getTemplate(tenantId);
 			} catch (IdentityMgtConfigException e) {
 				throw new TOTPException("Error occurred while loading email templates for user : " +
 				                        tenantAwareUsername, e);
@@ -295,9 +341,7 @@ public class TOTPTokenGenerator {
 			emailNotificationData.setTagData(FIRST_NAME, firstName);
 			emailNotificationData.setTagData(TOTP_TOKEN, token);
 			emailNotificationData.setSendTo(email);
-			if (config.getProperties()
-			          .containsKey(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME)) {
-				emailTemplate = config.getProperty(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME);
+			if (emailTemplate != null) {
 				try {
 					emailNotification = NotificationBuilder
 							.createNotification("EMAIL", emailTemplate, emailNotificationData);
@@ -311,10 +355,11 @@ public class TOTPTokenGenerator {
 				notificationData.setNotificationAddress(email);
 				module.setNotificationData(notificationData);
 				module.setNotification(emailNotification);
-				notificationSender.sendNotification(module);
+				emailConfigCache.getNotificationSender().sendNotification(module);
 				notificationData.setNotificationSent(true);
 			} else {
-				throw new TOTPException("Unable to find the email template: " + emailTemplate);
+				throw new TOTPException("Unable to find the email template: " +
+						TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME);
 			}
 		} else {
 			throw new TOTPException(
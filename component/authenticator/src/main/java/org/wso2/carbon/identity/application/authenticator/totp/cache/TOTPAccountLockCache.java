@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of locked accounts holding the time until which each account is known to be locked.
+ * <p>
+ * Only the locked state is cached. An account that is not found in the cache has to be checked against the account
+ * lock service, which rebuilds the cache lazily after a restart. Locks are tracked in a {@link TOTPLockTimingWheel}
+ * so that they are expired in constant time without being looked up again. Entries are trusted for at most the
+ * configured cache timeout, so that an account unlocked by an administrator before its unlock time is picked up
+ * without waiting for the whole lockout period. Unlocks made through the user store are applied immediately by
+ * {@link TOTPUserClaimChangeHandler}.
+ */
+public class TOTPAccountLockCache {
+
+    private static final long TICK_DURATION = TimeUnit.SECONDS.toMillis(1);
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private final TOTPLockTimingWheel lockTimingWheel = new TOTPLockTimingWheel(TICK_DURATION, TICKS_PER_WHEEL);
+    private volatile long cacheTimeout = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Start expiring cached locks in the background.
+     */
+    public void start() {
+
+        lockTimingWheel.start();
+    }
+
+    /**
+     * Stop expiring cached locks and drop all of them.
+     */
+    public void shutdown() {
+
+        lockTimingWheel.shutdown();
+    }
+
+    /**
+     * Set the maximum period a locked status is served from the cache.
+     *
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value disables the cache.
+     */
+    public void setCacheTimeout(long cacheTimeoutInSeconds) {
+
+        this.cacheTimeout = TimeUnit.SECONDS.toMillis(Math.max(cacheTimeoutInSeconds, 0));
+        if (cacheTimeout == 0) {
+            lockTimingWheel.clear();
+        }
+    }
+
+    /**
+     * Check whether the account is known to be locked without accessing the user store.
+     *
+     * @param key Key of the user built with {@link TOTPFailedAttemptCounter#buildKey(String, String, String)}.
+     * @return True if the account is locked according to the cache.
+     */
+    public boolean isLocked(String key) {
+
+        return lockTimingWheel.isActive(key);
+    }
+
+    /**
+     * Record the account as locked.
+     *
+     * @param key        Key of the user built with {@link TOTPFailedAttemptCounter#buildKey(String, String, String)}.
+     * @param unlockTime Value of the unlock time claim in milliseconds. Zero or a negative value denotes a lock
+     *                   without an unlock time.
+     */
+    public void markLocked(String key, long unlockTime) {
+
+        if (cacheTimeout == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long until = now + cacheTimeout;
+        if (unlockTime > 0) {
+            if (unlockTime <= now) {
+                return;
+            }
+            until = Math.min(unlockTime, until);
+        }
+        lockTimingWheel.schedule(key, until);
+    }
+
+    /**
+     * Remove the locked status of the account from the cache.
+     *
+     * @param key Key of the user built with {@link TOTPFailedAttemptCounter#buildKey(String, String, String)}.
+     */
+    public void invalidate(String key) {
+
+        lockTimingWheel.cancel(key);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Loads the TOTP claims of a user in the background while the user is entering the TOTP code.
+ * <p>
+ * A prefetch is started when the TOTP login page is served and is keyed by the identifier of the authentication
+ * context, so that the verification of the submitted code can use the loaded values without accessing the user store.
+ * Prefetching is best effort: loads which do not fit the bounded work queue are dropped, and values which are not
+ * loaded yet when the code is submitted are looked up as usual by the verification. Prefetched values are discarded
+ * once taken or after the prefetch timeout, which also bounds how stale a prefetched secret key or account lock
+ * status can be.
+ */
+public class TOTPClaimPrefetcher {
+
+    private static final Log log = LogFactory.getLog(TOTPClaimPrefetcher.class);
+
+    private static final int SWEEP_INTERVAL = 256;
+
+    private final int workerCount;
+    private final int queueCapacity;
+    private final long timeout;
+    private final ConcurrentMap<String, PrefetchedClaims> prefetchedClaims = new ConcurrentHashMap<>();
+    private final AtomicInteger prefetchCount = new AtomicInteger();
+
+    private volatile boolean running;
+    private ThreadPoolExecutor workers;
+
+    /**
+     * Load of a single claim value.
+     *
+     * @param <T> Type of the value.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        /**
+         * Load the value.
+         *
+         * @return Loaded value.
+         * @throws Exception If the value could not be loaded.
+         */
+        T load() throws Exception;
+    }
+
+    /**
+     * Create a claim prefetcher.
+     *
+     * @param workerCount   Number of threads loading the claims.
+     * @param queueCapacity Maximum number of loads waiting for a thread.
+     * @param timeout       Time in milliseconds the prefetched claims are kept.
+     */
+    public TOTPClaimPrefetcher(int workerCount, int queueCapacity, long timeout) {
+
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-ClaimPrefetcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        if (log.isDebugEnabled()) {
+            log.debug("Started TOTP claim prefetcher with " + workerCount + " workers.");
+        }
+    }
+
+    /**
+     * Stop the worker threads and discard the prefetched claims.
+     */
+    public synchronized void shutdown() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdownNow();
+        prefetchedClaims.clear();
+    }
+
+    /**
+     * Start loading the claims of a user.
+     *
+     * @param contextIdentifier Identifier of the authentication context.
+     * @param username          Fully qualified username.
+     * @param secretKeyLoader   Loader of the encrypted secret key of the user.
+     * @param lockStatusLoader  Loader of the account lock status of the user, or null if it is not checked.
+     */
+    public void prefetch(String contextIdentifier, String username, Loader<String> secretKeyLoader,
+                         Loader<Boolean> lockStatusLoader) {
+
+        if (!running || contextIdentifier == null) {
+            return;
+        }
+        if (prefetchCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            removeExpired();
+        }
+        CompletableFuture<String> encryptedSecretKey = submit(username, secretKeyLoader);
+        CompletableFuture<Boolean> accountLocked = lockStatusLoader == null ? null : submit(username, lockStatusLoader);
+        prefetchedClaims.put(contextIdentifier, new PrefetchedClaims(username, encryptedSecretKey, accountLocked,
+                System.currentTimeMillis() + timeout));
+    }
+
+    /**
+     * Take the claims prefetched for an authentication context. The claims are removed, so that they are used once.
+     *
+     * @param contextIdentifier Identifier of the authentication context.
+     * @param username          Fully qualified username being verified.
+     * @return Prefetched claims, or null if no claims of the user were prefetched or they expired.
+     */
+    public PrefetchedClaims take(String contextIdentifier, String username) {
+
+        if (contextIdentifier == null) {
+            return null;
+        }
+        PrefetchedClaims claims = prefetchedClaims.remove(contextIdentifier);
+        if (claims == null || claims.isExpired(System.currentTimeMillis()) || !claims.username.equals(username)) {
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * Get the number of authentication contexts holding prefetched claims.
+     *
+     * @return Number of prefetches which are not taken yet.
+     */
+    public int size() {
+
+        return prefetchedClaims.size();
+    }
+
+    void removeExpired() {
+
+        long now = System.currentTimeMillis();
+        prefetchedClaims.values().removeIf(claims -> claims.isExpired(now));
+    }
+
+    private <T> CompletableFuture<T> submit(String username, Loader<T> loader) {
+
+        // The user store is resolved from the tenant flow, hence the worker runs in the Carbon context of the caller.
+        Supplier<T> lookup = TOTPLookupExecutor.inCarbonContext(loader::load);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return lookup.get();
+                } catch (CompletionException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to prefetch the TOTP claims of user: " + username, e.getCause());
+                    }
+                    throw e;
+                }
+            }, workers);
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Skipped prefetching the TOTP claims of user: " + username + " since the queue is full.");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Claims of a user loaded by a prefetch. A value which is not loaded yet, or could not be loaded, is returned as
+     * null, so that the caller falls back to a regular lookup instead of waiting.
+     */
+    public static class PrefetchedClaims {
+
+        private final String username;
+        private final CompletableFuture<String> encryptedSecretKey;
+        private final CompletableFuture<Boolean> accountLocked;
+        private final long expiryTime;
+
+        PrefetchedClaims(String username, CompletableFuture<String> encryptedSecretKey,
+                         CompletableFuture<Boolean> accountLocked, long expiryTime) {
+
+            this.username = username;
+            this.encryptedSecretKey = encryptedSecretKey;
+            this.accountLocked = accountLocked;
+            this.expiryTime = expiryTime;
+        }
+
+        /**
+         * Get the prefetched encrypted secret key.
+         *
+         * @return Encrypted secret key, or null if it is not available.
+         */
+        public String getEncryptedSecretKey() {
+
+            return getIfLoaded(encryptedSecretKey);
+        }
+
+        /**
+         * Get the prefetched account lock status.
+         *
+         * @return True if the account is locked, or null if the status is not available.
+         */
+        public Boolean isAccountLocked() {
+
+            return getIfLoaded(accountLocked);
+        }
+
+        boolean isExpired(long now) {
+
+            return now >= expiryTime;
+        }
+
+        private static <T> T getIfLoaded(CompletableFuture<T> future) {
+
+            if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+                return null;
+            }
+            return future.join();
+        }
+    }
+}
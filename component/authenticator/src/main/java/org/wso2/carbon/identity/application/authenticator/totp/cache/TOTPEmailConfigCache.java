@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.mgt.IdentityMgtConfigException;
+import org.wso2.carbon.identity.mgt.NotificationSender;
+import org.wso2.carbon.identity.mgt.config.Config;
+import org.wso2.carbon.identity.mgt.config.ConfigBuilder;
+import org.wso2.carbon.identity.mgt.config.ConfigType;
+import org.wso2.carbon.identity.mgt.config.StorageType;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+/**
+ * Cache of the configuration needed to send TOTP emails through the MAILTO transport.
+ * <p>
+ * The TOTP email template of each tenant is loaded from the registry once and served from memory until the email
+ * templates of the tenant are changed in the registry or the cache timeout elapses. The timeout bounds the staleness
+ * of templates changed on another node of a cluster. Concurrent misses for the template of the same tenant are served
+ * by a single registry lookup. The availability of the MAILTO transport and the notification
+ * sender are resolved once for the server.
+ */
+public class TOTPEmailConfigCache {
+
+    private final TOTPSingleFlightCache<Integer, String> templates = new TOTPSingleFlightCache<>(
+            "TOTP email template", TOTPAuthenticatorConstants.DEFAULT_EMAIL_TEMPLATE_CACHE_TIMEOUT);
+    private final NotificationSender notificationSender = new NotificationSender();
+    private volatile Boolean mailTransportAvailable;
+
+    /**
+     * Set the maximum period a template is served from the cache.
+     *
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value disables the cache.
+     */
+    public void setCacheTimeout(long cacheTimeoutInSeconds) {
+
+        templates.setCacheTimeout(cacheTimeoutInSeconds);
+    }
+
+    /**
+     * Set the fraction of the cache timeout after which a template is reloaded ahead of its expiry.
+     *
+     * @param earlyRefreshRatio Fraction of the cache timeout. A value outside (0, 1) disables early refresh.
+     */
+    public void setEarlyRefreshRatio(double earlyRefreshRatio) {
+
+        templates.setEarlyRefreshRatio(earlyRefreshRatio);
+    }
+
+    /**
+     * Get the TOTP email template of the tenant.
+     *
+     * @param tenantId Tenant id.
+     * @return The email template or null if the tenant has no TOTP email template.
+     * @throws IdentityMgtConfigException If the email templates could not be loaded from the registry.
+     */
+    public String getTemplate(int tenantId) throws IdentityMgtConfigException {
+
+        return templates.get(tenantId, TOTPEmailConfigCache::loadTemplate);
+    }
+
+    /**
+     * Check whether the MAILTO transport sender is defined in the axis2 configuration.
+     *
+     * @return True if the MAILTO transport is available.
+     */
+    public boolean isMailTransportAvailable() {
+
+        Boolean available = mailTransportAvailable;
+        if (available == null) {
+            ConfigurationContextService configurationContextService =
+                    TOTPDataHolder.getInstance().getConfigurationContextService();
+            available = configurationContextService.getServerConfigContext().getAxisConfiguration()
+                    .getTransportsOut().containsKey(TOTPAuthenticatorConstants.TRANSPORT_MAILTO);
+            mailTransportAvailable = available;
+        }
+        return available;
+    }
+
+    /**
+     * Get the notification sender shared by all TOTP emails.
+     *
+     * @return Notification sender.
+     */
+    public NotificationSender getNotificationSender() {
+
+        return notificationSender;
+    }
+
+    /**
+     * Remove the cached template of the tenant.
+     *
+     * @param tenantId Tenant id.
+     */
+    public void invalidate(int tenantId) {
+
+        templates.invalidate(tenantId);
+    }
+
+    /**
+     * Remove the cached templates of all tenants and the transport availability.
+     */
+    public void invalidateAll() {
+
+        templates.invalidateAll();
+        mailTransportAvailable = null;
+    }
+
+    private static String loadTemplate(int tenantId) throws IdentityMgtConfigException {
+
+        Config config = ConfigBuilder.getInstance().loadConfiguration(ConfigType.EMAIL, StorageType.REGISTRY,
+                tenantId);
+        if (config.getProperties().containsKey(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME)) {
+            return config.getProperty(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the time step in which a TOTP email was last sent to each user.
+ * <p>
+ * Email OTPs are derived from the secret of the user and the current time step, so every send within the same time
+ * step delivers an identical code. Only the first send of a time step is allowed and the others are suppressed.
+ * Records are dropped once their time step has passed.
+ */
+public class TOTPEmailSendTracker {
+
+    // Expired records are swept after this many sends.
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final ConcurrentMap<String, SendRecord> sendRecords = new ConcurrentHashMap<>();
+    private final AtomicInteger sendsSinceSweep = new AtomicInteger();
+
+    /**
+     * Record a send for the user unless a TOTP email was already sent to the user within the same time step.
+     *
+     * @param key              Key of the user built with {@link TOTPFailedAttemptCounter#buildKey}.
+     * @param timeIndex        Time step of the code to send.
+     * @param stepSizeInMillis Size of a time step in milliseconds.
+     * @return True if the email should be sent, false if it is a duplicate within the time step.
+     */
+    public boolean tryAcquire(String key, long timeIndex, long stepSizeInMillis) {
+
+        long now = System.currentTimeMillis();
+        sweepIfRequired(now);
+        SendRecord newRecord = new SendRecord(timeIndex, now + stepSizeInMillis);
+        while (true) {
+            SendRecord existing = sendRecords.putIfAbsent(key, newRecord);
+            if (existing == null) {
+                return true;
+            }
+            if (existing.timeIndex == timeIndex) {
+                return false;
+            }
+            if (sendRecords.replace(key, existing, newRecord)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the send recorded for the time step, so that a failed send can be retried within the same time step.
+     *
+     * @param key       Key of the user built with {@link TOTPFailedAttemptCounter#buildKey}.
+     * @param timeIndex Time step of the failed send.
+     */
+    public void release(String key, long timeIndex) {
+
+        SendRecord existing = sendRecords.get(key);
+        if (existing != null && existing.timeIndex == timeIndex) {
+            sendRecords.remove(key, existing);
+        }
+    }
+
+    /**
+     * Get the number of tracked users.
+     *
+     * @return Number of tracked users.
+     */
+    public int size() {
+
+        return sendRecords.size();
+    }
+
+    private void sweepIfRequired(long now) {
+
+        if (sendsSinceSweep.incrementAndGet() < SWEEP_INTERVAL) {
+            return;
+        }
+        sendsSinceSweep.set(0);
+        Iterator<SendRecord> iterator = sendRecords.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiryTime <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Time step and expiry time of the last send to a user.
+     */
+    private static class SendRecord {
+
+        private final long timeIndex;
+        private final long expiryTime;
+
+        SendRecord(long timeIndex, long expiryTime) {
+
+            this.timeIndex = timeIndex;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
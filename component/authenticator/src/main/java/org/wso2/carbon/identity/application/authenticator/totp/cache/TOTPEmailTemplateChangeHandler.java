@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.registry.core.exceptions.RegistryException;
+import org.wso2.carbon.registry.core.jdbc.handlers.Handler;
+import org.wso2.carbon.registry.core.jdbc.handlers.RequestContext;
+import org.wso2.carbon.registry.core.jdbc.handlers.filters.Filter;
+import org.wso2.carbon.registry.core.jdbc.handlers.filters.URLMatcher;
+
+/**
+ * Registry handler which invalidates the cached TOTP email template of a tenant when the email templates of the
+ * tenant are updated or deleted in the registry.
+ */
+public class TOTPEmailTemplateChangeHandler extends Handler {
+
+    private static final Log log = LogFactory.getLog(TOTPEmailTemplateChangeHandler.class);
+
+    private static final String EMAIL_TEMPLATE_PATH_PATTERN = ".*/identity/config/emailTemplate.*";
+
+    private final TOTPEmailConfigCache emailConfigCache;
+
+    public TOTPEmailTemplateChangeHandler(TOTPEmailConfigCache emailConfigCache) {
+
+        this.emailConfigCache = emailConfigCache;
+    }
+
+    /**
+     * Build the filter matching updates and deletions of email templates.
+     *
+     * @return Registry filter.
+     */
+    public static Filter buildFilter() {
+
+        URLMatcher urlMatcher = new URLMatcher();
+        urlMatcher.setPutPattern(EMAIL_TEMPLATE_PATH_PATTERN);
+        urlMatcher.setDeletePattern(EMAIL_TEMPLATE_PATH_PATTERN);
+        return urlMatcher;
+    }
+
+    /**
+     * Get the registry methods handled by this handler.
+     *
+     * @return Registry methods.
+     */
+    public static String[] getMethods() {
+
+        return new String[]{Filter.PUT, Filter.DELETE};
+    }
+
+    @Override
+    public void put(RequestContext requestContext) throws RegistryException {
+
+        invalidate(requestContext);
+    }
+
+    @Override
+    public void delete(RequestContext requestContext) throws RegistryException {
+
+        invalidate(requestContext);
+    }
+
+    private void invalidate(RequestContext requestContext) {
+
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        emailConfigCache.invalidate(tenantId);
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated the cached TOTP email template of tenant: " + tenantId + " on the change of " +
+                    "registry resource: " + requestContext.getResourcePath().getPath());
+        }
+    }
+}
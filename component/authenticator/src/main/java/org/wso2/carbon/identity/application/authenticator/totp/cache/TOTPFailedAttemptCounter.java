@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.core.UserCoreConstants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory store of failed TOTP attempt counters keyed by user.
+ * <p>
+ * Counters are loaded from the user store once and then incremented atomically in memory, so concurrent failures
+ * for the same user never lose an increment. When write-behind is enabled, increments and success resets are only
+ * marked dirty and coalesced by a periodic flush into a single user store write per user, holding only the claims
+ * whose value differs from the last value known to be stored. A reset of counters which were never persisted with a
+ * non zero value is dropped without any write. Lock transitions are always written through by the callers. When the
+ * registered state store is shared, increments and resets are also applied to the cluster-wide count in the store,
+ * and the higher of the local and shared counts is used.
+ * <p>
+ * Without a shared state store the failed attempt claim is the only count shared by the nodes of a cluster. Updates
+ * are then always written through, and an increment adds only the local increments to the stored count, so that the
+ * failures counted by the other nodes are not overwritten.
+ */
+public class TOTPFailedAttemptCounter {
+
+    private static final Log log = LogFactory.getLog(TOTPFailedAttemptCounter.class);
+
+    // Entries which are clean and untouched for this long are dropped on the next flush.
+    private static final long IDLE_ENTRY_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    // Idle entries are swept after this many updates when write-behind is disabled.
+    private static final int SWEEP_INTERVAL = 1024;
+    // Set while the counter writes the claims, so that the claim change events it causes are not handled.
+    private static final ThreadLocal<Boolean> WRITING_CLAIMS = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, CounterEntry> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger updatesSinceSweep = new AtomicInteger();
+    private volatile ScheduledExecutorService flushScheduler;
+
+    /**
+     * Start the periodic write-behind flush.
+     *
+     * @param flushIntervalInSeconds Flush interval in seconds. A non positive value disables write-behind and every
+     *                               counter update is written through to the user store. Write-behind is not enabled
+     *                               either unless the registered state store is shared.
+     */
+    public synchronized void start(long flushIntervalInSeconds) {
+
+        if (flushScheduler != null || flushIntervalInSeconds <= 0) {
+            return;
+        }
+        if (!TOTPDataHolder.getInstance().getStateStore().isShared()) {
+            log.warn("Failed TOTP attempts are written through to the user store, since deferring them requires a " +
+                    "shared state store to count the failures of all the nodes.");
+            return;
+        }
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-FailedAttemptCounterFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flush, flushIntervalInSeconds, flushIntervalInSeconds,
+                TimeUnit.SECONDS);
+        if (log.isDebugEnabled()) {
+            log.debug("Started failed TOTP attempt counter flush with an interval of " + flushIntervalInSeconds +
+                    " seconds.");
+        }
+    }
+
+    /**
+     * Stop the periodic flush after writing all pending counters to the user store.
+     */
+    public synchronized void shutdown() {
+
+        if (flushScheduler == null) {
+            return;
+        }
+        flushScheduler.shutdown();
+        flushScheduler = null;
+        flush();
+    }
+
+    /**
+     * Check whether counter updates are deferred to the periodic flush.
+     *
+     * @return True if write-behind is enabled.
+     */
+    public boolean isWriteBehindEnabled() {
+
+        return flushScheduler != null;
+    }
+
+    /**
+     * Atomically increment the failed TOTP attempt count of the user.
+     *
+     * @param authenticatedUser Authenticated user.
+     * @param username          Fully qualified username used to resolve the user realm.
+     * @return The failed attempt count including this failure.
+     * @throws AuthenticationFailedException If the counter could not be loaded or written.
+     */
+    public int incrementFailedAttempts(AuthenticatedUser authenticatedUser, String username)
+            throws AuthenticationFailedException {
+
+        CounterEntry entry = getOrLoad(authenticatedUser, username);
+        int attempts = entry.failedAttempts.incrementAndGet();
+        TOTPStateStore stateStore = TOTPDataHolder.getInstance().getStateStore();
+        if (stateStore.isShared()) {
+            // Failures on the other nodes of the cluster are only visible through the shared count.
+            try {
+                int sharedAttempts = stateStore.incrementFailedAttempts(buildKey(authenticatedUser), attempts - 1);
+                attempts = entry.failedAttempts.accumulateAndGet(sharedAttempts, Math::max);
+            } catch (TOTPException e) {
+                throw new AuthenticationFailedException("Failed to update the shared failed TOTP attempts of " +
+                        "user : " + authenticatedUser.getUserName(), e);
+            }
+        }
+        entry.touch();
+        entry.dirty.set(true);
+        if (!isWriteBehindEnabled()) {
+            writePendingClaims(entry);
+            sweepIfRequired();
+            // The count written through includes the failures stored by the other nodes.
+            return Math.max(attempts, entry.failedAttempts.get());
+        }
+        return attempts;
+    }
+
+    /**
+     * Claim the lock transition for the observed failed attempt count. Only one of the concurrent failures that
+     * crossed the threshold succeeds, and it is responsible for writing the lock claims.
+     *
+     * @param authenticatedUser Authenticated user.
+     * @param observedAttempts  Count returned by {@link #incrementFailedAttempts(AuthenticatedUser, String)}.
+     * @return True if the caller owns the lock transition.
+     */
+    public boolean markLocked(AuthenticatedUser authenticatedUser, int observedAttempts) {
+
+        CounterEntry entry = counters.get(buildKey(authenticatedUser));
+        if (entry == null) {
+            return true;
+        }
+        synchronized (entry) {
+            if (!entry.failedAttempts.compareAndSet(observedAttempts, 0)) {
+                return false;
+            }
+            // The lock claims written by the caller reset the failed attempt claim as well.
+            entry.persistedFailedAttempts = 0;
+        }
+        resetSharedFailedAttempts(authenticatedUser);
+        return true;
+    }
+
+    /**
+     * Record the failed login lockout count written along with the lock claims.
+     *
+     * @param authenticatedUser       Authenticated user.
+     * @param failedLoginLockoutCount Failed login lockout count.
+     */
+    public void recordLockoutCount(AuthenticatedUser authenticatedUser, int failedLoginLockoutCount) {
+
+        CounterEntry entry = counters.get(buildKey(authenticatedUser));
+        if (entry != null) {
+            entry.failedLoginLockoutCount = failedLoginLockoutCount;
+            entry.persistedFailedLoginLockoutCount = failedLoginLockoutCount;
+        }
+    }
+
+    /**
+     * Reset the failed attempt and lockout counts of the user after a successful authentication. Nothing is written
+     * to the user store when both counters are already known to be stored as zero, and the write is deferred to
+     * the periodic flush when write-behind is enabled.
+     *
+     * @param authenticatedUser Authenticated user.
+     * @param username          Fully qualified username used to resolve the user realm.
+     * @throws AuthenticationFailedException If the counters could not be loaded or written.
+     */
+    public void resetFailedAttempts(AuthenticatedUser authenticatedUser, String username)
+            throws AuthenticationFailedException {
+
+        CounterEntry entry = getOrLoad(authenticatedUser, username);
+        entry.touch();
+        // Failures on the other nodes of the cluster may not be known locally, so the shared count is always reset.
+        resetSharedFailedAttempts(authenticatedUser);
+        if (entry.failedAttempts.get() == 0 && entry.failedLoginLockoutCount == 0 && !entry.dirty.get()) {
+            return;
+        }
+        entry.failedAttempts.set(0);
+        entry.failedLoginLockoutCount = 0;
+        entry.reset.set(true);
+        entry.dirty.set(true);
+        if (!isWriteBehindEnabled()) {
+            writePendingClaims(entry);
+            sweepIfRequired();
+        }
+    }
+
+    /**
+     * Drop the cached counters of the user so that the next access reloads them from the user store, along with the
+     * shared count of the user. Used when the counters are reset outside the TOTP authenticator, such as when an
+     * administrator unlocks the account.
+     *
+     * @param key Key of the user built with {@link #buildKey(String, String, String)}.
+     */
+    public void invalidate(String key) {
+
+        counters.remove(key);
+        TOTPStateStore stateStore = TOTPDataHolder.getInstance().getStateStore();
+        if (!stateStore.isShared()) {
+            return;
+        }
+        try {
+            stateStore.resetFailedAttempts(key);
+        } catch (TOTPException e) {
+            log.error("Error while resetting the shared failed TOTP attempts of user: " + key, e);
+        }
+    }
+
+    /**
+     * Write all dirty counters to the user store and evict idle entries.
+     */
+    public void flush() {
+
+        for (CounterEntry entry : counters.values()) {
+            if (entry.dirty.get()) {
+                try {
+                    writePendingClaims(entry);
+                } catch (AuthenticationFailedException e) {
+                    log.error("Error while flushing failed TOTP attempts of user: " + entry.usernameWithDomain, e);
+                }
+            }
+        }
+        removeIdleEntries();
+    }
+
+    private void sweepIfRequired() {
+
+        if (updatesSinceSweep.incrementAndGet() < SWEEP_INTERVAL) {
+            return;
+        }
+        updatesSinceSweep.set(0);
+        removeIdleEntries();
+    }
+
+    private void removeIdleEntries() {
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, CounterEntry> counter : counters.entrySet()) {
+            CounterEntry entry = counter.getValue();
+            if (!entry.dirty.get() && now - entry.lastAccessTime > IDLE_ENTRY_TIMEOUT) {
+                counters.remove(counter.getKey(), entry);
+            }
+        }
+    }
+
+    private void resetSharedFailedAttempts(AuthenticatedUser authenticatedUser) {
+
+        TOTPStateStore stateStore = TOTPDataHolder.getInstance().getStateStore();
+        if (!stateStore.isShared()) {
+            return;
+        }
+        try {
+            stateStore.resetFailedAttempts(buildKey(authenticatedUser));
+        } catch (TOTPException e) {
+            log.error("Error while resetting the shared failed TOTP attempts of user: " +
+                    authenticatedUser.getUserName(), e);
+        }
+    }
+
+    private CounterEntry getOrLoad(AuthenticatedUser authenticatedUser, String username)
+            throws AuthenticationFailedException {
+
+        String key = buildKey(authenticatedUser);
+        CounterEntry entry = counters.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        String usernameWithDomain = IdentityUtil.addDomainToName(authenticatedUser.getUserName(),
+                authenticatedUser.getUserStoreDomain());
+        Map<String, String> claimValues = readClaims(username, usernameWithDomain);
+        CounterEntry loaded = new CounterEntry(username, usernameWithDomain,
+                toInt(claimValues.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM)),
+                toInt(claimValues.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM)));
+        // A concurrent load may have won the race; its entry already holds increments made since.
+        CounterEntry existing = counters.putIfAbsent(key, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * Merge all pending updates of the user into a single user store write, holding only the claims which differ
+     * from the stored values. The entry stays dirty if the write fails. Writes of an entry are serialized, so that
+     * the failures stored by the other nodes are merged once, against the count written by the previous write.
+     */
+    private void writePendingClaims(CounterEntry entry) throws AuthenticationFailedException {
+
+        synchronized (entry) {
+            if (!entry.dirty.compareAndSet(true, false)) {
+                return;
+            }
+            boolean reset = entry.reset.getAndSet(false);
+            int failedAttempts = entry.failedAttempts.get();
+            if (!reset && failedAttempts != entry.persistedFailedAttempts &&
+                    !TOTPDataHolder.getInstance().getStateStore().isShared()) {
+                // Other nodes may have counted failures since the count was loaded, hence only the local increments
+                // are added to the stored count.
+                try {
+                    int storedFailedAttempts = toInt(readClaims(entry.username, entry.usernameWithDomain)
+                            .get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM));
+                    failedAttempts = entry.failedAttempts.addAndGet(
+                            storedFailedAttempts - entry.persistedFailedAttempts);
+                    entry.persistedFailedAttempts = storedFailedAttempts;
+                } catch (AuthenticationFailedException e) {
+                    entry.dirty.set(true);
+                    throw e;
+                }
+            }
+            int failedLoginLockoutCount = entry.failedLoginLockoutCount;
+            Map<String, String> claims = new HashMap<>();
+            if (failedAttempts != entry.persistedFailedAttempts) {
+                claims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, String.valueOf(failedAttempts));
+            }
+            if (failedLoginLockoutCount != entry.persistedFailedLoginLockoutCount) {
+                claims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM,
+                        String.valueOf(failedLoginLockoutCount));
+            }
+            if (claims.isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping redundant update of failed TOTP attempts of user: " +
+                            entry.usernameWithDomain);
+                }
+                return;
+            }
+            try {
+                writeClaims(entry, claims);
+            } catch (AuthenticationFailedException e) {
+                if (reset) {
+                    entry.reset.set(true);
+                }
+                entry.dirty.set(true);
+                throw e;
+            }
+            entry.persistedFailedAttempts = failedAttempts;
+            entry.persistedFailedLoginLockoutCount = failedLoginLockoutCount;
+        }
+    }
+
+    private Map<String, String> readClaims(String username, String usernameWithDomain)
+            throws AuthenticationFailedException {
+
+        Map<String, String> claimValues;
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            claimValues = userRealm.getUserStoreManager().getUserClaimValues(usernameWithDomain, new String[]{
+                            TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM,
+                            TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM},
+                    UserCoreConstants.DEFAULT_PROFILE);
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while reading user claims of user: " + usernameWithDomain, e);
+            }
+            String errorMessage = "Failed to read user claims for user : " + usernameWithDomain;
+            throw new AuthenticationFailedException(errorMessage, e);
+        }
+        return claimValues == null ? new HashMap<>() : claimValues;
+    }
+
+    private void writeClaims(CounterEntry entry, Map<String, String> claims) throws AuthenticationFailedException {
+
+        WRITING_CLAIMS.set(Boolean.TRUE);
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(entry.username);
+            userRealm.getUserStoreManager().setUserClaimValues(entry.usernameWithDomain, claims,
+                    UserCoreConstants.DEFAULT_PROFILE);
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error while updating user claims of user: " + entry.usernameWithDomain, e);
+            }
+            String errorMessage = "Failed to update user claims for user : " + entry.usernameWithDomain;
+            throw new AuthenticationFailedException(errorMessage, e);
+        } finally {
+            WRITING_CLAIMS.remove();
+        }
+    }
+
+    /**
+     * Check whether the claims being updated in the current thread are written by the counter itself.
+     *
+     * @return True if the counter is writing the claims.
+     */
+    public static boolean isWritingClaims() {
+
+        return Boolean.TRUE.equals(WRITING_CLAIMS.get());
+    }
+
+    private static int toInt(String value) {
+
+        return NumberUtils.isNumber(value) ? Integer.parseInt(value) : 0;
+    }
+
+    /**
+     * Build the cache key of a user.
+     *
+     * @param authenticatedUser Authenticated user.
+     * @return Key unique to the user within the server.
+     */
+    public static String buildKey(AuthenticatedUser authenticatedUser) {
+
+        return buildKey(authenticatedUser.getTenantDomain(), authenticatedUser.getUserStoreDomain(),
+                authenticatedUser.getUserName());
+    }
+
+    /**
+     * Build the cache key of a user.
+     *
+     * @param tenantDomain    Tenant domain.
+     * @param userStoreDomain User store domain.
+     * @param userName        Username without the user store domain.
+     * @return Key unique to the user within the server.
+     */
+    public static String buildKey(String tenantDomain, String userStoreDomain, String userName) {
+
+        String domain = userStoreDomain == null ? "" : userStoreDomain.toUpperCase();
+        String tenant = tenantDomain == null ? "" : tenantDomain.toLowerCase();
+        return domain + UserCoreConstants.DOMAIN_SEPARATOR + userName + "@" + tenant;
+    }
+
+    /**
+     * Failed attempt state of a single user.
+     */
+    private static class CounterEntry {
+
+        private final String username;
+        private final String usernameWithDomain;
+        private final AtomicInteger failedAttempts;
+        private final AtomicBoolean dirty = new AtomicBoolean(false);
+        // Set when the counts are reset, so that the next write replaces the stored count instead of adding to it.
+        private final AtomicBoolean reset = new AtomicBoolean(false);
+        private volatile int failedLoginLockoutCount;
+        private volatile int persistedFailedAttempts;
+        private volatile int persistedFailedLoginLockoutCount;
+        private volatile long lastAccessTime;
+
+        CounterEntry(String username, String usernameWithDomain, int failedAttempts, int failedLoginLockoutCount) {
+
+            this.username = username;
+            this.usernameWithDomain = usernameWithDomain;
+            this.failedAttempts = new AtomicInteger(failedAttempts);
+            this.failedLoginLockoutCount = failedLoginLockoutCount;
+            this.persistedFailedAttempts = failedAttempts;
+            this.persistedFailedLoginLockoutCount = failedLoginLockoutCount;
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+
+        void touch() {
+
+            lastAccessTime = System.currentTimeMillis();
+        }
+    }
+}
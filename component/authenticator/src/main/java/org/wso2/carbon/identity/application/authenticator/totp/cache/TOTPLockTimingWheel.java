@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel tracking active account locks until their expiry time.
+ * <p>
+ * Each lock is placed in the bucket of the tick in which it expires, so adding, cancelling and expiring a lock are
+ * all constant time operations. Locks expiring beyond one revolution of the wheel stay in their bucket until the
+ * revolution of their expiry tick is reached. The lock status is answered from the index of active locks, and the
+ * expiry time of a lock is checked on every lookup, so a delayed tick never extends a lock.
+ */
+public class TOTPLockTimingWheel {
+
+    private static final Log log = LogFactory.getLog(TOTPLockTimingWheel.class);
+
+    private final long tickDuration;
+    private final int mask;
+    private final Set<LockEntry>[] buckets;
+    private final ConcurrentMap<String, LockEntry> activeLocks = new ConcurrentHashMap<>();
+    private final Object tickLock = new Object();
+    private volatile long lastProcessedTick;
+    private ScheduledExecutorService tickScheduler;
+
+    /**
+     * Create a timing wheel.
+     *
+     * @param tickDurationInMillis Duration of a single tick in milliseconds.
+     * @param ticksPerWheel        Number of buckets in the wheel. Rounded up to the next power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public TOTPLockTimingWheel(long tickDurationInMillis, int ticksPerWheel) {
+
+        if (tickDurationInMillis <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel should be positive.");
+        }
+        int wheelSize = Integer.highestOneBit(ticksPerWheel);
+        if (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.tickDuration = tickDurationInMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.lastProcessedTick = toTick(System.currentTimeMillis()) - 1;
+    }
+
+    /**
+     * Start advancing the wheel once per tick.
+     */
+    public synchronized void start() {
+
+        if (tickScheduler != null) {
+            return;
+        }
+        tickScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-LockTimingWheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tickScheduler.scheduleAtFixedRate(() -> advance(System.currentTimeMillis()), tickDuration, tickDuration,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop advancing the wheel and drop all active locks.
+     */
+    public synchronized void shutdown() {
+
+        if (tickScheduler != null) {
+            tickScheduler.shutdownNow();
+            tickScheduler = null;
+        }
+        clear();
+    }
+
+    /**
+     * Add or replace the lock of the given key.
+     *
+     * @param key        Key of the lock.
+     * @param expiryTime Time in milliseconds at which the lock expires.
+     */
+    public void schedule(String key, long expiryTime) {
+
+        if (expiryTime <= System.currentTimeMillis()) {
+            cancel(key);
+            return;
+        }
+        LockEntry entry = new LockEntry(key, expiryTime);
+        LockEntry previous = activeLocks.put(key, entry);
+        if (previous != null) {
+            buckets[previous.bucket].remove(previous);
+        }
+        synchronized (tickLock) {
+            // A lock expiring in a tick which has already been processed is picked up by the next tick.
+            long deadlineTick = Math.max(toTick(expiryTime), lastProcessedTick + 1);
+            entry.deadlineTick = deadlineTick;
+            entry.bucket = (int) (deadlineTick & mask);
+            buckets[entry.bucket].add(entry);
+        }
+    }
+
+    /**
+     * Check whether the given key holds an unexpired lock.
+     *
+     * @param key Key of the lock.
+     * @return True if the lock is active.
+     */
+    public boolean isActive(String key) {
+
+        LockEntry entry = activeLocks.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.expiryTime > System.currentTimeMillis()) {
+            return true;
+        }
+        if (activeLocks.remove(key, entry)) {
+            buckets[entry.bucket].remove(entry);
+        }
+        return false;
+    }
+
+    /**
+     * Remove the lock of the given key.
+     *
+     * @param key Key of the lock.
+     */
+    public void cancel(String key) {
+
+        LockEntry entry = activeLocks.remove(key);
+        if (entry != null) {
+            buckets[entry.bucket].remove(entry);
+        }
+    }
+
+    /**
+     * Remove all locks.
+     */
+    public void clear() {
+
+        activeLocks.clear();
+        for (Set<LockEntry> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Get the number of active locks, including the ones expired within the current tick.
+     *
+     * @return Number of active locks.
+     */
+    public int size() {
+
+        return activeLocks.size();
+    }
+
+    /**
+     * Expire the locks of all ticks up to the given time.
+     *
+     * @param now Current time in milliseconds.
+     */
+    void advance(long now) {
+
+        long currentTick = toTick(now);
+        synchronized (tickLock) {
+            // Process every tick missed since the last run, but not more than one revolution of the wheel.
+            long tick = Math.max(lastProcessedTick + 1, currentTick - mask);
+            for (; tick <= currentTick; tick++) {
+                expireBucket(tick);
+            }
+            lastProcessedTick = currentTick;
+        }
+    }
+
+    private void expireBucket(long tick) {
+
+        int expired = 0;
+        Iterator<LockEntry> iterator = buckets[(int) (tick & mask)].iterator();
+        while (iterator.hasNext()) {
+            LockEntry entry = iterator.next();
+            if (entry.deadlineTick <= tick) {
+                iterator.remove();
+                activeLocks.remove(entry.key, entry);
+                expired++;
+            }
+        }
+        if (expired > 0 && log.isDebugEnabled()) {
+            log.debug("Expired " + expired + " TOTP account locks.");
+        }
+    }
+
+    private long toTick(long time) {
+
+        return (time + tickDuration - 1) / tickDuration;
+    }
+
+    /**
+     * Lock held in a bucket of the wheel.
+     */
+    private static class LockEntry {
+
+        private final String key;
+        private final long expiryTime;
+        private long deadlineTick;
+        private int bucket;
+
+        LockEntry(String key, long expiryTime) {
+
+            this.key = key;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
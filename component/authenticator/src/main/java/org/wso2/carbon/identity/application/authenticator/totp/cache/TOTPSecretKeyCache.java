@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+import java.util.Map;
+
+/**
+ * Cache of the encrypted TOTP secret keys of users, which also answers whether a user is enrolled for TOTP.
+ * <p>
+ * Concurrent reads of the secret key of the same user are served by a single user store lookup. The keys are not
+ * retained after the lookup unless a cache timeout is configured, since a key changed on another node of a cluster
+ * is only seen once the cached key expires. Changes made through this node invalidate the cached key of the user.
+ */
+public class TOTPSecretKeyCache {
+
+    private final TOTPSingleFlightCache<String, String> secretKeys =
+            new TOTPSingleFlightCache<>("TOTP secret key", TOTPAuthenticatorConstants.DEFAULT_SECRET_KEY_CACHE_TIMEOUT);
+
+    /**
+     * Set the maximum period a secret key is served from the cache.
+     *
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value retains nothing.
+     */
+    public void setCacheTimeout(long cacheTimeoutInSeconds) {
+
+        secretKeys.setCacheTimeout(cacheTimeoutInSeconds);
+    }
+
+    /**
+     * Set the fraction of the cache timeout after which a secret key is reloaded ahead of its expiry.
+     *
+     * @param earlyRefreshRatio Fraction of the cache timeout. A value outside (0, 1) disables early refresh.
+     */
+    public void setEarlyRefreshRatio(double earlyRefreshRatio) {
+
+        secretKeys.setEarlyRefreshRatio(earlyRefreshRatio);
+    }
+
+    /**
+     * Get the encrypted secret key of the user.
+     *
+     * @param username Username of the user.
+     * @return Encrypted secret key, or a blank value if the user is not enrolled.
+     * @throws TOTPException If the secret key could not be read from the user store.
+     */
+    public String getEncryptedSecretKey(String username) throws TOTPException {
+
+        return secretKeys.get(buildKey(username), key -> loadEncryptedSecretKey(username));
+    }
+
+    /**
+     * Get the encrypted secret key of the user, reading it from the given user store manager if it is not cached.
+     * This avoids resolving the user realm of each user when the secret keys of many users of the same user store
+     * are read.
+     *
+     * @param username         Username of the user.
+     * @param userStoreManager User store manager of the user.
+     * @return Encrypted secret key, or a blank value if the user is not enrolled.
+     * @throws TOTPException If the secret key could not be read from the user store.
+     */
+    public String getEncryptedSecretKey(String username, UserStoreManager userStoreManager) throws TOTPException {
+
+        return secretKeys.get(buildKey(username), key -> loadEncryptedSecretKey(username, userStoreManager));
+    }
+
+    /**
+     * Check whether the user is enrolled for TOTP.
+     *
+     * @param username Username of the user.
+     * @return True if a secret key is stored for the user.
+     * @throws TOTPException If the secret key could not be read from the user store.
+     */
+    public boolean isEnrolled(String username) throws TOTPException {
+
+        return StringUtils.isNotBlank(getEncryptedSecretKey(username));
+    }
+
+    /**
+     * Remove the cached secret key of the user. This is called whenever the secret key of the user is changed.
+     *
+     * @param username Username of the user.
+     */
+    public void invalidate(String username) {
+
+        secretKeys.invalidate(buildKey(username));
+    }
+
+    /**
+     * Remove the cached secret keys of all the users.
+     */
+    public void invalidateAll() {
+
+        secretKeys.invalidateAll();
+    }
+
+    /**
+     * Build the key of the user, which is the same for the fully qualified username and the tenant aware username
+     * of a user in the super tenant.
+     *
+     * @param username Username of the user.
+     * @return Tenant qualified key of the user.
+     */
+    public static String buildKey(String username) {
+
+        return MultitenantUtils.getTenantAwareUsername(username) + "@" + MultitenantUtils.getTenantDomain(username);
+    }
+
+    private static String loadEncryptedSecretKey(String username) throws TOTPException {
+
+        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            if (userRealm == null) {
+                throw new TOTPException("Cannot find the user realm for the given tenant domain : " +
+                        MultitenantUtils.getTenantDomain(username));
+            }
+            return loadEncryptedSecretKey(username, userRealm.getUserStoreManager());
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to read the secret key of the user : " + tenantAwareUsername, e);
+        } catch (AuthenticationFailedException e) {
+            throw new TOTPException("Error while retrieving the user realm for the user: " + tenantAwareUsername, e);
+        }
+    }
+
+    private static String loadEncryptedSecretKey(String username, UserStoreManager userStoreManager)
+            throws TOTPException {
+
+        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        try {
+            Map<String, String> userClaimValues = userStoreManager.getUserClaimValues(tenantAwareUsername,
+                    new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+            return userClaimValues.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL);
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to read the secret key of the user : " + tenantAwareUsername, e);
+        }
+    }
+}
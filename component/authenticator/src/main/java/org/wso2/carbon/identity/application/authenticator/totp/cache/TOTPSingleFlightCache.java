@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache which loads each key at most once at a time.
+ * <p>
+ * Concurrent misses for the same key share a single in-flight load, so a burst of requests for an expired entry
+ * reaches the backing store once instead of once per request. The load runs on the thread of the first request, with
+ * its thread local context, and the other requests wait for its result. A failed load is reported to all the waiting
+ * requests and is not cached.
+ * <p>
+ * Loaded values are served until the cache timeout elapses. A non positive timeout retains nothing, while concurrent
+ * misses are still served by one load. When early refresh is enabled, the first request after the given fraction of
+ * the timeout reloads the entry, while the other requests are served the current value until the reload completes.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public class TOTPSingleFlightCache<K, V> {
+
+    private static final Log log = LogFactory.getLog(TOTPSingleFlightCache.class);
+    // Expired entries are removed once per this many loads.
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final String name;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private volatile long cacheTimeout;
+    private volatile double earlyRefreshRatio;
+
+    /**
+     * Create a cache.
+     *
+     * @param name                  Name of the cache used in logs.
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value retains nothing.
+     */
+    public TOTPSingleFlightCache(String name, long cacheTimeoutInSeconds) {
+
+        this.name = name;
+        this.cacheTimeout = TimeUnit.SECONDS.toMillis(Math.max(cacheTimeoutInSeconds, 0));
+    }
+
+    /**
+     * Set the maximum period a value is served from the cache.
+     *
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value retains nothing.
+     */
+    public void setCacheTimeout(long cacheTimeoutInSeconds) {
+
+        this.cacheTimeout = TimeUnit.SECONDS.toMillis(Math.max(cacheTimeoutInSeconds, 0));
+        entries.clear();
+    }
+
+    /**
+     * Set the fraction of the cache timeout after which a value is reloaded ahead of its expiry.
+     *
+     * @param earlyRefreshRatio Fraction of the cache timeout. A value outside (0, 1) disables early refresh.
+     */
+    public void setEarlyRefreshRatio(double earlyRefreshRatio) {
+
+        this.earlyRefreshRatio = earlyRefreshRatio > 0 && earlyRefreshRatio < 1 ? earlyRefreshRatio : 0;
+        entries.clear();
+    }
+
+    /**
+     * Get the value of the key, loading it if it is not cached. If the key is already being loaded, wait for that load
+     * instead of starting another one.
+     *
+     * @param key    Key.
+     * @param loader Loader of the value of the key.
+     * @param <E>    Type of the exception thrown by the loader.
+     * @return Value of the key, which may be null if the loader returned null.
+     * @throws E If the value could not be loaded.
+     */
+    public <E extends Exception> V get(K key, Loader<K, V, E> loader) throws E {
+
+        while (true) {
+            long now = System.currentTimeMillis();
+            Entry<V> entry = entries.get(key);
+            if (entry == null || entry.isExpired(now)) {
+                Entry<V> loading = new Entry<>();
+                boolean started = entry == null ? entries.putIfAbsent(key, loading) == null :
+                        entries.replace(key, entry, loading);
+                if (!started) {
+                    // Another request started loading the key first.
+                    continue;
+                }
+                return load(key, loading, loader);
+            }
+            if (entry.isRefreshDue(now) && entry.startRefresh()) {
+                return refresh(key, entry, loader);
+            }
+            return await(entry);
+        }
+    }
+
+    /**
+     * Remove the cached value of the key. A load of the key which is in progress is not cached once it completes.
+     *
+     * @param key Key.
+     */
+    public void invalidate(K key) {
+
+        entries.remove(key);
+    }
+
+    /**
+     * Remove the cached values of all the keys.
+     */
+    public void invalidateAll() {
+
+        entries.clear();
+    }
+
+    /**
+     * Get the number of cached and in-flight entries, including expired entries which are not removed yet.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+
+        return entries.size();
+    }
+
+    private <E extends Exception> V load(K key, Entry<V> loading, Loader<K, V, E> loader) throws E {
+
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Throwable e) {
+            entries.remove(key, loading);
+            loading.future.completeExceptionally(e);
+            throw e;
+        }
+        loading.complete(value, System.currentTimeMillis(), cacheTimeout, earlyRefreshRatio);
+        if (cacheTimeout <= 0) {
+            entries.remove(key, loading);
+        }
+        if (loadCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(entry -> entry.isExpired(now));
+        }
+        return value;
+    }
+
+    private <E extends Exception> V refresh(K key, Entry<V> entry, Loader<K, V, E> loader) throws E {
+
+        Entry<V> refreshed = new Entry<>();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Exception e) {
+            // Keep serving the current value. A load failing on expiry is reported to the requests.
+            if (log.isDebugEnabled()) {
+                log.debug("Error while refreshing an entry of the " + name + " cache ahead of its expiry.", e);
+            }
+            return await(entry);
+        }
+        refreshed.complete(value, System.currentTimeMillis(), cacheTimeout, earlyRefreshRatio);
+        entries.replace(key, entry, refreshed);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> V await(Entry<V> entry) throws E {
+
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            // The load failed with the checked exception of the loader.
+            throw (E) cause;
+        }
+    }
+
+    /**
+     * Loader of the value of a key.
+     *
+     * @param <K> Type of the keys.
+     * @param <V> Type of the values.
+     * @param <E> Type of the exception thrown when the value could not be loaded.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V, E extends Exception> {
+
+        /**
+         * Load the value of the key from the backing store.
+         *
+         * @param key Key.
+         * @return Value of the key.
+         * @throws E If the value could not be loaded.
+         */
+        V load(K key) throws E;
+    }
+
+    /**
+     * Value of a key, which is being loaded until its future completes.
+     */
+    private static class Entry<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long expiryTime = Long.MAX_VALUE;
+        private volatile long refreshTime = Long.MAX_VALUE;
+
+        void complete(V value, long loadTime, long cacheTimeout, double earlyRefreshRatio) {
+
+            expiryTime = loadTime + cacheTimeout;
+            if (earlyRefreshRatio > 0) {
+                refreshTime = loadTime + (long) (cacheTimeout * earlyRefreshRatio);
+            }
+            future.complete(value);
+        }
+
+        boolean isExpired(long now) {
+
+            return future.isDone() && expiryTime <= now;
+        }
+
+        boolean isRefreshDue(long now) {
+
+            return future.isDone() && refreshTime <= now;
+        }
+
+        boolean startRefresh() {
+
+            return refreshing.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the TOTP codes which were already accepted, used to reject the reuse of a code within its window.
+ * <p>
+ * Accepted codes are kept in a ring of buckets, one per time step. A code is recorded in the bucket of the time step
+ * in which it stops being valid, so a whole bucket is dropped at once when its time step has passed and no per
+ * code expiry is required. Each accepted code is recorded as a single primitive long derived from the user, the
+ * code and the time step of the code, in an open addressing table. The tables are reused when their bucket is
+ * recycled, so the memory used by the registry only depends on the peak number of logins within a time step.
+ */
+public class TOTPUsedCodeCache {
+
+    private static final long DEFAULT_BUCKET_DURATION = TimeUnit.SECONDS.toMillis(30);
+    private static final int DEFAULT_BUCKET_COUNT = 32;
+    private static final int INITIAL_BUCKET_CAPACITY = 64;
+    private static final long EMPTY = 0L;
+
+    private final Bucket[] buckets;
+    private final int bucketMask;
+    private final long bucketDuration;
+
+    public TOTPUsedCodeCache() {
+
+        this(DEFAULT_BUCKET_DURATION, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * Create a used code cache.
+     *
+     * @param bucketDuration Duration of a bucket in milliseconds.
+     * @param bucketCount    Number of buckets. Rounded up to the next power of two. Codes which are valid for longer
+     *                       than the duration of all the buckets are only remembered for that duration.
+     */
+    public TOTPUsedCodeCache(long bucketDuration, int bucketCount) {
+
+        if (bucketDuration <= 0 || bucketCount <= 1) {
+            throw new IllegalArgumentException("Invalid used code cache configuration. Bucket duration: " +
+                    bucketDuration + ", bucket count: " + bucketCount);
+        }
+        int size = Integer.highestOneBit(bucketCount);
+        if (size < bucketCount) {
+            size <<= 1;
+        }
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.bucketMask = size - 1;
+        this.bucketDuration = bucketDuration;
+    }
+
+    /**
+     * Record a code accepted for the user, unless the same code of the same time step was already accepted.
+     *
+     * @param key        Key identifying the user.
+     * @param code       Accepted code.
+     * @param timeIndex  Time step of the accepted code.
+     * @param expiryTime Time in milliseconds from which the code is no longer accepted.
+     * @return False if the code was already used.
+     */
+    public boolean markUsed(String key, long code, long timeIndex, long expiryTime) {
+
+        long now = System.currentTimeMillis();
+        if (expiryTime <= now) {
+            return true;
+        }
+        long currentBucket = now / bucketDuration;
+        // A code is dropped with the bucket in which it expires, or with the furthest bucket if it lives longer.
+        long expiryBucket = Math.min(expiryTime / bucketDuration, currentBucket + bucketMask);
+        Bucket bucket = buckets[(int) (expiryBucket & bucketMask)];
+        long entry = buildEntry(key, code, timeIndex);
+        synchronized (bucket) {
+            if (bucket.index != expiryBucket) {
+                bucket.reset(expiryBucket);
+            }
+            return bucket.add(entry);
+        }
+    }
+
+    /**
+     * Check whether a code was already accepted for the user, without recording it.
+     *
+     * @param key        Key identifying the user.
+     * @param code       Code to check.
+     * @param timeIndex  Time step of the code.
+     * @param expiryTime Time in milliseconds from which the code is no longer accepted.
+     * @return True if the code was already used.
+     */
+    public boolean isUsed(String key, long code, long timeIndex, long expiryTime) {
+
+        long now = System.currentTimeMillis();
+        if (expiryTime <= now) {
+            return false;
+        }
+        long expiryBucket = Math.min(expiryTime / bucketDuration, now / bucketDuration + bucketMask);
+        Bucket bucket = buckets[(int) (expiryBucket & bucketMask)];
+        long entry = buildEntry(key, code, timeIndex);
+        synchronized (bucket) {
+            return bucket.index == expiryBucket && bucket.contains(entry);
+        }
+    }
+
+    /**
+     * Get the number of codes recorded in buckets which have not expired.
+     *
+     * @return Number of recorded codes.
+     */
+    public int size() {
+
+        long currentBucket = System.currentTimeMillis() / bucketDuration;
+        int size = 0;
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                if (bucket.index >= currentBucket) {
+                    size += bucket.size;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Build the compact representation of a used code, derived from the user, the code and its time step.
+     *
+     * @param key       Key identifying the user.
+     * @param code      Accepted code.
+     * @param timeIndex Time step of the accepted code.
+     * @return Non zero hash of the used code.
+     */
+    public static long buildEntry(String key, long code, long timeIndex) {
+
+        long entry = mix(key.hashCode() * 0x9E3779B97F4A7C15L + timeIndex);
+        entry = mix(entry ^ code);
+        // Zero marks an empty slot.
+        return entry == EMPTY ? 1L : entry;
+    }
+
+    private static long mix(long value) {
+
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Codes which expire within a time step, held in an open addressing table of primitive longs.
+     */
+    private static class Bucket {
+
+        private long index = -1;
+        private long[] slots = new long[INITIAL_BUCKET_CAPACITY];
+        private int size;
+
+        private void reset(long index) {
+
+            this.index = index;
+            if (size > 0) {
+                Arrays.fill(slots, EMPTY);
+                size = 0;
+            }
+        }
+
+        private boolean add(long entry) {
+
+            if ((size + 1) * 2 > slots.length) {
+                resize();
+            }
+            if (!insert(slots, entry)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private boolean contains(long entry) {
+
+            int mask = slots.length - 1;
+            int slot = (int) entry & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == entry) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private void resize() {
+
+            long[] resized = new long[slots.length * 2];
+            for (long entry : slots) {
+                if (entry != EMPTY) {
+                    insert(resized, entry);
+                }
+            }
+            slots = resized;
+        }
+
+        private static boolean insert(long[] table, long entry) {
+
+            int mask = table.length - 1;
+            int slot = (int) entry & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == entry) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+            return true;
+        }
+    }
+}
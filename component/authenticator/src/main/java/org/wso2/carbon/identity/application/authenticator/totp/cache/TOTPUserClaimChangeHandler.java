@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.core.bean.context.MessageContext;
+import org.wso2.carbon.identity.event.IdentityEventConstants;
+import org.wso2.carbon.identity.event.IdentityEventException;
+import org.wso2.carbon.identity.event.IdentityEventMessageContext;
+import org.wso2.carbon.identity.event.event.Event;
+import org.wso2.carbon.identity.event.handler.AbstractEventHandler;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identity event handler which drops the cached failed TOTP attempts and the cached locked status of a user when they
+ * are reset outside the TOTP authenticator, such as when an administrator unlocks the account or clears the failed
+ * attempts claim.
+ */
+public class TOTPUserClaimChangeHandler extends AbstractEventHandler {
+
+    private static final Log log = LogFactory.getLog(TOTPUserClaimChangeHandler.class);
+
+    private static final String HANDLER_NAME = "TOTPUserClaimChangeHandler";
+
+    @Override
+    public String getName() {
+
+        return HANDLER_NAME;
+    }
+
+    @Override
+    public boolean canHandle(MessageContext messageContext) {
+
+        if (!(messageContext instanceof IdentityEventMessageContext)) {
+            return false;
+        }
+        String eventName = ((IdentityEventMessageContext) messageContext).getEvent().getEventName();
+        return IdentityEventConstants.Event.POST_SET_USER_CLAIMS.equals(eventName) ||
+                IdentityEventConstants.Event.POST_SET_USER_CLAIM.equals(eventName);
+    }
+
+    @Override
+    public boolean isAssociationAsync(String eventName) throws IdentityEventException {
+
+        return false;
+    }
+
+    @Override
+    public void handleEvent(Event event) throws IdentityEventException {
+
+        if (TOTPFailedAttemptCounter.isWritingClaims()) {
+            return;
+        }
+        Map<String, String> claims = getUpdatedClaims(event);
+        boolean unlocked = Boolean.FALSE.toString().equalsIgnoreCase(
+                claims.get(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM));
+        if (!unlocked && !isFailedAttemptsReset(claims)) {
+            return;
+        }
+        Map<String, Object> properties = event.getEventProperties();
+        String userName = (String) properties.get(IdentityEventConstants.EventProperty.USER_NAME);
+        String tenantDomain = (String) properties.get(IdentityEventConstants.EventProperty.TENANT_DOMAIN);
+        Object userStoreManager = properties.get(IdentityEventConstants.EventProperty.USER_STORE_MANAGER);
+        if (userName == null || !(userStoreManager instanceof UserStoreManager)) {
+            return;
+        }
+        String userStoreDomain = UserCoreUtil.getDomainName(
+                ((UserStoreManager) userStoreManager).getRealmConfiguration());
+        String key = TOTPFailedAttemptCounter.buildKey(tenantDomain, userStoreDomain,
+                UserCoreUtil.removeDomainFromName(userName));
+        TOTPDataHolder.getInstance().getFailedAttemptCounter().invalidate(key);
+        if (unlocked) {
+            TOTPDataHolder.getInstance().getAccountLockCache().invalidate(key);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated the cached failed TOTP attempts" + (unlocked ? " and locked status" : "") +
+                    " of user: " + key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> getUpdatedClaims(Event event) {
+
+        Map<String, Object> properties = event.getEventProperties();
+        if (IdentityEventConstants.Event.POST_SET_USER_CLAIMS.equals(event.getEventName())) {
+            Object claims = properties.get(IdentityEventConstants.EventProperty.USER_CLAIMS);
+            return claims instanceof Map ? (Map<String, String>) claims : new HashMap<>();
+        }
+        Map<String, String> claims = new HashMap<>();
+        Object claimURI = properties.get(IdentityEventConstants.EventProperty.CLAIM_URI);
+        if (claimURI instanceof String) {
+            claims.put((String) claimURI, (String) properties.get(IdentityEventConstants.EventProperty.CLAIM_VALUE));
+        }
+        return claims;
+    }
+
+    /**
+     * Check whether the updated claims clear the failed TOTP attempts. The claims written by the TOTP authenticator
+     * when it locks an account also clear the failed attempts, hence they are skipped.
+     */
+    private static boolean isFailedAttemptsReset(Map<String, String> claims) {
+
+        if (Boolean.TRUE.toString().equalsIgnoreCase(claims.get(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM)) ||
+                !claims.containsKey(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM)) {
+            return false;
+        }
+        String failedAttempts = claims.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM);
+        return StringUtils.isBlank(failedAttempts) || "0".equals(failedAttempts.trim());
+    }
+}
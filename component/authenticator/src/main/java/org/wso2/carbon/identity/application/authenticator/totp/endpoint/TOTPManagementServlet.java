@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.endpoint;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.qrcode.TOTPQRCodeFormat;
+import org.wso2.carbon.identity.application.authenticator.totp.services.TOTPAdminService;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.ServerConstants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * JSON endpoint managing the TOTP enrolment of the logged in user, for clients such as the user profile gadget which
+ * would otherwise build and parse a SOAP envelope for each call to {@link TOTPAdminService}.
+ * <p>
+ * The caller is authenticated with the session established by logging in to the Carbon admin services, and can only
+ * manage its own enrolment. Operations changing the enrolment must be posted with a JSON content type, which a
+ * cross-site form cannot send. The operations are:
+ * <ul>
+ * <li>POST /init - Issue a secret key if the user does not have one and return its QR code URL.</li>
+ * <li>POST /refresh - Replace the secret key and return the QR code URL of the new key.</li>
+ * <li>POST /reset - Remove the secret key.</li>
+ * <li>GET /status - Check whether the user is enrolled.</li>
+ * <li>GET /qrcode - Return the QR code URL of the secret key of an enrolled user.</li>
+ * <li>GET /qrcode.png, /qrcode.svg - Return the QR code of the secret key of an enrolled user as an image.</li>
+ * </ul>
+ * Results are returned as {@code {"return": value}}, which is the JSON form of the SOAP responses of the admin
+ * service, and errors as {@code {"error": message}}. Images are written as the response body.
+ */
+public class TOTPManagementServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 3846278163902147851L;
+
+    private static final Log log = LogFactory.getLog(TOTPManagementServlet.class);
+
+    private static final String INIT = "/init";
+    private static final String REFRESH = "/refresh";
+    private static final String RESET = "/reset";
+    private static final String STATUS = "/status";
+    private static final String QR_CODE = "/qrcode";
+    private static final String QR_CODE_PNG = "/qrcode.png";
+    private static final String QR_CODE_SVG = "/qrcode.svg";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private final transient TOTPAdminService adminService = new TOTPAdminService();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        String operation = StringUtils.defaultString(request.getPathInfo());
+        if (!isGetOperation(operation)) {
+            writeError(response, isPostOperation(operation) ? HttpServletResponse.SC_METHOD_NOT_ALLOWED :
+                    HttpServletResponse.SC_NOT_FOUND, "Unsupported operation.");
+            return;
+        }
+        handle(request, response, operation);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        String operation = StringUtils.defaultString(request.getPathInfo());
+        if (!isPostOperation(operation)) {
+            writeError(response, isGetOperation(operation) ? HttpServletResponse.SC_METHOD_NOT_ALLOWED :
+                    HttpServletResponse.SC_NOT_FOUND, "Unsupported operation.");
+            return;
+        }
+        if (!StringUtils.startsWithIgnoreCase(request.getContentType(), JSON_CONTENT_TYPE)) {
+            writeError(response, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Content type must be " + JSON_CONTENT_TYPE + ".");
+            return;
+        }
+        handle(request, response, operation);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response, String operation)
+            throws IOException {
+
+        HttpSession session = request.getSession(false);
+        String tenantAwareUsername = session == null ? null :
+                (String) session.getAttribute(ServerConstants.USER_LOGGED_IN);
+        String tenantDomain = session == null ? null :
+                (String) session.getAttribute(MultitenantConstants.TENANT_DOMAIN);
+        if (StringUtils.isBlank(tenantAwareUsername) || StringUtils.isBlank(tenantDomain)) {
+            writeError(response, HttpServletResponse.SC_UNAUTHORIZED, "Authentication required.");
+            return;
+        }
+        String username = UserCoreUtil.addTenantDomainToEntry(tenantAwareUsername, tenantDomain);
+
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            carbonContext.setTenantDomain(tenantDomain, true);
+            carbonContext.setUsername(tenantAwareUsername);
+            switch (operation) {
+                case INIT:
+                    writeResult(response, adminService.initTOTP(username, null));
+                    break;
+                case REFRESH:
+                    writeResult(response, adminService.refreshSecretKey(username, null));
+                    break;
+                case RESET:
+                    writeResult(response, adminService.resetTOTP(username));
+                    break;
+                case STATUS:
+                    writeResult(response, TOTPDataHolder.getInstance().getSecretKeyCache().isEnrolled(username));
+                    break;
+                default:
+                    if (!TOTPDataHolder.getInstance().getSecretKeyCache().isEnrolled(username)) {
+                        writeError(response, HttpServletResponse.SC_NOT_FOUND, "TOTP is not enabled for the user.");
+                        return;
+                    }
+                    String qrCodeURL = TOTPKeyGenerator.generateClaims(username, false)
+                            .get(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL);
+                    if (QR_CODE.equals(operation)) {
+                        writeResult(response, qrCodeURL);
+                    } else {
+                        writeImage(response, qrCodeURL, QR_CODE_PNG.equals(operation) ? TOTPQRCodeFormat.PNG :
+                                TOTPQRCodeFormat.SVG);
+                    }
+            }
+        } catch (TOTPException | AuthenticationFailedException e) {
+            log.error("Error while processing the TOTP operation: " + operation + " of user: " + username, e);
+            writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "Error while processing the TOTP operation.");
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private static boolean isPostOperation(String operation) {
+
+        return INIT.equals(operation) || REFRESH.equals(operation) || RESET.equals(operation);
+    }
+
+    private static boolean isGetOperation(String operation) {
+
+        return STATUS.equals(operation) || QR_CODE.equals(operation) || QR_CODE_PNG.equals(operation) ||
+                QR_CODE_SVG.equals(operation);
+    }
+
+    private static void writeImage(HttpServletResponse response, String qrCodeURL, TOTPQRCodeFormat format)
+            throws IOException {
+
+        String keyURI = new String(Base64.decodeBase64(qrCodeURL), StandardCharsets.UTF_8);
+        byte[] image = TOTPDataHolder.getInstance().getQRCodeRenderer().render(keyURI, format);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(format.getContentType());
+        response.setContentLength(image.length);
+        setNoStoreHeaders(response);
+        OutputStream out = response.getOutputStream();
+        out.write(image);
+        out.flush();
+    }
+
+    private static void writeResult(HttpServletResponse response, Object value) throws IOException {
+
+        write(response, HttpServletResponse.SC_OK, "return", value);
+    }
+
+    private static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+
+        write(response, status, "error", message);
+    }
+
+    private static void write(HttpServletResponse response, int status, String name, Object value)
+            throws IOException {
+
+        response.setStatus(status);
+        response.setContentType(JSON_CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        setNoStoreHeaders(response);
+        PrintWriter writer = response.getWriter();
+        writer.write("{\"" + name + "\":");
+        if (value == null || value instanceof Boolean) {
+            writer.write(String.valueOf(value));
+        } else {
+            writer.write(toJsonString(String.valueOf(value)));
+        }
+        writer.write("}");
+        writer.flush();
+    }
+
+    private static void setNoStoreHeaders(HttpServletResponse response) {
+
+        // QR codes contain the secret key of the user.
+        response.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, private");
+        response.setHeader("Pragma", "no-cache");
+        response.setDateHeader("Expires", 0);
+    }
+
+    private static String toJsonString(String value) {
+
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.exception;
+
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+
+/**
+ * Authentication failure reported to the authentication framework for an expected verification failure, such as a
+ * wrong code. The stack trace is not captured, since the failure is fully described by the verification result.
+ */
+public class TOTPVerificationFailedException extends AuthenticationFailedException {
+
+    private static final long serialVersionUID = -6474960823574862207L;
+
+    private final TOTPVerificationStatus status;
+
+    public TOTPVerificationFailedException(TOTPVerificationResult result) {
+
+        super(result.getReason());
+        this.status = result.getStatus();
+    }
+
+    public TOTPVerificationStatus getStatus() {
+
+        return status;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+
+        return this;
+    }
+}
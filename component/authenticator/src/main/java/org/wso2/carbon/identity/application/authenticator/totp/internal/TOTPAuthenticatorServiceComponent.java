@@ -26,16 +26,33 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
 import org.wso2.carbon.identity.application.authentication.framework.ApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticator;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPClaimPrefetcher;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailConfigCache;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailTemplateChangeHandler;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPUserClaimChangeHandler;
+import org.wso2.carbon.identity.application.authenticator.totp.endpoint.TOTPManagementServlet;
+import org.wso2.carbon.identity.application.authenticator.totp.notification.TOTPEmailDispatcher;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAsyncExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.event.handler.AbstractEventHandler;
 import org.wso2.carbon.identity.event.services.IdentityEventService;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 import org.wso2.carbon.identity.handler.event.account.lock.service.AccountLockService;
+import org.wso2.carbon.registry.core.config.RegistryContext;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
 import java.util.Hashtable;
 
+import javax.servlet.ServletException;
+
 @Component(
 		name = "identity.application.authenticator.totp.component",
 		immediate = true
@@ -43,6 +60,7 @@ import java.util.Hashtable;
 public class TOTPAuthenticatorServiceComponent {
 
 	private static final Log log = LogFactory.getLog(TOTPAuthenticatorServiceComponent.class);
+	private TOTPEmailTemplateChangeHandler emailTemplateChangeHandler;
 
 	/**
 	 * This method is to register the TOTP authenticator service.
@@ -55,6 +73,42 @@ public class TOTPAuthenticatorServiceComponent {
 
 		ctxt.getBundleContext()
 		    .registerService(ApplicationAuthenticator.class.getName(), totpAuth, props);
+		TOTPStateStore stateStore = TOTPUtil.buildStateStore();
+		stateStore.start();
+		TOTPDataHolder.getInstance().setStateStore(stateStore);
+		TOTPDataHolder.getInstance().getFailedAttemptCounter().start(TOTPUtil.getFailedAttemptsFlushInterval());
+		TOTPDataHolder.getInstance().getAccountLockCache()
+				.setCacheTimeout(TOTPUtil.getAccountLockStatusCacheTimeout());
+		TOTPDataHolder.getInstance().getAccountLockCache().start();
+		ctxt.getBundleContext().registerService(AbstractEventHandler.class.getName(),
+				new TOTPUserClaimChangeHandler(), null);
+		TOTPEmailConfigCache emailConfigCache = TOTPDataHolder.getInstance().getEmailConfigCache();
+		emailConfigCache.setCacheTimeout(TOTPUtil.getEmailTemplateCacheTimeout());
+		emailConfigCache.setEarlyRefreshRatio(TOTPUtil.getCacheEarlyRefreshRatio());
+		registerEmailTemplateChangeHandler(emailConfigCache);
+		configureLoadingCaches();
+		if (TOTPUtil.isRateLimitingEnabled()) {
+			TOTPDataHolder.getInstance().setUserRateLimiter(TOTPUtil.buildUserRateLimiter());
+			TOTPDataHolder.getInstance().setTenantRateLimiter(TOTPUtil.buildTenantRateLimiter());
+		}
+		if (TOTPUtil.isAsyncEmailDeliveryEnabled()) {
+			TOTPEmailDispatcher emailDispatcher = TOTPUtil.buildEmailDispatcher();
+			emailDispatcher.start();
+			TOTPDataHolder.getInstance().setEmailDispatcher(emailDispatcher);
+		}
+		if (TOTPUtil.isClaimPrefetchEnabled()) {
+			TOTPClaimPrefetcher claimPrefetcher = TOTPUtil.buildClaimPrefetcher();
+			claimPrefetcher.start();
+			TOTPDataHolder.getInstance().setClaimPrefetcher(claimPrefetcher);
+		}
+		if (TOTPUtil.isParallelLookupsEnabled()) {
+			TOTPLookupExecutor lookupExecutor = TOTPUtil.buildLookupExecutor();
+			lookupExecutor.start();
+			TOTPDataHolder.getInstance().setLookupExecutor(lookupExecutor);
+		}
+		TOTPAsyncExecutor asyncExecutor = TOTPUtil.buildAsyncExecutor();
+		asyncExecutor.start();
+		TOTPDataHolder.getInstance().setAsyncExecutor(asyncExecutor);
 
 		if (log.isDebugEnabled()) {
 			log.debug("TOTPAuthenticator bundle is activated");
@@ -68,11 +122,80 @@ public class TOTPAuthenticatorServiceComponent {
 	 */
 	@Deactivate
 	protected void deactivate(ComponentContext ctxt) {
+		TOTPDataHolder.getInstance().getFailedAttemptCounter().shutdown();
+		TOTPDataHolder.getInstance().getStateStore().shutdown();
+		TOTPDataHolder.getInstance().getAccountLockCache().shutdown();
+		TOTPEmailDispatcher emailDispatcher = TOTPDataHolder.getInstance().getEmailDispatcher();
+		if (emailDispatcher != null) {
+			TOTPDataHolder.getInstance().setEmailDispatcher(null);
+			emailDispatcher.shutdown();
+		}
+		TOTPClaimPrefetcher claimPrefetcher = TOTPDataHolder.getInstance().getClaimPrefetcher();
+		if (claimPrefetcher != null) {
+			TOTPDataHolder.getInstance().setClaimPrefetcher(null);
+			claimPrefetcher.shutdown();
+		}
+		TOTPLookupExecutor lookupExecutor = TOTPDataHolder.getInstance().getLookupExecutor();
+		if (lookupExecutor != null) {
+			TOTPDataHolder.getInstance().setLookupExecutor(null);
+			lookupExecutor.shutdown();
+		}
+		TOTPAsyncExecutor asyncExecutor = TOTPDataHolder.getInstance().getAsyncExecutor();
+		if (asyncExecutor != null) {
+			TOTPDataHolder.getInstance().setAsyncExecutor(null);
+			asyncExecutor.shutdown();
+		}
+		RegistryContext registryContext = RegistryContext.getBaseInstance();
+		if (emailTemplateChangeHandler != null && registryContext != null) {
+			registryContext.getHandlerManager().removeHandler(emailTemplateChangeHandler);
+		}
+		emailTemplateChangeHandler = null;
+		TOTPDataHolder.getInstance().getEmailConfigCache().invalidateAll();
+		TOTPDataHolder.getInstance().getSecretKeyCache().invalidateAll();
+		TOTPDataHolder.getInstance().getTenantConfigCache().invalidateAll();
+		TOTPDataHolder.getInstance().getLockPolicyCache().invalidateAll();
+		TOTPDataHolder.getInstance().setUserRateLimiter(null);
+		TOTPDataHolder.getInstance().setTenantRateLimiter(null);
 		if (log.isDebugEnabled()) {
 			log.debug("TOTPAuthenticator bundle is deactivated");
 		}
 	}
 
+	/**
+	 * Configure the caches which load the secret keys of users and the configuration of tenants on demand.
+	 */
+	private void configureLoadingCaches() {
+
+		double earlyRefreshRatio = TOTPUtil.getCacheEarlyRefreshRatio();
+		long tenantConfigCacheTimeout = TOTPUtil.getTenantConfigCacheTimeout();
+		TOTPDataHolder dataHolder = TOTPDataHolder.getInstance();
+		dataHolder.getSecretKeyCache().setCacheTimeout(TOTPUtil.getSecretKeyCacheTimeout());
+		dataHolder.getSecretKeyCache().setEarlyRefreshRatio(earlyRefreshRatio);
+		dataHolder.getTenantConfigCache().setCacheTimeout(tenantConfigCacheTimeout);
+		dataHolder.getTenantConfigCache().setEarlyRefreshRatio(earlyRefreshRatio);
+		dataHolder.getLockPolicyCache().setCacheTimeout(tenantConfigCacheTimeout);
+		dataHolder.getLockPolicyCache().setEarlyRefreshRatio(earlyRefreshRatio);
+		dataHolder.getQRCodeRenderer().setCacheTimeout(TOTPUtil.getQRCodeCacheTimeout());
+	}
+
+	/**
+	 * Register a registry handler to invalidate the cached TOTP email templates when they are changed. The cache
+	 * timeout still applies if the handler could not be registered.
+	 *
+	 * @param emailConfigCache TOTP email configuration cache.
+	 */
+	private void registerEmailTemplateChangeHandler(TOTPEmailConfigCache emailConfigCache) {
+
+		RegistryContext registryContext = RegistryContext.getBaseInstance();
+		if (registryContext == null || registryContext.getHandlerManager() == null) {
+			log.warn("Registry is not available. Cached TOTP email templates are refreshed only on expiry.");
+			return;
+		}
+		emailTemplateChangeHandler = new TOTPEmailTemplateChangeHandler(emailConfigCache);
+		registryContext.getHandlerManager().addHandler(TOTPEmailTemplateChangeHandler.getMethods(),
+				TOTPEmailTemplateChangeHandler.buildFilter(), emailTemplateChangeHandler);
+	}
+
 	/**
 	 * This method is used to set the Configuration Context Service.
 	 *
@@ -175,4 +298,36 @@ public class TOTPAuthenticatorServiceComponent {
 
 		TOTPDataHolder.getInstance().setAccountLockService(null);
 	}
+
+	@Reference(
+			name = "HttpService",
+			service = org.osgi.service.http.HttpService.class,
+			cardinality = ReferenceCardinality.OPTIONAL,
+			policy = ReferencePolicy.DYNAMIC,
+			unbind = "unsetHttpService"
+	)
+	protected void setHttpService(HttpService httpService) {
+
+		try {
+			httpService.registerServlet(TOTPAuthenticatorConstants.TOTP_MANAGEMENT_ENDPOINT,
+					new TOTPManagementServlet(), null, null);
+			if (log.isDebugEnabled()) {
+				log.debug("TOTP management endpoint is registered at: " +
+						TOTPAuthenticatorConstants.TOTP_MANAGEMENT_ENDPOINT);
+			}
+		} catch (ServletException | NamespaceException e) {
+			log.error("Error while registering the TOTP management endpoint.", e);
+		}
+	}
+
+	protected void unsetHttpService(HttpService httpService) {
+
+		try {
+			httpService.unregister(TOTPAuthenticatorConstants.TOTP_MANAGEMENT_ENDPOINT);
+		} catch (IllegalArgumentException e) {
+			if (log.isDebugEnabled()) {
+				log.debug("TOTP management endpoint was not registered.", e);
+			}
+		}
+	}
 }
@@ -18,12 +18,32 @@
  */
 package org.wso2.carbon.identity.application.authenticator.totp.internal;
 
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPAccountLockCache;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPClaimPrefetcher;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailConfigCache;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPEmailSendTracker;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPSecretKeyCache;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPSingleFlightCache;
+import org.wso2.carbon.identity.application.authenticator.totp.notification.TOTPEmailDispatcher;
+import org.wso2.carbon.identity.application.authenticator.totp.qrcode.TOTPQRCodeRenderer;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPInMemoryStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAsyncExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPRateLimiter;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationListener;
+import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.event.services.IdentityEventService;
 import org.wso2.carbon.identity.governance.IdentityGovernanceService;
 import org.wso2.carbon.identity.handler.event.account.lock.service.AccountLockService;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * DataHolder to hold instance.
  *
@@ -36,6 +56,24 @@ public class TOTPDataHolder {
 	private IdentityEventService identityEventService;
 	private AccountLockService accountLockService;
 	private IdentityGovernanceService identityGovernanceService;
+	private final TOTPFailedAttemptCounter failedAttemptCounter = new TOTPFailedAttemptCounter();
+	private final TOTPAccountLockCache accountLockCache = new TOTPAccountLockCache();
+	private final TOTPEmailConfigCache emailConfigCache = new TOTPEmailConfigCache();
+	private final TOTPEmailSendTracker emailSendTracker = new TOTPEmailSendTracker();
+	private final TOTPSecretKeyCache secretKeyCache = new TOTPSecretKeyCache();
+	private final TOTPQRCodeRenderer qrCodeRenderer = new TOTPQRCodeRenderer();
+	private final TOTPSingleFlightCache<String, String> tenantConfigCache = new TOTPSingleFlightCache<>(
+			"TOTP tenant configuration", TOTPAuthenticatorConstants.DEFAULT_TENANT_CONFIG_CACHE_TIMEOUT);
+	private final TOTPSingleFlightCache<String, Property[]> lockPolicyCache = new TOTPSingleFlightCache<>(
+			"TOTP account lock policy", TOTPAuthenticatorConstants.DEFAULT_TENANT_CONFIG_CACHE_TIMEOUT);
+	private volatile TOTPStateStore stateStore = new TOTPInMemoryStateStore();
+	private final List<TOTPVerificationListener> verificationListeners = new CopyOnWriteArrayList<>();
+	private TOTPEmailDispatcher emailDispatcher;
+	private TOTPClaimPrefetcher claimPrefetcher;
+	private TOTPLookupExecutor lookupExecutor;
+	private TOTPAsyncExecutor asyncExecutor;
+	private TOTPRateLimiter userRateLimiter;
+	private TOTPRateLimiter tenantRateLimiter;
 
 	/**
 	 * Returns the DataHolder instance.
@@ -136,4 +174,253 @@ public class TOTPDataHolder {
 		this.accountLockService = accountLockService;
 	}
 
+	/**
+	 * Get the failed TOTP attempt counter.
+	 *
+	 * @return Failed TOTP attempt counter.
+	 */
+	public TOTPFailedAttemptCounter getFailedAttemptCounter() {
+
+		return failedAttemptCounter;
+	}
+
+	/**
+	 * Get the account lock status cache.
+	 *
+	 * @return Account lock status cache.
+	 */
+	public TOTPAccountLockCache getAccountLockCache() {
+
+		return accountLockCache;
+	}
+
+	/**
+	 * Get the TOTP email configuration cache.
+	 *
+	 * @return TOTP email configuration cache.
+	 */
+	public TOTPEmailConfigCache getEmailConfigCache() {
+
+		return emailConfigCache;
+	}
+
+	/**
+	 * Get the tracker of TOTP emails sent within the current time step.
+	 *
+	 * @return TOTP email send tracker.
+	 */
+	public TOTPEmailSendTracker getEmailSendTracker() {
+
+		return emailSendTracker;
+	}
+
+	/**
+	 * Get the cache of the encrypted TOTP secret keys of users.
+	 *
+	 * @return TOTP secret key cache.
+	 */
+	public TOTPSecretKeyCache getSecretKeyCache() {
+
+		return secretKeyCache;
+	}
+
+	/**
+	 * Get the renderer of the QR code images of TOTP secret keys.
+	 *
+	 * @return TOTP QR code renderer.
+	 */
+	public TOTPQRCodeRenderer getQRCodeRenderer() {
+
+		return qrCodeRenderer;
+	}
+
+	/**
+	 * Get the cache of the authenticator configuration of each tenant stored in the registry.
+	 *
+	 * @return Tenant configuration cache, keyed by tenant domain.
+	 */
+	public TOTPSingleFlightCache<String, String> getTenantConfigCache() {
+
+		return tenantConfigCache;
+	}
+
+	/**
+	 * Get the cache of the account lock connector configuration of each tenant.
+	 *
+	 * @return Account lock policy cache, keyed by tenant domain.
+	 */
+	public TOTPSingleFlightCache<String, Property[]> getLockPolicyCache() {
+
+		return lockPolicyCache;
+	}
+
+	/**
+	 * Get the store of the TOTP codes already accepted and the failed attempt counts.
+	 *
+	 * @return TOTP state store.
+	 */
+	public TOTPStateStore getStateStore() {
+
+		return stateStore;
+	}
+
+	/**
+	 * Set the store of the TOTP codes already accepted and the failed attempt counts.
+	 *
+	 * @param stateStore TOTP state store.
+	 */
+	public void setStateStore(TOTPStateStore stateStore) {
+
+		this.stateStore = stateStore;
+	}
+
+	/**
+	 * Get the listeners notified of the timings of the TOTP verification stages.
+	 *
+	 * @return TOTP verification listeners.
+	 */
+	public List<TOTPVerificationListener> getVerificationListeners() {
+
+		return verificationListeners;
+	}
+
+	/**
+	 * Add a listener notified of the timings of the TOTP verification stages.
+	 *
+	 * @param verificationListener TOTP verification listener.
+	 */
+	public void addVerificationListener(TOTPVerificationListener verificationListener) {
+
+		verificationListeners.add(verificationListener);
+	}
+
+	/**
+	 * Remove a listener notified of the timings of the TOTP verification stages.
+	 *
+	 * @param verificationListener TOTP verification listener.
+	 */
+	public void removeVerificationListener(TOTPVerificationListener verificationListener) {
+
+		verificationListeners.remove(verificationListener);
+	}
+
+	/**
+	 * Get the dispatcher for asynchronous TOTP email delivery.
+	 *
+	 * @return TOTP email dispatcher or null if emails are delivered synchronously.
+	 */
+	public TOTPEmailDispatcher getEmailDispatcher() {
+
+		return emailDispatcher;
+	}
+
+	/**
+	 * Set the dispatcher for asynchronous TOTP email delivery.
+	 *
+	 * @param emailDispatcher TOTP email dispatcher.
+	 */
+	public void setEmailDispatcher(TOTPEmailDispatcher emailDispatcher) {
+
+		this.emailDispatcher = emailDispatcher;
+	}
+
+	/**
+	 * Get the prefetcher of the TOTP claims of users being authenticated.
+	 *
+	 * @return TOTP claim prefetcher or null if claim prefetching is disabled.
+	 */
+	public TOTPClaimPrefetcher getClaimPrefetcher() {
+
+		return claimPrefetcher;
+	}
+
+	/**
+	 * Set the prefetcher of the TOTP claims of users being authenticated.
+	 *
+	 * @param claimPrefetcher TOTP claim prefetcher.
+	 */
+	public void setClaimPrefetcher(TOTPClaimPrefetcher claimPrefetcher) {
+
+		this.claimPrefetcher = claimPrefetcher;
+	}
+
+	/**
+	 * Get the executor of the concurrent lookups of authentication requests.
+	 *
+	 * @return Lookup executor or null if lookups are executed on the request thread.
+	 */
+	public TOTPLookupExecutor getLookupExecutor() {
+
+		return lookupExecutor;
+	}
+
+	/**
+	 * Set the executor of the concurrent lookups of authentication requests.
+	 *
+	 * @param lookupExecutor Lookup executor.
+	 */
+	public void setLookupExecutor(TOTPLookupExecutor lookupExecutor) {
+
+		this.lookupExecutor = lookupExecutor;
+	}
+
+	/**
+	 * Get the executor of the asynchronous TOTP admin operations.
+	 *
+	 * @return Async executor or null if the operations are executed on the calling thread.
+	 */
+	public TOTPAsyncExecutor getAsyncExecutor() {
+
+		return asyncExecutor;
+	}
+
+	/**
+	 * Set the executor of the asynchronous TOTP admin operations.
+	 *
+	 * @param asyncExecutor Async executor.
+	 */
+	public void setAsyncExecutor(TOTPAsyncExecutor asyncExecutor) {
+
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * Get the per user rate limiter of TOTP requests.
+	 *
+	 * @return Per user rate limiter or null if rate limiting is disabled.
+	 */
+	public TOTPRateLimiter getUserRateLimiter() {
+
+		return userRateLimiter;
+	}
+
+	/**
+	 * Set the per user rate limiter of TOTP requests.
+	 *
+	 * @param userRateLimiter Per user rate limiter.
+	 */
+	public void setUserRateLimiter(TOTPRateLimiter userRateLimiter) {
+
+		this.userRateLimiter = userRateLimiter;
+	}
+
+	/**
+	 * Get the per tenant rate limiter of TOTP requests.
+	 *
+	 * @return Per tenant rate limiter or null if rate limiting is disabled.
+	 */
+	public TOTPRateLimiter getTenantRateLimiter() {
+
+		return tenantRateLimiter;
+	}
+
+	/**
+	 * Set the per tenant rate limiter of TOTP requests.
+	 *
+	 * @param tenantRateLimiter Per tenant rate limiter.
+	 */
+	public void setTenantRateLimiter(TOTPRateLimiter tenantRateLimiter) {
+
+		this.tenantRateLimiter = tenantRateLimiter;
+	}
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.notification;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers TOTP emails asynchronously, off the request thread.
+ * <p>
+ * Deliveries are held in a bounded queue which serves tenants in round-robin order and are executed by a dedicated
+ * pool of worker threads. When the queue is full, a delivery is either rejected or executed on the calling thread,
+ * depending on the configured {@link RejectionPolicy}. Failed deliveries are retried with an exponential back-off
+ * and a random jitter, so that retries of many deliveries failing together do not hit the mail relay at once.
+ */
+public class TOTPEmailDispatcher {
+
+    private static final Log log = LogFactory.getLog(TOTPEmailDispatcher.class);
+
+    private static final long QUEUE_POLL_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+
+    private final int workerCount;
+    private final int maxRetries;
+    private final long retryDelay;
+    private final RejectionPolicy rejectionPolicy;
+    private final TOTPTenantFairQueue<Delivery> queue;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private ExecutorService workers;
+    private ScheduledExecutorService retryScheduler;
+
+    /**
+     * Behaviour when a delivery is dispatched while the queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * Reject the delivery.
+         */
+        REJECT,
+
+        /**
+         * Deliver synchronously on the calling thread.
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * A single email delivery.
+     */
+    public interface DeliveryTask {
+
+        /**
+         * Deliver the email.
+         *
+         * @throws TOTPException If the email could not be delivered.
+         */
+        void deliver() throws TOTPException;
+    }
+
+    /**
+     * Create an email dispatcher.
+     *
+     * @param workerCount        Number of worker threads.
+     * @param queueCapacity      Maximum number of deliveries waiting in the queue.
+     * @param maxRetries         Maximum number of retries of a failed delivery.
+     * @param retryDelayInMillis Base delay before the first retry, doubled for each further retry.
+     * @param rejectionPolicy    Behaviour when the queue is full.
+     */
+    public TOTPEmailDispatcher(int workerCount, int queueCapacity, int maxRetries, long retryDelayInMillis,
+                               RejectionPolicy rejectionPolicy) {
+
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count should be positive.");
+        }
+        this.workerCount = workerCount;
+        this.maxRetries = Math.max(maxRetries, 0);
+        this.retryDelay = Math.max(retryDelayInMillis, 1);
+        this.rejectionPolicy = rejectionPolicy;
+        this.queue = new TOTPTenantFairQueue<>(queueCapacity);
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-EmailDispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::processDeliveries);
+        }
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-EmailDispatcherRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (log.isDebugEnabled()) {
+            log.debug("Started TOTP email dispatcher with " + workerCount + " workers.");
+        }
+    }
+
+    /**
+     * Stop the worker threads. Deliveries still in the queue are dropped.
+     */
+    public synchronized void shutdown() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+        int pending = queue.size();
+        if (pending > 0) {
+            log.warn("TOTP email dispatcher stopped with " + pending + " undelivered emails.");
+        }
+    }
+
+    /**
+     * Queue an email delivery.
+     *
+     * @param tenantDomain Tenant domain of the recipient.
+     * @param description  Description of the delivery used in logs.
+     * @param task         Delivery to execute.
+     * @return False if the delivery was rejected since the queue is full.
+     * @throws TOTPException If the delivery was executed on the calling thread and failed.
+     */
+    public boolean dispatch(String tenantDomain, String description, DeliveryTask task) throws TOTPException {
+
+        return dispatch(tenantDomain, description, task, null);
+    }
+
+    /**
+     * Queue an email delivery, notifying the caller if the queued delivery fails after all its retries.
+     *
+     * @param tenantDomain Tenant domain of the recipient.
+     * @param description  Description of the delivery used in logs.
+     * @param task         Delivery to execute.
+     * @param onFailure    Callback run once the queued delivery has finally failed, or null. It is not run if the
+     *                     delivery is rejected or fails on the calling thread, since the caller is told of those.
+     * @return False if the delivery was rejected since the queue is full.
+     * @throws TOTPException If the delivery was executed on the calling thread and failed.
+     */
+    public boolean dispatch(String tenantDomain, String description, DeliveryTask task, Runnable onFailure)
+            throws TOTPException {
+
+        submittedCount.incrementAndGet();
+        if (running && queue.offer(tenantDomain, new Delivery(tenantDomain, description, task, onFailure))) {
+            if (log.isDebugEnabled()) {
+                log.debug("Queued " + description + ". Queue depth: " + queue.size() + ", tenant queue depth: " +
+                        queue.size(tenantDomain));
+            }
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP email queue is full. Delivering " + description + " on the calling thread.");
+            }
+            task.deliver();
+            deliveredCount.incrementAndGet();
+            return true;
+        }
+        log.warn("TOTP email queue is full. Rejected " + description + ".");
+        return false;
+    }
+
+    /**
+     * Get the number of deliveries waiting in the queue.
+     *
+     * @return Queue depth.
+     */
+    public int getQueueDepth() {
+
+        return queue.size();
+    }
+
+    /**
+     * Get the number of deliveries of the tenant waiting in the queue.
+     *
+     * @param tenantDomain Tenant domain.
+     * @return Queue depth of the tenant.
+     */
+    public int getQueueDepth(String tenantDomain) {
+
+        return queue.size(tenantDomain);
+    }
+
+    public long getSubmittedCount() {
+
+        return submittedCount.get();
+    }
+
+    public long getRejectedCount() {
+
+        return rejectedCount.get();
+    }
+
+    public long getDeliveredCount() {
+
+        return deliveredCount.get();
+    }
+
+    public long getRetriedCount() {
+
+        return retriedCount.get();
+    }
+
+    public long getFailedCount() {
+
+        return failedCount.get();
+    }
+
+    private void processDeliveries() {
+
+        while (running) {
+            Delivery delivery;
+            try {
+                delivery = queue.poll(QUEUE_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (delivery != null) {
+                deliver(delivery);
+            }
+        }
+    }
+
+    private void deliver(Delivery delivery) {
+
+        try {
+            delivery.task.deliver();
+            deliveredCount.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Delivered " + delivery.description + ".");
+            }
+        } catch (TOTPException | RuntimeException e) {
+            if (delivery.attempt >= maxRetries || !running) {
+                log.error("Failed to deliver " + delivery.description + " after " + (delivery.attempt + 1) +
+                        " attempts.", e);
+                fail(delivery);
+                return;
+            }
+            delivery.attempt++;
+            long delay = getRetryDelay(delivery.attempt);
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to deliver " + delivery.description + ". Retrying in " + delay + " ms.", e);
+            }
+            retriedCount.incrementAndGet();
+            try {
+                retryScheduler.schedule(() -> requeue(delivery), delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException rejected) {
+                log.error("Failed to schedule a retry of " + delivery.description + ".", rejected);
+                fail(delivery);
+            }
+        }
+    }
+
+    private void requeue(Delivery delivery) {
+
+        if (!queue.offer(delivery.tenantDomain, delivery)) {
+            log.error("TOTP email queue is full. Dropped the retry of " + delivery.description + ".");
+            fail(delivery);
+        }
+    }
+
+    private void fail(Delivery delivery) {
+
+        failedCount.incrementAndGet();
+        if (delivery.onFailure == null) {
+            return;
+        }
+        try {
+            delivery.onFailure.run();
+        } catch (RuntimeException e) {
+            log.error("Error while handling the failed delivery of " + delivery.description + ".", e);
+        }
+    }
+
+    /**
+     * Exponential back-off with a random jitter of up to one base delay.
+     */
+    long getRetryDelay(int attempt) {
+
+        long backoff = retryDelay << Math.min(attempt - 1, MAX_BACKOFF_EXPONENT);
+        return backoff + ThreadLocalRandom.current().nextLong(retryDelay);
+    }
+
+    /**
+     * Queued delivery along with its retry state.
+     */
+    private static class Delivery {
+
+        private final String tenantDomain;
+        private final String description;
+        private final DeliveryTask task;
+        private final Runnable onFailure;
+        private int attempt;
+
+        Delivery(String tenantDomain, String description, DeliveryTask task, Runnable onFailure) {
+
+            this.tenantDomain = tenantDomain;
+            this.description = description;
+            this.task = task;
+            this.onFailure = onFailure;
+        }
+    }
+}
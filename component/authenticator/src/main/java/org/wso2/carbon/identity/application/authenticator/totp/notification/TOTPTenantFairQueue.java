@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.notification;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue which serves the tenants having pending elements in round-robin order.
+ * <p>
+ * Elements of a single tenant are taken in insertion order, but a tenant flooding the queue cannot delay the
+ * elements of other tenants by more than one element per tenant.
+ *
+ * @param <E> Type of the queued elements.
+ */
+class TOTPTenantFairQueue<E> {
+
+    private final int capacity;
+    private final Map<String, Deque<E>> tenantQueues = new HashMap<>();
+    private final Deque<String> readyTenants = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+
+    TOTPTenantFairQueue(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity should be positive.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add an element to the queue of the tenant if the queue is not full.
+     *
+     * @param tenantDomain Tenant domain owning the element.
+     * @param element      Element to add.
+     * @return False if the queue is full.
+     */
+    boolean offer(String tenantDomain, E element) {
+
+        lock.lock();
+        try {
+            if (size >= capacity) {
+                return false;
+            }
+            Deque<E> tenantQueue = tenantQueues.get(tenantDomain);
+            if (tenantQueue == null) {
+                tenantQueue = new ArrayDeque<>();
+                tenantQueues.put(tenantDomain, tenantQueue);
+                readyTenants.addLast(tenantDomain);
+            }
+            tenantQueue.addLast(element);
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the next element, waiting up to the given time for an element to become available.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return The next element or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            String tenantDomain = readyTenants.pollFirst();
+            Deque<E> tenantQueue = tenantQueues.get(tenantDomain);
+            E element = tenantQueue.pollFirst();
+            if (tenantQueue.isEmpty()) {
+                tenantQueues.remove(tenantDomain);
+            } else {
+                readyTenants.addLast(tenantDomain);
+            }
+            size--;
+            return element;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of queued elements.
+     *
+     * @return Number of queued elements.
+     */
+    int size() {
+
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of queued elements of the tenant.
+     *
+     * @param tenantDomain Tenant domain.
+     * @return Number of queued elements of the tenant.
+     */
+    int size(String tenantDomain) {
+
+        lock.lock();
+        try {
+            Deque<E> tenantQueue = tenantQueues.get(tenantDomain);
+            return tenantQueue == null ? 0 : tenantQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
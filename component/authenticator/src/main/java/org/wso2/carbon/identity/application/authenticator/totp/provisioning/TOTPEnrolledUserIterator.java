@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+
+import java.util.Arrays;
+
+/**
+ * Lists the users of a tenant holding a TOTP secret key, a page at a time, by filtering the listing of the user store
+ * on the secret key claim so that the users who are not enrolled are never read. Shared by the reporter and the
+ * exporter of enrolments.
+ * <p>
+ * A reset stores an empty secret key, which some user stores match with the wildcard, hence the callers confirm the
+ * enrolment of each listed user when reading its claims.
+ */
+class TOTPEnrolledUserIterator {
+
+    private static final String ANY_VALUE = "*";
+
+    private final UserStoreManager userStoreManager;
+    private final int pageSize;
+    private int offset;
+    // Users listed at once by a user store which does not support pagination.
+    private String[] allUsers;
+
+    /**
+     * Create an iterator.
+     *
+     * @param userStoreManager User store manager of the tenant.
+     * @param offset           Offset of the first user to list, starting from 1.
+     * @param pageSize         Maximum number of users listed at a time.
+     */
+    TOTPEnrolledUserIterator(UserStoreManager userStoreManager, int offset, int pageSize) {
+
+        this.userStoreManager = userStoreManager;
+        this.offset = Math.max(offset, 1);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Check whether more users may be listed.
+     *
+     * @return False once the last page was listed.
+     */
+    boolean hasNext() {
+
+        return offset > 0;
+    }
+
+    /**
+     * List the next page of enrolled users.
+     *
+     * @return Usernames of the page, which is empty once the iteration is complete.
+     * @throws UserStoreException If the users could not be listed.
+     */
+    String[] next() throws UserStoreException {
+
+        if (!hasNext()) {
+            return new String[0];
+        }
+        String[] users;
+        if (userStoreManager instanceof PaginatedUserStoreManager) {
+            users = ((PaginatedUserStoreManager) userStoreManager).getUserList(
+                    TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, ANY_VALUE, null, pageSize, offset);
+        } else {
+            if (allUsers == null) {
+                // The user store can only list all the users holding the claim at once.
+                allUsers = userStoreManager.getUserList(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, ANY_VALUE,
+                        null);
+                if (allUsers == null) {
+                    allUsers = new String[0];
+                }
+            }
+            users = Arrays.copyOfRange(allUsers, Math.min(offset - 1, allUsers.length),
+                    (int) Math.min(allUsers.length, (long) offset - 1 + pageSize));
+        }
+        if (users == null) {
+            users = new String[0];
+        }
+        offset = users.length < pageSize ? -1 : offset + users.length;
+        return users;
+    }
+
+    /**
+     * Get the offset of the next page.
+     *
+     * @return Offset of the next page, or -1 if the iteration is complete.
+     */
+    int getNextOffset() {
+
+        return offset;
+    }
+
+    /**
+     * Get the user store manager of a tenant.
+     *
+     * @param tenantDomain Tenant domain.
+     * @return User store manager of the tenant.
+     * @throws TOTPException If the user realm of the tenant could not be found.
+     */
+    static UserStoreManager getUserStoreManager(String tenantDomain) throws TOTPException {
+
+        try {
+            UserRealm userRealm = TOTPDataHolder.getInstance().getRealmService()
+                    .getTenantUserRealm(IdentityTenantUtil.getTenantId(tenantDomain));
+            if (userRealm == null) {
+                throw new TOTPException("Cannot find the user realm of tenant domain: " + tenantDomain);
+            }
+            return userRealm.getUserStoreManager();
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to get the user store manager of tenant domain: " + tenantDomain, e);
+        }
+    }
+}
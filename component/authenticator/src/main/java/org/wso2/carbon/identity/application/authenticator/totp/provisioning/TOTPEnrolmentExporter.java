@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Exports the TOTP enrolments of the users of a tenant.
+ * <p>
+ * Only the users holding a TOTP secret key are listed from the user store, with {@link TOTPEnrolledUserIterator}, a
+ * page at a time, and each record is written as soon as it is built, so the memory used does not depend on the number
+ * of users. Each record holds the QR code payload of {@link TOTPKeyGenerator}, which contains the plain secret key of
+ * the user. The exported content must therefore be protected in the same way as the secret keys themselves.
+ */
+public class TOTPEnrolmentExporter {
+
+    public static final String USERNAME = "username";
+    public static final String QR_CODE_URL = "qrCodeUrl";
+
+    private static final Log log = LogFactory.getLog(TOTPEnrolmentExporter.class);
+
+    private final int pageSize;
+
+    /**
+     * Create an exporter with the page size of the authenticator configuration.
+     */
+    public TOTPEnrolmentExporter() {
+
+        this(TOTPUtil.getProvisioningPageSize());
+    }
+
+    /**
+     * Create an exporter.
+     *
+     * @param pageSize Number of users listed from the user store at a time.
+     */
+    public TOTPEnrolmentExporter(int pageSize) {
+
+        this.pageSize = pageSize > 0 ? pageSize : TOTPAuthenticatorConstants.DEFAULT_PROVISIONING_PAGE_SIZE;
+    }
+
+    /**
+     * Export the enrolments of the users of a tenant to a file encoded in UTF-8.
+     *
+     * @param tenantDomain Tenant domain of the users.
+     * @param file         File to write the records to.
+     * @param format       Format of the records.
+     * @return Number of exported users.
+     * @throws TOTPException If the users could not be listed or the file could not be written.
+     */
+    public long export(String tenantDomain, Path file, TOTPProvisioningFormat format) throws TOTPException {
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return export(tenantDomain, writer, format);
+        } catch (IOException e) {
+            throw new TOTPException("Failed to write the TOTP enrolments to file: " + file, e);
+        }
+    }
+
+    /**
+     * Export the enrolments of the users of a tenant. The writer is flushed but not closed.
+     *
+     * @param tenantDomain Tenant domain of the users.
+     * @param writer       Writer of the records.
+     * @param format       Format of the records.
+     * @return Number of exported users.
+     * @throws TOTPException If the users could not be listed or the records could not be written.
+     */
+    public long export(String tenantDomain, Writer writer, TOTPProvisioningFormat format) throws TOTPException {
+
+        UserStoreManager userStoreManager = TOTPEnrolledUserIterator.getUserStoreManager(tenantDomain);
+        TOTPEnrolledUserIterator enrolledUsers = new TOTPEnrolledUserIterator(userStoreManager, 1, pageSize);
+        String issuer = TOTPUtil.getTOTPIssuerDisplayName(tenantDomain, null);
+        long timeStep;
+        try {
+            timeStep = TOTPUtil.getTimeStepSize(tenantDomain);
+        } catch (AuthenticationFailedException e) {
+            throw new TOTPException("Cannot find the time step size of tenant domain: " + tenantDomain, e);
+        }
+        TOTPRecordWriter recordWriter = new TOTPRecordWriter(writer, format, USERNAME, QR_CODE_URL);
+        long exported = 0;
+        try {
+            while (enrolledUsers.hasNext()) {
+                exported += writeUsers(enrolledUsers.next(), userStoreManager, recordWriter, tenantDomain, issuer,
+                        timeStep);
+            }
+            recordWriter.flush();
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to list the TOTP enrolled users of tenant domain: " + tenantDomain, e);
+        } catch (IOException e) {
+            throw new TOTPException("Failed to write the TOTP enrolments of tenant domain: " + tenantDomain, e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Exported the TOTP enrolments of " + exported + " users of tenant domain: " + tenantDomain);
+        }
+        return exported;
+    }
+
+    private static int writeUsers(String[] users, UserStoreManager userStoreManager, TOTPRecordWriter recordWriter,
+                                  String tenantDomain, String issuer, long timeStep)
+            throws UserStoreException, IOException {
+
+        int written = 0;
+        for (String user : users) {
+            Map<String, String> claims = userStoreManager.getUserClaimValues(user,
+                    new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+            String encryptedSecretKey = claims == null ? null :
+                    claims.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL);
+            if (StringUtils.isBlank(encryptedSecretKey)) {
+                // A reset stores an empty secret key, which some user stores match with the wildcard.
+                continue;
+            }
+            String qrCodeURL;
+            try {
+                qrCodeURL = TOTPKeyGenerator.buildQRCodeURL(issuer, user, TOTPUtil.decrypt(encryptedSecretKey),
+                        timeStep);
+            } catch (CryptoException e) {
+                log.error("Failed to decrypt the TOTP secret key of user: " + user, e);
+                continue;
+            }
+            recordWriter.write(UserCoreUtil.addTenantDomainToEntry(user, tenantDomain), qrCodeURL);
+            written++;
+        }
+        return written;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+/**
+ * A user enrolled for TOTP, as listed by {@link TOTPEnrolmentReporter}.
+ */
+public class TOTPEnrolmentReportEntry {
+
+    private String username;
+    private int failedAttempts;
+    private int failedLoginLockoutCount;
+    private boolean accountLocked;
+
+    public TOTPEnrolmentReportEntry() {
+
+    }
+
+    /**
+     * Get the tenant qualified username of the user.
+     *
+     * @return Username.
+     */
+    public String getUsername() {
+
+        return username;
+    }
+
+    public void setUsername(String username) {
+
+        this.username = username;
+    }
+
+    /**
+     * Get the number of consecutive failed TOTP attempts of the user.
+     *
+     * @return Failed attempts, or 0 if the counters were not requested.
+     */
+    public int getFailedAttempts() {
+
+        return failedAttempts;
+    }
+
+    public void setFailedAttempts(int failedAttempts) {
+
+        this.failedAttempts = failedAttempts;
+    }
+
+    /**
+     * Get the number of times the account of the user was locked for failed attempts.
+     *
+     * @return Lockout count, or 0 if the counters were not requested.
+     */
+    public int getFailedLoginLockoutCount() {
+
+        return failedLoginLockoutCount;
+    }
+
+    public void setFailedLoginLockoutCount(int failedLoginLockoutCount) {
+
+        this.failedLoginLockoutCount = failedLoginLockoutCount;
+    }
+
+    /**
+     * Check whether the account of the user is locked.
+     *
+     * @return True if the account is locked. Always false if the counters were not requested.
+     */
+    public boolean isAccountLocked() {
+
+        return accountLocked;
+    }
+
+    public void setAccountLocked(boolean accountLocked) {
+
+        this.accountLocked = accountLocked;
+    }
+}
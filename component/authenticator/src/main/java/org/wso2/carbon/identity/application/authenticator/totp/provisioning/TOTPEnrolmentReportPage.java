@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+/**
+ * A page of the users enrolled for TOTP in a tenant.
+ */
+public class TOTPEnrolmentReportPage {
+
+    private TOTPEnrolmentReportEntry[] entries;
+    private int nextOffset;
+
+    public TOTPEnrolmentReportPage() {
+
+    }
+
+    public TOTPEnrolmentReportPage(TOTPEnrolmentReportEntry[] entries, int nextOffset) {
+
+        this.entries = entries;
+        this.nextOffset = nextOffset;
+    }
+
+    public TOTPEnrolmentReportEntry[] getEntries() {
+
+        return entries;
+    }
+
+    public void setEntries(TOTPEnrolmentReportEntry[] entries) {
+
+        this.entries = entries;
+    }
+
+    /**
+     * Get the offset to request the next page with.
+     *
+     * @return Offset of the next page, or -1 if this is the last page.
+     */
+    public int getNextOffset() {
+
+        return nextOffset;
+    }
+
+    public void setNextOffset(int nextOffset) {
+
+        this.nextOffset = nextOffset;
+    }
+}
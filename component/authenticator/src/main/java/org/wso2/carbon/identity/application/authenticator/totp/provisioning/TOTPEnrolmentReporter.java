@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the users of a tenant who are enrolled for TOTP, optionally with their failed attempt and lockout counters.
+ * <p>
+ * Only the users holding a TOTP secret key are listed from the user store, with {@link TOTPEnrolledUserIterator}, so
+ * the users who are not enrolled are never read. Users are listed a page at a time and each entry is written as soon
+ * as it is built, so the memory used does not depend on the number of users. The claims of each
+ * listed user are read once, to confirm the enrolment and to read the counters.
+ */
+public class TOTPEnrolmentReporter {
+
+    public static final String USERNAME = "username";
+    public static final String FAILED_ATTEMPTS = "failedAttempts";
+    public static final String FAILED_LOGIN_LOCKOUT_COUNT = "failedLoginLockoutCount";
+    public static final String ACCOUNT_LOCKED = "accountLocked";
+
+    private static final Log log = LogFactory.getLog(TOTPEnrolmentReporter.class);
+
+    private static final String[] ENROLMENT_CLAIMS = {TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL};
+    private static final String[] COUNTER_CLAIMS = {TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL,
+            TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM,
+            TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM,
+            TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM};
+
+    private final int pageSize;
+
+    /**
+     * Create a reporter with the page size of the authenticator configuration.
+     */
+    public TOTPEnrolmentReporter() {
+
+        this(TOTPUtil.getProvisioningPageSize());
+    }
+
+    /**
+     * Create a reporter.
+     *
+     * @param pageSize Maximum number of users listed from the user store at a time.
+     */
+    public TOTPEnrolmentReporter(int pageSize) {
+
+        this.pageSize = pageSize > 0 ? pageSize : TOTPAuthenticatorConstants.DEFAULT_PROVISIONING_PAGE_SIZE;
+    }
+
+    /**
+     * Get a page of the users of a tenant who are enrolled for TOTP.
+     * <p>
+     * The offset counts the users listed by the user store, so a page can hold fewer entries than the limit even if
+     * more pages follow. Iteration is complete when the next offset of a page is -1.
+     *
+     * @param tenantDomain    Tenant domain of the users.
+     * @param offset          Offset of the first user to list, starting from 1.
+     * @param limit           Maximum number of users to list. Limited to the configured page size.
+     * @param includeCounters Whether to read the failed attempt and lockout counters of the users.
+     * @return Page of enrolled users.
+     * @throws TOTPException If the users could not be listed.
+     */
+    public TOTPEnrolmentReportPage getPage(String tenantDomain, int offset, int limit, boolean includeCounters)
+            throws TOTPException {
+
+        UserStoreManager userStoreManager = TOTPEnrolledUserIterator.getUserStoreManager(tenantDomain);
+        int pageLimit = limit > 0 && limit < pageSize ? limit : pageSize;
+        TOTPEnrolledUserIterator enrolledUsers = new TOTPEnrolledUserIterator(userStoreManager, offset, pageLimit);
+        flushCounters(includeCounters);
+        try {
+            String[] users = enrolledUsers.next();
+            List<TOTPEnrolmentReportEntry> entries = new ArrayList<>(users.length);
+            for (String user : users) {
+                TOTPEnrolmentReportEntry entry = buildEntry(userStoreManager, user, tenantDomain, includeCounters);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return new TOTPEnrolmentReportPage(entries.toArray(new TOTPEnrolmentReportEntry[0]),
+                    enrolledUsers.getNextOffset());
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to list the TOTP enrolled users of tenant domain: " + tenantDomain, e);
+        }
+    }
+
+    /**
+     * Write the users of a tenant who are enrolled for TOTP to a file encoded in UTF-8.
+     *
+     * @param tenantDomain    Tenant domain of the users.
+     * @param file            File to write the entries to.
+     * @param format          Format of the entries.
+     * @param includeCounters Whether to include the failed attempt and lockout counters of the users.
+     * @return Number of reported users.
+     * @throws TOTPException If the users could not be listed or the file could not be written.
+     */
+    public long report(String tenantDomain, Path file, TOTPProvisioningFormat format, boolean includeCounters)
+            throws TOTPException {
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return report(tenantDomain, writer, format, includeCounters);
+        } catch (IOException e) {
+            throw new TOTPException("Failed to write the TOTP enrolment report to file: " + file, e);
+        }
+    }
+
+    /**
+     * Write the users of a tenant who are enrolled for TOTP. The writer is flushed after each page, so that the
+     * entries are delivered incrementally, but not closed.
+     *
+     * @param tenantDomain    Tenant domain of the users.
+     * @param writer          Writer of the entries.
+     * @param format          Format of the entries.
+     * @param includeCounters Whether to include the failed attempt and lockout counters of the users.
+     * @return Number of reported users.
+     * @throws TOTPException If the users could not be listed or the entries could not be written.
+     */
+    public long report(String tenantDomain, Writer writer, TOTPProvisioningFormat format, boolean includeCounters)
+            throws TOTPException {
+
+        UserStoreManager userStoreManager = TOTPEnrolledUserIterator.getUserStoreManager(tenantDomain);
+        TOTPEnrolledUserIterator enrolledUsers = new TOTPEnrolledUserIterator(userStoreManager, 1, pageSize);
+        flushCounters(includeCounters);
+        TOTPRecordWriter recordWriter = includeCounters ?
+                new TOTPRecordWriter(writer, format, USERNAME, FAILED_ATTEMPTS, FAILED_LOGIN_LOCKOUT_COUNT,
+                        ACCOUNT_LOCKED) :
+                new TOTPRecordWriter(writer, format, USERNAME);
+        long reported = 0;
+        try {
+            while (enrolledUsers.hasNext()) {
+                reported += writeUsers(enrolledUsers.next(), userStoreManager, recordWriter, tenantDomain,
+                        includeCounters);
+            }
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to list the TOTP enrolled users of tenant domain: " + tenantDomain, e);
+        } catch (IOException e) {
+            throw new TOTPException("Failed to write the TOTP enrolment report of tenant domain: " + tenantDomain,
+                    e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Reported " + reported + " TOTP enrolled users of tenant domain: " + tenantDomain);
+        }
+        return reported;
+    }
+
+    private static int writeUsers(String[] users, UserStoreManager userStoreManager, TOTPRecordWriter recordWriter,
+                                  String tenantDomain, boolean includeCounters)
+            throws UserStoreException, IOException {
+
+        int written = 0;
+        for (String user : users) {
+            TOTPEnrolmentReportEntry entry = buildEntry(userStoreManager, user, tenantDomain, includeCounters);
+            if (entry == null) {
+                continue;
+            }
+            if (includeCounters) {
+                recordWriter.write(entry.getUsername(), entry.getFailedAttempts(), entry.getFailedLoginLockoutCount(),
+                        entry.isAccountLocked());
+            } else {
+                recordWriter.write(entry.getUsername());
+            }
+            written++;
+        }
+        recordWriter.flush();
+        return written;
+    }
+
+    private static TOTPEnrolmentReportEntry buildEntry(UserStoreManager userStoreManager, String user,
+                                                       String tenantDomain, boolean includeCounters)
+            throws UserStoreException {
+
+        Map<String, String> claims = userStoreManager.getUserClaimValues(user,
+                includeCounters ? COUNTER_CLAIMS : ENROLMENT_CLAIMS, null);
+        if (claims == null || StringUtils.isBlank(claims.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL))) {
+            // A reset stores an empty secret key, which some user stores match with the wildcard.
+            return null;
+        }
+        TOTPEnrolmentReportEntry entry = new TOTPEnrolmentReportEntry();
+        entry.setUsername(UserCoreUtil.addTenantDomainToEntry(user, tenantDomain));
+        if (includeCounters) {
+            entry.setFailedAttempts(parseCount(claims.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM)));
+            entry.setFailedLoginLockoutCount(
+                    parseCount(claims.get(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM)));
+            entry.setAccountLocked(Boolean.parseBoolean(claims.get(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM)));
+        }
+        return entry;
+    }
+
+    private static int parseCount(String value) {
+
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void flushCounters(boolean includeCounters) {
+
+        TOTPFailedAttemptCounter failedAttemptCounter = TOTPDataHolder.getInstance().getFailedAttemptCounter();
+        if (includeCounters && failedAttemptCounter.isWriteBehindEnabled()) {
+            // Write the failed attempts held in memory, so that the report does not miss recent failures.
+            failedAttemptCounter.flush();
+        }
+    }}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a TOTP secret import. Only the first errors are kept, so that the memory held by the summary does not
+ * grow with the number of rejected records.
+ */
+public class TOTPImportSummary {
+
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private long importedCount;
+    private long failedCount;
+    private final List<String> errors = new ArrayList<>();
+
+    synchronized void recordImported(int count) {
+
+        importedCount += count;
+    }
+
+    synchronized void recordFailure(long lineNumber, String username, String reason) {
+
+        failedCount++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("Line " + lineNumber + (username == null ? "" : ", user " + username) + ": " + reason);
+        }
+    }
+
+    /**
+     * Get the number of records stored.
+     *
+     * @return Number of imported records.
+     */
+    public synchronized long getImportedCount() {
+
+        return importedCount;
+    }
+
+    /**
+     * Get the number of records rejected or failed to be stored.
+     *
+     * @return Number of failed records.
+     */
+    public synchronized long getFailedCount() {
+
+        return failedCount;
+    }
+
+    /**
+     * Get the errors of the first failed records.
+     *
+     * @return Error messages, each naming the line of the record.
+     */
+    public synchronized List<String> getErrors() {
+
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+}
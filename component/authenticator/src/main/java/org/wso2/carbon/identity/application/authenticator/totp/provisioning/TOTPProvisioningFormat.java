@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line based file formats of TOTP provisioning records. Each record is a single line, so that files of any size can
+ * be processed one record at a time.
+ */
+public enum TOTPProvisioningFormat {
+
+    /**
+     * Comma separated values, with a header line naming the columns. Each record is held on a single line. Values
+     * containing a comma or a quote are quoted, and quotes within a quoted value are doubled.
+     */
+    CSV {
+        @Override
+        boolean hasHeader() {
+
+            return true;
+        }
+
+        @Override
+        Map<String, String> parse(String line, String[] columns) {
+
+            List<String> values = parseValues(line);
+            if (values.size() != columns.length) {
+                throw new IllegalArgumentException("Expected " + columns.length + " values but found " +
+                        values.size() + ".");
+            }
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                record.put(columns[i], values.get(i));
+            }
+            return record;
+        }
+
+        @Override
+        String format(String[] columns, Object[] values) {
+
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                if (values[i] != null) {
+                    appendValue(line, String.valueOf(values[i]));
+                }
+            }
+            return line.toString();
+        }
+
+        private List<String> parseValues(String line) {
+
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append(c);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString().trim());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("Unterminated quoted value.");
+            }
+            values.add(value.toString().trim());
+            return values;
+        }
+
+        private void appendValue(StringBuilder line, String value) {
+
+            if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("CSV values cannot contain line breaks.");
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+                line.append(value);
+                return;
+            }
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    },
+
+    /**
+     * JSON lines, where each line is a JSON object with string, boolean or number values.
+     */
+    JSON_LINES {
+        @Override
+        boolean hasHeader() {
+
+            return false;
+        }
+
+        @Override
+        Map<String, String> parse(String line, String[] columns) {
+
+            return new JsonObjectParser(line).parse();
+        }
+
+        @Override
+        String format(String[] columns, Object[] values) {
+
+            StringBuilder line = new StringBuilder("{");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendString(line, columns[i]);
+                line.append(':');
+                if (values[i] == null || values[i] instanceof Boolean || values[i] instanceof Number) {
+                    line.append(values[i]);
+                } else {
+                    appendString(line, String.valueOf(values[i]));
+                }
+            }
+            return line.append('}').toString();
+        }
+
+        private void appendString(StringBuilder line, String value) {
+
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        line.append("\\\"");
+                        break;
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            line.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+    };
+
+    /**
+     * Check whether the first line of a file names the columns.
+     *
+     * @return True if the format has a header line.
+     */
+    abstract boolean hasHeader();
+
+    /**
+     * Parse a record.
+     *
+     * @param line    Line holding the record.
+     * @param columns Column names read from the header line, if the format has a header.
+     * @return Values of the record by column name.
+     * @throws IllegalArgumentException If the line is not a valid record.
+     */
+    abstract Map<String, String> parse(String line, String[] columns);
+
+    /**
+     * Format a record.
+     *
+     * @param columns Column names.
+     * @param values  Values of the record, in the order of the columns.
+     * @return Line holding the record.
+     */
+    abstract String format(String[] columns, Object[] values);
+
+    /**
+     * Parser of a JSON object holding string, boolean, number or null values. Values which are not strings are
+     * returned in their JSON representation.
+     */
+    private static class JsonObjectParser {
+
+        private final String json;
+        private int position;
+
+        JsonObjectParser(String json) {
+
+            this.json = json;
+        }
+
+        Map<String, String> parse() {
+
+            Map<String, String> record = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+                return record;
+            }
+            while (true) {
+                String name = parseString();
+                expect(':');
+                record.put(name, parseValue());
+                char c = next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' at position " + position + ".");
+                }
+            }
+            if (peek() != 0) {
+                throw new IllegalArgumentException("Unexpected content after the JSON object.");
+            }
+            return record;
+        }
+
+        private String parseValue() {
+
+            if (peek() == '"') {
+                return parseString();
+            }
+            int start = position;
+            while (position < json.length() && ",}".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            String value = json.substring(start, position).trim();
+            if (value.isEmpty() || value.startsWith("{") || value.startsWith("[")) {
+                throw new IllegalArgumentException("Unsupported value at position " + start + ".");
+            }
+            return "null".equals(value) ? null : value;
+        }
+
+        private String parseString() {
+
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalArgumentException("Invalid unicode escape at position " + position + ".");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid unicode escape at position " + position +
+                                    ".", e);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string.");
+        }
+
+        private void expect(char expected) {
+
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at position " + position + ".");
+            }
+        }
+
+        private char next() {
+
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private char peek() {
+
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+            return position < json.length() ? json.charAt(position) : 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * Reads TOTP provisioning records one line at a time, so that only the current record is held in memory.
+ */
+public class TOTPRecordReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final TOTPProvisioningFormat format;
+    private String[] columns;
+    private long lineNumber;
+
+    /**
+     * Create a record reader.
+     *
+     * @param reader Reader of the records.
+     * @param format Format of the records.
+     */
+    public TOTPRecordReader(Reader reader, TOTPProvisioningFormat format) {
+
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.format = format;
+    }
+
+    /**
+     * Read the next record. Blank lines are skipped.
+     *
+     * @return Values of the record by column name, or null at the end of the records.
+     * @throws IOException              If the records could not be read.
+     * @throws IllegalArgumentException If the line is not a valid record. The following records can still be read.
+     */
+    public Map<String, String> next() throws IOException {
+
+        String line = nextLine();
+        if (line != null && format.hasHeader() && columns == null) {
+            columns = line.trim().split("\\s*,\\s*");
+            line = nextLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        return format.parse(line, columns);
+    }
+
+    /**
+     * Get the number of the line of the last record read.
+     *
+     * @return Line number, starting from 1.
+     */
+    public long getLineNumber() {
+
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        reader.close();
+    }
+
+    private String nextLine() throws IOException {
+
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+        } while (line != null && line.trim().isEmpty());
+        return line;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes TOTP provisioning records one line at a time.
+ */
+public class TOTPRecordWriter implements Closeable, Flushable {
+
+    private final BufferedWriter writer;
+    private final TOTPProvisioningFormat format;
+    private final String[] columns;
+    private boolean headerWritten;
+
+    /**
+     * Create a record writer.
+     *
+     * @param writer  Writer of the records.
+     * @param format  Format of the records.
+     * @param columns Column names of the records.
+     */
+    public TOTPRecordWriter(Writer writer, TOTPProvisioningFormat format, String... columns) {
+
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+        this.format = format;
+        this.columns = columns;
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param values Values of the record, in the order of the columns.
+     * @throws IOException If the record could not be written.
+     */
+    public void write(Object... values) throws IOException {
+
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values but found " + values.length +
+                    ".");
+        }
+        if (format.hasHeader() && !headerWritten) {
+            writer.write(format.format(columns, columns));
+            writer.newLine();
+            headerWritten = true;
+        }
+        writer.write(format.format(columns, values));
+        writer.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        writer.close();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Imports TOTP secret keys issued by another system, such as when migrating users from another MFA provider.
+ * <p>
+ * Each record holds the username, the plain secret key and optionally the encoding of the secret key, which defaults
+ * to the encoding configured for the tenant of the user. Records are read, validated and encrypted on the calling
+ * thread, and the claims of each batch of records are written by a separate thread while the next batch is being
+ * prepared. At most a few batches are held in memory at a time, so files of any size can be imported.
+ */
+public class TOTPSecretImporter {
+
+    public static final String USERNAME = "username";
+    public static final String SECRET = "secret";
+    public static final String ENCODING = "encoding";
+
+    private static final Log log = LogFactory.getLog(TOTPSecretImporter.class);
+
+    private static final int PIPELINE_DEPTH = 2;
+    // Interval at which a reader waiting for space in the pipeline checks whether the writer is still running.
+    private static final long ENQUEUE_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final List<PendingClaims> END_OF_RECORDS = Collections.emptyList();
+
+    private final int batchSize;
+
+    /**
+     * Create an importer with the batch size of the authenticator configuration.
+     */
+    public TOTPSecretImporter() {
+
+        this(TOTPUtil.getProvisioningBatchSize());
+    }
+
+    /**
+     * Create an importer.
+     *
+     * @param batchSize Number of records of which the claims are written together.
+     */
+    public TOTPSecretImporter(int batchSize) {
+
+        this.batchSize = batchSize > 0 ? batchSize : TOTPAuthenticatorConstants.DEFAULT_PROVISIONING_BATCH_SIZE;
+    }
+
+    /**
+     * Import the secret keys of a file encoded in UTF-8.
+     *
+     * @param file   File holding the records.
+     * @param format Format of the records.
+     * @return Summary of the import.
+     * @throws TOTPException If the file could not be read.
+     */
+    public TOTPImportSummary importSecrets(Path file, TOTPProvisioningFormat format) throws TOTPException {
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importSecrets(reader, format);
+        } catch (IOException e) {
+            throw new TOTPException("Failed to read the TOTP secrets from file: " + file, e);
+        }
+    }
+
+    /**
+     * Import the secret keys of the given records. Invalid records are reported in the summary and do not stop the
+     * import.
+     *
+     * @param reader Reader of the records.
+     * @param format Format of the records.
+     * @return Summary of the import.
+     * @throws TOTPException If the records could not be read.
+     */
+    public TOTPImportSummary importSecrets(Reader reader, TOTPProvisioningFormat format) throws TOTPException {
+
+        TOTPImportSummary summary = new TOTPImportSummary();
+        Map<TOTPKeyRepresentation, TOTPAuthenticatorCredentials> verifiers = new EnumMap<>(TOTPKeyRepresentation.class);
+        for (TOTPKeyRepresentation representation : TOTPKeyRepresentation.values()) {
+            verifiers.put(representation, new TOTPAuthenticatorCredentials(
+                    new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
+                            .setKeyRepresentation(representation).build()));
+        }
+        BlockingQueue<List<PendingClaims>> batches = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        // Claims are written to the user stores of the tenant of the caller, hence the writer runs in its context.
+        Supplier<Void> writeTask = TOTPLookupExecutor.inCarbonContext(() -> {
+            writeBatches(batches, summary);
+            return null;
+        });
+        Thread writer = new Thread(writeTask::get, "TOTP-SecretImporter");
+        writer.setDaemon(true);
+        writer.start();
+
+        TOTPRecordReader recordReader = new TOTPRecordReader(reader, format);
+        List<PendingClaims> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                Map<String, String> record;
+                try {
+                    record = recordReader.next();
+                } catch (IllegalArgumentException e) {
+                    summary.recordFailure(recordReader.getLineNumber(), null, e.getMessage());
+                    continue;
+                }
+                if (record == null) {
+                    break;
+                }
+                PendingClaims claims = prepareClaims(recordReader.getLineNumber(), record, verifiers, summary);
+                if (claims == null) {
+                    continue;
+                }
+                batch.add(claims);
+                if (batch.size() >= batchSize) {
+                    enqueue(batches, batch, writer);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                enqueue(batches, batch, writer);
+            }
+        } catch (IOException e) {
+            throw new TOTPException("Failed to read the TOTP secrets.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TOTPException("Interrupted while importing the TOTP secrets.", e);
+        } finally {
+            awaitWriter(batches, writer);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Imported " + summary.getImportedCount() + " TOTP secrets. Failed records: " +
+                    summary.getFailedCount());
+        }
+        return summary;
+    }
+
+    private PendingClaims prepareClaims(long lineNumber, Map<String, String> record,
+                                        Map<TOTPKeyRepresentation, TOTPAuthenticatorCredentials> verifiers,
+                                        TOTPImportSummary summary) {
+
+        String username = StringUtils.trim(record.get(USERNAME));
+        if (StringUtils.isBlank(username)) {
+            summary.recordFailure(lineNumber, null, "Username is empty.");
+            return null;
+        }
+        String encoding = StringUtils.trim(record.get(ENCODING));
+        try {
+            if (StringUtils.isBlank(encoding)) {
+                encoding = TOTPUtil.getEncodingMethod(MultitenantUtils.getTenantDomain(username));
+            } else if (TOTPAuthenticatorConstants.BASE32.equalsIgnoreCase(encoding)) {
+                encoding = TOTPAuthenticatorConstants.BASE32;
+            } else if (TOTPAuthenticatorConstants.BASE64.equalsIgnoreCase(encoding)) {
+                encoding = TOTPAuthenticatorConstants.BASE64;
+            } else {
+                summary.recordFailure(lineNumber, username, "Unsupported encoding: " + encoding);
+                return null;
+            }
+            TOTPKeyRepresentation representation = TOTPAuthenticatorConstants.BASE64.equals(encoding) ?
+                    TOTPKeyRepresentation.BASE64 : TOTPKeyRepresentation.BASE32;
+            String secretKey = normalizeSecretKey(record.get(SECRET), representation);
+            if (!verifiers.get(representation).isValidSecretKey(secretKey)) {
+                summary.recordFailure(lineNumber, username, "Secret key is not a valid " + encoding +
+                        " encoded key of at least 80 bits.");
+                return null;
+            }
+            Map<String, String> claims = new HashMap<>();
+            claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, TOTPUtil.encrypt(secretKey));
+            claims.put(TOTPAuthenticatorConstants.ENCODING_CLAIM_URL, encoding);
+            return new PendingClaims(lineNumber, username, claims);
+        } catch (AuthenticationFailedException e) {
+            summary.recordFailure(lineNumber, username, "Cannot find the encoding method of the tenant.");
+        } catch (CryptoException e) {
+            summary.recordFailure(lineNumber, username, "Failed to encrypt the secret key.");
+        }
+        return null;
+    }
+
+    private static String normalizeSecretKey(String secretKey, TOTPKeyRepresentation representation) {
+
+        if (secretKey == null) {
+            return null;
+        }
+        if (representation == TOTPKeyRepresentation.BASE32) {
+            // Base32 keys are commonly displayed in lower case and in groups separated by spaces or dashes.
+            return secretKey.replaceAll("[\\s-]", "").toUpperCase(Locale.ENGLISH);
+        }
+        return secretKey.trim();
+    }
+
+    private static void writeBatches(BlockingQueue<List<PendingClaims>> batches, TOTPImportSummary summary) {
+
+        while (true) {
+            List<PendingClaims> batch;
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == END_OF_RECORDS) {
+                return;
+            }
+            int imported = 0;
+            for (PendingClaims claims : batch) {
+                try {
+                    TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(claims.claims, claims.username);
+                    imported++;
+                } catch (TOTPException | RuntimeException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to store the imported TOTP secret of user: " + claims.username, e);
+                    }
+                    summary.recordFailure(claims.lineNumber, claims.username, e.getMessage());
+                }
+            }
+            summary.recordImported(imported);
+        }
+    }
+
+    /**
+     * Hand a batch over to the writer, waiting while the pipeline is full. The writer is checked periodically so that
+     * the import fails instead of waiting forever if the writer terminated unexpectedly.
+     *
+     * @param batches Batches waiting to be written.
+     * @param batch   Batch to write.
+     * @param writer  Thread writing the batches.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     * @throws TOTPException        If the writer is no longer running.
+     */
+    private static void enqueue(BlockingQueue<List<PendingClaims>> batches, List<PendingClaims> batch, Thread writer)
+            throws InterruptedException, TOTPException {
+
+        while (!batches.offer(batch, ENQUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                throw new TOTPException("Failed to import the TOTP secrets since the writer of the claims stopped.");
+            }
+        }
+    }
+
+    private static void awaitWriter(BlockingQueue<List<PendingClaims>> batches, Thread writer) {
+
+        try {
+            while (!batches.offer(END_OF_RECORDS, ENQUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (!writer.isAlive()) {
+                    return;
+                }
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Validated and encrypted claims of a record, waiting to be written.
+     */
+    private static class PendingClaims {
+
+        private final long lineNumber;
+        private final String username;
+        private final Map<String, String> claims;
+
+        PendingClaims(long lineNumber, String username, Map<String, String> claims) {
+
+            this.lineNumber = lineNumber;
+            this.username = username;
+            this.claims = claims;
+        }
+    }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.qrcode;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * QR code symbol of a byte string, as specified by ISO/IEC 18004.
+ * <p>
+ * Only what is needed for TOTP key URIs is supported: the data is encoded in byte mode with the medium (M) error
+ * correction level, in the smallest version which can hold it. The mask with the lowest penalty is applied.
+ */
+public final class TOTPQRCode {
+
+    private static final int MIN_VERSION = 1;
+    private static final int MAX_VERSION = 40;
+    // Format information bits of the medium error correction level.
+    private static final int ERROR_CORRECTION_LEVEL_BITS = 0;
+    private static final int BYTE_MODE_INDICATOR = 0x4;
+    private static final int PENALTY_N1 = 3;
+    private static final int PENALTY_N2 = 3;
+    private static final int PENALTY_N3 = 40;
+    private static final int PENALTY_N4 = 10;
+
+    // Error correction codewords per block and number of blocks of each version, for the medium level.
+    private static final int[] ECC_CODEWORDS_PER_BLOCK = {-1,
+            10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26,
+            26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28};
+    private static final int[] NUM_ERROR_CORRECTION_BLOCKS = {-1,
+            1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16,
+            17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49};
+
+    private final int version;
+    private final int size;
+    private final boolean[][] modules;
+    private final boolean[][] functionModules;
+
+    private TOTPQRCode(int version) {
+
+        this.version = version;
+        this.size = version * 4 + 17;
+        this.modules = new boolean[size][size];
+        this.functionModules = new boolean[size][size];
+    }
+
+    /**
+     * Encode the data in a QR code.
+     *
+     * @param data Data to encode.
+     * @return QR code of the data.
+     * @throws IllegalArgumentException If the data does not fit in the largest QR code.
+     */
+    public static TOTPQRCode encode(byte[] data) {
+
+        return encode(data, -1);
+    }
+
+    /**
+     * Encode the data in a QR code with the given mask.
+     *
+     * @param data Data to encode.
+     * @param mask Mask to apply, from 0 to 7, or -1 to apply the mask with the lowest penalty.
+     * @return QR code of the data.
+     */
+    static TOTPQRCode encode(byte[] data, int mask) {
+
+        int version = MIN_VERSION;
+        while (getNumDataCodewords(version) * 8 < getDataLength(version, data.length)) {
+            if (version == MAX_VERSION) {
+                throw new IllegalArgumentException("Data of " + data.length + " bytes is too long for a QR code.");
+            }
+            version++;
+        }
+        TOTPQRCode qrCode = new TOTPQRCode(version);
+        qrCode.drawFunctionPatterns();
+        qrCode.drawCodewords(qrCode.addErrorCorrection(qrCode.encodeData(data)));
+        if (mask < 0) {
+            int minPenalty = Integer.MAX_VALUE;
+            for (int i = 0; i < 8; i++) {
+                qrCode.applyMask(i);
+                qrCode.drawFormatBits(i);
+                int penalty = qrCode.getPenaltyScore();
+                if (penalty < minPenalty) {
+                    mask = i;
+                    minPenalty = penalty;
+                }
+                // Masks are reverted by applying them again.
+                qrCode.applyMask(i);
+            }
+        }
+        qrCode.applyMask(mask);
+        qrCode.drawFormatBits(mask);
+        return qrCode;
+    }
+
+    /**
+     * Get the version of the QR code, which determines its size.
+     *
+     * @return Version from 1 to 40.
+     */
+    public int getVersion() {
+
+        return version;
+    }
+
+    /**
+     * Get the number of modules on each side of the QR code, excluding the quiet zone.
+     *
+     * @return Size in modules.
+     */
+    public int getSize() {
+
+        return size;
+    }
+
+    /**
+     * Check whether a module of the QR code is dark.
+     *
+     * @param x Column of the module, from the left.
+     * @param y Row of the module, from the top.
+     * @return True if the module is dark. Modules outside the QR code are light.
+     */
+    public boolean isDark(int x, int y) {
+
+        return x >= 0 && x < size && y >= 0 && y < size && modules[y][x];
+    }
+
+    private static int getDataLength(int version, int dataLength) {
+
+        return 4 + getCharacterCountBits(version) + dataLength * 8;
+    }
+
+    private static int getCharacterCountBits(int version) {
+
+        return version < 10 ? 8 : 16;
+    }
+
+    private static int getNumRawDataModules(int version) {
+
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            int numAlign = version / 7 + 2;
+            result -= (25 * numAlign - 10) * numAlign - 55;
+            if (version >= 7) {
+                result -= 36;
+            }
+        }
+        return result;
+    }
+
+    private static int getNumDataCodewords(int version) {
+
+        return getNumRawDataModules(version) / 8 -
+                ECC_CODEWORDS_PER_BLOCK[version] * NUM_ERROR_CORRECTION_BLOCKS[version];
+    }
+
+    private byte[] encodeData(byte[] data) {
+
+        int capacity = getNumDataCodewords(version) * 8;
+        BitBuffer bits = new BitBuffer();
+        bits.append(BYTE_MODE_INDICATOR, 4);
+        bits.append(data.length, getCharacterCountBits(version));
+        for (byte b : data) {
+            bits.append(b & 0xFF, 8);
+        }
+        bits.append(0, Math.min(4, capacity - bits.length));
+        bits.append(0, (8 - bits.length % 8) % 8);
+        for (int pad = 0xEC; bits.length < capacity; pad ^= 0xEC ^ 0x11) {
+            bits.append(pad, 8);
+        }
+        return bits.toByteArray();
+    }
+
+    private byte[] addErrorCorrection(byte[] data) {
+
+        int numBlocks = NUM_ERROR_CORRECTION_BLOCKS[version];
+        int blockEccLength = ECC_CODEWORDS_PER_BLOCK[version];
+        int rawCodewords = getNumRawDataModules(version) / 8;
+        int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+        int shortBlockLength = rawCodewords / numBlocks;
+
+        byte[][] blocks = new byte[numBlocks][];
+        byte[] divisor = computeDivisor(blockEccLength);
+        for (int i = 0, offset = 0; i < numBlocks; i++) {
+            int dataLength = shortBlockLength - blockEccLength + (i < numShortBlocks ? 0 : 1);
+            byte[] blockData = Arrays.copyOfRange(data, offset, offset + dataLength);
+            offset += dataLength;
+            byte[] block = Arrays.copyOf(blockData, shortBlockLength + 1);
+            byte[] ecc = computeRemainder(blockData, divisor);
+            System.arraycopy(ecc, 0, block, block.length - blockEccLength, ecc.length);
+            blocks[i] = block;
+        }
+
+        // Interleave the codewords of the blocks, skipping the padding of the short blocks.
+        byte[] result = new byte[rawCodewords];
+        for (int i = 0, k = 0; i < shortBlockLength + 1; i++) {
+            for (int j = 0; j < numBlocks; j++) {
+                if (i != shortBlockLength - blockEccLength || j >= numShortBlocks) {
+                    result[k++] = blocks[j][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] computeDivisor(int degree) {
+
+        byte[] result = new byte[degree];
+        result[degree - 1] = 1;
+        int root = 1;
+        for (int i = 0; i < degree; i++) {
+            for (int j = 0; j < result.length; j++) {
+                result[j] = (byte) multiply(result[j] & 0xFF, root);
+                if (j + 1 < result.length) {
+                    result[j] ^= result[j + 1];
+                }
+            }
+            root = multiply(root, 0x02);
+        }
+        return result;
+    }
+
+    private static byte[] computeRemainder(byte[] data, byte[] divisor) {
+
+        byte[] result = new byte[divisor.length];
+        for (byte b : data) {
+            int factor = (b ^ result[0]) & 0xFF;
+            System.arraycopy(result, 1, result, 0, result.length - 1);
+            result[result.length - 1] = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] ^= multiply(divisor[i] & 0xFF, factor);
+            }
+        }
+        return result;
+    }
+
+    // Multiplication in GF(2^8) modulo x^8 + x^4 + x^3 + x^2 + 1.
+    private static int multiply(int x, int y) {
+
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+
+    private void drawFunctionPatterns() {
+
+        for (int i = 0; i < size; i++) {
+            setFunctionModule(6, i, i % 2 == 0);
+            setFunctionModule(i, 6, i % 2 == 0);
+        }
+        drawFinderPattern(3, 3);
+        drawFinderPattern(size - 4, 3);
+        drawFinderPattern(3, size - 4);
+
+        int[] alignPositions = getAlignmentPatternPositions();
+        int numAlign = alignPositions.length;
+        for (int i = 0; i < numAlign; i++) {
+            for (int j = 0; j < numAlign; j++) {
+                // The corners overlapping the finder patterns have no alignment pattern.
+                if (!(i == 0 && j == 0 || i == 0 && j == numAlign - 1 || i == numAlign - 1 && j == 0)) {
+                    drawAlignmentPattern(alignPositions[i], alignPositions[j]);
+                }
+            }
+        }
+        // Reserve the format information area, which is drawn once the mask is chosen.
+        drawFormatBits(0);
+        drawVersion();
+    }
+
+    private int[] getAlignmentPatternPositions() {
+
+        if (version == 1) {
+            return new int[0];
+        }
+        int numAlign = version / 7 + 2;
+        int step = (version * 8 + numAlign * 3 + 5) / (numAlign * 4 - 4) * 2;
+        int[] result = new int[numAlign];
+        result[0] = 6;
+        for (int i = numAlign - 1, position = size - 7; i >= 1; i--, position -= step) {
+            result[i] = position;
+        }
+        return result;
+    }
+
+    private void drawFinderPattern(int x, int y) {
+
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                int distance = Math.max(Math.abs(dx), Math.abs(dy));
+                int xx = x + dx;
+                int yy = y + dy;
+                if (xx >= 0 && xx < size && yy >= 0 && yy < size) {
+                    setFunctionModule(xx, yy, distance != 2 && distance != 4);
+                }
+            }
+        }
+    }
+
+    private void drawAlignmentPattern(int x, int y) {
+
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                setFunctionModule(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+            }
+        }
+    }
+
+    private void drawFormatBits(int mask) {
+
+        int data = ERROR_CORRECTION_LEVEL_BITS << 3 | mask;
+        int remainder = data;
+        for (int i = 0; i < 10; i++) {
+            remainder = (remainder << 1) ^ ((remainder >>> 9) * 0x537);
+        }
+        int bits = (data << 10 | remainder) ^ 0x5412;
+
+        for (int i = 0; i <= 5; i++) {
+            setFunctionModule(8, i, getBit(bits, i));
+        }
+        setFunctionModule(8, 7, getBit(bits, 6));
+        setFunctionModule(8, 8, getBit(bits, 7));
+        setFunctionModule(7, 8, getBit(bits, 8));
+        for (int i = 9; i < 15; i++) {
+            setFunctionModule(14 - i, 8, getBit(bits, i));
+        }
+        for (int i = 0; i < 8; i++) {
+            setFunctionModule(size - 1 - i, 8, getBit(bits, i));
+        }
+        for (int i = 8; i < 15; i++) {
+            setFunctionModule(8, size - 15 + i, getBit(bits, i));
+        }
+        setFunctionModule(8, size - 8, true);
+    }
+
+    private void drawVersion() {
+
+        if (version < 7) {
+            return;
+        }
+        int remainder = version;
+        for (int i = 0; i < 12; i++) {
+            remainder = (remainder << 1) ^ ((remainder >>> 11) * 0x1F25);
+        }
+        int bits = version << 12 | remainder;
+        for (int i = 0; i < 18; i++) {
+            boolean bit = getBit(bits, i);
+            int a = size - 11 + i % 3;
+            int b = i / 3;
+            setFunctionModule(a, b, bit);
+            setFunctionModule(b, a, bit);
+        }
+    }
+
+    private void drawCodewords(byte[] codewords) {
+
+        int i = 0;
+        // Codewords are placed in two module wide columns, zigzagging from the bottom right corner.
+        for (int right = size - 1; right >= 1; right -= 2) {
+            if (right == 6) {
+                // Skip the vertical timing pattern.
+                right = 5;
+            }
+            boolean upward = ((right + 1) & 2) == 0;
+            for (int vertical = 0; vertical < size; vertical++) {
+                int y = upward ? size - 1 - vertical : vertical;
+                for (int j = 0; j < 2; j++) {
+                    int x = right - j;
+                    if (!functionModules[y][x] && i < codewords.length * 8) {
+                        modules[y][x] = getBit(codewords[i >>> 3], 7 - (i & 7));
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void applyMask(int mask) {
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean invert;
+                switch (mask) {
+                    case 0:
+                        invert = (x + y) % 2 == 0;
+                        break;
+                    case 1:
+                        invert = y % 2 == 0;
+                        break;
+                    case 2:
+                        invert = x % 3 == 0;
+                        break;
+                    case 3:
+                        invert = (x + y) % 3 == 0;
+                        break;
+                    case 4:
+                        invert = (x / 3 + y / 2) % 2 == 0;
+                        break;
+                    case 5:
+                        invert = x * y % 2 + x * y % 3 == 0;
+                        break;
+                    case 6:
+                        invert = (x * y % 2 + x * y % 3) % 2 == 0;
+                        break;
+                    case 7:
+                        invert = ((x + y) % 2 + x * y % 3) % 2 == 0;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid QR code mask: " + mask);
+                }
+                modules[y][x] ^= invert && !functionModules[y][x];
+            }
+        }
+    }
+
+    private int getPenaltyScore() {
+
+        int result = 0;
+        int dark = 0;
+        for (int i = 0; i < size; i++) {
+            result += getLinePenalty(i, true) + getLinePenalty(i, false);
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (modules[y][x]) {
+                    dark++;
+                }
+                if (x + 1 < size && y + 1 < size && modules[y][x] == modules[y][x + 1] &&
+                        modules[y][x] == modules[y + 1][x] && modules[y][x] == modules[y + 1][x + 1]) {
+                    result += PENALTY_N2;
+                }
+            }
+        }
+        int total = size * size;
+        // Deviation of the proportion of dark modules from 50%, in steps of 5%.
+        int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+        return result + k * PENALTY_N4;
+    }
+
+    private int getLinePenalty(int line, boolean row) {
+
+        int result = 0;
+        int runLength = 0;
+        boolean runColor = false;
+        for (int i = 0; i < size; i++) {
+            boolean color = row ? modules[line][i] : modules[i][line];
+            if (i > 0 && color == runColor) {
+                runLength++;
+            } else {
+                result += getRunPenalty(runLength);
+                runColor = color;
+                runLength = 1;
+            }
+            // A 1:1:3:1:1 dark and light pattern preceded or followed by four light modules looks like a finder.
+            if (i >= 6 && isFinderLike(line, row, i - 6) &&
+                    (isLight(line, row, i - 10, i - 7) || isLight(line, row, i + 1, i + 4))) {
+                result += PENALTY_N3;
+            }
+        }
+        return result + getRunPenalty(runLength);
+    }
+
+    private static int getRunPenalty(int runLength) {
+
+        return runLength >= 5 ? PENALTY_N1 + runLength - 5 : 0;
+    }
+
+    private boolean isFinderLike(int line, boolean row, int start) {
+
+        for (int i = 0; i < 7; i++) {
+            boolean expected = i != 1 && i != 5;
+            if ((row ? isDark(start + i, line) : isDark(line, start + i)) != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isLight(int line, boolean row, int from, int to) {
+
+        for (int i = from; i <= to; i++) {
+            if (row ? isDark(i, line) : isDark(line, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setFunctionModule(int x, int y, boolean dark) {
+
+        modules[y][x] = dark;
+        functionModules[y][x] = true;
+    }
+
+    private static boolean getBit(int x, int i) {
+
+        return ((x >>> i) & 1) != 0;
+    }
+
+    private static final class BitBuffer {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int current;
+        private int length;
+
+        void append(int value, int bitCount) {
+
+            for (int i = bitCount - 1; i >= 0; i--) {
+                current = current << 1 | ((value >>> i) & 1);
+                length++;
+                if (length % 8 == 0) {
+                    bytes.write(current);
+                    current = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+
+            return bytes.toByteArray();
+        }
+    }
+}
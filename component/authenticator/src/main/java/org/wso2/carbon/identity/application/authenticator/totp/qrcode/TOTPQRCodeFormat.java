@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.qrcode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Image formats QR codes are rendered in. A quiet zone of four light modules surrounds the symbol, as required by
+ * the QR code specification.
+ */
+public enum TOTPQRCodeFormat {
+
+    /**
+     * Black and white PNG image, with each module drawn as a square of {@link #MODULE_PIXELS} pixels.
+     */
+    PNG("image/png") {
+        @Override
+        byte[] render(TOTPQRCode qrCode) {
+
+            int dimension = (qrCode.getSize() + QUIET_ZONE * 2) * MODULE_PIXELS;
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(png)) {
+                out.write(PNG_SIGNATURE);
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                DataOutputStream headerOut = new DataOutputStream(header);
+                headerOut.writeInt(dimension);
+                headerOut.writeInt(dimension);
+                // Bit depth 1, grayscale, deflate compression, adaptive filtering, no interlace.
+                headerOut.write(new byte[]{1, 0, 0, 0, 0});
+                writeChunk(out, "IHDR", header.toByteArray());
+                writeChunk(out, "IDAT", compressRows(qrCode, dimension));
+                writeChunk(out, "IEND", new byte[0]);
+            } catch (IOException e) {
+                // Not thrown by in-memory streams.
+                throw new IllegalStateException("Error while rendering the QR code as PNG.", e);
+            }
+            return png.toByteArray();
+        }
+
+        private byte[] compressRows(TOTPQRCode qrCode, int dimension) throws IOException {
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+                byte[] row = new byte[1 + (dimension + 7) / 8];
+                for (int y = 0; y < dimension; y++) {
+                    if (y % MODULE_PIXELS == 0) {
+                        // Rows of pixels within a row of modules are identical. The first byte selects no filter.
+                        Arrays.fill(row, (byte) 0);
+                        for (int x = 0; x < dimension; x++) {
+                            boolean dark = qrCode.isDark(x / MODULE_PIXELS - QUIET_ZONE,
+                                    y / MODULE_PIXELS - QUIET_ZONE);
+                            if (!dark) {
+                                // A set bit is a white pixel.
+                                row[1 + x / 8] |= 0x80 >>> (x % 8);
+                            }
+                        }
+                    }
+                    out.write(row);
+                }
+            } finally {
+                deflater.end();
+            }
+            return compressed.toByteArray();
+        }
+
+        private void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+
+            byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(typeBytes);
+            crc.update(data);
+            out.writeInt(data.length);
+            out.write(typeBytes);
+            out.write(data);
+            out.writeInt((int) crc.getValue());
+        }
+    },
+
+    /**
+     * SVG image with one unit per module, which scales to any size without loss. Horizontal runs of dark modules are
+     * drawn as a single rectangle to keep the document small.
+     */
+    SVG("image/svg+xml") {
+        @Override
+        byte[] render(TOTPQRCode qrCode) {
+
+            int dimension = qrCode.getSize() + QUIET_ZONE * 2;
+            StringBuilder svg = new StringBuilder();
+            svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ").append(dimension).append(' ')
+                    .append(dimension).append("\" shape-rendering=\"crispEdges\">")
+                    .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path fill=\"#000\" d=\"");
+            for (int y = 0; y < qrCode.getSize(); y++) {
+                int x = 0;
+                while (x < qrCode.getSize()) {
+                    if (!qrCode.isDark(x, y)) {
+                        x++;
+                        continue;
+                    }
+                    int start = x;
+                    while (qrCode.isDark(x, y)) {
+                        x++;
+                    }
+                    svg.append('M').append(start + QUIET_ZONE).append(',').append(y + QUIET_ZONE)
+                            .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+                }
+            }
+            svg.append("\"/></svg>");
+            return svg.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Width of the light border around the symbol, in modules.
+     */
+    public static final int QUIET_ZONE = 4;
+    /**
+     * Width of a module in PNG images, in pixels.
+     */
+    public static final int MODULE_PIXELS = 8;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final String contentType;
+
+    TOTPQRCodeFormat(String contentType) {
+
+        this.contentType = contentType;
+    }
+
+    /**
+     * Get the media type of the rendered images.
+     *
+     * @return Media type.
+     */
+    public String getContentType() {
+
+        return contentType;
+    }
+
+    /**
+     * Render the QR code as an image.
+     *
+     * @param qrCode QR code to render.
+     * @return Encoded image.
+     */
+    abstract byte[] render(TOTPQRCode qrCode);
+}
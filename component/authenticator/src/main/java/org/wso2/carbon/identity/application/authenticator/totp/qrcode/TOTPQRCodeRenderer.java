@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.qrcode;
+
+import org.apache.commons.codec.binary.Hex;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPSingleFlightCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Renders TOTP key URIs as QR code images, so that enrolment pages can display the QR code without encoding it in
+ * the browser.
+ * <p>
+ * Rendered images are cached by the SHA-256 hash of the format and the key URI, so that the key URI is not held as a
+ * cache key and repeated requests for the same key, such as page reloads during enrolment, are served from memory.
+ * Concurrent requests for the same image are rendered once. The cache timeout is expected to be short, since the
+ * images encode the secret key of the user.
+ */
+public class TOTPQRCodeRenderer {
+
+    private final TOTPSingleFlightCache<String, byte[]> images = new TOTPSingleFlightCache<>("TOTP QR code image",
+            TOTPAuthenticatorConstants.DEFAULT_QR_CODE_CACHE_TIMEOUT);
+
+    /**
+     * Set the maximum period a rendered image is served from the cache.
+     *
+     * @param cacheTimeoutInSeconds Cache timeout in seconds. A non positive value disables the cache.
+     */
+    public void setCacheTimeout(long cacheTimeoutInSeconds) {
+
+        images.setCacheTimeout(cacheTimeoutInSeconds);
+    }
+
+    /**
+     * Render the key URI as a QR code image.
+     *
+     * @param keyURI Key URI of the form otpauth://totp/...
+     * @param format Image format.
+     * @return Encoded image. The returned array is shared and must not be modified.
+     * @throws IllegalArgumentException If the key URI does not fit in a QR code.
+     */
+    public byte[] render(String keyURI, TOTPQRCodeFormat format) {
+
+        byte[] data = keyURI.getBytes(StandardCharsets.UTF_8);
+        return images.get(hash(format, data), key -> format.render(TOTPQRCode.encode(data)));
+    }
+
+    /**
+     * Remove all the cached images.
+     */
+    public void invalidateAll() {
+
+        images.invalidateAll();
+    }
+
+    private static String hash(TOTPQRCodeFormat format, byte[] data) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(format.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return Hex.encodeHexString(digest.digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256.
+            throw new IllegalStateException("SHA-256 is not supported.", e);
+        }
+    }
+}
@@ -20,23 +20,36 @@ package org.wso2.carbon.identity.application.authenticator.totp.services;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPSecretKeyCache;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.provisioning.TOTPEnrolmentReportPage;
+import org.wso2.carbon.identity.application.authenticator.totp.provisioning.TOTPEnrolmentReporter;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAsyncExecutor;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorKey;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used to initiate, reset the TOTP and refresh the secret key.
@@ -47,6 +60,12 @@ public class TOTPAdminService {
 
     private static final Log log = LogFactory.getLog(TOTPAdminService.class);
 
+    /**
+     * Verifiers of each key representation. The verifiers are thread safe and only depend on the key representation,
+     * hence they are shared by all the validations.
+     */
+    private static final Map<TOTPKeyRepresentation, TOTPAuthenticatorCredentials> VERIFIERS = buildVerifiers();
+
     /**
      * Generate TOTP Token for a given user.
      *
@@ -62,7 +81,8 @@ public class TOTPAdminService {
     }
 
     /**
-     * Generate TOTP secret for a given user and will be saved in http://wso2.org/claims/identity/verifySecretkey claim.
+     * Generate TOTP secret for a given user, which is held in the state store until it is confirmed with
+     * {@link #enableTOTP(String, int)} or the pending enrolment timeout elapses.
      *
      * @param username Username of the user
      * @return Encoded QR Code URL.
@@ -70,37 +90,34 @@ public class TOTPAdminService {
      */
     public String generateSecret(String username) throws TOTPException {
 
-        Map<String, String> claims = TOTPKeyGenerator.generateClaims(username, false);
-
-        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        UserRealm userRealm;
         try {
-            UserRealm userRealm = TOTPUtil.getUserRealm(username);
-            if (userRealm != null) {
-                Map<String, String> claimsToPersist = new HashMap<>();
-                claimsToPersist.put(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL,
-                        claims.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL));
-                userRealm.getUserStoreManager().setUserClaimValues(tenantAwareUsername, claimsToPersist, null);
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug(
-                            "Couldn't retrieve the user realm successfully. User realm is null for user: " + username);
-                }
-                throw new TOTPException("Couldn't retrieve the user realm successfully.");
-            }
-        } catch (UserStoreException e) {
-            throw new TOTPException(
-                    "Failed to access user store manager to store secret key for the user: " + tenantAwareUsername, e);
+            userRealm = TOTPUtil.getUserRealm(username);
         } catch (AuthenticationFailedException e) {
-            throw new TOTPException("Error while retrieving the user realm for the user: " + tenantAwareUsername, e);
+            throw new TOTPException("Error while retrieving the user realm for the user: " + username, e);
+        }
+        if (userRealm == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Couldn't retrieve the user realm successfully. User realm is null for user: " + username);
+            }
+            throw new TOTPException("Couldn't retrieve the user realm successfully.");
+        }
+        Map<String, String> claims = TOTPKeyGenerator.generateClaims(username, false);
+        String encryptedSecretKey = claims.get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL);
+        if (StringUtils.isNotEmpty(encryptedSecretKey)) {
+            long expiryTime = System.currentTimeMillis() +
+                    TimeUnit.SECONDS.toMillis(TOTPUtil.getPendingEnrolmentTimeout());
+            TOTPDataHolder.getInstance().getStateStore().putPendingSecretKey(TOTPSecretKeyCache.buildKey(username),
+                    encryptedSecretKey, expiryTime);
         }
-
         return claims.get(TOTPAuthenticatorConstants.QR_CODE_CLAIM_URL);
     }
 
     /**
-     * Enable the TOTP for the given user. OTP will be validated against the secret saved in
-     * http://wso2.org/claims/identity/verifySecretkey claim and if successful, secret is moved to
-     * http://wso2.org/claims/identity/secretkey claim.
+     * Enable the TOTP for the given user. OTP will be validated against the secret pending confirmation, which was
+     * issued with {@link #generateSecret(String)}, and if successful, secret is saved in
+     * http://wso2.org/claims/identity/secretkey claim. A secret saved in the
+     * http://wso2.org/claims/identity/verifySecretkey claim by earlier versions is confirmed the same way.
      *
      * @param username         Username of the user
      * @param verificationCode verification code generated from the secret issued with {@link #generateSecret(String)}
@@ -110,31 +127,42 @@ public class TOTPAdminService {
     public boolean enableTOTP(String username, int verificationCode) throws TOTPException {
 
         String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        TOTPStateStore stateStore = TOTPDataHolder.getInstance().getStateStore();
         try {
             UserRealm userRealm = TOTPUtil.getUserRealm(username);
             if (userRealm != null) {
-                String encryptedSecretKey;
-
-                Map<String, String> userClaimValues = userRealm.getUserStoreManager().
-                        getUserClaimValues(tenantAwareUsername,
-                                new String[]{TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL}, null);
-                encryptedSecretKey = userClaimValues.get(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL);
+                String encryptedSecretKey = stateStore.getPendingSecretKey(TOTPSecretKeyCache.buildKey(username));
+                boolean pending = encryptedSecretKey != null;
+                if (!pending) {
+                    Map<String, String> userClaimValues = userRealm.getUserStoreManager().
+                            getUserClaimValues(tenantAwareUsername,
+                                    new String[]{TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL}, null);
+                    encryptedSecretKey = userClaimValues.get(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL);
+                }
 
                 if (StringUtils.isBlank(encryptedSecretKey)) {
                     throw new TOTPException("Secret key is not generated yet.");
                 }
 
-                boolean validationResult = validateTOTP(username, verificationCode,
+                TOTPVerificationResult validationResult = validateTOTP(username, verificationCode,
                         TOTPUtil.decrypt(encryptedSecretKey), null);
-                if (!validationResult) {
+                if (!validationResult.isValid()) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("TOTP enabling failed for user: " + username + ". " + validationResult.getReason());
+                    }
                     return false;
                 }
 
                 Map<String, String> claims = new HashMap<>();
                 claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, encryptedSecretKey);
-                claims.put(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL, "");
+                if (!pending) {
+                    claims.put(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL, "");
+                }
                 userRealm.getUserStoreManager().setUserClaimValues(tenantAwareUsername, claims, null);
-
+                TOTPDataHolder.getInstance().getSecretKeyCache().invalidate(username);
+                if (pending) {
+                    removePendingSecretKey(stateStore, username);
+                }
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug(
@@ -180,6 +208,75 @@ public class TOTPAdminService {
         return TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(claims, username, context);
     }
 
+    /**
+     * Issue a TOTP secret key to each of the given users who does not have one, as {@link #initTOTP}.
+     * Users who are not in the tenant of the caller are reported as failed.
+     *
+     * @param usernames Usernames of the users
+     * @return Result of each user with the encoded QR code URL of the secret key, in the order of the usernames
+     * @throws TOTPException when too many users are given
+     */
+    public TOTPBulkOperationResult[] initTOTPBulk(String[] usernames) throws TOTPException {
+
+        return buildBulkOperationProcessor().process(usernames, TOTPBulkOperationProcessor.Operation.INIT);
+    }
+
+    /**
+     * Issue a TOTP secret pending verification to each of the given users, as {@link #generateSecret}.
+     * Users who are not in the tenant of the caller are reported as failed.
+     *
+     * @param usernames Usernames of the users
+     * @return Result of each user with the encoded QR code URL of the secret key, in the order of the usernames
+     * @throws TOTPException when too many users are given
+     */
+    public TOTPBulkOperationResult[] generateSecretBulk(String[] usernames) throws TOTPException {
+
+        return buildBulkOperationProcessor().process(usernames, TOTPBulkOperationProcessor.Operation.GENERATE_SECRET);
+    }
+
+    /**
+     * Resets TOTP credentials of the given users, as {@link #resetTOTP}.
+     * Users who are not in the tenant of the caller are reported as failed.
+     *
+     * @param usernames Usernames of the users
+     * @return Result of each user, in the order of the usernames
+     * @throws TOTPException when too many users are given
+     */
+    public TOTPBulkOperationResult[] resetTOTPBulk(String[] usernames) throws TOTPException {
+
+        return buildBulkOperationProcessor().process(usernames, TOTPBulkOperationProcessor.Operation.RESET);
+    }
+
+    /**
+     * Refreshes TOTP secret key of the given users, as {@link #refreshSecretKey}.
+     * Users who are not in the tenant of the caller are reported as failed.
+     *
+     * @param usernames Usernames of the users
+     * @return Result of each user with the encoded QR code URL of the new secret key, in the order of the usernames
+     * @throws TOTPException when too many users are given
+     */
+    public TOTPBulkOperationResult[] refreshSecretKeyBulk(String[] usernames) throws TOTPException {
+
+        return buildBulkOperationProcessor().process(usernames, TOTPBulkOperationProcessor.Operation.REFRESH);
+    }
+
+    /**
+     * List a page of the users of the tenant of the caller who are enrolled for TOTP. As the bulk operations, this
+     * requires user management permission.
+     *
+     * @param offset          Offset of the first user to list, starting from 1
+     * @param limit           Maximum number of users to list, limited to the configured provisioning page size
+     * @param includeCounters Whether to include the failed attempt and lockout counters of the users
+     * @return Enrolled users, with the offset of the next page or -1 if there are no more users
+     * @throws TOTPException when the users could not be listed
+     */
+    public TOTPEnrolmentReportPage getEnrolmentReport(int offset, int limit, boolean includeCounters)
+            throws TOTPException {
+
+        String tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        return new TOTPEnrolmentReporter().getPage(tenantDomain, offset, limit, includeCounters);
+    }
+
     /**
      * Retrieve the secret key of a given user.
      *
@@ -232,7 +329,8 @@ public class TOTPAdminService {
     }
 
     /**
-     * Validates the user entered verification code.
+     * Validates the user entered verification code. The claims of the user are never changed, hence the code of a user
+     * who is not enrolled is rejected without issuing a secret key to the user.
      *
      * @param username         Username of the user.
      * @param context          Authentication context.
@@ -243,13 +341,106 @@ public class TOTPAdminService {
     public boolean validateTOTP(String username, AuthenticationContext context, int verificationCode) throws
             TOTPException {
 
-        String secretKey = retrieveSecretKey(username, context);
+        String encryptedSecretKey = TOTPDataHolder.getInstance().getSecretKeyCache().getEncryptedSecretKey(username);
+        if (StringUtils.isBlank(encryptedSecretKey)) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP is not enabled for the user: " + username);
+            }
+            return false;
+        }
+        String secretKey;
+        try {
+            secretKey = TOTPUtil.decrypt(encryptedSecretKey);
+        } catch (CryptoException e) {
+            throw new TOTPException("TOTPAdminService failed while decrypt the stored SecretKey ", e);
+        }
+        return validateTOTP(username, verificationCode, secretKey, context).isValid();
+    }
+
+    /**
+     * Validates many verification codes in a single call, such as the codes collected by an API gateway. Each code
+     * is subject to the rate limits, the account lock and the used code checks of the authenticator, and failed
+     * codes are counted as failed attempts of the user. A code of a user who is not enrolled is reported as such.
+     * Users who are not in the tenant of the caller, and any further code of a user, are reported as failed.
+     *
+     * @param requests Usernames and their verification codes
+     * @return Result of each verification code, in the order of the requests
+     * @throws TOTPException when too many verification codes are given
+     */
+    public TOTPValidationResult[] validateTOTPBatch(TOTPValidationRequest[] requests) throws TOTPException {
 
-        return validateTOTP(username, verificationCode, secretKey, context);
+        return new TOTPBatchValidator(TOTPUtil.getBulkOperationMaxSize(), TOTPUtil.getBulkOperationBatchSize(),
+                TOTPUtil.getBulkOperationWorkerCount()).validate(requests);
     }
 
-    private boolean validateTOTP(String username, int verificationCode, String secretKey, AuthenticationContext context)
-            throws TOTPException {
+    /**
+     * Generate TOTP Token for a given user without blocking the calling thread, as
+     * {@link #initTOTP(String, AuthenticationContext)}.
+     *
+     * @param username Username of the user
+     * @param context  Authentication context
+     * @return Pending encoded QR Code URL, which fails with the {@link TOTPException} of the operation
+     */
+    public CompletableFuture<String> initTOTPAsync(String username, AuthenticationContext context) {
+
+        return submit(() -> initTOTP(username, context));
+    }
+
+    /**
+     * Validates the user entered verification code without blocking the calling thread, as
+     * {@link #validateTOTP(String, AuthenticationContext, int)}.
+     *
+     * @param username         Username of the user
+     * @param context          Authentication context
+     * @param verificationCode OTP verification code
+     * @return Pending validity of the verification code, which fails with the {@link TOTPException} of the operation
+     */
+    public CompletableFuture<Boolean> validateTOTPAsync(String username, AuthenticationContext context,
+                                                        int verificationCode) {
+
+        return submit(() -> validateTOTP(username, context, verificationCode));
+    }
+
+    /**
+     * Refreshes TOTP secret key of the user without blocking the calling thread, as
+     * {@link #refreshSecretKey(String, AuthenticationContext)}.
+     *
+     * @param username Username of the user
+     * @param context  Authentication context
+     * @return Pending encoded QR Code URL for refreshed secret key, which fails with the {@link TOTPException} of the
+     * operation
+     */
+    public CompletableFuture<String> refreshSecretKeyAsync(String username, AuthenticationContext context) {
+
+        return submit(() -> refreshSecretKey(username, context));
+    }
+
+    /**
+     * Resets TOTP credentials of the user without blocking the calling thread, as {@link #resetTOTP(String)}.
+     *
+     * @param username Username of the user
+     * @return Pending result of the reset, which fails with the exception of the operation
+     */
+    public CompletableFuture<Boolean> resetTOTPAsync(String username) {
+
+        return submit(() -> resetTOTP(username));
+    }
+
+    /**
+     * Run an operation on the async executor. If the executor is not available, such as when the bundle is not
+     * activated, the operation is executed on the calling thread.
+     */
+    private static <T, E extends Exception> CompletableFuture<T> submit(TOTPLookupExecutor.Loader<T, E> operation) {
+
+        TOTPAsyncExecutor asyncExecutor = TOTPDataHolder.getInstance().getAsyncExecutor();
+        if (asyncExecutor == null) {
+            return TOTPAsyncExecutor.run(operation);
+        }
+        return asyncExecutor.submit(operation);
+    }
+
+    private TOTPVerificationResult validateTOTP(String username, int verificationCode, String secretKey,
+                                                AuthenticationContext context) throws TOTPException {
 
         TOTPKeyRepresentation encoding = TOTPKeyRepresentation.BASE32;
         String tenantDomain = MultitenantUtils.getTenantDomain(username);
@@ -263,17 +454,48 @@ public class TOTPAdminService {
             if (TOTPAuthenticatorConstants.BASE64.equals(encodingMethod)) {
                 encoding = TOTPKeyRepresentation.BASE64;
             }
-            TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder configBuilder =
-                    new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
-                            .setKeyRepresentation(encoding);
-            TOTPAuthenticatorCredentials totpAuthenticator =
-                    new TOTPAuthenticatorCredentials(configBuilder.build());
+            TOTPAuthenticatorCredentials totpAuthenticator = VERIFIERS.get(encoding);
+            if (!totpAuthenticator.isValidCodeRange(verificationCode)) {
+                return TOTPVerificationResult.failure(TOTPVerificationStatus.MALFORMED_TOKEN,
+                        "Verification code is out of range.");
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Validating TOTP verification code for the user: " + username);
             }
-            return totpAuthenticator.authorize(secretKey, verificationCode);
+            if (totpAuthenticator.authorize(secretKey, verificationCode)) {
+                return TOTPVerificationResult.VALID;
+            }
+            return TOTPVerificationResult.failure(TOTPVerificationStatus.INVALID_TOKEN,
+                    "Verification code does not match.");
         } catch (AuthenticationFailedException e) {
             throw new TOTPException("TOTPTokenVerifier cannot find the property value for encodingMethod.", e);
         }
     }
+
+    private static void removePendingSecretKey(TOTPStateStore stateStore, String username) {
+
+        try {
+            stateStore.removePendingSecretKey(TOTPSecretKeyCache.buildKey(username));
+        } catch (TOTPException e) {
+            // The secret key is saved already, and the pending one is removed once it expires.
+            log.error("Error while removing the confirmed TOTP secret key pending for user: " + username, e);
+        }
+    }
+
+    private static Map<TOTPKeyRepresentation, TOTPAuthenticatorCredentials> buildVerifiers() {
+
+        Map<TOTPKeyRepresentation, TOTPAuthenticatorCredentials> verifiers = new EnumMap<>(TOTPKeyRepresentation.class);
+        for (TOTPKeyRepresentation representation : TOTPKeyRepresentation.values()) {
+            verifiers.put(representation, new TOTPAuthenticatorCredentials(
+                    new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder().setKeyRepresentation(representation)
+                            .build()));
+        }
+        return verifiers;
+    }
+
+    private TOTPBulkOperationProcessor buildBulkOperationProcessor() {
+
+        return new TOTPBulkOperationProcessor(TOTPUtil.getBulkOperationMaxSize(), TOTPUtil.getBulkOperationBatchSize(),
+                TOTPUtil.getBulkOperationWorkerCount());
+    }
 }
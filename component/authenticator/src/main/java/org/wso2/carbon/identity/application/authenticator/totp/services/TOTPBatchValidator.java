@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAccountLockHandler;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPRateLimiter;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates the verification codes of many users of the tenant of the caller.
+ * <p>
+ * Each code goes through the same checks as a code submitted to the authenticator: the rate limits of the user and
+ * the tenant, the account lock status, and the used code check when token reuse is prevented. Failed validations
+ * are counted as failed attempts of the user, and lock the account once the configured maximum is reached. Only one
+ * code is validated for a user in a single call, so that a call cannot be used to guess the code of a user.
+ * <p>
+ * Requests are grouped by tenant and user store domain, so that the user store manager and the verifier of the
+ * tenant are resolved once per group, and the verifier is shared by all the threads validating the codes of the
+ * group. The users of a group are split into batches which are validated in parallel by a bounded number of threads.
+ */
+public class TOTPBatchValidator {
+
+    private static final Log log = LogFactory.getLog(TOTPBatchValidator.class);
+
+    private final int maxSize;
+    private final int batchSize;
+    private final int workerCount;
+
+    /**
+     * Create a batch validator.
+     *
+     * @param maxSize     Maximum number of codes accepted by a single call.
+     * @param batchSize   Number of users validated by a thread at a time.
+     * @param workerCount Maximum number of threads validating the codes of a single call.
+     */
+    public TOTPBatchValidator(int maxSize, int batchSize, int workerCount) {
+
+        this.maxSize = maxSize > 0 ? maxSize : TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_MAX_SIZE;
+        this.batchSize = batchSize > 0 ? batchSize : TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_BATCH_SIZE;
+        this.workerCount = workerCount > 0 ? workerCount :
+                TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_WORKER_COUNT;
+    }
+
+    /**
+     * Validate the given verification codes.
+     *
+     * @param requests Fully qualified usernames and their verification codes. Users who are not in the tenant of the
+     *                 caller, and any further code of a user, are reported as failed.
+     * @return Result of each request, in the order of the given requests.
+     * @throws TOTPException If too many requests are given or the validation is interrupted.
+     */
+    public TOTPValidationResult[] validate(TOTPValidationRequest[] requests) throws TOTPException {
+
+        if (requests == null || requests.length == 0) {
+            return new TOTPValidationResult[0];
+        }
+        if (requests.length > maxSize) {
+            throw new TOTPException("Cannot validate " + requests.length + " verification codes in a single call. " +
+                    "The maximum is " + maxSize + " verification codes.");
+        }
+        String callerTenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        TOTPValidationResult[] results = new TOTPValidationResult[requests.length];
+        Map<String, Map<String, Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.length; i++) {
+            String username = requests[i] == null ? null : requests[i].getUsername();
+            if (StringUtils.isBlank(username)) {
+                results[i] = TOTPValidationResult.error(username, "Username is empty.");
+                continue;
+            }
+            if (!TOTPBulkOperationProcessor.isInTenant(username, callerTenantDomain)) {
+                results[i] = TOTPValidationResult.error(username, "User is not in the tenant of the caller.");
+                continue;
+            }
+            Map<String, Integer> users = groups.computeIfAbsent(getGroupKey(username), key -> new LinkedHashMap<>());
+            if (users.putIfAbsent(getUserKey(username), i) != null) {
+                results[i] = TOTPValidationResult.error(username,
+                        "Only one verification code of a user can be validated in a single call.");
+            }
+        }
+
+        List<Runnable> batches = new ArrayList<>();
+        for (Map<String, Integer> users : groups.values()) {
+            List<Integer> indexes = new ArrayList<>(users.values());
+            String firstUsername = requests[indexes.get(0)].getUsername();
+            UserGroup group;
+            try {
+                group = resolveGroup(firstUsername);
+            } catch (TOTPException e) {
+                log.error("Error while resolving the user store of user: " + firstUsername, e);
+                for (int index : indexes) {
+                    results[index] = TOTPValidationResult.error(requests[index].getUsername(), e.getMessage());
+                }
+                continue;
+            }
+            for (int from = 0; from < indexes.size(); from += batchSize) {
+                List<Integer> batch = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+                batches.add(() -> {
+                    for (int index : batch) {
+                        results[index] = validateUser(group, requests[index]);
+                    }
+                });
+            }
+        }
+        TOTPBulkOperationProcessor.execute(batches, workerCount);
+        if (log.isDebugEnabled()) {
+            log.debug("Validated " + requests.length + " TOTP verification codes of users in " + groups.size() +
+                    " user stores.");
+        }
+        return results;
+    }
+
+    private UserGroup resolveGroup(String username) throws TOTPException {
+
+        String tenantDomain = MultitenantUtils.getTenantDomain(username);
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            if (userRealm == null) {
+                throw new TOTPException("Cannot find the user realm for the given tenant domain : " + tenantDomain);
+            }
+            TOTPKeyRepresentation encoding = TOTPKeyRepresentation.BASE32;
+            if (TOTPAuthenticatorConstants.BASE64.equals(TOTPUtil.getEncodingMethod(tenantDomain))) {
+                encoding = TOTPKeyRepresentation.BASE64;
+            }
+            TOTPAuthenticatorCredentials credentials = new TOTPAuthenticatorCredentials(
+                    new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder().setKeyRepresentation(encoding)
+                            .build());
+            return new UserGroup(userRealm.getUserStoreManager(), credentials);
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to access the user store manager of tenant domain : " + tenantDomain, e);
+        } catch (AuthenticationFailedException e) {
+            throw new TOTPException("Cannot find the TOTP configuration of tenant domain : " + tenantDomain, e);
+        }
+    }
+
+    private static TOTPValidationResult validateUser(UserGroup group, TOTPValidationRequest request) {
+
+        String username = request.getUsername();
+        int code = request.getVerificationCode();
+        // Codes out of range can never match, hence they are rejected before any state of the user is accessed.
+        if (!group.credentials.isValidCodeRange(code)) {
+            return TOTPValidationResult.failure(username, TOTPVerificationStatus.MALFORMED_TOKEN,
+                    "Verification code is out of range.");
+        }
+        String tenantDomain = MultitenantUtils.getTenantDomain(username);
+        if (isRateLimited(username, tenantDomain)) {
+            return TOTPValidationResult.failure(username, TOTPVerificationStatus.RATE_LIMITED,
+                    "Too many TOTP requests for the user.");
+        }
+        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        String userStoreDomain = UserCoreUtil.extractDomainFromName(tenantAwareUsername);
+        AuthenticatedUser authenticatedUser = new AuthenticatedUser();
+        authenticatedUser.setUserName(UserCoreUtil.removeDomainFromName(tenantAwareUsername));
+        authenticatedUser.setUserStoreDomain(userStoreDomain);
+        authenticatedUser.setTenantDomain(tenantDomain);
+        try {
+            if (TOTPAccountLockHandler.isAccountLocked(authenticatedUser, username, tenantDomain, userStoreDomain,
+                    null)) {
+                return TOTPValidationResult.failure(username, TOTPVerificationStatus.ACCOUNT_LOCKED,
+                        "User account is locked.");
+            }
+            boolean reusePrevented = TOTPUtil.isTokenReusePrevented();
+            if (reusePrevented && group.credentials.isUsed(code, username,
+                    TOTPDataHolder.getInstance().getStateStore())) {
+                return TOTPValidationResult.of(username, TOTPAccountLockHandler.handleFailedAttempt(authenticatedUser,
+                        username, TOTPVerificationResult.failure(TOTPVerificationStatus.REUSED_TOKEN,
+                                "Verification code is already used.")));
+            }
+            String encryptedSecretKey = TOTPDataHolder.getInstance().getSecretKeyCache()
+                    .getEncryptedSecretKey(username, group.userStoreManager);
+            if (StringUtils.isBlank(encryptedSecretKey)) {
+                return TOTPValidationResult.failure(username, TOTPVerificationStatus.NOT_ENROLLED,
+                        "TOTP is not enabled for the user.");
+            }
+            String secretKey = TOTPUtil.decrypt(encryptedSecretKey);
+            boolean valid = reusePrevented ? group.credentials.authorize(secretKey, code, username,
+                    TOTPDataHolder.getInstance().getStateStore()) : group.credentials.authorize(secretKey, code);
+            if (!valid) {
+                return TOTPValidationResult.of(username, TOTPAccountLockHandler.handleFailedAttempt(authenticatedUser,
+                        username, TOTPVerificationResult.failure(TOTPVerificationStatus.INVALID_TOKEN,
+                                "Verification code does not match.")));
+            }
+            TOTPAccountLockHandler.resetFailedAttempts(authenticatedUser, username);
+            return TOTPValidationResult.of(username, TOTPVerificationResult.VALID);
+        } catch (TOTPException | CryptoException | AuthenticationFailedException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to validate the verification code of user: " + username, e);
+            }
+            return TOTPValidationResult.error(username, "Failed to validate the verification code of the user : " +
+                    tenantAwareUsername);
+        } catch (RuntimeException e) {
+            // A malformed stored secret key fails the validation of the user only.
+            log.error("Error while validating the verification code of user: " + username, e);
+            return TOTPValidationResult.error(username, "Error while validating the verification code.");
+        }
+    }
+
+    /**
+     * Check the rate limits of the user and the tenant, in the same way as the codes submitted to the authenticator.
+     */
+    private static boolean isRateLimited(String username, String tenantDomain) {
+
+        TOTPRateLimiter userRateLimiter = TOTPDataHolder.getInstance().getUserRateLimiter();
+        TOTPRateLimiter tenantRateLimiter = TOTPDataHolder.getInstance().getTenantRateLimiter();
+        if (userRateLimiter != null && !userRateLimiter.tryAcquire(username)) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP request rate limit exceeded for user: " + username);
+            }
+            return true;
+        }
+        if (tenantRateLimiter != null && !tenantRateLimiter.tryAcquire(tenantDomain)) {
+            if (log.isDebugEnabled()) {
+                log.debug("TOTP request rate limit exceeded for tenant: " + tenantDomain);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static String getGroupKey(String username) {
+
+        return MultitenantUtils.getTenantDomain(username) + "/" +
+                UserCoreUtil.extractDomainFromName(MultitenantUtils.getTenantAwareUsername(username));
+    }
+
+    /**
+     * Get the key identifying the user, so that the different forms of the username of a user are detected as the
+     * same user.
+     */
+    private static String getUserKey(String username) {
+
+        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        return TOTPFailedAttemptCounter.buildKey(MultitenantUtils.getTenantDomain(username),
+                UserCoreUtil.extractDomainFromName(tenantAwareUsername),
+                UserCoreUtil.removeDomainFromName(tenantAwareUsername));
+    }
+
+    /**
+     * User store and verifier shared by the users of a tenant and user store domain.
+     */
+    private static class UserGroup {
+
+        private final UserStoreManager userStoreManager;
+        private final TOTPAuthenticatorCredentials credentials;
+
+        UserGroup(UserStoreManager userStoreManager, TOTPAuthenticatorCredentials credentials) {
+
+            this.userStoreManager = userStoreManager;
+            this.credentials = credentials;
+        }
+    }
+}
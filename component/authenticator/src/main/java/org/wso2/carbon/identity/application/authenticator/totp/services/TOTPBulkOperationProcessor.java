@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.core.util.CryptoException;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPSecretKeyCache;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAsyncExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPLookupExecutor;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+import org.wso2.carbon.user.api.UserStoreManager;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a TOTP operation to many users.
+ * <p>
+ * Users are grouped by tenant and user store domain, so that the user realm and the tenant configuration are looked
+ * up once per group. Each group is split into batches which are processed in parallel by a bounded number of threads.
+ * A failure for a user is reported in the result of that user and does not stop the processing of the other users.
+ * Only the users of the tenant of the caller are processed.
+ */
+public class TOTPBulkOperationProcessor {
+
+    private static final Log log = LogFactory.getLog(TOTPBulkOperationProcessor.class);
+
+    private final int maxSize;
+    private final int batchSize;
+    private final int workerCount;
+
+    /**
+     * TOTP operations which can be applied in bulk.
+     */
+    public enum Operation {
+
+        /**
+         * Issue a secret key to users who do not have one, as {@link TOTPAdminService#initTOTP}.
+         */
+        INIT,
+
+        /**
+         * Replace the secret key of the users, as {@link TOTPAdminService#refreshSecretKey}.
+         */
+        REFRESH,
+
+        /**
+         * Issue a secret key pending verification, as {@link TOTPAdminService#generateSecret}.
+         */
+        GENERATE_SECRET,
+
+        /**
+         * Remove the secret key of the users, as {@link TOTPAdminService#resetTOTP}.
+         */
+        RESET
+    }
+
+    /**
+     * Create a bulk operation processor.
+     *
+     * @param maxSize     Maximum number of users accepted by a single operation.
+     * @param batchSize   Number of users processed by a thread at a time.
+     * @param workerCount Maximum number of threads processing a single operation.
+     */
+    public TOTPBulkOperationProcessor(int maxSize, int batchSize, int workerCount) {
+
+        this.maxSize = maxSize > 0 ? maxSize : TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_MAX_SIZE;
+        this.batchSize = batchSize > 0 ? batchSize : TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_BATCH_SIZE;
+        this.workerCount = workerCount > 0 ? workerCount :
+                TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_WORKER_COUNT;
+    }
+
+    /**
+     * Apply an operation to the given users.
+     *
+     * @param usernames Fully qualified usernames of users in the tenant of the caller.
+     * @param operation Operation to apply.
+     * @return Result of each user, in the order of the given usernames.
+     * @throws TOTPException If too many users are given or the operation is interrupted.
+     */
+    public TOTPBulkOperationResult[] process(String[] usernames, Operation operation) throws TOTPException {
+
+        if (usernames == null || usernames.length == 0) {
+            return new TOTPBulkOperationResult[0];
+        }
+        if (usernames.length > maxSize) {
+            throw new TOTPException("Cannot process " + usernames.length + " users in a single operation. The " +
+                    "maximum is " + maxSize + " users.");
+        }
+        String callerTenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
+        TOTPBulkOperationResult[] results = new TOTPBulkOperationResult[usernames.length];
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < usernames.length; i++) {
+            if (StringUtils.isBlank(usernames[i])) {
+                results[i] = TOTPBulkOperationResult.failure(usernames[i], "Username is empty.");
+                continue;
+            }
+            if (!isInTenant(usernames[i], callerTenantDomain)) {
+                results[i] = TOTPBulkOperationResult.failure(usernames[i], "User is not in the tenant of the caller.");
+                continue;
+            }
+            groups.computeIfAbsent(getGroupKey(usernames[i]), key -> new ArrayList<>()).add(i);
+        }
+
+        List<Runnable> batches = new ArrayList<>();
+        for (List<Integer> indexes : groups.values()) {
+            UserGroup group;
+            try {
+                group = resolveGroup(usernames[indexes.get(0)], operation);
+            } catch (TOTPException e) {
+                log.error("Error while resolving the user store of user: " + usernames[indexes.get(0)], e);
+                for (int index : indexes) {
+                    results[index] = TOTPBulkOperationResult.failure(usernames[index], e.getMessage());
+                }
+                continue;
+            }
+            for (int from = 0; from < indexes.size(); from += batchSize) {
+                List<Integer> batch = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+                batches.add(() -> {
+                    for (int index : batch) {
+                        results[index] = processUser(group, usernames[index], operation);
+                    }
+                });
+            }
+        }
+        execute(batches, workerCount);
+        if (log.isDebugEnabled()) {
+            log.debug("Applied TOTP bulk operation: " + operation + " to " + usernames.length + " users in " +
+                    groups.size() + " user stores.");
+        }
+        return results;
+    }
+
+    /**
+     * Run the given batches on a bounded number of threads of the shared async executor, together with the calling
+     * thread, and wait for them to complete. Each batch runs within the tenant flow of the calling thread, so that user
+     * stores are resolved for its tenant. The calling thread keeps taking batches until none is left, so the batches
+     * are completed even if the async executor is saturated or not available.
+     *
+     * @param batches     Batches to run.
+     * @param workerCount Maximum number of threads.
+     * @throws TOTPException If a batch failed unexpectedly or the calling thread is interrupted.
+     */
+    static void execute(List<Runnable> batches, int workerCount) throws TOTPException {
+
+        Queue<Runnable> pendingBatches = new ConcurrentLinkedQueue<>(batches);
+        TOTPLookupExecutor.Loader<Void, RuntimeException> worker = () -> {
+            Runnable batch;
+            while ((batch = pendingBatches.poll()) != null) {
+                batch.run();
+            }
+            return null;
+        };
+        List<CompletableFuture<Void>> helpers = new ArrayList<>();
+        TOTPAsyncExecutor asyncExecutor = TOTPDataHolder.getInstance().getAsyncExecutor();
+        if (asyncExecutor != null) {
+            for (int i = 1; i < Math.min(workerCount, batches.size()); i++) {
+                helpers.add(asyncExecutor.submit(worker));
+            }
+        }
+        TOTPException failure = null;
+        try {
+            worker.load();
+        } catch (RuntimeException e) {
+            failure = new TOTPException("Error while applying the TOTP bulk operation.", e);
+        }
+        for (CompletableFuture<Void> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TOTPException("Interrupted while applying the TOTP bulk operation.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+                // A helper rejected by a saturated executor left its share of the batches to the other threads.
+                if (failure == null && !(cause instanceof RejectedExecutionException)) {
+                    failure = new TOTPException("Error while applying the TOTP bulk operation.", cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Check whether the user is in the given tenant, so that an administrator only manages the users of the own
+     * tenant.
+     *
+     * @param username     Fully qualified username.
+     * @param tenantDomain Tenant domain of the caller.
+     * @return True if the user is in the tenant.
+     */
+    static boolean isInTenant(String username, String tenantDomain) {
+
+        return StringUtils.equalsIgnoreCase(MultitenantUtils.getTenantDomain(username), tenantDomain);
+    }
+
+    private UserGroup resolveGroup(String username, Operation operation) throws TOTPException {
+
+        String tenantDomain = MultitenantUtils.getTenantDomain(username);
+        try {
+            UserRealm userRealm = TOTPUtil.getUserRealm(username);
+            if (userRealm == null) {
+                throw new TOTPException("Cannot find the user realm for the given tenant domain : " + tenantDomain);
+            }
+            UserGroup group = new UserGroup(userRealm.getUserStoreManager());
+            if (operation != Operation.RESET) {
+                if (TOTPAuthenticatorConstants.BASE64.equals(TOTPUtil.getEncodingMethod(tenantDomain))) {
+                    group.keyRepresentation = TOTPKeyRepresentation.BASE64;
+                }
+                group.timeStep = TOTPUtil.getTimeStepSize(tenantDomain);
+                group.issuer = TOTPUtil.getTOTPIssuerDisplayName(tenantDomain, null);
+            }
+            return group;
+        } catch (UserStoreException e) {
+            throw new TOTPException("Failed to access the user store manager of tenant domain : " + tenantDomain, e);
+        } catch (AuthenticationFailedException e) {
+            throw new TOTPException("Cannot find the TOTP configuration of tenant domain : " + tenantDomain, e);
+        }
+    }
+
+    private TOTPBulkOperationResult processUser(UserGroup group, String username, Operation operation) {
+
+        String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
+        try {
+            if (operation == Operation.RESET) {
+                setClaim(group, username, tenantAwareUsername, TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, "");
+                return TOTPBulkOperationResult.success(username, null);
+            }
+            String encryptedSecretKey = null;
+            if (operation != Operation.REFRESH) {
+                encryptedSecretKey = group.userStoreManager.getUserClaimValues(tenantAwareUsername,
+                        new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null)
+                        .get(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL);
+            }
+            String secretKey;
+            boolean generated = StringUtils.isEmpty(encryptedSecretKey);
+            if (generated) {
+                secretKey = TOTPKeyGenerator.generateKey(group.keyRepresentation).getKey();
+                encryptedSecretKey = TOTPUtil.encrypt(secretKey);
+            } else {
+                secretKey = TOTPUtil.decrypt(encryptedSecretKey);
+            }
+            if (operation == Operation.GENERATE_SECRET) {
+                long expiryTime = System.currentTimeMillis() +
+                        TimeUnit.SECONDS.toMillis(TOTPUtil.getPendingEnrolmentTimeout());
+                TOTPDataHolder.getInstance().getStateStore().putPendingSecretKey(
+                        TOTPSecretKeyCache.buildKey(username), encryptedSecretKey, expiryTime);
+            } else if (generated) {
+                setClaim(group, username, tenantAwareUsername, TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL,
+                        encryptedSecretKey);
+            }
+            return TOTPBulkOperationResult.success(username,
+                    TOTPKeyGenerator.buildQRCodeURL(group.issuer, tenantAwareUsername, secretKey, group.timeStep));
+        } catch (UserStoreException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to apply TOTP bulk operation: " + operation + " to user: " + username, e);
+            }
+            return TOTPBulkOperationResult.failure(username,
+                    "Failed to access the user store manager for the user : " + tenantAwareUsername);
+        } catch (CryptoException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to apply TOTP bulk operation: " + operation + " to user: " + username, e);
+            }
+            return TOTPBulkOperationResult.failure(username,
+                    "Error while processing the secret key of the user : " + tenantAwareUsername);
+        } catch (TOTPException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to apply TOTP bulk operation: " + operation + " to user: " + username, e);
+            }
+            return TOTPBulkOperationResult.failure(username,
+                    "Failed to store the pending secret key of the user : " + tenantAwareUsername);
+        }
+    }
+
+    private static void setClaim(UserGroup group, String username, String tenantAwareUsername, String claimUri,
+                                 String value) throws UserStoreException {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(claimUri, value);
+        group.userStoreManager.setUserClaimValues(tenantAwareUsername, claims, null);
+        if (TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL.equals(claimUri)) {
+            TOTPDataHolder.getInstance().getSecretKeyCache().invalidate(username);
+        }
+    }
+
+    private static String getGroupKey(String username) {
+
+        return MultitenantUtils.getTenantDomain(username) + "/" +
+                UserCoreUtil.extractDomainFromName(MultitenantUtils.getTenantAwareUsername(username));
+    }
+
+    /**
+     * User store and tenant configuration shared by the users of a tenant and user store domain.
+     */
+    private static class UserGroup {
+
+        private final UserStoreManager userStoreManager;
+        private TOTPKeyRepresentation keyRepresentation = TOTPKeyRepresentation.BASE32;
+        private long timeStep;
+        private String issuer;
+
+        UserGroup(UserStoreManager userStoreManager) {
+
+            this.userStoreManager = userStoreManager;
+        }
+    }
+}
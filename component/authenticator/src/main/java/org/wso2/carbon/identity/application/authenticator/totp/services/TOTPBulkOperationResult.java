@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+/**
+ * Result of a bulk TOTP operation for a single user.
+ */
+public class TOTPBulkOperationResult {
+
+    private String username;
+    private boolean successful;
+    private String qrCodeUrl;
+    private String errorMessage;
+
+    public TOTPBulkOperationResult() {
+
+    }
+
+    static TOTPBulkOperationResult success(String username, String qrCodeUrl) {
+
+        TOTPBulkOperationResult result = new TOTPBulkOperationResult();
+        result.setUsername(username);
+        result.setSuccessful(true);
+        result.setQrCodeUrl(qrCodeUrl);
+        return result;
+    }
+
+    static TOTPBulkOperationResult failure(String username, String errorMessage) {
+
+        TOTPBulkOperationResult result = new TOTPBulkOperationResult();
+        result.setUsername(username);
+        result.setErrorMessage(errorMessage);
+        return result;
+    }
+
+    public String getUsername() {
+
+        return username;
+    }
+
+    public void setUsername(String username) {
+
+        this.username = username;
+    }
+
+    /**
+     * Check whether the operation succeeded for the user.
+     *
+     * @return True if the operation succeeded.
+     */
+    public boolean isSuccessful() {
+
+        return successful;
+    }
+
+    public void setSuccessful(boolean successful) {
+
+        this.successful = successful;
+    }
+
+    /**
+     * Get the encoded QR code URL of the secret key of the user.
+     *
+     * @return Encoded QR code URL, or null if the operation does not issue a secret key or failed.
+     */
+    public String getQrCodeUrl() {
+
+        return qrCodeUrl;
+    }
+
+    public void setQrCodeUrl(String qrCodeUrl) {
+
+        this.qrCodeUrl = qrCodeUrl;
+    }
+
+    /**
+     * Get the reason the operation failed for the user.
+     *
+     * @return Error message, or null if the operation succeeded.
+     */
+    public String getErrorMessage() {
+
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+
+        this.errorMessage = errorMessage;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+/**
+ * Verification code of a user to be validated by {@link TOTPAdminService#validateTOTPBatch}.
+ */
+public class TOTPValidationRequest {
+
+    private String username;
+    private int verificationCode;
+
+    public TOTPValidationRequest() {
+
+    }
+
+    public TOTPValidationRequest(String username, int verificationCode) {
+
+        this.username = username;
+        this.verificationCode = verificationCode;
+    }
+
+    public String getUsername() {
+
+        return username;
+    }
+
+    public void setUsername(String username) {
+
+        this.username = username;
+    }
+
+    public int getVerificationCode() {
+
+        return verificationCode;
+    }
+
+    public void setVerificationCode(int verificationCode) {
+
+        this.verificationCode = verificationCode;
+    }
+}
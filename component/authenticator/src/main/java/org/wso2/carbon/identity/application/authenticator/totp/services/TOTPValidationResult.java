@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+
+/**
+ * Result of the validation of a verification code by {@link TOTPAdminService#validateTOTPBatch}.
+ */
+public class TOTPValidationResult {
+
+    private String username;
+    private boolean valid;
+    private String status;
+    private String errorMessage;
+
+    public TOTPValidationResult() {
+
+    }
+
+    static TOTPValidationResult of(String username, TOTPVerificationResult verificationResult) {
+
+        TOTPValidationResult result = new TOTPValidationResult();
+        result.setUsername(username);
+        result.setValid(verificationResult.isValid());
+        result.setStatus(verificationResult.getStatus().name());
+        result.setErrorMessage(verificationResult.getReason());
+        return result;
+    }
+
+    static TOTPValidationResult failure(String username, TOTPVerificationStatus status, String errorMessage) {
+
+        return of(username, TOTPVerificationResult.failure(status, errorMessage));
+    }
+
+    static TOTPValidationResult error(String username, String errorMessage) {
+
+        TOTPValidationResult result = new TOTPValidationResult();
+        result.setUsername(username);
+        result.setErrorMessage(errorMessage);
+        return result;
+    }
+
+    public String getUsername() {
+
+        return username;
+    }
+
+    public void setUsername(String username) {
+
+        this.username = username;
+    }
+
+    /**
+     * Check whether the verification code matched a code of the user.
+     *
+     * @return True if the verification code is valid.
+     */
+    public boolean isValid() {
+
+        return valid;
+    }
+
+    public void setValid(boolean valid) {
+
+        this.valid = valid;
+    }
+
+    /**
+     * Get the status of the validation, which is the name of a {@link TOTPVerificationStatus}.
+     *
+     * @return Status of the validation, or null if the code could not be validated due to an error.
+     */
+    public String getStatus() {
+
+        return status;
+    }
+
+    public void setStatus(String status) {
+
+        this.status = status;
+    }
+
+    /**
+     * Get the reason the verification code was not accepted.
+     *
+     * @return Error message, or null if the verification code is valid.
+     */
+    public String getErrorMessage() {
+
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+
+        this.errorMessage = errorMessage;
+    }
+}
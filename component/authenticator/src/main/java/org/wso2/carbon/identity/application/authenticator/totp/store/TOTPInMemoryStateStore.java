@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.store;
+
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPUsedCodeCache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State store which keeps the TOTP verification state in the memory of the local node. This is the default store,
+ * and adds no latency to the verification. A secret key pending confirmation can only be confirmed on the node which
+ * issued it.
+ */
+public class TOTPInMemoryStateStore implements TOTPStateStore {
+
+    private static final long DEFAULT_FAILED_ATTEMPTS_RETENTION = TimeUnit.DAYS.toMillis(1);
+    // Expired failed attempt counts and pending secret keys are swept after this many updates.
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final TOTPUsedCodeCache usedCodeCache;
+    private final long failedAttemptsRetention;
+    private final ConcurrentMap<String, FailedAttempts> failedAttempts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingSecretKey> pendingSecretKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger incrementsSinceSweep = new AtomicInteger();
+
+    public TOTPInMemoryStateStore() {
+
+        this(new TOTPUsedCodeCache(), DEFAULT_FAILED_ATTEMPTS_RETENTION);
+    }
+
+    /**
+     * Create an in-memory state store.
+     *
+     * @param usedCodeCache           Cache holding the codes already accepted.
+     * @param failedAttemptsRetention Time in milliseconds for which a failed attempt count is kept after its last
+     *                                update.
+     */
+    public TOTPInMemoryStateStore(TOTPUsedCodeCache usedCodeCache, long failedAttemptsRetention) {
+
+        this.usedCodeCache = usedCodeCache;
+        this.failedAttemptsRetention = failedAttemptsRetention;
+    }
+
+    @Override
+    public void start() {
+
+        // Nothing to maintain in the background.
+    }
+
+    @Override
+    public void shutdown() {
+
+        failedAttempts.clear();
+        pendingSecretKeys.clear();
+    }
+
+    @Override
+    public boolean isShared() {
+
+        return false;
+    }
+
+    @Override
+    public boolean markCodeUsed(String userKey, long code, long timeIndex, long expiryTime) {
+
+        return usedCodeCache.markUsed(userKey, code, timeIndex, expiryTime);
+    }
+
+    @Override
+    public boolean isCodeUsed(String userKey, long code, long timeIndex, long expiryTime) {
+
+        return usedCodeCache.isUsed(userKey, code, timeIndex, expiryTime);
+    }
+
+    @Override
+    public int incrementFailedAttempts(String userKey, int localAttempts) {
+
+        long now = System.currentTimeMillis();
+        sweepIfRequired(now);
+        long expiryTime = now + failedAttemptsRetention;
+        return failedAttempts.compute(userKey, (key, existing) -> {
+            if (existing == null || existing.expiryTime <= now) {
+                return new FailedAttempts(localAttempts + 1, expiryTime);
+            }
+            return new FailedAttempts(existing.count + 1, expiryTime);
+        }).count;
+    }
+
+    @Override
+    public void resetFailedAttempts(String userKey) {
+
+        failedAttempts.remove(userKey);
+    }
+
+    @Override
+    public void putPendingSecretKey(String userKey, String encryptedSecretKey, long expiryTime) {
+
+        sweepIfRequired(System.currentTimeMillis());
+        pendingSecretKeys.put(userKey, new PendingSecretKey(encryptedSecretKey, expiryTime));
+    }
+
+    @Override
+    public String getPendingSecretKey(String userKey) {
+
+        PendingSecretKey pendingSecretKey = pendingSecretKeys.get(userKey);
+        if (pendingSecretKey == null) {
+            return null;
+        }
+        if (pendingSecretKey.expiryTime <= System.currentTimeMillis()) {
+            pendingSecretKeys.remove(userKey, pendingSecretKey);
+            return null;
+        }
+        return pendingSecretKey.encryptedSecretKey;
+    }
+
+    @Override
+    public void removePendingSecretKey(String userKey) {
+
+        pendingSecretKeys.remove(userKey);
+    }
+
+    private void sweepIfRequired(long now) {
+
+        if (incrementsSinceSweep.incrementAndGet() < SWEEP_INTERVAL) {
+            return;
+        }
+        incrementsSinceSweep.set(0);
+        Iterator<FailedAttempts> iterator = failedAttempts.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiryTime <= now) {
+                iterator.remove();
+            }
+        }
+        pendingSecretKeys.values().removeIf(pendingSecretKey -> pendingSecretKey.expiryTime <= now);
+    }
+
+    /**
+     * Failed attempt count of a user and the time it expires.
+     */
+    private static class FailedAttempts {
+
+        private final int count;
+        private final long expiryTime;
+
+        FailedAttempts(int count, long expiryTime) {
+
+            this.count = count;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    /**
+     * Encrypted secret key pending confirmation and the time it expires.
+     */
+    private static class PendingSecretKey {
+
+        private final String encryptedSecretKey;
+        private final long expiryTime;
+
+        PendingSecretKey(String encryptedSecretKey, long expiryTime) {
+
+            this.encryptedSecretKey = encryptedSecretKey;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
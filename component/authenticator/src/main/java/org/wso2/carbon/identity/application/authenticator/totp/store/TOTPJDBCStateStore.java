@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * State store which keeps the TOTP verification state in a database shared by all the nodes of the cluster.
+ * <p>
+ * Every row carries the time partition in which it expires, so expired state is removed with a single range delete
+ * per table and partition instead of per row timers. Accepted codes are recorded by inserting the user, the time
+ * index and the code, so a replay on any node fails on the primary key. Failed attempt counts are incremented in
+ * place within a transaction, and are reset as soon as the reset is requested, so that no failure recorded by
+ * another node is dropped by a delayed reset. Secret keys pending confirmation are kept encrypted, so that an
+ * enrolment started on one node can be confirmed on any other.
+ * <p>
+ * The tables IDN_TOTP_USED_CODE, IDN_TOTP_FAILED_ATTEMPT and IDN_TOTP_PENDING_ENROLMENT are required. The scripts
+ * creating them are shipped with the feature, and are installed to the dbscripts/identity/totp directory of the
+ * server.
+ */
+public class TOTPJDBCStateStore implements TOTPStateStore {
+
+    private static final Log log = LogFactory.getLog(TOTPJDBCStateStore.class);
+
+    private static final String INSERT_USED_CODE =
+            "INSERT INTO IDN_TOTP_USED_CODE (USER_KEY, TIME_INDEX, CODE, EXPIRY_PARTITION) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_USED_CODE =
+            "SELECT 1 FROM IDN_TOTP_USED_CODE WHERE USER_KEY = ? AND CODE = ? AND TIME_INDEX IN (";
+    private static final String DELETE_EXPIRED_USED_CODES =
+            "DELETE FROM IDN_TOTP_USED_CODE WHERE EXPIRY_PARTITION < ?";
+    private static final String INCREMENT_FAILED_ATTEMPTS =
+            "UPDATE IDN_TOTP_FAILED_ATTEMPT SET FAILED_ATTEMPTS = FAILED_ATTEMPTS + 1, EXPIRY_PARTITION = ? " +
+                    "WHERE USER_KEY = ? AND EXPIRY_PARTITION >= ?";
+    private static final String SELECT_FAILED_ATTEMPTS =
+            "SELECT FAILED_ATTEMPTS FROM IDN_TOTP_FAILED_ATTEMPT WHERE USER_KEY = ?";
+    private static final String INSERT_FAILED_ATTEMPTS =
+            "INSERT INTO IDN_TOTP_FAILED_ATTEMPT (USER_KEY, FAILED_ATTEMPTS, EXPIRY_PARTITION) VALUES (?, ?, ?)";
+    private static final String DELETE_FAILED_ATTEMPTS = "DELETE FROM IDN_TOTP_FAILED_ATTEMPT WHERE USER_KEY = ?";
+    private static final String DELETE_EXPIRED_FAILED_ATTEMPTS_OF_USER =
+            "DELETE FROM IDN_TOTP_FAILED_ATTEMPT WHERE USER_KEY = ? AND EXPIRY_PARTITION < ?";
+    private static final String DELETE_EXPIRED_FAILED_ATTEMPTS =
+            "DELETE FROM IDN_TOTP_FAILED_ATTEMPT WHERE EXPIRY_PARTITION < ?";
+    private static final String INSERT_PENDING_ENROLMENT = "INSERT INTO IDN_TOTP_PENDING_ENROLMENT " +
+            "(USER_KEY, SECRET_KEY, EXPIRY_TIME, EXPIRY_PARTITION) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_PENDING_ENROLMENT =
+            "SELECT SECRET_KEY, EXPIRY_TIME FROM IDN_TOTP_PENDING_ENROLMENT WHERE USER_KEY = ?";
+    private static final String DELETE_PENDING_ENROLMENT = "DELETE FROM IDN_TOTP_PENDING_ENROLMENT WHERE USER_KEY = ?";
+    private static final String DELETE_EXPIRED_PENDING_ENROLMENTS =
+            "DELETE FROM IDN_TOTP_PENDING_ENROLMENT WHERE EXPIRY_PARTITION < ?";
+
+    private static final int MAX_WRITE_RETRIES = 3;
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION_STATE_CLASS = "23";
+
+    private final DataSource dataSource;
+    private final long partitionSize;
+    private final long failedAttemptsRetention;
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * Create a JDBC state store.
+     *
+     * @param dataSource              Data source of the shared database.
+     * @param partitionSize           Duration of an expiry partition in milliseconds, which is also the interval of
+     *                                the cleanup of expired state.
+     * @param failedAttemptsRetention Time in milliseconds for which a failed attempt count is kept after its last
+     *                                update.
+     */
+    public TOTPJDBCStateStore(DataSource dataSource, long partitionSize, long failedAttemptsRetention) {
+
+        if (dataSource == null || partitionSize <= 0 || failedAttemptsRetention <= 0) {
+            throw new IllegalArgumentException("Invalid JDBC state store configuration. Partition size: " +
+                    partitionSize + ", failed attempts retention: " + failedAttemptsRetention);
+        }
+        this.dataSource = dataSource;
+        this.partitionSize = partitionSize;
+        this.failedAttemptsRetention = failedAttemptsRetention;
+    }
+
+    @Override
+    public synchronized void start() {
+
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-StateStoreMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::removeExpiredPartitions, partitionSize, partitionSize,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler = null;
+    }
+
+    @Override
+    public boolean isShared() {
+
+        return true;
+    }
+
+    @Override
+    public boolean markCodeUsed(String userKey, long code, long timeIndex, long expiryTime) throws TOTPException {
+
+        try (Connection connection = getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_USED_CODE)) {
+                statement.setString(1, userKey);
+                statement.setLong(2, timeIndex);
+                statement.setInt(3, (int) code);
+                statement.setLong(4, getPartition(expiryTime));
+                statement.executeUpdate();
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (isDuplicateKey(e)) {
+                    return false;
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new TOTPException("Error while recording the used TOTP code of user: " + userKey, e);
+        }
+    }
+
+    @Override
+    public boolean isCodeUsed(String userKey, long code, long timeIndex, long expiryTime) throws TOTPException {
+
+        return isCodeUsed(userKey, code, new long[]{timeIndex}, new long[]{expiryTime});
+    }
+
+    @Override
+    public boolean isCodeUsed(String userKey, long code, long[] timeIndexes, long[] expiryTimes)
+            throws TOTPException {
+
+        if (timeIndexes.length == 0) {
+            return false;
+        }
+        StringBuilder query = new StringBuilder(SELECT_USED_CODE).append('?');
+        for (int i = 1; i < timeIndexes.length; i++) {
+            query.append(", ?");
+        }
+        query.append(')');
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(query.toString())) {
+            statement.setString(1, userKey);
+            statement.setInt(2, (int) code);
+            for (int i = 0; i < timeIndexes.length; i++) {
+                statement.setLong(i + 3, timeIndexes[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                boolean used = resultSet.next();
+                connection.commit();
+                return used;
+            }
+        } catch (SQLException e) {
+            throw new TOTPException("Error while checking the used TOTP codes of user: " + userKey, e);
+        }
+    }
+
+    @Override
+    public int incrementFailedAttempts(String userKey, int localAttempts) throws TOTPException {
+
+        try (Connection connection = getConnection()) {
+            for (int i = 0; i < MAX_WRITE_RETRIES; i++) {
+                try {
+                    Integer attempts = incrementFailedAttempts(connection, userKey, localAttempts);
+                    connection.commit();
+                    if (attempts != null) {
+                        return attempts;
+                    }
+                } catch (SQLException e) {
+                    connection.rollback();
+                    if (!isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    // The count was inserted concurrently by another node, hence it is incremented in place.
+                }
+            }
+        } catch (SQLException e) {
+            throw new TOTPException("Error while incrementing the failed TOTP attempts of user: " + userKey, e);
+        }
+        throw new TOTPException("Could not increment the failed TOTP attempts of user: " + userKey +
+                " due to concurrent updates.");
+    }
+
+    @Override
+    public void resetFailedAttempts(String userKey) throws TOTPException {
+
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_FAILED_ATTEMPTS)) {
+            statement.setString(1, userKey);
+            statement.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new TOTPException("Error while resetting the failed TOTP attempts of user: " + userKey, e);
+        }
+    }
+
+    @Override
+    public void putPendingSecretKey(String userKey, String encryptedSecretKey, long expiryTime) throws TOTPException {
+
+        try (Connection connection = getConnection()) {
+            for (int i = 0; i < MAX_WRITE_RETRIES; i++) {
+                try (PreparedStatement delete = connection.prepareStatement(DELETE_PENDING_ENROLMENT);
+                     PreparedStatement insert = connection.prepareStatement(INSERT_PENDING_ENROLMENT)) {
+                    delete.setString(1, userKey);
+                    delete.executeUpdate();
+                    insert.setString(1, userKey);
+                    insert.setString(2, encryptedSecretKey);
+                    insert.setLong(3, expiryTime);
+                    insert.setLong(4, getPartition(expiryTime));
+                    insert.executeUpdate();
+                    connection.commit();
+                    return;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    if (!isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    // Another node issued a secret key to the user concurrently, hence it is replaced again.
+                }
+            }
+        } catch (SQLException e) {
+            throw new TOTPException("Error while storing the pending TOTP secret key of user: " + userKey, e);
+        }
+        throw new TOTPException("Could not store the pending TOTP secret key of user: " + userKey +
+                " due to concurrent updates.");
+    }
+
+    @Override
+    public String getPendingSecretKey(String userKey) throws TOTPException {
+
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_PENDING_ENROLMENT)) {
+            statement.setString(1, userKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                String encryptedSecretKey = null;
+                if (resultSet.next() && resultSet.getLong(2) > System.currentTimeMillis()) {
+                    encryptedSecretKey = resultSet.getString(1);
+                }
+                connection.commit();
+                return encryptedSecretKey;
+            }
+        } catch (SQLException e) {
+            throw new TOTPException("Error while retrieving the pending TOTP secret key of user: " + userKey, e);
+        }
+    }
+
+    @Override
+    public void removePendingSecretKey(String userKey) throws TOTPException {
+
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_PENDING_ENROLMENT)) {
+            statement.setString(1, userKey);
+            statement.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new TOTPException("Error while removing the pending TOTP secret key of user: " + userKey, e);
+        }
+    }
+
+    /**
+     * Remove all the state of the partitions which have expired.
+     */
+    void removeExpiredPartitions() {
+
+        long currentPartition = getPartition(System.currentTimeMillis());
+        try (Connection connection = getConnection();
+             PreparedStatement usedCodes = connection.prepareStatement(DELETE_EXPIRED_USED_CODES);
+             PreparedStatement failedAttempts = connection.prepareStatement(DELETE_EXPIRED_FAILED_ATTEMPTS);
+             PreparedStatement pendingEnrolments = connection.prepareStatement(DELETE_EXPIRED_PENDING_ENROLMENTS)) {
+            usedCodes.setLong(1, currentPartition);
+            int removedCodes = usedCodes.executeUpdate();
+            failedAttempts.setLong(1, currentPartition);
+            int removedAttempts = failedAttempts.executeUpdate();
+            pendingEnrolments.setLong(1, currentPartition);
+            int removedEnrolments = pendingEnrolments.executeUpdate();
+            connection.commit();
+            if (log.isDebugEnabled()) {
+                log.debug("Removed " + removedCodes + " used TOTP codes, " + removedAttempts +
+                        " failed TOTP attempt counts and " + removedEnrolments +
+                        " pending TOTP enrolments which expired before partition: " + currentPartition);
+            }
+        } catch (SQLException e) {
+            log.error("Error while removing the expired TOTP state.", e);
+        }
+    }
+
+    /**
+     * Increment the failed attempt count of the user within the transaction of the connection.
+     *
+     * @return The incremented count.
+     */
+    private Integer incrementFailedAttempts(Connection connection, String userKey, int localAttempts)
+            throws SQLException {
+
+        long now = System.currentTimeMillis();
+        long currentPartition = getPartition(now);
+        long expiryPartition = getPartition(now + failedAttemptsRetention);
+        try (PreparedStatement statement = connection.prepareStatement(INCREMENT_FAILED_ATTEMPTS)) {
+            statement.setLong(1, expiryPartition);
+            statement.setString(2, userKey);
+            statement.setLong(3, currentPartition);
+            if (statement.executeUpdate() > 0) {
+                return selectFailedAttempts(connection, userKey);
+            }
+        }
+        // There is no live count, hence an expired count is replaced. Only expired counts are removed, so that a
+        // count inserted concurrently by another node fails the insert instead of being lost.
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_EXPIRED_FAILED_ATTEMPTS_OF_USER);
+             PreparedStatement insert = connection.prepareStatement(INSERT_FAILED_ATTEMPTS)) {
+            delete.setString(1, userKey);
+            delete.setLong(2, currentPartition);
+            delete.executeUpdate();
+            int attempts = localAttempts + 1;
+            insert.setString(1, userKey);
+            insert.setInt(2, attempts);
+            insert.setLong(3, expiryPartition);
+            insert.executeUpdate();
+            return attempts;
+        }
+    }
+
+    private Integer selectFailedAttempts(Connection connection, String userKey) throws SQLException {
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_FAILED_ATTEMPTS)) {
+            statement.setString(1, userKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : null;
+            }
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    private long getPartition(long time) {
+
+        return time / partitionSize;
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+
+        return e instanceof SQLIntegrityConstraintViolationException || (e.getSQLState() != null &&
+                e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION_STATE_CLASS));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.store;
+
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+/**
+ * Store of the short lived TOTP state, which is the codes already accepted, the failed attempt counts of users and
+ * the secret keys issued to users which are pending their confirmation.
+ * <p>
+ * A local store keeps the state of a single node only, while a shared store makes it visible to all the nodes of
+ * a cluster at the cost of a remote call per operation. The store in use is registered in the
+ * {@link org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder}.
+ */
+public interface TOTPStateStore {
+
+    /**
+     * Start the background maintenance of the store.
+     */
+    void start();
+
+    /**
+     * Stop the background maintenance of the store after writing all pending updates.
+     */
+    void shutdown();
+
+    /**
+     * Check whether the state is shared between the nodes of the cluster.
+     *
+     * @return True if the state is visible to all the nodes.
+     */
+    boolean isShared();
+
+    /**
+     * Record a code accepted for the user, unless the same code of the same time step was already accepted.
+     *
+     * @param userKey    Key identifying the user.
+     * @param code       Accepted code.
+     * @param timeIndex  Time step of the accepted code.
+     * @param expiryTime Time in milliseconds from which the code is no longer accepted.
+     * @return False if the code was already used.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    boolean markCodeUsed(String userKey, long code, long timeIndex, long expiryTime) throws TOTPException;
+
+    /**
+     * Check whether a code of the user was already accepted, without recording it.
+     *
+     * @param userKey    Key identifying the user.
+     * @param code       Code to check.
+     * @param timeIndex  Time step of the code.
+     * @param expiryTime Time in milliseconds from which the code is no longer accepted.
+     * @return True if the code was already used.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    boolean isCodeUsed(String userKey, long code, long timeIndex, long expiryTime) throws TOTPException;
+
+    /**
+     * Check whether a code of the user was already accepted in any of the given time steps, without recording it.
+     * Stores which access a remote database override this to check all the time steps with a single query.
+     *
+     * @param userKey     Key identifying the user.
+     * @param code        Code to check.
+     * @param timeIndexes Time steps of the code.
+     * @param expiryTimes Time in milliseconds from which the code of each time step is no longer accepted.
+     * @return True if the code was already used in any of the time steps.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    default boolean isCodeUsed(String userKey, long code, long[] timeIndexes, long[] expiryTimes)
+            throws TOTPException {
+
+        for (int i = 0; i < timeIndexes.length; i++) {
+            if (isCodeUsed(userKey, code, timeIndexes[i], expiryTimes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Atomically increment the failed attempt count of the user.
+     *
+     * @param userKey       Key of the user.
+     * @param localAttempts Failed attempt count known locally before this failure, used when the store holds no
+     *                      count for the user.
+     * @return The failed attempt count including this failure.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    int incrementFailedAttempts(String userKey, int localAttempts) throws TOTPException;
+
+    /**
+     * Reset the failed attempt count of the user.
+     *
+     * @param userKey Key of the user.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    void resetFailedAttempts(String userKey) throws TOTPException;
+
+    /**
+     * Hold the secret key issued to the user until the user confirms it with a code, replacing any secret key already
+     * pending for the user.
+     *
+     * @param userKey            Key of the user.
+     * @param encryptedSecretKey Encrypted secret key pending confirmation.
+     * @param expiryTime         Time in milliseconds from which the secret key can no longer be confirmed.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    void putPendingSecretKey(String userKey, String encryptedSecretKey, long expiryTime) throws TOTPException;
+
+    /**
+     * Get the secret key pending confirmation of the user.
+     *
+     * @param userKey Key of the user.
+     * @return Encrypted secret key, or null if no secret key is pending or it has expired.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    String getPendingSecretKey(String userKey) throws TOTPException;
+
+    /**
+     * Remove the secret key pending confirmation of the user, once it is confirmed.
+     *
+     * @param userKey Key of the user.
+     * @throws TOTPException If the store could not be accessed.
+     */
+    void removePendingSecretKey(String userKey) throws TOTPException;
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs TOTP operations asynchronously on behalf of callers which must not block on user store and crypto calls.
+ * <p>
+ * Operations are executed by a bounded pool of worker threads within the tenant flow of the submitting thread. The
+ * worker threads are only kept while there are operations to execute. When the queue is full the returned future
+ * fails with a {@link RejectedExecutionException}, so that a saturated executor never blocks the submitting thread.
+ */
+public class TOTPAsyncExecutor {
+
+    private static final Log log = LogFactory.getLog(TOTPAsyncExecutor.class);
+
+    private static final long IDLE_WORKER_TIMEOUT = 60;
+
+    private final int workerCount;
+    private final int queueCapacity;
+
+    private volatile boolean running;
+    private ThreadPoolExecutor workers;
+
+    /**
+     * Create an asynchronous executor.
+     *
+     * @param workerCount   Maximum number of threads executing operations.
+     * @param queueCapacity Maximum number of operations waiting for a thread.
+     */
+    public TOTPAsyncExecutor(int workerCount, int queueCapacity) {
+
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Start accepting operations.
+     */
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, IDLE_WORKER_TIMEOUT, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-AsyncExecutor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.allowCoreThreadTimeOut(true);
+        running = true;
+        if (log.isDebugEnabled()) {
+            log.debug("Started TOTP async executor with " + workerCount + " workers.");
+        }
+    }
+
+    /**
+     * Stop accepting operations. The submitted operations are still completed.
+     */
+    public synchronized void shutdown() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+    }
+
+    /**
+     * Submit an operation. If the operation fails, the returned future completes exceptionally with a
+     * {@link CompletionException} caused by the exception of the operation.
+     *
+     * @param operation Operation to execute.
+     * @param <T>       Type of the result of the operation.
+     * @param <E>       Type of the exception thrown if the operation fails.
+     * @return Pending result of the operation.
+     */
+    public <T, E extends Exception> CompletableFuture<T> submit(TOTPLookupExecutor.Loader<T, E> operation) {
+
+        if (!running) {
+            return rejected("TOTP async executor is not running.");
+        }
+        try {
+            return CompletableFuture.supplyAsync(TOTPLookupExecutor.inCarbonContext(operation), workers);
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Rejected a TOTP operation as the async executor is saturated.");
+            }
+            return rejected("TOTP async executor is saturated.");
+        }
+    }
+
+    /**
+     * Execute an operation on the calling thread, for callers which do not have an executor. The result is reported
+     * in the same way as by {@link #submit}.
+     *
+     * @param operation Operation to execute.
+     * @param <T>       Type of the result of the operation.
+     * @param <E>       Type of the exception thrown if the operation fails.
+     * @return Completed result of the operation.
+     */
+    public static <T, E extends Exception> CompletableFuture<T> run(TOTPLookupExecutor.Loader<T, E> operation) {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(operation.load());
+        } catch (Exception e) {
+            result.completeExceptionally(new CompletionException(e));
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> rejected(String message) {
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new RejectedExecutionException(message));
+        return result;
+    }
+}
@@ -20,6 +20,8 @@ package org.wso2.carbon.identity.application.authenticator.totp.util;
 
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.codec.binary.Base64;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -93,6 +95,11 @@ public final class TOTPAuthenticatorCredentials {
 	 */
 	private static final String HMAC_HASH_FUNCTION = "HmacSHA1";
 
+	/**
+	 * Returned when the verification code does not match any time window.
+	 */
+	private static final long NO_MATCHING_TIME_WINDOW = Long.MIN_VALUE;
+
 	/**
 	 * The configuration used by the current instance.
 	 */
@@ -221,6 +228,19 @@ public final class TOTPAuthenticatorCredentials {
 	 * @return <code>true</code> if the validation code is valid, <code>false</code> otherwise
 	 */
 	private boolean checkCode(String secret, long code, long timestamp, int window) {
+		return getMatchingTimeWindow(secret, code, timestamp, window) != NO_MATCHING_TIME_WINDOW;
+	}
+
+	/**
+	 * Find the time window in which the validation code is valid for the given secret key.
+	 *
+	 * @param secret    The Base32 encoded secret key
+	 * @param code      The code to validate
+	 * @param timestamp The instant of time to use during the validation process
+	 * @param window    The window size to use during the validation process
+	 * @return the matching time window, or {@link #NO_MATCHING_TIME_WINDOW} if the code is invalid
+	 */
+	private long getMatchingTimeWindow(String secret, long code, long timestamp, int window) {
 		byte[] decodedKey = decodeSecret(secret);
 
 		// convert unix time into a 30 second "window" as specified by the TOTP specification.
@@ -237,11 +257,11 @@ public final class TOTPAuthenticatorCredentials {
 			// Checking if the provided code is equal to the calculated one.
 			if (hash == code) {
 				// The verification code is valid.
-				return true;
+				return timeWindow + i;
 			}
 		}
 		// The verification code is invalid.
-		return false;
+		return NO_MATCHING_TIME_WINDOW;
 	}
 
 	/**
@@ -325,6 +345,105 @@ public final class TOTPAuthenticatorCredentials {
 		return authorize(secretKey, verificationCode, new Date().getTime());
 	}
 
+	/**
+	 * Authorize the code belongs to secret key, and that it was not already used by the user. Since a code is
+	 * accepted for the whole window, the accepted code is recorded in the state store so that it cannot be
+	 * replayed within the window.
+	 *
+	 * @param secretKey        The Secret Key
+	 * @param verificationCode Verification code which needs to be verified
+	 * @param userKey          Key identifying the user of the secret key
+	 * @param stateStore       Store of the codes already used
+	 * @return true, if code is verified and was not used before
+	 * @throws TOTPException if the state store could not be accessed
+	 */
+	public boolean authorize(String secretKey, int verificationCode, String userKey, TOTPStateStore stateStore)
+			throws TOTPException {
+		if (secretKey == null) {
+			throw new IllegalArgumentException("Secret key cannot be null.");
+		}
+		if (!isValidCodeRange(verificationCode)) {
+			return false;
+		}
+		long timeWindow = getMatchingTimeWindow(secretKey, verificationCode, new Date().getTime(),
+				this.config.getWindowSize());
+		if (timeWindow == NO_MATCHING_TIME_WINDOW) {
+			return false;
+		}
+		return stateStore.markCodeUsed(userKey, verificationCode, timeWindow, getExpiryTime(timeWindow));
+	}
+
+	/**
+	 * Check whether the verification code was already used by the user in any time window in which it could be
+	 * accepted now. This does not require the secret key, so that replays can be rejected before it is retrieved.
+	 *
+	 * @param verificationCode Verification code which needs to be verified
+	 * @param userKey          Key identifying the user of the secret key
+	 * @param stateStore       Store of the codes already used
+	 * @return true, if the code was already used
+	 * @throws TOTPException if the state store could not be accessed
+	 */
+	public boolean isUsed(int verificationCode, String userKey, TOTPStateStore stateStore) throws TOTPException {
+		int window = this.config.getWindowSize();
+		long firstTimeWindow = getTimeWindowFromTime(new Date().getTime()) - (window - 1) / 2;
+		long[] timeWindows = new long[window];
+		long[] expiryTimes = new long[window];
+		for (int i = 0; i < window; ++i) {
+			timeWindows[i] = firstTimeWindow + i;
+			expiryTimes[i] = getExpiryTime(timeWindows[i]);
+		}
+		return stateStore.isCodeUsed(userKey, verificationCode, timeWindows, expiryTimes);
+	}
+
+	/**
+	 * Check whether the verification code is between the legal bounds.
+	 *
+	 * @param verificationCode Verification code which needs to be verified
+	 * @return true, if the code is within the bounds
+	 */
+	public boolean isValidCodeRange(int verificationCode) {
+		return verificationCode > 0 && verificationCode < this.config.getKeyModulus();
+	}
+
+	/**
+	 * Check whether the secret key can be used to verify codes. The secret key must be encoded in the key
+	 * representation of this instance and hold at least as many bits as the secret keys generated by this class.
+	 *
+	 * @param secretKey The Secret Key
+	 * @return true, if codes can be calculated from the secret key
+	 */
+	public boolean isValidSecretKey(String secretKey) {
+		if (secretKey == null || secretKey.isEmpty()) {
+			return false;
+		}
+		boolean inAlphabet = config.getKeyRepresentation() == TOTPKeyRepresentation.BASE64 ?
+				Base64.isBase64(secretKey) : new Base32().isInAlphabet(secretKey);
+		if (!inAlphabet) {
+			return false;
+		}
+		byte[] decodedKey = decodeSecret(secretKey);
+		if (decodedKey == null || decodedKey.length < SECRET_BITS / 8) {
+			return false;
+		}
+		try {
+			calculateCode(decodedKey, 0);
+			return true;
+		} catch (TOTPAuthenticatorException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the time from which a code of the time window is no longer accepted, which is when the current time window
+	 * moves past the time window by half of the window.
+	 *
+	 * @param timeWindow time window of the code
+	 * @return expiry time in milliseconds
+	 */
+	private long getExpiryTime(long timeWindow) {
+		return (timeWindow + (this.config.getWindowSize() - 1) / 2 + 1) * this.config.getTimeStepSizeInMillis();
+	}
+
 	/**
 	 * Authorize the verification code belongs to secret key and time.
 	 *
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent lookups of a request, such as user store reads, concurrently with the request thread.
+ * <p>
+ * Lookups are executed by a bounded pool of worker threads within the tenant flow of the submitting thread, so that
+ * the Carbon context seen by a lookup is the same as on the request thread. When the queue is full or the executor
+ * is not running, a lookup is executed on the submitting thread, so that every submitted lookup completes.
+ */
+public class TOTPLookupExecutor {
+
+    private static final Log log = LogFactory.getLog(TOTPLookupExecutor.class);
+
+    private final int workerCount;
+    private final int queueCapacity;
+
+    private volatile boolean running;
+    private ThreadPoolExecutor workers;
+
+    /**
+     * A single lookup.
+     *
+     * @param <T> Type of the looked up value.
+     * @param <E> Type of the exception thrown if the lookup fails.
+     */
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+
+        /**
+         * Execute the lookup.
+         *
+         * @return Looked up value.
+         * @throws E If the lookup failed.
+         */
+        T load() throws E;
+    }
+
+    /**
+     * Create a lookup executor.
+     *
+     * @param workerCount   Number of threads executing lookups.
+     * @param queueCapacity Maximum number of lookups waiting for a thread.
+     */
+    public TOTPLookupExecutor(int workerCount, int queueCapacity) {
+
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "TOTP-LookupExecutor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> runnable.run());
+        // Published last, so that a caller which sees the executor running also sees its workers.
+        running = true;
+        if (log.isDebugEnabled()) {
+            log.debug("Started TOTP lookup executor with " + workerCount + " workers.");
+        }
+    }
+
+    /**
+     * Stop the worker threads once the submitted lookups are completed.
+     */
+    public synchronized void shutdown() {
+
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+    }
+
+    /**
+     * Submit a lookup.
+     *
+     * @param loader Lookup to execute.
+     * @param <T>    Type of the looked up value.
+     * @param <E>    Type of the exception thrown if the lookup fails.
+     * @return Pending result of the lookup.
+     */
+    public <T, E extends Exception> Lookup<T, E> submit(Loader<T, E> loader) {
+
+        if (!running) {
+            return Lookup.run(loader);
+        }
+        return new Lookup<>(CompletableFuture.supplyAsync(inCarbonContext(loader), workers));
+    }
+
+    /**
+     * Wrap a lookup to be executed on another thread within the tenant flow of the calling thread. The exception of
+     * a failed lookup is thrown wrapped in a {@link CompletionException}.
+     *
+     * @param loader Lookup to wrap.
+     * @param <T>    Type of the looked up value.
+     * @param <E>    Type of the exception thrown if the lookup fails.
+     * @return Lookup which carries the Carbon context of the calling thread.
+     */
+    public static <T, E extends Exception> Supplier<T> inCarbonContext(Loader<T, E> loader) {
+
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        String tenantDomain = carbonContext.getTenantDomain();
+        int tenantId = carbonContext.getTenantId();
+        String username = carbonContext.getUsername();
+        return () -> {
+            PrivilegedCarbonContext.startTenantFlow();
+            try {
+                PrivilegedCarbonContext lookupCarbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+                lookupCarbonContext.setTenantId(tenantId);
+                lookupCarbonContext.setTenantDomain(tenantDomain);
+                lookupCarbonContext.setUsername(username);
+                return loader.load();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        };
+    }
+
+    /**
+     * Pending result of a lookup.
+     *
+     * @param <T> Type of the looked up value.
+     * @param <E> Type of the exception thrown if the lookup failed.
+     */
+    public static class Lookup<T, E extends Exception> {
+
+        private final CompletableFuture<T> result;
+
+        Lookup(CompletableFuture<T> result) {
+
+            this.result = result;
+        }
+
+        /**
+         * Execute a lookup on the calling thread.
+         *
+         * @param loader Lookup to execute.
+         * @param <T>    Type of the looked up value.
+         * @param <E>    Type of the exception thrown if the lookup fails.
+         * @return Completed result of the lookup.
+         */
+        public static <T, E extends Exception> Lookup<T, E> run(Loader<T, E> loader) {
+
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(loader.load());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return new Lookup<>(result);
+        }
+
+        /**
+         * Wait for the lookup to complete.
+         *
+         * @return Looked up value.
+         * @throws E If the lookup failed.
+         */
+        @SuppressWarnings("unchecked")
+        public T get() throws E {
+
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw (E) cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter holding a bucket per key.
+ * <p>
+ * The state of each bucket is packed into a single long holding the number of available tokens and the time of the
+ * last refill, and is replaced in the map with a compare-and-set. Buckets are refilled lazily when they are accessed.
+ * A bucket which has been refilled to its capacity is equivalent to a missing one, hence such buckets are dropped
+ * when the number of buckets reaches the configured maximum. If every bucket is still in use, requests of new keys
+ * are allowed without being tracked, so that a flood of distinct keys cannot lock out the keys already tracked.
+ */
+public class TOTPRateLimiter {
+
+    private static final int TOKEN_BITS = 20;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    // Minimum time between two sweeps of a full limiter, so that a flood of new keys does not sweep on each request.
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private final ConcurrentMap<String, Long> buckets = new ConcurrentHashMap<>();
+    private final int maxKeys;
+    private final long capacity;
+    private final long refillPerMinute;
+    private final AtomicLong lastSweepTime = new AtomicLong(-SWEEP_INTERVAL);
+    // Bucket times are kept relative to this base so that they fit in the bits left by the token count.
+    private final long baseTime = System.currentTimeMillis() - 1;
+
+    /**
+     * Create a rate limiter.
+     *
+     * @param maxKeys         Maximum number of keys tracked at a time.
+     * @param capacity        Maximum number of tokens in a bucket, which is the allowed burst.
+     * @param refillPerMinute Number of tokens added to a bucket per minute.
+     */
+    public TOTPRateLimiter(int maxKeys, long capacity, long refillPerMinute) {
+
+        if (maxKeys <= 0 || capacity <= 0 || capacity > TOKEN_MASK || refillPerMinute <= 0) {
+            throw new IllegalArgumentException("Invalid rate limiter configuration. Maximum keys: " + maxKeys +
+                    ", capacity: " + capacity + ", refill per minute: " + refillPerMinute);
+        }
+        this.maxKeys = maxKeys;
+        this.capacity = capacity;
+        this.refillPerMinute = refillPerMinute;
+    }
+
+    /**
+     * Take a token from the bucket of the key.
+     *
+     * @param key Key to rate limit.
+     * @return False if the bucket of the key has no tokens left.
+     */
+    public boolean tryAcquire(String key) {
+
+        long now = System.currentTimeMillis() - baseTime;
+        while (true) {
+            Long state = buckets.get(key);
+            long tokens;
+            long lastRefill;
+            if (state == null) {
+                if (buckets.size() >= maxKeys && !sweep(now)) {
+                    return true;
+                }
+                if (buckets.putIfAbsent(key, pack(now, capacity - 1)) == null) {
+                    return true;
+                }
+                continue;
+            }
+            tokens = state & TOKEN_MASK;
+            lastRefill = state >>> TOKEN_BITS;
+            long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                long refill = elapsed * refillPerMinute / MILLIS_PER_MINUTE;
+                if (refill > 0) {
+                    if (tokens + refill >= capacity) {
+                        tokens = capacity;
+                        lastRefill = now;
+                    } else {
+                        tokens += refill;
+                        // Only advance by the time consumed by whole tokens, to keep the fractional part.
+                        lastRefill += refill * MILLIS_PER_MINUTE / refillPerMinute;
+                    }
+                }
+            }
+            if (tokens == 0) {
+                return false;
+            }
+            if (buckets.replace(key, state, pack(lastRefill, tokens - 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Get the number of keys currently tracked.
+     *
+     * @return Number of buckets.
+     */
+    public int size() {
+
+        return buckets.size();
+    }
+
+    /**
+     * Drop the buckets which have been refilled to their capacity.
+     *
+     * @return True if there is room for a new bucket after the sweep.
+     */
+    private boolean sweep(long now) {
+
+        long lastSweep = lastSweepTime.get();
+        if (now - lastSweep >= SWEEP_INTERVAL && lastSweepTime.compareAndSet(lastSweep, now)) {
+            for (Map.Entry<String, Long> bucket : buckets.entrySet()) {
+                long state = bucket.getValue();
+                long tokens = state & TOKEN_MASK;
+                long lastRefill = state >>> TOKEN_BITS;
+                if (tokens + (now - lastRefill) * refillPerMinute / MILLIS_PER_MINUTE >= capacity) {
+                    // Only removed if the bucket was not updated since it was read.
+                    buckets.remove(bucket.getKey(), state);
+                }
+            }
+        }
+        return buckets.size() < maxKeys;
+    }
+
+    private static long pack(long lastRefill, long tokens) {
+
+        return (lastRefill << TOKEN_BITS) | tokens;
+    }
+}
@@ -20,6 +20,7 @@ package org.wso2.carbon.identity.application.authenticator.totp.util;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.owasp.encoder.Encode;
@@ -41,11 +42,17 @@ import org.wso2.carbon.identity.application.authentication.framework.context.Aut
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.util.FrameworkUtils;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPClaimPrefetcher;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
 import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.notification.TOTPEmailDispatcher;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPInMemoryStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPJDBCStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPStateStore;
 import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.core.ServiceURLBuilder;
 import org.wso2.carbon.identity.core.URLBuilderException;
+import org.wso2.carbon.identity.core.util.IdentityDatabaseUtil;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.governance.IdentityGovernanceException;
 import org.wso2.carbon.identity.handler.event.account.lock.exception.AccountLockServiceException;
@@ -64,6 +71,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -84,6 +92,8 @@ import static org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthen
 public class TOTPUtil {
 
     private static final Log log = LogFactory.getLog(TOTPUtil.class);
+    private static final int USER_RATE_LIMITER_MAX_KEYS = 100000;
+    private static final int TENANT_RATE_LIMITER_MAX_KEYS = 10000;
 
     /**
      * Encrypt the given plain text.
@@ -165,8 +175,6 @@ public class TOTPUtil {
             throw new TOTPException("Error while creating new Document Builder", e);
         } catch (IOException e) {
             throw new TOTPException("Error while parsing the content as XML via ByteArrayInputStream", e);
-        } finally {
-            PrivilegedCarbonContext.endTenantFlow();
         }
         return issuer;
     }
@@ -210,18 +218,38 @@ public class TOTPUtil {
         return doc.getElementsByTagName("AuthenticatorConfig");
     }
 
+    /**
+     * Get the authenticator configuration of the tenant stored in the registry. Concurrent reads of the configuration
+     * of the same tenant are served by a single registry lookup, which is cached for the tenant config cache timeout.
+     *
+     * @param tenantDomain Tenant domain.
+     * @param tenantID     Tenant id.
+     * @return Authenticator configuration xml.
+     * @throws RegistryException If the configuration could not be read from the registry.
+     */
     private static String getAuthenticationConfigFromRegistry(String tenantDomain, int tenantID)
             throws RegistryException {
 
+        return TOTPDataHolder.getInstance().getTenantConfigCache().get(tenantDomain,
+                key -> loadAuthenticationConfigFromRegistry(tenantDomain, tenantID));
+    }
+
+    private static String loadAuthenticationConfigFromRegistry(String tenantDomain, int tenantID)
+            throws RegistryException {
+
         PrivilegedCarbonContext.startTenantFlow();
-        PrivilegedCarbonContext privilegedCarbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
-        privilegedCarbonContext.setTenantId(tenantID);
-        privilegedCarbonContext.setTenantDomain(tenantDomain);
-        Registry registry = (Registry) privilegedCarbonContext.getRegistry(RegistryType.SYSTEM_GOVERNANCE);
-        Resource resource = registry.get(TOTPAuthenticatorConstants.AUTHENTICATOR_NAME + "/" +
-                TOTPAuthenticatorConstants.APPLICATION_AUTHENTICATION_XML);
-        Object content = resource.getContent();
-        return new String((byte[]) content);
+        try {
+            PrivilegedCarbonContext privilegedCarbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            privilegedCarbonContext.setTenantId(tenantID);
+            privilegedCarbonContext.setTenantDomain(tenantDomain);
+            Registry registry = (Registry) privilegedCarbonContext.getRegistry(RegistryType.SYSTEM_GOVERNANCE);
+            Resource resource = registry.get(TOTPAuthenticatorConstants.AUTHENTICATOR_NAME + "/" +
+                    TOTPAuthenticatorConstants.APPLICATION_AUTHENTICATION_XML);
+            Object content = resource.getContent();
+            return new String((byte[]) content);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
     }
 
     /**
@@ -324,8 +352,6 @@ public class TOTPUtil {
             throw new TOTPException("Error while creating new Document Builder", e);
         } catch (IOException e) {
             throw new TOTPException("Error while parsing the content as XML via ByteArrayInputStream", e);
-        } finally {
-            PrivilegedCarbonContext.endTenantFlow();
         }
         return encodingMethod;
     }
@@ -409,8 +435,6 @@ public class TOTPUtil {
             throw new TOTPException("Error while creating new Document Builder", e);
         } catch (IOException e) {
             throw new TOTPException("Error while parsing the content as XML via ByteArrayInputStream", e);
-        } finally {
-            PrivilegedCarbonContext.endTenantFlow();
         }
         return timeStepSize;
     }
@@ -716,15 +740,17 @@ public class TOTPUtil {
 
         Property[] connectorConfigs;
         try {
-            connectorConfigs = TOTPDataHolder.getInstance()
-                    .getIdentityGovernanceService()
-                    .getConfiguration(
-                            new String[]{
-                                    TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE,
-                                    TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE_MAX,
-                                    TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_TIME,
-                                    TOTPAuthenticatorConstants.PROPERTY_LOGIN_FAIL_TIMEOUT_RATIO
-                            }, tenantDomain);
+            // Concurrent reads of the same tenant are served by a single lookup of the governance configuration.
+            connectorConfigs = TOTPDataHolder.getInstance().getLockPolicyCache().get(tenantDomain,
+                    key -> TOTPDataHolder.getInstance()
+                            .getIdentityGovernanceService()
+                            .getConfiguration(
+                                    new String[]{
+                                            TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE,
+                                            TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE_MAX,
+                                            TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_TIME,
+                                            TOTPAuthenticatorConstants.PROPERTY_LOGIN_FAIL_TIMEOUT_RATIO
+                                    }, key));
         } catch (IdentityGovernanceException e) {
             throw new AuthenticationFailedException(
                     "Error occurred while retrieving account lock connector configuration", e);
@@ -800,6 +826,379 @@ public class TOTPUtil {
         return Boolean.parseBoolean(sendVerificationCodeViaEmailConfig);
     }
 
+    /**
+     * Checks whether a TOTP code which was already accepted is rejected when it is used again within its window.
+     *
+     * @return True if the reuse of TOTP codes is prevented.
+     */
+    public static boolean isTokenReusePrevented() {
+
+        String preventTokenReuse = getParameter(TOTPAuthenticatorConstants.PREVENT_TOKEN_REUSE);
+        return StringUtils.isBlank(preventTokenReuse) || Boolean.parseBoolean(preventTokenReuse);
+    }
+
+    /**
+     * Build the store of the TOTP codes already accepted and the failed attempt counts from the authenticator
+     * configuration. The state is kept in memory unless the JDBC store is configured, which shares it with all the
+     * nodes of the cluster through the identity database.
+     *
+     * @return TOTP state store which is not started yet.
+     */
+    public static TOTPStateStore buildStateStore() {
+
+        if (!TOTPAuthenticatorConstants.STATE_STORE_JDBC.equalsIgnoreCase(
+                getParameter(TOTPAuthenticatorConstants.STATE_STORE))) {
+            return new TOTPInMemoryStateStore();
+        }
+        long partitionSize = getLongParameter(TOTPAuthenticatorConstants.STATE_STORE_PARTITION_SIZE,
+                TOTPAuthenticatorConstants.DEFAULT_STATE_STORE_PARTITION_SIZE);
+        long failedAttemptsRetention = getLongParameter(
+                TOTPAuthenticatorConstants.STATE_STORE_FAILED_ATTEMPTS_RETENTION,
+                TOTPAuthenticatorConstants.DEFAULT_STATE_STORE_FAILED_ATTEMPTS_RETENTION);
+        if (partitionSize <= 0) {
+            partitionSize = TOTPAuthenticatorConstants.DEFAULT_STATE_STORE_PARTITION_SIZE;
+        }
+        if (failedAttemptsRetention <= 0) {
+            failedAttemptsRetention = TOTPAuthenticatorConstants.DEFAULT_STATE_STORE_FAILED_ATTEMPTS_RETENTION;
+        }
+        return new TOTPJDBCStateStore(IdentityDatabaseUtil.getDataSource(), TimeUnit.SECONDS.toMillis(partitionSize),
+                TimeUnit.SECONDS.toMillis(failedAttemptsRetention));
+    }
+
+    /**
+     * Get the interval in seconds at which pending failed TOTP attempt counts are written to the user store.
+     *
+     * @return Flush interval in seconds. A non positive value disables deferred writes.
+     */
+    public static long getFailedAttemptsFlushInterval() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.FAILED_ATTEMPTS_FLUSH_INTERVAL,
+                TOTPAuthenticatorConstants.DEFAULT_FAILED_ATTEMPTS_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Get the maximum period in seconds for which a locked account status is served from memory.
+     *
+     * @return Account lock status cache timeout in seconds. A non positive value disables the cache.
+     */
+    public static long getAccountLockStatusCacheTimeout() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.ACCOUNT_LOCK_STATUS_CACHE_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_ACCOUNT_LOCK_STATUS_CACHE_TIMEOUT);
+    }
+
+    /**
+     * Get the maximum period in seconds for which the TOTP email template of a tenant is served from memory.
+     *
+     * @return Email template cache timeout in seconds. A non positive value disables the cache.
+     */
+    public static long getEmailTemplateCacheTimeout() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_CACHE_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_EMAIL_TEMPLATE_CACHE_TIMEOUT);
+    }
+
+    /**
+     * Get the maximum period in seconds for which the secret key of a user is served from memory.
+     *
+     * @return Secret key cache timeout in seconds. A non positive value retains nothing beyond concurrent lookups.
+     */
+    public static long getSecretKeyCacheTimeout() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.SECRET_KEY_CACHE_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_SECRET_KEY_CACHE_TIMEOUT);
+    }
+
+    /**
+     * Get the maximum period in seconds for which a rendered QR code image is served from memory.
+     *
+     * @return QR code image cache timeout in seconds. A non positive value retains nothing beyond concurrent renders.
+     */
+    public static long getQRCodeCacheTimeout() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.QR_CODE_CACHE_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_QR_CODE_CACHE_TIMEOUT);
+    }
+
+    /**
+     * Get the period in seconds within which a secret key issued for enrolment must be confirmed by the user.
+     *
+     * @return Pending enrolment timeout in seconds.
+     */
+    public static long getPendingEnrolmentTimeout() {
+
+        long pendingEnrolmentTimeout = getLongParameter(TOTPAuthenticatorConstants.PENDING_ENROLMENT_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_PENDING_ENROLMENT_TIMEOUT);
+        return pendingEnrolmentTimeout > 0 ? pendingEnrolmentTimeout :
+                TOTPAuthenticatorConstants.DEFAULT_PENDING_ENROLMENT_TIMEOUT;
+    }
+
+    /**
+     * Get the maximum period in seconds for which the registry configuration and the account lock policy of a tenant
+     * are served from memory.
+     *
+     * @return Tenant configuration cache timeout in seconds. A non positive value retains nothing beyond concurrent
+     * lookups.
+     */
+    public static long getTenantConfigCacheTimeout() {
+
+        return getLongParameter(TOTPAuthenticatorConstants.TENANT_CONFIG_CACHE_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_TENANT_CONFIG_CACHE_TIMEOUT);
+    }
+
+    /**
+     * Get the fraction of their cache timeout after which cached values are reloaded ahead of their expiry.
+     *
+     * @return Early refresh ratio. A value outside (0, 1) disables early refresh.
+     */
+    public static double getCacheEarlyRefreshRatio() {
+
+        return NumberUtils.toDouble(getParameter(TOTPAuthenticatorConstants.CACHE_EARLY_REFRESH_RATIO), 0);
+    }
+
+    /**
+     * Checks whether TOTP emails are delivered asynchronously, off the request thread.
+     *
+     * @return True if asynchronous email delivery is enabled.
+     */
+    public static boolean isAsyncEmailDeliveryEnabled() {
+
+        return Boolean.parseBoolean(getParameter(TOTPAuthenticatorConstants.ENABLE_ASYNC_EMAIL_DELIVERY));
+    }
+
+    /**
+     * Build the dispatcher for asynchronous TOTP email delivery from the authenticator configuration.
+     *
+     * @return TOTP email dispatcher which is not started yet.
+     */
+    public static TOTPEmailDispatcher buildEmailDispatcher() {
+
+        int workerCount = (int) getLongParameter(TOTPAuthenticatorConstants.EMAIL_DELIVERY_WORKER_COUNT,
+                TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_WORKER_COUNT);
+        int queueCapacity = (int) getLongParameter(TOTPAuthenticatorConstants.EMAIL_DELIVERY_QUEUE_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_QUEUE_CAPACITY);
+        int maxRetries = (int) getLongParameter(TOTPAuthenticatorConstants.EMAIL_DELIVERY_MAX_RETRIES,
+                TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_MAX_RETRIES);
+        long retryDelay = getLongParameter(TOTPAuthenticatorConstants.EMAIL_DELIVERY_RETRY_DELAY,
+                TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_RETRY_DELAY);
+        if (workerCount <= 0) {
+            workerCount = TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_WORKER_COUNT;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = TOTPAuthenticatorConstants.DEFAULT_EMAIL_DELIVERY_QUEUE_CAPACITY;
+        }
+        TOTPEmailDispatcher.RejectionPolicy rejectionPolicy = TOTPEmailDispatcher.RejectionPolicy.REJECT;
+        if (TOTPAuthenticatorConstants.EMAIL_DELIVERY_REJECTION_POLICY_CALLER_RUNS.equalsIgnoreCase(
+                getParameter(TOTPAuthenticatorConstants.EMAIL_DELIVERY_REJECTION_POLICY))) {
+            rejectionPolicy = TOTPEmailDispatcher.RejectionPolicy.CALLER_RUNS;
+        }
+        return new TOTPEmailDispatcher(workerCount, queueCapacity, maxRetries, retryDelay, rejectionPolicy);
+    }
+
+    /**
+     * Checks whether the TOTP claims of a user are prefetched while the TOTP login page is displayed.
+     *
+     * @return True if claim prefetching is enabled.
+     */
+    public static boolean isClaimPrefetchEnabled() {
+
+        return Boolean.parseBoolean(getParameter(TOTPAuthenticatorConstants.ENABLE_CLAIM_PREFETCH));
+    }
+
+    /**
+     * Build the TOTP claim prefetcher from the authenticator configuration.
+     *
+     * @return Claim prefetcher, which is not started yet.
+     */
+    public static TOTPClaimPrefetcher buildClaimPrefetcher() {
+
+        int workerCount = (int) getLongParameter(TOTPAuthenticatorConstants.CLAIM_PREFETCH_WORKER_COUNT,
+                TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_WORKER_COUNT);
+        int queueCapacity = (int) getLongParameter(TOTPAuthenticatorConstants.CLAIM_PREFETCH_QUEUE_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_QUEUE_CAPACITY);
+        long timeout = getLongParameter(TOTPAuthenticatorConstants.CLAIM_PREFETCH_TIMEOUT,
+                TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_TIMEOUT);
+        if (workerCount <= 0) {
+            workerCount = TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_WORKER_COUNT;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_QUEUE_CAPACITY;
+        }
+        if (timeout <= 0) {
+            timeout = TOTPAuthenticatorConstants.DEFAULT_CLAIM_PREFETCH_TIMEOUT;
+        }
+        return new TOTPClaimPrefetcher(workerCount, queueCapacity, TimeUnit.SECONDS.toMillis(timeout));
+    }
+
+    /**
+     * Checks whether the independent lookups of an authentication request are executed concurrently.
+     *
+     * @return True if parallel lookups are enabled.
+     */
+    public static boolean isParallelLookupsEnabled() {
+
+        return Boolean.parseBoolean(getParameter(TOTPAuthenticatorConstants.ENABLE_PARALLEL_LOOKUPS));
+    }
+
+    /**
+     * Build the executor of concurrent lookups from the authenticator configuration.
+     *
+     * @return Lookup executor, which is not started yet.
+     */
+    public static TOTPLookupExecutor buildLookupExecutor() {
+
+        int workerCount = (int) getLongParameter(TOTPAuthenticatorConstants.LOOKUP_WORKER_COUNT,
+                TOTPAuthenticatorConstants.DEFAULT_LOOKUP_WORKER_COUNT);
+        int queueCapacity = (int) getLongParameter(TOTPAuthenticatorConstants.LOOKUP_QUEUE_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_LOOKUP_QUEUE_CAPACITY);
+        if (workerCount <= 0) {
+            workerCount = TOTPAuthenticatorConstants.DEFAULT_LOOKUP_WORKER_COUNT;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = TOTPAuthenticatorConstants.DEFAULT_LOOKUP_QUEUE_CAPACITY;
+        }
+        return new TOTPLookupExecutor(workerCount, queueCapacity);
+    }
+
+    /**
+     * Build the executor of the asynchronous TOTP admin operations from the authenticator configuration.
+     *
+     * @return Async executor, which is not started yet.
+     */
+    public static TOTPAsyncExecutor buildAsyncExecutor() {
+
+        int workerCount = (int) getLongParameter(TOTPAuthenticatorConstants.ASYNC_WORKER_COUNT,
+                TOTPAuthenticatorConstants.DEFAULT_ASYNC_WORKER_COUNT);
+        int queueCapacity = (int) getLongParameter(TOTPAuthenticatorConstants.ASYNC_QUEUE_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_ASYNC_QUEUE_CAPACITY);
+        if (workerCount <= 0) {
+            workerCount = TOTPAuthenticatorConstants.DEFAULT_ASYNC_WORKER_COUNT;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = TOTPAuthenticatorConstants.DEFAULT_ASYNC_QUEUE_CAPACITY;
+        }
+        return new TOTPAsyncExecutor(workerCount, queueCapacity);
+    }
+
+    /**
+     * Get the maximum number of users accepted by a single bulk TOTP operation.
+     *
+     * @return Maximum number of users.
+     */
+    public static int getBulkOperationMaxSize() {
+
+        return (int) getLongParameter(TOTPAuthenticatorConstants.BULK_OPERATION_MAX_SIZE,
+                TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_MAX_SIZE);
+    }
+
+    /**
+     * Get the number of users processed by a thread at a time in bulk TOTP operations.
+     *
+     * @return Batch size.
+     */
+    public static int getBulkOperationBatchSize() {
+
+        return (int) getLongParameter(TOTPAuthenticatorConstants.BULK_OPERATION_BATCH_SIZE,
+                TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_BATCH_SIZE);
+    }
+
+    /**
+     * Get the maximum number of threads processing a single bulk TOTP operation.
+     *
+     * @return Number of threads.
+     */
+    public static int getBulkOperationWorkerCount() {
+
+        return (int) getLongParameter(TOTPAuthenticatorConstants.BULK_OPERATION_WORKER_COUNT,
+                TOTPAuthenticatorConstants.DEFAULT_BULK_OPERATION_WORKER_COUNT);
+    }
+
+    /**
+     * Get the number of records of which the claims are written together when importing TOTP secrets.
+     *
+     * @return Batch size.
+     */
+    public static int getProvisioningBatchSize() {
+
+        return (int) getLongParameter(TOTPAuthenticatorConstants.PROVISIONING_BATCH_SIZE,
+                TOTPAuthenticatorConstants.DEFAULT_PROVISIONING_BATCH_SIZE);
+    }
+
+    /**
+     * Get the number of users listed from the user store at a time when exporting the TOTP enrolment status.
+     *
+     * @return Page size.
+     */
+    public static int getProvisioningPageSize() {
+
+        return (int) getLongParameter(TOTPAuthenticatorConstants.PROVISIONING_PAGE_SIZE,
+                TOTPAuthenticatorConstants.DEFAULT_PROVISIONING_PAGE_SIZE);
+    }
+
+    /**
+     * Checks whether sendToken and token verification requests are rate limited per user and per tenant.
+     *
+     * @return True if rate limiting is enabled.
+     */
+    public static boolean isRateLimitingEnabled() {
+
+        return Boolean.parseBoolean(getParameter(TOTPAuthenticatorConstants.ENABLE_RATE_LIMITING));
+    }
+
+    /**
+     * Build the per user rate limiter from the authenticator configuration.
+     *
+     * @return Per user rate limiter.
+     */
+    public static TOTPRateLimiter buildUserRateLimiter() {
+
+        return buildRateLimiter(USER_RATE_LIMITER_MAX_KEYS, TOTPAuthenticatorConstants.USER_RATE_LIMIT_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_USER_RATE_LIMIT_CAPACITY,
+                TOTPAuthenticatorConstants.USER_RATE_LIMIT_REFILL_PER_MINUTE,
+                TOTPAuthenticatorConstants.DEFAULT_USER_RATE_LIMIT_REFILL_PER_MINUTE);
+    }
+
+    /**
+     * Build the per tenant rate limiter from the authenticator configuration.
+     *
+     * @return Per tenant rate limiter.
+     */
+    public static TOTPRateLimiter buildTenantRateLimiter() {
+
+        return buildRateLimiter(TENANT_RATE_LIMITER_MAX_KEYS, TOTPAuthenticatorConstants.TENANT_RATE_LIMIT_CAPACITY,
+                TOTPAuthenticatorConstants.DEFAULT_TENANT_RATE_LIMIT_CAPACITY,
+                TOTPAuthenticatorConstants.TENANT_RATE_LIMIT_REFILL_PER_MINUTE,
+                TOTPAuthenticatorConstants.DEFAULT_TENANT_RATE_LIMIT_REFILL_PER_MINUTE);
+    }
+
+    private static TOTPRateLimiter buildRateLimiter(int maxKeys, String capacityParameter, long defaultCapacity,
+                                                    String refillParameter, long defaultRefillPerMinute) {
+
+        long capacity = getLongParameter(capacityParameter, defaultCapacity);
+        long refillPerMinute = getLongParameter(refillParameter, defaultRefillPerMinute);
+        if (capacity <= 0) {
+            capacity = defaultCapacity;
+        }
+        if (refillPerMinute <= 0) {
+            refillPerMinute = defaultRefillPerMinute;
+        }
+        return new TOTPRateLimiter(maxKeys, capacity, refillPerMinute);
+    }
+
+    private static long getLongParameter(String parameterName, long defaultValue) {
+
+        return NumberUtils.toLong(getParameter(parameterName), defaultValue);
+    }
+
+    private static String getParameter(String parameterName) {
+
+        AuthenticatorConfig authConfig = FileBasedConfigurationBuilder.getInstance()
+                .getAuthenticatorBean(TOTPAuthenticatorConstants.AUTHENTICATOR_NAME);
+        if (authConfig == null || authConfig.getParameterMap() == null) {
+            return null;
+        }
+        return authConfig.getParameterMap().get(parameterName);
+    }
 
     private static String getTenantQualifiedURL(String urlFromConfig,
                                                 String defaultContext) throws AuthenticationFailedException {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+import org.wso2.carbon.identity.application.authentication.framework.context.AuthenticationContext;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPClaimPrefetcher;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
+
+/**
+ * State of a single TOTP verification, shared by the stages of the verification pipeline.
+ */
+public class TOTPVerificationContext {
+
+    private final AuthenticationContext authenticationContext;
+    private final String username;
+    private final String token;
+    private int code;
+    private TOTPAuthenticatorCredentials credentials;
+    private String secretKey;
+    private TOTPClaimPrefetcher.PrefetchedClaims prefetchedClaims;
+    private TOTPVerificationResult result = TOTPVerificationResult.VALID;
+    private String rejectedStage;
+
+    public TOTPVerificationContext(AuthenticationContext authenticationContext, String username, String token) {
+
+        this.authenticationContext = authenticationContext;
+        this.username = username;
+        this.token = token;
+    }
+
+    public AuthenticationContext getAuthenticationContext() {
+
+        return authenticationContext;
+    }
+
+    public String getUsername() {
+
+        return username;
+    }
+
+    /**
+     * Get the token as received in the request.
+     *
+     * @return Raw token.
+     */
+    public String getToken() {
+
+        return token;
+    }
+
+    /**
+     * Get the numeric code parsed from the token.
+     *
+     * @return Verification code.
+     */
+    public int getCode() {
+
+        return code;
+    }
+
+    public void setCode(int code) {
+
+        this.code = code;
+    }
+
+    public TOTPAuthenticatorCredentials getCredentials() {
+
+        return credentials;
+    }
+
+    public void setCredentials(TOTPAuthenticatorCredentials credentials) {
+
+        this.credentials = credentials;
+    }
+
+    public String getSecretKey() {
+
+        return secretKey;
+    }
+
+    public void setSecretKey(String secretKey) {
+
+        this.secretKey = secretKey;
+    }
+
+    /**
+     * Get the claims of the user prefetched while the TOTP login page was displayed.
+     *
+     * @return Prefetched claims, or null if no claims were prefetched.
+     */
+    public TOTPClaimPrefetcher.PrefetchedClaims getPrefetchedClaims() {
+
+        return prefetchedClaims;
+    }
+
+    public void setPrefetchedClaims(TOTPClaimPrefetcher.PrefetchedClaims prefetchedClaims) {
+
+        this.prefetchedClaims = prefetchedClaims;
+    }
+
+    /**
+     * Reject the verification.
+     *
+     * @param status Status of the verification.
+     * @param reason Reason of the rejection.
+     * @return Always false, so that stages can return the result of this method.
+     */
+    public boolean reject(TOTPVerificationStatus status, String reason) {
+
+        return reject(TOTPVerificationResult.failure(status, reason));
+    }
+
+    /**
+     * Reject the verification.
+     *
+     * @param result Result of the failed verification.
+     * @return Always false, so that stages can return the result of this method.
+     */
+    public boolean reject(TOTPVerificationResult result) {
+
+        this.result = result;
+        return false;
+    }
+
+    /**
+     * Get the result of the verification.
+     *
+     * @return Result of the rejection, or {@link TOTPVerificationResult#VALID} if the verification was not rejected.
+     */
+    public TOTPVerificationResult getResult() {
+
+        return result;
+    }
+
+    /**
+     * Get the name of the stage which rejected the verification.
+     *
+     * @return Name of the stage, or null if the verification was not rejected.
+     */
+    public String getRejectedStage() {
+
+        return rejectedStage;
+    }
+
+    void setRejectedStage(String rejectedStage) {
+
+        this.rejectedStage = rejectedStage;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+/**
+ * Listener notified of the completion of each stage of the TOTP verification pipeline, used to collect timings.
+ */
+public interface TOTPVerificationListener {
+
+    /**
+     * Notified when a stage completes, whether it passed, rejected the verification or failed.
+     *
+     * @param stageName     Name of the stage.
+     * @param durationNanos Time taken by the stage in nanoseconds.
+     * @param passed        True if the verification continues with the next stage.
+     */
+    void onStageCompleted(String stageName, long durationNanos, boolean passed);
+}
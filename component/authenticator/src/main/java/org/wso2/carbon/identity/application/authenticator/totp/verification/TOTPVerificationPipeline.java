@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered sequence of TOTP verification stages.
+ * <p>
+ * Stages are executed in the order they are added, which is expected to be the order of their cost, so that cheap
+ * in-memory checks reject a request before any stage accessing a remote store is reached. The first stage which
+ * rejects the verification stops the pipeline. The listeners are notified of the duration of every executed stage.
+ */
+public class TOTPVerificationPipeline {
+
+    private static final Log log = LogFactory.getLog(TOTPVerificationPipeline.class);
+
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<TOTPVerificationStage> stages = new ArrayList<>();
+    private final List<TOTPVerificationListener> listeners;
+
+    /**
+     * Create a verification pipeline.
+     *
+     * @param listeners Listeners notified of the completion of each stage. The list is read on every execution, so
+     *                  listeners added later are notified as well.
+     */
+    public TOTPVerificationPipeline(List<TOTPVerificationListener> listeners) {
+
+        this.listeners = listeners;
+    }
+
+    /**
+     * Append a stage to the pipeline.
+     *
+     * @param name  Name of the stage reported to the listeners.
+     * @param stage Stage to append.
+     * @return This pipeline.
+     */
+    public TOTPVerificationPipeline addStage(String name, TOTPVerificationStage stage) {
+
+        stageNames.add(name);
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Execute the stages in order until one of them rejects the verification.
+     *
+     * @param context Verification context.
+     * @return True if all the stages passed.
+     * @throws AuthenticationFailedException If a stage could not be completed.
+     */
+    public boolean execute(TOTPVerificationContext context) throws AuthenticationFailedException {
+
+        for (int i = 0; i < stages.size(); i++) {
+            String stageName = stageNames.get(i);
+            long startTime = System.nanoTime();
+            boolean passed = false;
+            try {
+                passed = stages.get(i).execute(context);
+            } finally {
+                notifyListeners(stageName, System.nanoTime() - startTime, passed);
+            }
+            if (!passed) {
+                context.setRejectedStage(stageName);
+                if (log.isDebugEnabled()) {
+                    log.debug("TOTP verification of user: " + context.getUsername() + " was rejected at stage: " +
+                            stageName);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void notifyListeners(String stageName, long durationNanos, boolean passed) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("TOTP verification stage: " + stageName + " completed in " + durationNanos + " ns.");
+        }
+        for (TOTPVerificationListener listener : listeners) {
+            try {
+                listener.onStageCompleted(stageName, durationNanos, passed);
+            } catch (RuntimeException e) {
+                log.error("Error while notifying the completion of TOTP verification stage: " + stageName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+/**
+ * Result of a TOTP verification. Expected failures such as wrong codes are reported with a result instead of an
+ * exception, so that rejecting a request does not capture a stack trace.
+ */
+public final class TOTPVerificationResult {
+
+    public static final TOTPVerificationResult VALID = new TOTPVerificationResult(TOTPVerificationStatus.VALID, null);
+
+    private final TOTPVerificationStatus status;
+    private final String reason;
+
+    private TOTPVerificationResult(TOTPVerificationStatus status, String reason) {
+
+        this.status = status;
+        this.reason = reason;
+    }
+
+    /**
+     * Create the result of a failed verification.
+     *
+     * @param status Status of the verification.
+     * @param reason Reason of the failure.
+     * @return Verification result.
+     */
+    public static TOTPVerificationResult failure(TOTPVerificationStatus status, String reason) {
+
+        if (status == TOTPVerificationStatus.VALID) {
+            throw new IllegalArgumentException("Status of a failed verification cannot be VALID.");
+        }
+        return new TOTPVerificationResult(status, reason);
+    }
+
+    public TOTPVerificationStatus getStatus() {
+
+        return status;
+    }
+
+    public String getReason() {
+
+        return reason;
+    }
+
+    public boolean isValid() {
+
+        return status == TOTPVerificationStatus.VALID;
+    }
+}
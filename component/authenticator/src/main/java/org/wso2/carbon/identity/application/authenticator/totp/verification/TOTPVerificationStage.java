@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+
+/**
+ * A single step of the TOTP verification pipeline.
+ */
+@FunctionalInterface
+public interface TOTPVerificationStage {
+
+    /**
+     * Execute the stage.
+     *
+     * @param context Verification context shared by the stages.
+     * @return True to continue with the next stage, false if the verification is rejected by
+     * {@link TOTPVerificationContext#reject(TOTPVerificationResult)}.
+     * @throws AuthenticationFailedException If the stage could not be completed.
+     */
+    boolean execute(TOTPVerificationContext context) throws AuthenticationFailedException;
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+/**
+ * Status of a TOTP verification.
+ */
+public enum TOTPVerificationStatus {
+
+    /**
+     * The token matched a code of the user.
+     */
+    VALID,
+
+    /**
+     * The request did not contain a token.
+     */
+    EMPTY_TOKEN,
+
+    /**
+     * The token is not a code within the legal bounds.
+     */
+    MALFORMED_TOKEN,
+
+    /**
+     * The token did not match any code of the user.
+     */
+    INVALID_TOKEN,
+
+    /**
+     * The token matched a code of the user which was already accepted.
+     */
+    REUSED_TOKEN,
+
+    /**
+     * The account of the user is locked.
+     */
+    ACCOUNT_LOCKED,
+
+    /**
+     * The request exceeded the rate limit of the user or the tenant.
+     */
+    RATE_LIMITED,
+
+    /**
+     * The user is not enrolled for TOTP.
+     */
+    NOT_ENROLLED
+}
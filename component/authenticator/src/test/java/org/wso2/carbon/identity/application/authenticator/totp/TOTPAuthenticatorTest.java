@@ -29,6 +29,7 @@ import org.powermock.reflect.Whitebox;
 import org.testng.Assert;
 import org.testng.IObjectFactory;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.ObjectFactory;
 import org.testng.annotations.Test;
 import org.wso2.carbon.context.CarbonContext;
@@ -45,8 +46,19 @@ import org.wso2.carbon.identity.application.authentication.framework.context.Aut
 import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.exception.LogoutFailedException;
 import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
 import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPVerificationFailedException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPInMemoryStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPRateLimiter;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationListener;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.core.ServiceURL;
 import org.wso2.carbon.identity.core.ServiceURLBuilder;
 import org.wso2.carbon.identity.core.URLBuilderException;
@@ -59,10 +71,14 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -70,6 +86,9 @@ import javax.servlet.http.HttpServletResponse;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -85,6 +104,10 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
 public class TOTPAuthenticatorTest {
 
     private static final String USER_STORE_DOMAIN = "PRIMARY";
+    // Base32 encoded secret key of the user verified in the authentication response tests.
+    private static final String SECRET_KEY = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    private static final String FAILED_ATTEMPT_KEY = TOTPFailedAttemptCounter.buildKey(
+            TOTPAuthenticatorConstants.SUPER_TENANT_DOMAIN, USER_STORE_DOMAIN, "admin");
     @Mock
     private TOTPAuthenticator mockedTOTPAuthenticator;
 
@@ -317,6 +340,34 @@ public class TOTPAuthenticatorTest {
                 authenticationContext));
     }
 
+    @Test(description = "Test whether an email which finally fails to be delivered can be requested again within " +
+            "the same time step.")
+    public void testGenerateTOTPTokenWithFailedDelivery() throws Exception {
+
+        String username = "failed-delivery-user";
+        mockStatic(TOTPTokenGenerator.class);
+        // The queued email always fails to be delivered.
+        when(TOTPTokenGenerator.generateTOTPTokenLocal(anyString(), any(AuthenticationContext.class),
+                any(Runnable.class))).thenAnswer(invocation -> {
+                    ((Runnable) invocation.getArguments()[2]).run();
+                    return "123456";
+                });
+        mockStatic(TOTPUtil.class);
+        when(TOTPUtil.isSendVerificationCodeByEmailEnabled()).thenReturn(true);
+
+        AuthenticationContext authenticationContext = new AuthenticationContext();
+        authenticationContext.setProperty("username", username);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(Whitebox.invokeMethod(totpAuthenticator, "generateOTPAndSendByEmail",
+                    authenticationContext));
+            Assert.assertEquals(authenticationContext.getProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS),
+                    TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_SENT);
+        }
+        PowerMockito.verifyStatic(times(2));
+        TOTPTokenGenerator.generateTOTPTokenLocal(eq(username), any(AuthenticationContext.class),
+                any(Runnable.class));
+    }
+
     @Test(description = "Test case for successful logout request.")
     public void testProcessLogoutRequest() throws Exception {
 
@@ -591,6 +642,199 @@ public class TOTPAuthenticatorTest {
         totpAuthenticator.initiateAuthenticationRequest(httpServletRequest, httpServletResponse, context);
     }
 
+    @Test(description = "Test whether a code accepted once is rejected and counted as a failed attempt when it is " +
+            "submitted again.")
+    public void testProcessAuthenticationResponseWithReplayedToken() throws Exception {
+
+        mockVerification();
+        when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.TOKEN)).thenReturn(generateToken());
+        AuthenticationContext authenticationContext = buildVerificationContext();
+        totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                authenticationContext);
+        Assert.assertNotNull(authenticationContext.getSubject());
+
+        try {
+            totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                    buildVerificationContext());
+            Assert.fail("A replayed TOTP code should be rejected.");
+        } catch (TOTPVerificationFailedException e) {
+            Assert.assertEquals(e.getStatus(), TOTPVerificationStatus.REUSED_TOKEN);
+        }
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "1");
+        verify(userStoreManager).setUserClaimValues(anyString(), eq(expectedClaims), anyString());
+    }
+
+    @Test(description = "Test whether the verification stages run in order and stop at the first rejecting stage.")
+    public void testVerificationStageOrder() throws Exception {
+
+        mockVerification();
+        List<String> stages = new ArrayList<>();
+        TOTPVerificationListener listener = (stageName, durationNanos, passed) -> stages.add(stageName + ":" + passed);
+        TOTPDataHolder.getInstance().addVerificationListener(listener);
+        try {
+            when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.TOKEN)).thenReturn(generateToken());
+            totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                    buildVerificationContext());
+            Assert.assertEquals(stages, Arrays.asList("syntax:true", "rateLimit:true", "lockStatus:true",
+                    "replay:true", "enrolment:true", "secretFetch:true", "hmac:true", "counterUpdate:true"));
+
+            stages.clear();
+            when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.TOKEN)).thenReturn("12ab56");
+            try {
+                totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                        buildVerificationContext());
+                Assert.fail("A malformed TOTP code should be rejected.");
+            } catch (TOTPVerificationFailedException e) {
+                Assert.assertEquals(e.getStatus(), TOTPVerificationStatus.MALFORMED_TOKEN);
+            }
+            Assert.assertEquals(stages, Collections.singletonList("syntax:false"));
+        } finally {
+            TOTPDataHolder.getInstance().removeVerificationListener(listener);
+        }
+    }
+
+    @DataProvider(name = "invalidTokenProvider")
+    public Object[][] getInvalidTokens() {
+
+        return new Object[][]{
+                {"", TOTPVerificationStatus.EMPTY_TOKEN},
+                {"   ", TOTPVerificationStatus.EMPTY_TOKEN},
+                {"12ab56", TOTPVerificationStatus.MALFORMED_TOKEN},
+                {"123456789012345678901", TOTPVerificationStatus.MALFORMED_TOKEN}
+        };
+    }
+
+    @Test(description = "Test whether blank and malformed codes are rejected without being counted as failed " +
+            "attempts.", dataProvider = "invalidTokenProvider")
+    public void testProcessAuthenticationResponseWithInvalidToken(String token, TOTPVerificationStatus status)
+            throws Exception {
+
+        mockVerification();
+        when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.TOKEN)).thenReturn(token);
+        try {
+            totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                    buildVerificationContext());
+            Assert.fail("An invalid TOTP code should be rejected.");
+        } catch (TOTPVerificationFailedException e) {
+            Assert.assertEquals(e.getStatus(), status);
+        }
+        verify(userStoreManager, never()).setUserClaimValues(anyString(), any(Map.class), anyString());
+        verify(userStoreManager, never()).getUserClaimValues(anyString(), any(String[].class), anyString());
+    }
+
+    @Test(description = "Test whether an account known to be locked is rejected from the lock cache without " +
+            "accessing the user store.")
+    public void testProcessAuthenticationResponseWithCachedAccountLock() throws Exception {
+
+        mockVerification();
+        TOTPDataHolder.getInstance().getAccountLockCache().markLocked(FAILED_ATTEMPT_KEY, 0);
+        when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.TOKEN)).thenReturn(generateToken());
+        try {
+            totpAuthenticator.processAuthenticationResponse(httpServletRequest, httpServletResponse,
+                    buildVerificationContext());
+            Assert.fail("The TOTP of a locked account should be rejected.");
+        } catch (TOTPVerificationFailedException e) {
+            Assert.assertEquals(e.getStatus(), TOTPVerificationStatus.ACCOUNT_LOCKED);
+        }
+        PowerMockito.verifyStatic(never());
+        TOTPUtil.isAccountLocked(anyString(), anyString(), anyString());
+        verify(userStoreManager, never()).getUserClaimValues(anyString(), any(String[].class), anyString());
+        verify(userStoreManager, never()).setUserClaimValues(anyString(), any(Map.class), anyString());
+    }
+
+    @Test(description = "Test whether a rate limited request to send a TOTP is kept incomplete with the throttled " +
+            "status, without sending the code.")
+    public void testProcessWithRateLimitedSendToken() throws Exception {
+
+        TOTPRateLimiter userRateLimiter = new TOTPRateLimiter(10, 1, 1);
+        Assert.assertTrue(userRateLimiter.tryAcquire("admin"));
+        TOTPDataHolder.getInstance().setUserRateLimiter(userRateLimiter);
+        try {
+            AuthenticationContext authenticationContext = buildVerificationContext();
+            when(httpServletRequest.getParameter(TOTPAuthenticatorConstants.SEND_TOKEN)).thenReturn("true");
+            AuthenticatorFlowStatus status = totpAuthenticator.process(httpServletRequest, httpServletResponse,
+                    authenticationContext);
+            Assert.assertEquals(status, AuthenticatorFlowStatus.INCOMPLETE);
+            Assert.assertEquals(authenticationContext.getProperty(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS),
+                    TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_THROTTLED);
+            verify(httpServletResponse).setHeader(TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_HEADER,
+                    TOTPAuthenticatorConstants.TOKEN_SEND_STATUS_THROTTLED);
+            PowerMockito.verifyStatic(never());
+            TOTPTokenGenerator.generateTOTPTokenLocal(anyString(), any(AuthenticationContext.class),
+                    any(Runnable.class));
+        } finally {
+            TOTPDataHolder.getInstance().setUserRateLimiter(null);
+        }
+    }
+
+    /**
+     * Mock the configurations and the user store accessed while verifying a TOTP of the "admin" user, with account
+     * locking enabled after five failed attempts.
+     */
+    private void mockVerification() throws Exception {
+
+        TOTPDataHolder.getInstance().setStateStore(new TOTPInMemoryStateStore());
+        TOTPDataHolder.getInstance().getFailedAttemptCounter().invalidate(FAILED_ATTEMPT_KEY);
+        TOTPDataHolder.getInstance().getAccountLockCache().invalidate(FAILED_ATTEMPT_KEY);
+        when(TOTPUtil.getTimeStepSize(any(AuthenticationContext.class))).thenReturn(30L);
+        when(TOTPUtil.getWindowSize(any(AuthenticationContext.class))).thenReturn(3);
+        when(TOTPUtil.isTokenReusePrevented()).thenReturn(true);
+        when(TOTPUtil.isLocalUser(any(AuthenticationContext.class))).thenReturn(true);
+        when(TOTPUtil.isAccountLockingEnabledForTotp()).thenReturn(true);
+        when(TOTPUtil.getAccountLockConnectorConfigs(anyString())).thenReturn(buildAccountLockConfigs());
+        when(TOTPUtil.getUserRealm(anyString())).thenReturn(userRealm);
+        when(TOTPUtil.decrypt(anyString())).thenReturn(SECRET_KEY);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(IdentityUtil.addDomainToName(anyString(), anyString())).thenReturn(USER_STORE_DOMAIN + "/admin");
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, "encryptedSecretKey");
+        claims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
+        claims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM, "0");
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString())).thenReturn(claims);
+    }
+
+    private static Property[] buildAccountLockConfigs() {
+
+        Property accountLockEnabled = new Property();
+        accountLockEnabled.setName(TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE);
+        accountLockEnabled.setValue("true");
+        Property maxAttempts = new Property();
+        maxAttempts.setName(TOTPAuthenticatorConstants.PROPERTY_ACCOUNT_LOCK_ON_FAILURE_MAX);
+        maxAttempts.setValue("5");
+        return new Property[]{accountLockEnabled, maxAttempts};
+    }
+
+    private static AuthenticationContext buildVerificationContext() {
+
+        AuthenticatedUser authenticatedUser = new AuthenticatedUser();
+        authenticatedUser.setUserName("admin");
+        authenticatedUser.setUserStoreDomain(USER_STORE_DOMAIN);
+        authenticatedUser.setTenantDomain(TOTPAuthenticatorConstants.SUPER_TENANT_DOMAIN);
+        AuthenticationContext authenticationContext = new AuthenticationContext();
+        authenticationContext.setTenantDomain(TOTPAuthenticatorConstants.SUPER_TENANT_DOMAIN);
+        authenticationContext.setContextIdentifier(UUID.randomUUID().toString());
+        authenticationContext.setProperty("username", "admin");
+        authenticationContext.setProperty(TOTPAuthenticatorConstants.AUTHENTICATED_USER, authenticatedUser);
+        return authenticationContext;
+    }
+
+    /**
+     * Generate the current TOTP of {@link #SECRET_KEY}.
+     */
+    private static String generateToken() throws Exception {
+
+        TOTPAuthenticatorCredentials credentials = new TOTPAuthenticatorCredentials(
+                new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
+                        .setKeyRepresentation(TOTPKeyRepresentation.BASE32).setWindowSize(3)
+                        .setTimeStepSizeInMillis(TimeUnit.SECONDS.toMillis(30)).build());
+        byte[] key = Whitebox.invokeMethod(credentials, "decodeSecret", SECRET_KEY);
+        long timeWindow = Whitebox.invokeMethod(credentials, "getTimeWindowFromTime", System.currentTimeMillis());
+        int code = Whitebox.invokeMethod(credentials, "calculateCode", key, timeWindow);
+        return String.format("%06d", code);
+    }
+
     @ObjectFactory
     public IObjectFactory getObjectFactory() {
 
@@ -18,6 +18,7 @@
  */
 package org.wso2.carbon.identity.application.authenticator.totp;
 
+import org.apache.commons.codec.binary.Base64;
 import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.testng.PowerMockObjectFactory;
@@ -100,6 +101,19 @@ public class TOTPKeyGeneratorTest {
         Assert.assertTrue(TOTPKeyGenerator.resetLocal("admin"));
     }
 
+    @Test
+    public void testBuildEnrolmentQRCodeURL() throws Exception {
+        when(TOTPUtil.decrypt("EncryptedSecretKey")).thenReturn("SECRETKEY");
+        when(TOTPUtil.getTOTPIssuerDisplayName(anyString(), (AuthenticationContext) anyObject()))
+                .thenReturn("carbon.super");
+        when(TOTPUtil.getTOTPDisplayUsername("admin")).thenReturn("admin");
+        when(TOTPUtil.getTimeStepSize(authenticationContext)).thenReturn(30L);
+        String qrCodeUrl = TOTPKeyGenerator.buildEnrolmentQRCodeURL("admin", "EncryptedSecretKey",
+                authenticationContext);
+        Assert.assertEquals(new String(Base64.decodeBase64(qrCodeUrl)),
+                "otpauth://totp/carbon.super:admin?secret=SECRETKEY&issuer=carbon.super&period=30");
+    }
+
     @ObjectFactory
     public IObjectFactory getObjectFactory() {
         return new PowerMockObjectFactory();
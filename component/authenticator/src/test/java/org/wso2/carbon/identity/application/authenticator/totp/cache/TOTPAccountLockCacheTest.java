@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TOTPAccountLockCacheTest {
+
+    private static final String KEY = TOTPFailedAttemptCounter.buildKey("carbon.super", "PRIMARY", "admin");
+
+    private TOTPAccountLockCache accountLockCache;
+
+    @BeforeMethod
+    public void setUp() {
+
+        accountLockCache = new TOTPAccountLockCache();
+        accountLockCache.setCacheTimeout(60);
+    }
+
+    @Test(description = "Test whether a locked account is served from the cache until the unlock time.")
+    public void testMarkLocked() {
+
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+        accountLockCache.markLocked(KEY, System.currentTimeMillis() + 10000);
+        Assert.assertTrue(accountLockCache.isLocked(KEY));
+        accountLockCache.invalidate(KEY);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+    }
+
+    @Test(description = "Test whether an elapsed unlock time is not cached.")
+    public void testExpiredUnlockTime() throws Exception {
+
+        accountLockCache.markLocked(KEY, System.currentTimeMillis() - 1);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+        accountLockCache.markLocked(KEY, System.currentTimeMillis() + 20);
+        Thread.sleep(50);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+    }
+
+    @Test(description = "Test whether a lock without an unlock time is cached for the cache timeout only.")
+    public void testLockWithoutUnlockTime() {
+
+        accountLockCache.markLocked(KEY, 0);
+        Assert.assertTrue(accountLockCache.isLocked(KEY));
+        accountLockCache.setCacheTimeout(0);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+        accountLockCache.markLocked(KEY, 0);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({PrivilegedCarbonContext.class})
+public class TOTPClaimPrefetcherTest {
+
+    private static final String CONTEXT_ID = "3a6b5b7e-1d2c-4f5a-9b8c-7d6e5f4a3b2c";
+    private static final String USERNAME = "admin@carbon.super";
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @Mock
+    private PrivilegedCarbonContext privilegedCarbonContext;
+
+    private TOTPClaimPrefetcher claimPrefetcher;
+
+    @BeforeMethod
+    public void setUp() {
+
+        initMocks(this);
+        mockStatic(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(privilegedCarbonContext);
+        when(privilegedCarbonContext.getTenantDomain()).thenReturn(TENANT_DOMAIN);
+        when(privilegedCarbonContext.getTenantId()).thenReturn(-1234);
+        claimPrefetcher = new TOTPClaimPrefetcher(1, 1, TimeUnit.MINUTES.toMillis(2));
+        claimPrefetcher.start();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        claimPrefetcher.shutdown();
+    }
+
+    @Test(description = "Test whether prefetched claims are loaded within the tenant flow of the caller and are " +
+            "taken once by the same user.")
+    public void testTake() throws Exception {
+
+        CountDownLatch loaded = new CountDownLatch(2);
+        claimPrefetcher.prefetch(CONTEXT_ID, USERNAME, () -> {
+            loaded.countDown();
+            return "encryptedSecretKey";
+        }, () -> {
+            loaded.countDown();
+            return true;
+        });
+        Assert.assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        TOTPClaimPrefetcher.PrefetchedClaims claims = claimPrefetcher.take(CONTEXT_ID, USERNAME);
+        Assert.assertNotNull(claims);
+        Assert.assertEquals(claims.getEncryptedSecretKey(), "encryptedSecretKey");
+        Assert.assertEquals(claims.isAccountLocked(), Boolean.TRUE);
+        Assert.assertNull(claimPrefetcher.take(CONTEXT_ID, USERNAME));
+        verify(privilegedCarbonContext, times(2)).setTenantDomain(TENANT_DOMAIN);
+        verify(privilegedCarbonContext, times(2)).setTenantId(-1234);
+
+        claimPrefetcher.prefetch(CONTEXT_ID, USERNAME, () -> "encryptedSecretKey", null);
+        Assert.assertNull(claimPrefetcher.take(CONTEXT_ID, "user@carbon.super"));
+        Assert.assertEquals(claimPrefetcher.size(), 0);
+    }
+
+    @Test(description = "Test whether claims which are not loaded, failed to load or were skipped are not returned.")
+    public void testUnavailableClaims() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        claimPrefetcher.prefetch(CONTEXT_ID, USERNAME, () -> {
+            release.await();
+            return "encryptedSecretKey";
+        }, () -> {
+            throw new IOException("Lock status not available.");
+        });
+        // The worker and the queue are taken by the first prefetch, so that the loads of this one are skipped.
+        claimPrefetcher.prefetch("other", USERNAME, () -> "encryptedSecretKey", () -> false);
+        TOTPClaimPrefetcher.PrefetchedClaims skippedClaims = claimPrefetcher.take("other", USERNAME);
+        Assert.assertNotNull(skippedClaims);
+        Assert.assertNull(skippedClaims.getEncryptedSecretKey());
+        Assert.assertNull(skippedClaims.isAccountLocked());
+
+        TOTPClaimPrefetcher.PrefetchedClaims claims = claimPrefetcher.take(CONTEXT_ID, USERNAME);
+        Assert.assertNotNull(claims);
+        Assert.assertNull(claims.getEncryptedSecretKey());
+        release.countDown();
+        Thread.sleep(100);
+        Assert.assertEquals(claims.getEncryptedSecretKey(), "encryptedSecretKey");
+        Assert.assertNull(claims.isAccountLocked());
+    }
+
+    @Test(description = "Test whether expired prefetches are discarded.")
+    public void testRemoveExpired() throws Exception {
+
+        TOTPClaimPrefetcher expiringPrefetcher = new TOTPClaimPrefetcher(1, 10, 10);
+        expiringPrefetcher.start();
+        try {
+            expiringPrefetcher.prefetch(CONTEXT_ID, USERNAME, () -> "encryptedSecretKey", null);
+            expiringPrefetcher.prefetch("other", USERNAME, () -> "encryptedSecretKey", null);
+            Thread.sleep(50);
+            expiringPrefetcher.removeExpired();
+            Assert.assertEquals(expiringPrefetcher.size(), 0);
+            Assert.assertNull(expiringPrefetcher.take(CONTEXT_ID, USERNAME));
+        } finally {
+            expiringPrefetcher.shutdown();
+        }
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
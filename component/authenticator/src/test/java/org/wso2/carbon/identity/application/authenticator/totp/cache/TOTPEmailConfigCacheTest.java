@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.mgt.config.Config;
+import org.wso2.carbon.identity.mgt.config.ConfigBuilder;
+import org.wso2.carbon.identity.mgt.config.ConfigType;
+import org.wso2.carbon.identity.mgt.config.StorageType;
+
+import java.util.Properties;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({ConfigBuilder.class})
+public class TOTPEmailConfigCacheTest {
+
+    private static final int TENANT_ID = -1234;
+    private static final String TEMPLATE = "TOTP code : {totp-token}";
+
+    @Mock
+    private ConfigBuilder configBuilder;
+
+    @Mock
+    private Config config;
+
+    private TOTPEmailConfigCache emailConfigCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(ConfigBuilder.class);
+        when(ConfigBuilder.getInstance()).thenReturn(configBuilder);
+        Properties properties = new Properties();
+        properties.setProperty(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME, TEMPLATE);
+        when(config.getProperties()).thenReturn(properties);
+        when(config.getProperty(TOTPAuthenticatorConstants.EMAIL_TEMPLATE_NAME)).thenReturn(TEMPLATE);
+        when(configBuilder.loadConfiguration(eq(ConfigType.EMAIL), eq(StorageType.REGISTRY), anyInt()))
+                .thenReturn(config);
+        emailConfigCache = new TOTPEmailConfigCache();
+        emailConfigCache.setCacheTimeout(300);
+    }
+
+    @Test(description = "Test whether the template is loaded from the registry once until it is invalidated.")
+    public void testGetTemplate() throws Exception {
+
+        Assert.assertEquals(emailConfigCache.getTemplate(TENANT_ID), TEMPLATE);
+        Assert.assertEquals(emailConfigCache.getTemplate(TENANT_ID), TEMPLATE);
+        verify(configBuilder, times(1)).loadConfiguration(ConfigType.EMAIL, StorageType.REGISTRY, TENANT_ID);
+
+        emailConfigCache.invalidate(TENANT_ID);
+        Assert.assertEquals(emailConfigCache.getTemplate(TENANT_ID), TEMPLATE);
+        verify(configBuilder, times(2)).loadConfiguration(ConfigType.EMAIL, StorageType.REGISTRY, TENANT_ID);
+    }
+
+    @Test(description = "Test whether a disabled cache loads the template on every call.")
+    public void testDisabledCache() throws Exception {
+
+        emailConfigCache.setCacheTimeout(0);
+        emailConfigCache.getTemplate(TENANT_ID);
+        emailConfigCache.getTemplate(TENANT_ID);
+        verify(configBuilder, times(2)).loadConfiguration(ConfigType.EMAIL, StorageType.REGISTRY, TENANT_ID);
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TOTPEmailSendTrackerTest {
+
+    private static final String KEY = TOTPFailedAttemptCounter.buildKey("carbon.super", "PRIMARY", "admin");
+    private static final long STEP_SIZE = 30000;
+
+    @Test(description = "Test whether only the first send within a time step is allowed.")
+    public void testTryAcquire() {
+
+        TOTPEmailSendTracker emailSendTracker = new TOTPEmailSendTracker();
+        Assert.assertTrue(emailSendTracker.tryAcquire(KEY, 100, STEP_SIZE));
+        Assert.assertFalse(emailSendTracker.tryAcquire(KEY, 100, STEP_SIZE));
+        Assert.assertTrue(emailSendTracker.tryAcquire(KEY, 101, STEP_SIZE));
+        Assert.assertFalse(emailSendTracker.tryAcquire(KEY, 101, STEP_SIZE));
+        Assert.assertTrue(emailSendTracker.tryAcquire("other-user", 101, STEP_SIZE));
+    }
+
+    @Test(description = "Test whether a released send can be retried within the same time step.")
+    public void testRelease() {
+
+        TOTPEmailSendTracker emailSendTracker = new TOTPEmailSendTracker();
+        Assert.assertTrue(emailSendTracker.tryAcquire(KEY, 100, STEP_SIZE));
+        emailSendTracker.release(KEY, 99);
+        Assert.assertFalse(emailSendTracker.tryAcquire(KEY, 100, STEP_SIZE));
+        emailSendTracker.release(KEY, 100);
+        Assert.assertTrue(emailSendTracker.tryAcquire(KEY, 100, STEP_SIZE));
+    }
+
+    @Test(description = "Test whether expired records are swept.")
+    public void testSweepExpiredRecords() {
+
+        TOTPEmailSendTracker emailSendTracker = new TOTPEmailSendTracker();
+        for (int i = 0; i < 2000; i++) {
+            emailSendTracker.tryAcquire("user" + i, 100, -1);
+        }
+        Assert.assertTrue(emailSendTracker.size() < 2000);
+    }
+}
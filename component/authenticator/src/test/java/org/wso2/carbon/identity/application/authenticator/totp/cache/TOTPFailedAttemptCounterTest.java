@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authentication.framework.model.AuthenticatedUser;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPInMemoryStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.core.util.IdentityUtil;
+import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({TOTPUtil.class, IdentityUtil.class})
+public class TOTPFailedAttemptCounterTest {
+
+    private static final String USERNAME = "PRIMARY/admin@carbon.super";
+    private static final String USERNAME_WITH_DOMAIN = "PRIMARY/admin";
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    private AuthenticatedUser authenticatedUser;
+
+    private TOTPFailedAttemptCounter failedAttemptCounter;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(TOTPUtil.class);
+        mockStatic(IdentityUtil.class);
+        when(TOTPUtil.getUserRealm(anyString())).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(IdentityUtil.addDomainToName(anyString(), anyString())).thenReturn(USERNAME_WITH_DOMAIN);
+        authenticatedUser = new AuthenticatedUser();
+        authenticatedUser.setUserName("admin");
+        authenticatedUser.setUserStoreDomain("PRIMARY");
+        authenticatedUser.setTenantDomain("carbon.super");
+        failedAttemptCounter = new TOTPFailedAttemptCounter();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        failedAttemptCounter.shutdown();
+        TOTPDataHolder.getInstance().setStateStore(new TOTPInMemoryStateStore());
+    }
+
+    @Test(description = "Test whether the counter is loaded from the user store only once.")
+    public void testIncrementLoadsClaimsOnce() throws Exception {
+
+        useSharedStateStore();
+        mockStoredClaims("2", "0");
+        Assert.assertEquals(failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME), 3);
+        Assert.assertEquals(failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME), 4);
+        verify(userStoreManager, times(1)).getUserClaimValues(anyString(), any(String[].class), anyString());
+        // Write-behind is not started, hence each increment is written through.
+        verify(userStoreManager, times(2)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN),
+                anyMapOf(String.class, String.class), anyString());
+    }
+
+    @Test(description = "Test whether concurrent increments are not lost and deferred to the flush.")
+    public void testConcurrentIncrementsWithWriteBehind() throws Exception {
+
+        useSharedStateStore();
+        mockStoredClaims("0", "0");
+        failedAttemptCounter.start(TimeUnit.HOURS.toSeconds(1));
+        int threads = 8;
+        final int incrementsPerThread = 50;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            executorService.execute(() -> {
+                try {
+                    for (int j = 0; j < incrementsPerThread; j++) {
+                        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+                    }
+                } catch (Exception e) {
+                    Assert.fail("Unexpected error while incrementing the counter.", e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await(10, TimeUnit.SECONDS);
+        executorService.shutdown();
+        verify(userStoreManager, never()).setUserClaimValues(anyString(), anyMapOf(String.class, String.class),
+                anyString());
+
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM,
+                String.valueOf(threads * incrementsPerThread));
+        failedAttemptCounter.shutdown();
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN), eq(expectedClaims),
+                anyString());
+    }
+
+    @Test(description = "Test whether only one failure owns the lock transition.")
+    public void testMarkLocked() throws Exception {
+
+        mockStoredClaims("4", "1");
+        int attempts = failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        Assert.assertTrue(failedAttemptCounter.markLocked(authenticatedUser, attempts));
+        Assert.assertFalse(failedAttemptCounter.markLocked(authenticatedUser, attempts));
+    }
+
+    @Test(description = "Test whether resetting already cleared counters does not write to the user store.")
+    public void testResetFailedAttempts() throws Exception {
+
+        mockStoredClaims("0", "0");
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        verify(userStoreManager, times(1)).getUserClaimValues(anyString(), any(String[].class), anyString());
+        verify(userStoreManager, never()).setUserClaimValues(anyString(), anyMapOf(String.class, String.class),
+                anyString());
+
+        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        // Only the failed attempt claim differs from the stored values.
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN), eq(expectedClaims),
+                anyString());
+    }
+
+    @Test(description = "Test whether updates pending within the flush interval are coalesced into a single write.")
+    public void testCoalescePendingUpdates() throws Exception {
+
+        useSharedStateStore();
+        mockStoredClaims("0", "2");
+        failedAttemptCounter.start(TimeUnit.HOURS.toSeconds(1));
+        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.flush();
+        // The increments were never stored, hence only the lockout count has to be reset.
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM, "0");
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN), eq(expectedClaims),
+                anyString());
+
+        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        failedAttemptCounter.shutdown();
+        verify(userStoreManager, times(1)).setUserClaimValues(anyString(), anyMapOf(String.class, String.class),
+                anyString());
+    }
+
+    @Test(description = "Test whether write-behind is not enabled without a shared state store.")
+    public void testWriteBehindRequiresSharedStateStore() throws Exception {
+
+        mockStoredClaims("0", "0");
+        failedAttemptCounter.start(TimeUnit.HOURS.toSeconds(1));
+        Assert.assertFalse(failedAttemptCounter.isWriteBehindEnabled());
+        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN),
+                anyMapOf(String.class, String.class), anyString());
+    }
+
+    @Test(description = "Test whether failures stored by the other nodes are kept when the count is written through.")
+    public void testMergeStoredFailedAttempts() throws Exception {
+
+        // Another node stores two more failures after the count is loaded.
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenReturn(buildClaims("1", "0"), buildClaims("3", "0"));
+        Assert.assertEquals(failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME), 4);
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "4");
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN), eq(expectedClaims),
+                anyString());
+
+        // A reset replaces the stored count instead of adding to it.
+        failedAttemptCounter.resetFailedAttempts(authenticatedUser, USERNAME);
+        expectedClaims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
+        verify(userStoreManager, times(1)).setUserClaimValues(eq(USERNAME_WITH_DOMAIN), eq(expectedClaims),
+                anyString());
+    }
+
+    @Test(description = "Test whether concurrent increments written through add each local failure once to the " +
+            "stored count.")
+    public void testConcurrentIncrementsWithWriteThrough() throws Exception {
+
+        // The user store keeps the last written claims, as a real user store does.
+        final Map<String, String> storedClaims = new ConcurrentHashMap<>(buildClaims("0", "0"));
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenAnswer(invocation -> new HashMap<>(storedClaims));
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Map<String, String> claims = (Map<String, String>) invocation.getArguments()[1];
+            storedClaims.putAll(claims);
+            // Widen the window in which the written count is stored but not yet known to be persisted.
+            Thread.sleep(1);
+            return null;
+        }).when(userStoreManager).setUserClaimValues(anyString(), anyMapOf(String.class, String.class), anyString());
+        int threads = 4;
+        final int incrementsPerThread = 25;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            executorService.execute(() -> {
+                try {
+                    for (int j = 0; j < incrementsPerThread; j++) {
+                        failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME);
+                    }
+                } catch (Exception e) {
+                    Assert.fail("Unexpected error while incrementing the counter.", e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executorService.shutdown();
+        Assert.assertFalse(failedAttemptCounter.isWriteBehindEnabled());
+        Assert.assertEquals(storedClaims.get(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM),
+                String.valueOf(threads * incrementsPerThread));
+    }
+
+    @Test(description = "Test whether an invalidated counter is reloaded from the user store.")
+    public void testInvalidate() throws Exception {
+
+        useSharedStateStore();
+        mockStoredClaims("2", "0");
+        Assert.assertEquals(failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME), 3);
+
+        // The failed attempts are reset outside the authenticator.
+        mockStoredClaims("0", "0");
+        failedAttemptCounter.invalidate(TOTPFailedAttemptCounter.buildKey(authenticatedUser));
+        Assert.assertEquals(failedAttemptCounter.incrementFailedAttempts(authenticatedUser, USERNAME), 1);
+        verify(userStoreManager, times(2)).getUserClaimValues(anyString(), any(String[].class), anyString());
+    }
+
+    private void useSharedStateStore() {
+
+        TOTPDataHolder.getInstance().setStateStore(new TOTPInMemoryStateStore() {
+
+            @Override
+            public boolean isShared() {
+
+                return true;
+            }
+        });
+    }
+
+    private void mockStoredClaims(String failedAttempts, String failedLoginLockoutCount) throws Exception {
+
+        when(userStoreManager.getUserClaimValues(anyString(), any(String[].class), anyString()))
+                .thenReturn(buildClaims(failedAttempts, failedLoginLockoutCount));
+    }
+
+    private static Map<String, String> buildClaims(String failedAttempts, String failedLoginLockoutCount) {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, failedAttempts);
+        claims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM, failedLoginLockoutCount);
+        return claims;
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TOTPLockTimingWheelTest {
+
+    private static final long TICK_DURATION = 100;
+
+    private TOTPLockTimingWheel lockTimingWheel;
+
+    @BeforeMethod
+    public void setUp() {
+
+        lockTimingWheel = new TOTPLockTimingWheel(TICK_DURATION, 6);
+    }
+
+    @Test(description = "Test whether locks are expired when the wheel reaches their tick.")
+    public void testAdvanceExpiresLocks() {
+
+        long now = System.currentTimeMillis();
+        lockTimingWheel.schedule("user1", now + 10 * TICK_DURATION);
+        lockTimingWheel.schedule("user2", now + 60 * TICK_DURATION);
+        Assert.assertTrue(lockTimingWheel.isActive("user1"));
+        Assert.assertTrue(lockTimingWheel.isActive("user2"));
+
+        lockTimingWheel.advance(now + 5 * TICK_DURATION);
+        Assert.assertEquals(lockTimingWheel.size(), 2);
+        // user2 expires several revolutions later and has to survive the revolution in which user1 expires.
+        lockTimingWheel.advance(now + 12 * TICK_DURATION);
+        Assert.assertEquals(lockTimingWheel.size(), 1);
+        Assert.assertTrue(lockTimingWheel.isActive("user2"));
+        lockTimingWheel.advance(now + 61 * TICK_DURATION);
+        Assert.assertEquals(lockTimingWheel.size(), 0);
+    }
+
+    @Test(description = "Test whether rescheduling and cancelling a lock replace the previous lock.")
+    public void testScheduleAndCancel() {
+
+        long now = System.currentTimeMillis();
+        lockTimingWheel.schedule("user1", now + 2 * TICK_DURATION);
+        lockTimingWheel.schedule("user1", now + 20 * TICK_DURATION);
+        lockTimingWheel.advance(now + 3 * TICK_DURATION);
+        Assert.assertTrue(lockTimingWheel.isActive("user1"));
+        lockTimingWheel.cancel("user1");
+        Assert.assertFalse(lockTimingWheel.isActive("user1"));
+        lockTimingWheel.schedule("user1", now - 1);
+        Assert.assertFalse(lockTimingWheel.isActive("user1"));
+    }
+
+    @Test(description = "Test whether an expired lock is not reported as active before the wheel advances.")
+    public void testExpiredLockBeforeAdvance() throws Exception {
+
+        lockTimingWheel.schedule("user1", System.currentTimeMillis() + 20);
+        Thread.sleep(50);
+        Assert.assertFalse(lockTimingWheel.isActive("user1"));
+        Assert.assertEquals(lockTimingWheel.size(), 0);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TOTPSingleFlightCacheTest {
+
+    private static final String TENANT_DOMAIN = "carbon.super";
+
+    @Test(description = "Test whether a value is loaded once until it is invalidated.")
+    public void testGet() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        TOTPSingleFlightCache<String, String> cache = new TOTPSingleFlightCache<>("test", 300);
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super1");
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super1");
+
+        cache.invalidate(TENANT_DOMAIN);
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super2");
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test(description = "Test whether concurrent misses for the same key share a single load.")
+    public void testConcurrentMisses() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        TOTPSingleFlightCache<String, String> cache = new TOTPSingleFlightCache<>("test", 300);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(() -> cache.get(TENANT_DOMAIN, key -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return key;
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals(result.get(5, TimeUnit.SECONDS), TENANT_DOMAIN);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        Assert.assertEquals(loads.get(), 1);
+    }
+
+    @Test(description = "Test whether a failed load is reported and not cached.")
+    public void testFailedLoad() throws Exception {
+
+        TOTPSingleFlightCache<String, String> cache = new TOTPSingleFlightCache<>("test", 300);
+        try {
+            cache.get(TENANT_DOMAIN, key -> {
+                throw new IOException("Registry is not available.");
+            });
+            Assert.fail("Load failure is not reported.");
+        } catch (IOException e) {
+            Assert.assertEquals(e.getMessage(), "Registry is not available.");
+        }
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key), TENANT_DOMAIN);
+    }
+
+    @Test(description = "Test whether a disabled cache loads the value on every call.")
+    public void testDisabledCache() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        TOTPSingleFlightCache<String, String> cache = new TOTPSingleFlightCache<>("test", 0);
+        cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet());
+        cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet());
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test(description = "Test whether a value is reloaded ahead of its expiry.")
+    public void testEarlyRefresh() throws Exception {
+
+        AtomicInteger loads = new AtomicInteger();
+        TOTPSingleFlightCache<String, String> cache = new TOTPSingleFlightCache<>("test", 1);
+        cache.setEarlyRefreshRatio(0.1);
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super1");
+        Thread.sleep(150);
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super2");
+        Assert.assertEquals(cache.get(TENANT_DOMAIN, key -> key + loads.incrementAndGet()), "carbon.super2");
+        Assert.assertEquals(loads.get(), 2);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TOTPUsedCodeCacheTest {
+
+    private static final String KEY = TOTPFailedAttemptCounter.buildKey("carbon.super", "PRIMARY", "admin");
+    private static final long STEP_SIZE = 30000;
+
+    @Test(description = "Test whether a code is accepted only once within its time step.")
+    public void testMarkUsed() {
+
+        TOTPUsedCodeCache usedCodeCache = new TOTPUsedCodeCache();
+        long expiryTime = System.currentTimeMillis() + STEP_SIZE;
+        Assert.assertFalse(usedCodeCache.isUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(usedCodeCache.markUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(usedCodeCache.isUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertFalse(usedCodeCache.markUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertFalse(usedCodeCache.isUsed(KEY, 123456, 101, expiryTime));
+        Assert.assertTrue(usedCodeCache.markUsed(KEY, 123456, 101, expiryTime));
+        Assert.assertTrue(usedCodeCache.markUsed(KEY, 654321, 100, expiryTime));
+        Assert.assertTrue(usedCodeCache.markUsed("other-user", 123456, 100, expiryTime));
+        Assert.assertEquals(usedCodeCache.size(), 4);
+    }
+
+    @Test(description = "Test whether expired codes are dropped with their bucket.")
+    public void testExpiredBucket() throws Exception {
+
+        TOTPUsedCodeCache usedCodeCache = new TOTPUsedCodeCache(10, 4);
+        long expiryTime = System.currentTimeMillis() + 10;
+        Assert.assertTrue(usedCodeCache.markUsed(KEY, 123456, 100, expiryTime));
+        Thread.sleep(50);
+        Assert.assertEquals(usedCodeCache.size(), 0);
+        Assert.assertTrue(usedCodeCache.markUsed(KEY, 123456, 100, System.currentTimeMillis() + 10));
+    }
+
+    @Test(description = "Test whether a bucket grows beyond its initial capacity.")
+    public void testBucketGrowth() {
+
+        TOTPUsedCodeCache usedCodeCache = new TOTPUsedCodeCache();
+        long expiryTime = System.currentTimeMillis() + STEP_SIZE;
+        for (int i = 1; i <= 1000; i++) {
+            Assert.assertTrue(usedCodeCache.markUsed("user" + i, i, 100, expiryTime));
+        }
+        for (int i = 1; i <= 1000; i++) {
+            Assert.assertFalse(usedCodeCache.markUsed("user" + i, i, 100, expiryTime));
+        }
+    }
+}
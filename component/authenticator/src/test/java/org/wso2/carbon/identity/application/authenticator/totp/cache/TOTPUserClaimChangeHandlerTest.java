@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.event.IdentityEventConstants;
+import org.wso2.carbon.identity.event.IdentityEventMessageContext;
+import org.wso2.carbon.identity.event.event.Event;
+import org.wso2.carbon.user.core.UserStoreManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+public class TOTPUserClaimChangeHandlerTest {
+
+    private static final String KEY = TOTPFailedAttemptCounter.buildKey("carbon.super", "PRIMARY", "admin");
+
+    private TOTPUserClaimChangeHandler claimChangeHandler;
+
+    private TOTPAccountLockCache accountLockCache;
+
+    @BeforeMethod
+    public void setUp() {
+
+        claimChangeHandler = new TOTPUserClaimChangeHandler();
+        accountLockCache = TOTPDataHolder.getInstance().getAccountLockCache();
+        accountLockCache.markLocked(KEY, System.currentTimeMillis() + 10000);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        accountLockCache.invalidate(KEY);
+    }
+
+    @Test(description = "Test whether only claim update events are handled.")
+    public void testCanHandle() {
+
+        Assert.assertTrue(claimChangeHandler.canHandle(new IdentityEventMessageContext(
+                buildEvent(IdentityEventConstants.Event.POST_SET_USER_CLAIMS, new HashMap<>()))));
+        Assert.assertTrue(claimChangeHandler.canHandle(new IdentityEventMessageContext(
+                buildEvent(IdentityEventConstants.Event.POST_SET_USER_CLAIM, new HashMap<>()))));
+        Assert.assertFalse(claimChangeHandler.canHandle(new IdentityEventMessageContext(
+                buildEvent(IdentityEventConstants.Event.TRIGGER_NOTIFICATION, new HashMap<>()))));
+    }
+
+    @Test(description = "Test whether unlocking the account drops the cached locked status.")
+    public void testUnlockInvalidatesLockedStatus() throws Exception {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM, Boolean.FALSE.toString());
+        claimChangeHandler.handleEvent(buildEvent(IdentityEventConstants.Event.POST_SET_USER_CLAIMS, claims));
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+    }
+
+    @Test(description = "Test whether unlocking the account through a single claim drops the cached locked status.")
+    public void testSingleClaimUnlockInvalidatesLockedStatus() throws Exception {
+
+        Event event = buildEvent(IdentityEventConstants.Event.POST_SET_USER_CLAIM, new HashMap<>());
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.CLAIM_URI,
+                TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM);
+        event.getEventProperties().put(IdentityEventConstants.EventProperty.CLAIM_VALUE, Boolean.FALSE.toString());
+        claimChangeHandler.handleEvent(event);
+        Assert.assertFalse(accountLockCache.isLocked(KEY));
+    }
+
+    @Test(description = "Test whether the claims written when locking the account keep the cached locked status.")
+    public void testLockClaimsKeepLockedStatus() throws Exception {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM, Boolean.TRUE.toString());
+        claims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, "0");
+        claimChangeHandler.handleEvent(buildEvent(IdentityEventConstants.Event.POST_SET_USER_CLAIMS, claims));
+        Assert.assertTrue(accountLockCache.isLocked(KEY));
+    }
+
+    private static Event buildEvent(String eventName, Map<String, String> claims) {
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(IdentityEventConstants.EventProperty.USER_NAME, "admin");
+        properties.put(IdentityEventConstants.EventProperty.TENANT_DOMAIN, "carbon.super");
+        properties.put(IdentityEventConstants.EventProperty.USER_STORE_MANAGER, mock(UserStoreManager.class));
+        properties.put(IdentityEventConstants.EventProperty.USER_CLAIMS, claims);
+        return new Event(eventName, properties);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.endpoint;
+
+import org.mockito.Mock;
+import org.powermock.reflect.Whitebox;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.utils.ServerConstants;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class TOTPManagementServletTest {
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    @Mock
+    private HttpSession session;
+
+    private StringWriter body;
+
+    private TOTPManagementServlet servlet;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        body = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(body));
+        servlet = new TOTPManagementServlet();
+    }
+
+    @DataProvider(name = "unauthenticatedSessionProvider")
+    public Object[][] getUnauthenticatedSessions() {
+
+        return new Object[][]{
+                {false, null, null},
+                {true, null, "carbon.super"},
+                {true, "admin", null},
+                {true, " ", "carbon.super"}
+        };
+    }
+
+    @Test(description = "Test whether requests without a logged in user of a tenant are rejected.",
+            dataProvider = "unauthenticatedSessionProvider")
+    public void testUnauthenticatedRequest(boolean hasSession, String username, String tenantDomain)
+            throws Exception {
+
+        when(request.getSession(false)).thenReturn(hasSession ? session : null);
+        when(session.getAttribute(ServerConstants.USER_LOGGED_IN)).thenReturn(username);
+        when(session.getAttribute(MultitenantConstants.TENANT_DOMAIN)).thenReturn(tenantDomain);
+        when(request.getPathInfo()).thenReturn("/status");
+        servlet.doGet(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        verify(response).setContentType(JSON_CONTENT_TYPE);
+        Assert.assertEquals(body.toString(), "{\"error\":\"Authentication required.\"}");
+    }
+
+    @DataProvider(name = "unsupportedMethodProvider")
+    public Object[][] getUnsupportedMethods() {
+
+        return new Object[][]{
+                {"GET", "/init", HttpServletResponse.SC_METHOD_NOT_ALLOWED},
+                {"GET", "/refresh", HttpServletResponse.SC_METHOD_NOT_ALLOWED},
+                {"GET", "/reset", HttpServletResponse.SC_METHOD_NOT_ALLOWED},
+                {"POST", "/status", HttpServletResponse.SC_METHOD_NOT_ALLOWED},
+                {"POST", "/qrcode.svg", HttpServletResponse.SC_METHOD_NOT_ALLOWED},
+                {"GET", "/unknown", HttpServletResponse.SC_NOT_FOUND},
+                {"POST", null, HttpServletResponse.SC_NOT_FOUND}
+        };
+    }
+
+    @Test(description = "Test whether operations requested with the wrong method or unknown operations are rejected " +
+            "before the session is checked.", dataProvider = "unsupportedMethodProvider")
+    public void testUnsupportedMethod(String method, String operation, int status) throws Exception {
+
+        when(request.getPathInfo()).thenReturn(operation);
+        when(request.getContentType()).thenReturn(JSON_CONTENT_TYPE);
+        if ("GET".equals(method)) {
+            servlet.doGet(request, response);
+        } else {
+            servlet.doPost(request, response);
+        }
+        verify(response).setStatus(status);
+        Assert.assertEquals(body.toString(), "{\"error\":\"Unsupported operation.\"}");
+        verify(request, never()).getSession(false);
+    }
+
+    @DataProvider(name = "contentTypeProvider")
+    public Object[][] getContentTypes() {
+
+        return new Object[][]{
+                {null},
+                {"application/x-www-form-urlencoded"},
+                {"multipart/form-data; boundary=totp"},
+                {"text/plain"}
+        };
+    }
+
+    @Test(description = "Test whether operations changing the enrolment are rejected unless posted as JSON, which a " +
+            "cross-site form cannot send.", dataProvider = "contentTypeProvider")
+    public void testUnsupportedContentType(String contentType) throws Exception {
+
+        when(request.getPathInfo()).thenReturn("/reset");
+        when(request.getContentType()).thenReturn(contentType);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+        Assert.assertEquals(body.toString(), "{\"error\":\"Content type must be application/json.\"}");
+        verify(request, never()).getSession(false);
+    }
+
+    @Test(description = "Test whether a JSON content type with parameters is accepted.")
+    public void testJsonContentTypeWithCharset() throws Exception {
+
+        when(request.getPathInfo()).thenReturn("/reset");
+        when(request.getContentType()).thenReturn("Application/JSON; charset=UTF-8");
+        when(request.getSession(false)).thenReturn(null);
+        servlet.doPost(request, response);
+        verify(response).setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+    }
+
+    @Test(description = "Test whether values are escaped in the JSON responses.")
+    public void testToJsonString() throws Exception {
+
+        Assert.assertEquals(Whitebox.invokeMethod(TOTPManagementServlet.class, "toJsonString", "qr\"code\\url"),
+                "\"qr\\\"code\\\\url\"");
+        Assert.assertEquals(Whitebox.invokeMethod(TOTPManagementServlet.class, "toJsonString", "line\nbreak\u0001"),
+                "\"line\\u000abreak\\u0001\"");
+        Assert.assertEquals(Whitebox.invokeMethod(TOTPManagementServlet.class, "toJsonString", "<script>\u00e9</script>"),
+                "\"<script>\u00e9</script>\"");
+    }
+}
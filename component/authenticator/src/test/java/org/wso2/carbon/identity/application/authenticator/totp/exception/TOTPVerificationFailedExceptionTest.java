@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.exception;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationResult;
+import org.wso2.carbon.identity.application.authenticator.totp.verification.TOTPVerificationStatus;
+
+public class TOTPVerificationFailedExceptionTest {
+
+    @Test(description = "Test whether the exception carries the verification result without a stack trace.")
+    public void testVerificationFailure() {
+
+        TOTPVerificationFailedException exception = new TOTPVerificationFailedException(
+                TOTPVerificationResult.failure(TOTPVerificationStatus.INVALID_TOKEN, "Invalid Token."));
+        Assert.assertEquals(exception.getStatus(), TOTPVerificationStatus.INVALID_TOKEN);
+        Assert.assertEquals(exception.getMessage(), "Invalid Token.");
+        Assert.assertEquals(exception.getStackTrace().length, 0);
+    }
+
+    @Test(description = "Test whether a failure result cannot be created with the valid status.",
+            expectedExceptions = IllegalArgumentException.class)
+    public void testValidStatusFailure() {
+
+        TOTPVerificationResult.failure(TOTPVerificationStatus.VALID, "Valid.");
+    }
+}
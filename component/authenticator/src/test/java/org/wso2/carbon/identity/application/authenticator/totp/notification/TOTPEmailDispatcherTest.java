@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.notification;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TOTPEmailDispatcherTest {
+
+    private TOTPEmailDispatcher emailDispatcher;
+
+    @AfterMethod
+    public void tearDown() {
+
+        if (emailDispatcher != null) {
+            emailDispatcher.shutdown();
+        }
+    }
+
+    @Test(description = "Test whether tenants are served in round-robin order.")
+    public void testTenantFairQueue() throws Exception {
+
+        TOTPTenantFairQueue<String> queue = new TOTPTenantFairQueue<>(5);
+        Assert.assertTrue(queue.offer("tenant1", "a1"));
+        Assert.assertTrue(queue.offer("tenant1", "a2"));
+        Assert.assertTrue(queue.offer("tenant1", "a3"));
+        Assert.assertTrue(queue.offer("tenant2", "b1"));
+        Assert.assertTrue(queue.offer("tenant3", "c1"));
+        Assert.assertFalse(queue.offer("tenant3", "c2"));
+        Assert.assertEquals(queue.size("tenant1"), 3);
+
+        Assert.assertEquals(queue.poll(0, TimeUnit.MILLISECONDS), "a1");
+        Assert.assertEquals(queue.poll(0, TimeUnit.MILLISECONDS), "b1");
+        Assert.assertEquals(queue.poll(0, TimeUnit.MILLISECONDS), "c1");
+        Assert.assertEquals(queue.poll(0, TimeUnit.MILLISECONDS), "a2");
+        Assert.assertEquals(queue.poll(0, TimeUnit.MILLISECONDS), "a3");
+        Assert.assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(queue.size(), 0);
+    }
+
+    @Test(description = "Test whether a failed delivery is retried.")
+    public void testRetryFailedDelivery() throws Exception {
+
+        emailDispatcher = new TOTPEmailDispatcher(1, 10, 2, 1, TOTPEmailDispatcher.RejectionPolicy.REJECT);
+        emailDispatcher.start();
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(1);
+        Assert.assertTrue(emailDispatcher.dispatch("carbon.super", "test email", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new TOTPException("Mail relay is not reachable.");
+            }
+            delivered.countDown();
+        }));
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(emailDispatcher.getRetriedCount(), 2);
+        Assert.assertEquals(emailDispatcher.getFailedCount(), 0);
+    }
+
+    @Test(description = "Test whether the failure callback is run once a delivery which always fails has used all " +
+            "its retries.")
+    public void testFailureCallbackOfFailedDelivery() throws Exception {
+
+        emailDispatcher = new TOTPEmailDispatcher(1, 10, 2, 1, TOTPEmailDispatcher.RejectionPolicy.REJECT);
+        emailDispatcher.start();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(1);
+        Assert.assertTrue(emailDispatcher.dispatch("carbon.super", "test email", () -> {
+            attempts.incrementAndGet();
+            throw new TOTPException("Mail relay is not reachable.");
+        }, () -> {
+            failures.incrementAndGet();
+            failed.countDown();
+        }));
+        Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(attempts.get(), 3);
+        Assert.assertEquals(failures.get(), 1);
+        Assert.assertEquals(emailDispatcher.getFailedCount(), 1);
+    }
+
+    @Test(description = "Test whether deliveries are rejected or run on the caller when the queue is full.")
+    public void testRejectionPolicy() throws Exception {
+
+        // Dispatchers which are not started do not accept deliveries to the queue.
+        emailDispatcher = new TOTPEmailDispatcher(1, 1, 0, 1, TOTPEmailDispatcher.RejectionPolicy.REJECT);
+        Assert.assertFalse(emailDispatcher.dispatch("carbon.super", "test email", () -> {
+        }));
+        Assert.assertEquals(emailDispatcher.getRejectedCount(), 1);
+
+        emailDispatcher = new TOTPEmailDispatcher(1, 1, 0, 1, TOTPEmailDispatcher.RejectionPolicy.CALLER_RUNS);
+        AtomicInteger deliveries = new AtomicInteger();
+        Assert.assertTrue(emailDispatcher.dispatch("carbon.super", "test email", deliveries::incrementAndGet));
+        Assert.assertEquals(deliveries.get(), 1);
+        Assert.assertEquals(emailDispatcher.getDeliveredCount(), 1);
+    }
+
+    @Test(description = "Test whether the retry delay grows exponentially with a bounded jitter.")
+    public void testRetryDelay() {
+
+        emailDispatcher = new TOTPEmailDispatcher(1, 1, 3, 100, TOTPEmailDispatcher.RejectionPolicy.REJECT);
+        long firstDelay = emailDispatcher.getRetryDelay(1);
+        long thirdDelay = emailDispatcher.getRetryDelay(3);
+        Assert.assertTrue(firstDelay >= 100 && firstDelay < 200);
+        Assert.assertTrue(thirdDelay >= 400 && thirdDelay < 500);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.apache.commons.codec.binary.Base64;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({IdentityTenantUtil.class, TOTPUtil.class})
+public class TOTPEnrolmentExporterTest {
+
+    private static final String TENANT_DOMAIN = "wso2.com";
+    private static final String SECRET_KEY_CLAIM = TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL;
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private PaginatedStore userStoreManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(IdentityTenantUtil.class);
+        when(IdentityTenantUtil.getTenantId(TENANT_DOMAIN)).thenReturn(1);
+        when(realmService.getTenantUserRealm(1)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        TOTPDataHolder.getInstance().setRealmService(realmService);
+
+        mockStatic(TOTPUtil.class);
+        when(TOTPUtil.getTOTPIssuerDisplayName(TENANT_DOMAIN, null)).thenReturn("WSO2");
+        when(TOTPUtil.getTimeStepSize(TENANT_DOMAIN)).thenReturn(30L);
+        when(TOTPUtil.getTOTPDisplayUsername(anyString())).thenReturn("admin");
+        when(TOTPUtil.decrypt("encryptedSecretKey")).thenReturn("JBSWY3DPEHPK3PXP");
+
+        doReturn(new String[]{"admin", "user1"}).when(userStoreManager).getUserList(SECRET_KEY_CLAIM, "*", null, 2, 1);
+        doReturn(new String[]{"user2"}).when(userStoreManager).getUserList(SECRET_KEY_CLAIM, "*", null, 2, 3);
+        doReturn(Collections.singletonMap(SECRET_KEY_CLAIM, "encryptedSecretKey")).when(userStoreManager)
+                .getUserClaimValues(eq("admin"), any(String[].class), anyString());
+        // The secret key of a reset user is stored as an empty value.
+        doReturn(Collections.singletonMap(SECRET_KEY_CLAIM, "")).when(userStoreManager)
+                .getUserClaimValues(eq("user1"), any(String[].class), anyString());
+        doReturn(Collections.singletonMap(SECRET_KEY_CLAIM, "encryptedSecretKey")).when(userStoreManager)
+                .getUserClaimValues(eq("user2"), any(String[].class), anyString());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        TOTPDataHolder.getInstance().setRealmService(null);
+    }
+
+    @Test(description = "Test whether the enrolments of all the enrolled users are exported, a page at a time.")
+    public void testExport() throws Exception {
+
+        StringWriter output = new StringWriter();
+        long exported = new TOTPEnrolmentExporter(2).export(TENANT_DOMAIN, output, TOTPProvisioningFormat.JSON_LINES);
+        Assert.assertEquals(exported, 2);
+
+        try (TOTPRecordReader reader = new TOTPRecordReader(new StringReader(output.toString()),
+                TOTPProvisioningFormat.JSON_LINES)) {
+            Map<String, String> record = reader.next();
+            Assert.assertEquals(record.get(TOTPEnrolmentExporter.USERNAME), "admin@wso2.com");
+            String qrCodeURL = new String(Base64.decodeBase64(record.get(TOTPEnrolmentExporter.QR_CODE_URL)),
+                    StandardCharsets.UTF_8);
+            Assert.assertEquals(qrCodeURL, "otpauth://totp/WSO2:admin?secret=JBSWY3DPEHPK3PXP&issuer=WSO2&period=30");
+            record = reader.next();
+            Assert.assertEquals(record.get(TOTPEnrolmentExporter.USERNAME), "user2@wso2.com");
+            Assert.assertNotNull(record.get(TOTPEnrolmentExporter.QR_CODE_URL));
+            Assert.assertNull(reader.next());
+        }
+        verify(userStoreManager, never()).listUsers(anyString(), anyInt(), anyInt());
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+
+    interface PaginatedStore extends UserStoreManager, PaginatedUserStoreManager {
+
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.core.PaginatedUserStoreManager;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.service.RealmService;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({IdentityTenantUtil.class})
+public class TOTPEnrolmentReporterTest {
+
+    private static final String TENANT_DOMAIN = "wso2.com";
+    private static final String SECRET_KEY_CLAIM = TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL;
+
+    @Mock
+    private RealmService realmService;
+
+    @Mock
+    private UserRealm userRealm;
+
+    @Mock
+    private PaginatedStore userStoreManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(IdentityTenantUtil.class);
+        when(IdentityTenantUtil.getTenantId(TENANT_DOMAIN)).thenReturn(1);
+        when(realmService.getTenantUserRealm(1)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        TOTPDataHolder.getInstance().setRealmService(realmService);
+
+        doReturn(new String[]{"admin", "user1"}).when(userStoreManager).getUserList(SECRET_KEY_CLAIM, "*", null, 2, 1);
+        doReturn(new String[]{"user2"}).when(userStoreManager).getUserList(SECRET_KEY_CLAIM, "*", null, 2, 3);
+        doReturn(claims("encryptedSecretKey", "2", "1", "true")).when(userStoreManager)
+                .getUserClaimValues(eq("admin"), any(String[].class), anyString());
+        // The secret key of a reset user is stored as an empty value.
+        doReturn(claims("", "0", "0", "false")).when(userStoreManager)
+                .getUserClaimValues(eq("user1"), any(String[].class), anyString());
+        doReturn(claims("encryptedSecretKey", null, null, null)).when(userStoreManager)
+                .getUserClaimValues(eq("user2"), any(String[].class), anyString());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        TOTPDataHolder.getInstance().setRealmService(null);
+    }
+
+    @Test(description = "Test whether only the enrolled users are listed, a page at a time.")
+    public void testGetPage() throws Exception {
+
+        TOTPEnrolmentReporter reporter = new TOTPEnrolmentReporter(2);
+        TOTPEnrolmentReportPage page = reporter.getPage(TENANT_DOMAIN, 1, 10, true);
+        Assert.assertEquals(page.getEntries().length, 1);
+        Assert.assertTrue(page.getEntries()[0].getUsername().startsWith("admin"));
+        Assert.assertEquals(page.getEntries()[0].getFailedAttempts(), 2);
+        Assert.assertEquals(page.getEntries()[0].getFailedLoginLockoutCount(), 1);
+        Assert.assertTrue(page.getEntries()[0].isAccountLocked());
+        Assert.assertEquals(page.getNextOffset(), 3);
+
+        page = reporter.getPage(TENANT_DOMAIN, page.getNextOffset(), 2, true);
+        Assert.assertEquals(page.getEntries().length, 1);
+        Assert.assertTrue(page.getEntries()[0].getUsername().startsWith("user2"));
+        Assert.assertEquals(page.getEntries()[0].getFailedAttempts(), 0);
+        Assert.assertFalse(page.getEntries()[0].isAccountLocked());
+        Assert.assertEquals(page.getNextOffset(), -1);
+        verify(userStoreManager, never()).listUsers(anyString(), anyInt(), anyInt());
+    }
+
+    @Test(description = "Test whether the enrolled users of a user store without pagination are listed a page at a " +
+            "time.")
+    public void testGetPageWithoutPagination() throws Exception {
+
+        UserStoreManager nonPaginatedStore = mock(UserStoreManager.class);
+        when(userRealm.getUserStoreManager()).thenReturn(nonPaginatedStore);
+        doReturn(new String[]{"admin", "user1", "user2"}).when(nonPaginatedStore)
+                .getUserList(SECRET_KEY_CLAIM, "*", null);
+        doReturn(claims("encryptedSecretKey", null, null, null)).when(nonPaginatedStore)
+                .getUserClaimValues(anyString(), any(String[].class), anyString());
+
+        TOTPEnrolmentReporter reporter = new TOTPEnrolmentReporter(2);
+        TOTPEnrolmentReportPage page = reporter.getPage(TENANT_DOMAIN, 1, 2, false);
+        Assert.assertEquals(page.getEntries().length, 2);
+        Assert.assertEquals(page.getNextOffset(), 3);
+        page = reporter.getPage(TENANT_DOMAIN, page.getNextOffset(), 2, false);
+        Assert.assertEquals(page.getEntries().length, 1);
+        Assert.assertTrue(page.getEntries()[0].getUsername().startsWith("user2"));
+        Assert.assertEquals(page.getNextOffset(), -1);
+    }
+
+    @Test(description = "Test whether all the enrolled users are written to the report.")
+    public void testReport() throws Exception {
+
+        StringWriter output = new StringWriter();
+        long reported = new TOTPEnrolmentReporter(2).report(TENANT_DOMAIN, output, TOTPProvisioningFormat.CSV,
+                true);
+        Assert.assertEquals(reported, 2);
+
+        try (TOTPRecordReader reader = new TOTPRecordReader(new StringReader(output.toString()),
+                TOTPProvisioningFormat.CSV)) {
+            Map<String, String> record = reader.next();
+            Assert.assertTrue(record.get(TOTPEnrolmentReporter.USERNAME).startsWith("admin"));
+            Assert.assertEquals(record.get(TOTPEnrolmentReporter.FAILED_ATTEMPTS), "2");
+            Assert.assertEquals(record.get(TOTPEnrolmentReporter.ACCOUNT_LOCKED), "true");
+            record = reader.next();
+            Assert.assertTrue(record.get(TOTPEnrolmentReporter.USERNAME).startsWith("user2"));
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    private static Map<String, String> claims(String secretKey, String failedAttempts, String lockoutCount,
+                                              String accountLocked) {
+
+        Map<String, String> claims = new HashMap<>();
+        claims.put(SECRET_KEY_CLAIM, secretKey);
+        claims.put(TOTPAuthenticatorConstants.TOTP_FAILED_ATTEMPTS_CLAIM, failedAttempts);
+        claims.put(TOTPAuthenticatorConstants.FAILED_LOGIN_LOCKOUT_COUNT_CLAIM, lockoutCount);
+        claims.put(TOTPAuthenticatorConstants.ACCOUNT_LOCKED_CLAIM, accountLocked);
+        return claims;
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+
+    interface PaginatedStore extends UserStoreManager, PaginatedUserStoreManager {
+
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+public class TOTPProvisioningFormatTest {
+
+    @DataProvider(name = "formats")
+    public Object[][] formats() {
+
+        return new Object[][]{{TOTPProvisioningFormat.CSV}, {TOTPProvisioningFormat.JSON_LINES}};
+    }
+
+    @Test(dataProvider = "formats", description = "Test whether written records are read back unchanged.")
+    public void testRoundTrip(TOTPProvisioningFormat format) throws Exception {
+
+        StringWriter output = new StringWriter();
+        try (TOTPRecordWriter writer = new TOTPRecordWriter(output, format, "username", "enrolled", "qrCodeUrl")) {
+            writer.write("admin@carbon.super", true, "b3Rw\"YXV0aA==");
+            writer.write("SECONDARY/user, one@carbon.super", false, null);
+        }
+
+        try (TOTPRecordReader reader = new TOTPRecordReader(new StringReader(output.toString()), format)) {
+            Map<String, String> record = reader.next();
+            Assert.assertEquals(record.get("username"), "admin@carbon.super");
+            Assert.assertEquals(record.get("enrolled"), "true");
+            Assert.assertEquals(record.get("qrCodeUrl"), "b3Rw\"YXV0aA==");
+
+            record = reader.next();
+            Assert.assertEquals(record.get("username"), "SECONDARY/user, one@carbon.super");
+            Assert.assertEquals(record.get("enrolled"), "false");
+            Assert.assertTrue(record.get("qrCodeUrl") == null || record.get("qrCodeUrl").isEmpty());
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    @Test(description = "Test whether an invalid line does not prevent reading the following records.")
+    public void testInvalidRecord() throws Exception {
+
+        String input = "username,secret\n\nadmin,\"JBSWY3DPEHPK3PXP\n{\"username\":\"user\"}\nuser,JBSWY3DPEHPK3PXP\n";
+        try (TOTPRecordReader reader = new TOTPRecordReader(new StringReader(input), TOTPProvisioningFormat.CSV)) {
+            try {
+                reader.next();
+                Assert.fail("Unterminated quoted value is accepted.");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(reader.getLineNumber(), 3);
+            }
+            try {
+                reader.next();
+                Assert.fail("Record with a missing value is accepted.");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(reader.getLineNumber(), 4);
+            }
+            Map<String, String> record = reader.next();
+            Assert.assertEquals(record.get("username"), "user");
+            Assert.assertEquals(record.get("secret"), "JBSWY3DPEHPK3PXP");
+        }
+    }
+
+    @Test(description = "Test whether JSON values are unescaped.")
+    public void testJsonEscapes() throws Exception {
+
+        String input = "{\"username\": \"a\\\"b\\\\c\\u0041\", \"secret\": \"JBSWY3DPEHPK3PXP\", \"encoding\": null}";
+        try (TOTPRecordReader reader = new TOTPRecordReader(new StringReader(input),
+                TOTPProvisioningFormat.JSON_LINES)) {
+            Map<String, String> record = reader.next();
+            Assert.assertEquals(record.get("username"), "a\"b\\cA");
+            Assert.assertEquals(record.get("secret"), "JBSWY3DPEHPK3PXP");
+            Assert.assertNull(record.get("encoding"));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.provisioning;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
+import org.wso2.carbon.identity.application.authenticator.totp.TOTPKeyGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest({TOTPUtil.class, TOTPKeyGenerator.class, PrivilegedCarbonContext.class})
+public class TOTPSecretImporterTest {
+
+    private static final String TENANT_DOMAIN = "wso2.com";
+    private static final String SECRET_KEY = "JBSWY3DPEHPK3PXP";
+
+    @Mock
+    private PrivilegedCarbonContext privilegedCarbonContext;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        initMocks(this);
+        mockStatic(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(privilegedCarbonContext);
+        when(privilegedCarbonContext.getTenantDomain()).thenReturn(TENANT_DOMAIN);
+        when(privilegedCarbonContext.getTenantId()).thenReturn(1);
+        mockStatic(TOTPUtil.class);
+        when(TOTPUtil.getEncodingMethod(anyString())).thenReturn(TOTPAuthenticatorConstants.BASE32);
+        when(TOTPUtil.encrypt(anyString())).thenReturn("encryptedSecretKey");
+        mockStatic(TOTPKeyGenerator.class);
+    }
+
+    @Test(description = "Test whether valid records are stored within the tenant flow of the caller, and invalid " +
+            "records are reported without stopping the import.")
+    public void testImportSecrets() throws Exception {
+
+        when(TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(anyMap(), eq("user3@wso2.com")))
+                .thenThrow(new TOTPException("User store is read only."));
+        String input = "username,secret,encoding\n" +
+                "admin@wso2.com,jbsw y3dp-ehpk 3pxp,\n" +
+                "user1@wso2.com," + SECRET_KEY + ",hex\n" +
+                "user2@wso2.com,SHORT,base32\n" +
+                "," + SECRET_KEY + ",\n" +
+                "user3@wso2.com," + SECRET_KEY + ",\n" +
+                "user4@wso2.com," + SECRET_KEY + ",Base32\n";
+        TOTPImportSummary summary = new TOTPSecretImporter(2).importSecrets(new StringReader(input),
+                TOTPProvisioningFormat.CSV);
+
+        Assert.assertEquals(summary.getImportedCount(), 2);
+        Assert.assertEquals(summary.getFailedCount(), 4);
+        Assert.assertEquals(summary.getErrors().size(), 4);
+        Map<String, String> expectedClaims = new HashMap<>();
+        expectedClaims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, "encryptedSecretKey");
+        expectedClaims.put(TOTPAuthenticatorConstants.ENCODING_CLAIM_URL, TOTPAuthenticatorConstants.BASE32);
+        verifyStatic();
+        TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(eq(expectedClaims), eq("admin@wso2.com"));
+        verifyStatic();
+        TOTPUtil.encrypt(SECRET_KEY);
+        verify(privilegedCarbonContext, times(1)).setTenantDomain(TENANT_DOMAIN);
+    }
+
+    @Test(description = "Test whether the import fails instead of waiting forever when the writer of the claims " +
+            "stopped.", expectedExceptions = TOTPException.class, timeOut = 30000)
+    public void testImportSecretsWhenWriterStopped() throws Exception {
+
+        when(TOTPKeyGenerator.addTOTPClaimsAndRetrievingQRCodeURL(anyMap(), anyString()))
+                .thenThrow(new LinkageError("Claim manager is not available."));
+        StringBuilder input = new StringBuilder("username,secret\n");
+        for (int i = 0; i < 10; i++) {
+            input.append("user").append(i).append("@wso2.com,").append(SECRET_KEY).append('\n');
+        }
+        new TOTPSecretImporter(1).importSecrets(new StringReader(input.toString()), TOTPProvisioningFormat.CSV);
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.qrcode;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TOTPQRCodeTest {
+
+    // QR code of "TOTP" with mask 0, as rendered by the QR code library previously used by the user profile gadget.
+    private static final String[] TOTP_MASK_0 = {
+            "111111100000001111111",
+            "100000101011101000001",
+            "101110100111001011101",
+            "101110100001101011101",
+            "101110101001101011101",
+            "100000100111001000001",
+            "111111101010101111111",
+            "000000000000000000000",
+            "101010100010100010010",
+            "001001000101010100110",
+            "100010110001011101011",
+            "111001000101110110010",
+            "101010110001011101111",
+            "000000001110001000000",
+            "111111100010100010111",
+            "100000100000001000010",
+            "101110101100101011111",
+            "101110100001010101010",
+            "101110101001011100101",
+            "100000100011110111010",
+            "111111101011011100111"
+    };
+
+    @Test(description = "Test whether the modules of a QR code match an independently encoded QR code.")
+    public void testEncode() {
+
+        TOTPQRCode qrCode = TOTPQRCode.encode("TOTP".getBytes(StandardCharsets.UTF_8), 0);
+        Assert.assertEquals(qrCode.getSize(), TOTP_MASK_0.length);
+        for (int y = 0; y < qrCode.getSize(); y++) {
+            for (int x = 0; x < qrCode.getSize(); x++) {
+                Assert.assertEquals(qrCode.isDark(x, y), TOTP_MASK_0[y].charAt(x) == '1', "Module " + x + "," + y);
+            }
+        }
+        Assert.assertFalse(qrCode.isDark(-1, 0));
+        Assert.assertFalse(qrCode.isDark(0, qrCode.getSize()));
+    }
+
+    @DataProvider(name = "capacities")
+    public Object[][] capacities() {
+
+        // Byte mode capacities of the medium error correction level.
+        return new Object[][]{{14, 1}, {15, 2}, {213, 10}, {214, 11}, {2331, 40}};
+    }
+
+    @Test(dataProvider = "capacities", description = "Test whether the smallest version holding the data is used.")
+    public void testVersion(int length, int version) {
+
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 'a');
+        TOTPQRCode qrCode = TOTPQRCode.encode(data);
+        Assert.assertEquals(qrCode.getVersion(), version);
+        Assert.assertEquals(qrCode.getSize(), version * 4 + 17);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            description = "Test whether data longer than the largest QR code is rejected.")
+    public void testDataTooLong() {
+
+        TOTPQRCode.encode(new byte[2332]);
+    }
+
+    @Test(description = "Test whether QR codes are rendered as PNG and SVG images of the expected size.")
+    public void testRender() throws Exception {
+
+        TOTPQRCode qrCode = TOTPQRCode.encode("TOTP".getBytes(StandardCharsets.UTF_8));
+        int dimension = qrCode.getSize() + TOTPQRCodeFormat.QUIET_ZONE * 2;
+
+        byte[] png = TOTPQRCodeFormat.PNG.render(qrCode);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(png));
+        Assert.assertEquals(in.readLong(), 0x89504E470D0A1A0AL);
+        Assert.assertEquals(in.readInt(), 13);
+        Assert.assertEquals(in.readInt(), 0x49484452);
+        Assert.assertEquals(in.readInt(), dimension * TOTPQRCodeFormat.MODULE_PIXELS);
+        Assert.assertEquals(in.readInt(), dimension * TOTPQRCodeFormat.MODULE_PIXELS);
+
+        String svg = new String(TOTPQRCodeFormat.SVG.render(qrCode), StandardCharsets.UTF_8);
+        Assert.assertTrue(svg.startsWith("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " + dimension + " " +
+                dimension + "\""));
+        // The top left finder pattern starts with a run of seven dark modules.
+        Assert.assertTrue(svg.contains("M4,4h7v1h-7z"));
+    }
+
+    @Test(description = "Test whether rendered images are served from the cache.")
+    public void testRendererCache() {
+
+        TOTPQRCodeRenderer renderer = new TOTPQRCodeRenderer();
+        String keyURI = "otpauth://totp/carbon.super:admin?secret=JBSWY3DPEHPK3PXP&issuer=carbon.super&period=30";
+        byte[] png = renderer.render(keyURI, TOTPQRCodeFormat.PNG);
+        Assert.assertSame(renderer.render(keyURI, TOTPQRCodeFormat.PNG), png);
+        Assert.assertNotSame(renderer.render(keyURI, TOTPQRCodeFormat.SVG), png);
+
+        renderer.setCacheTimeout(0);
+        Assert.assertNotSame(renderer.render(keyURI, TOTPQRCodeFormat.PNG), png);
+        Assert.assertEquals(renderer.render(keyURI, TOTPQRCodeFormat.PNG), png);
+    }
+}
@@ -22,37 +22,60 @@ import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.powermock.reflect.Whitebox;
 import org.testng.IObjectFactory;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.ObjectFactory;
 import org.testng.annotations.Test;
+import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPAuthenticatorConstants;
 import org.wso2.carbon.identity.application.authenticator.totp.TOTPTokenGenerator;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPFailedAttemptCounter;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.store.TOTPInMemoryStateStore;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorConfig;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAuthenticatorCredentials;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPKeyRepresentation;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPRateLimiter;
 import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPUtil;
 import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
-@PrepareForTest({TOTPUtil.class, TOTPTokenGenerator.class, MultitenantUtils.class, TOTPAuthenticatorCredentials.class})
+@PrepareForTest({TOTPUtil.class, TOTPTokenGenerator.class, MultitenantUtils.class, TOTPAuthenticatorCredentials.class,
+        CarbonContext.class})
 @PowerMockIgnore({"javax.crypto.*"})
 public class TOTPAdminServiceTest {
 
+    private static final String SECRET_KEY = "6ZWSWRT4ZOCGH3R2";
+    private static final String ENCRYPTED_SECRET_KEY = "encryptedSecretKey";
+
     @Mock
     private UserStoreManager mockUserStoreManager;
 
     @Mock
     private UserRealm mockUserRealm;
 
+    @Mock
+    private CarbonContext mockCarbonContext;
+
     @BeforeMethod
     public void setUp() {
 
@@ -60,6 +83,9 @@ public class TOTPAdminServiceTest {
         mockStatic(TOTPUtil.class);
         mockStatic(TOTPTokenGenerator.class);
         mockStatic(MultitenantUtils.class);
+        mockStatic(CarbonContext.class);
+        when(CarbonContext.getThreadLocalCarbonContext()).thenReturn(mockCarbonContext);
+        when(mockCarbonContext.getTenantDomain()).thenReturn("carbon.super");
     }
 
     @Test(description = "test ValidateTOTP() method for invalid verification code.")
@@ -85,6 +111,224 @@ public class TOTPAdminServiceTest {
         Assert.assertFalse(totpAdminService.validateTOTP(username, null, invalidOTP));
     }
 
+    @Test(description = "test ValidateTOTP() method does not issue a secret key to a user who is not enrolled.")
+    public void validateTOTPForUnenrolledUserTest() throws Exception {
+
+        String username = "user2";
+        String tenantDomain = "carbon.super";
+
+        when(MultitenantUtils.getTenantDomain(username)).thenReturn(tenantDomain);
+        when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn(username);
+        when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+        doReturn(new HashMap<String, String>()).when(mockUserStoreManager).getUserClaimValues(username,
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        Assert.assertFalse(totpAdminService.validateTOTP(username, null, 123456));
+        verify(mockUserStoreManager, never()).setUserClaimValues(anyString(),
+                anyMapOf(String.class, String.class), anyString());
+    }
+
+    @Test(description = "test resetTOTPBulk() method reports the result of each user.")
+    public void resetTOTPBulkTest() throws Exception {
+
+        String tenantDomain = "carbon.super";
+        String[] usernames = {"admin", "", "user1", "user2"};
+        for (String username : usernames) {
+            when(MultitenantUtils.getTenantDomain(username)).thenReturn(tenantDomain);
+            when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn(username);
+            when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        }
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+        doThrow(new UserStoreException("User does not exist.")).when(mockUserStoreManager)
+                .setUserClaimValues(eq("user1"), anyMapOf(String.class, String.class), anyString());
+
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        TOTPBulkOperationResult[] results = totpAdminService.resetTOTPBulk(usernames);
+        Assert.assertEquals(4, results.length);
+        Assert.assertTrue(results[0].isSuccessful());
+        Assert.assertFalse(results[1].isSuccessful());
+        Assert.assertFalse(results[2].isSuccessful());
+        Assert.assertEquals("user1", results[2].getUsername());
+        Assert.assertTrue(results[3].isSuccessful());
+        verify(mockUserRealm, times(1)).getUserStoreManager();
+    }
+
+    @Test(description = "test resetTOTPBulk() method does not change the users of other tenants.")
+    public void resetTOTPBulkForOtherTenantTest() throws Exception {
+
+        String username = "admin@wso2.com";
+        when(MultitenantUtils.getTenantDomain(username)).thenReturn("wso2.com");
+        when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn("admin");
+        when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        TOTPBulkOperationResult[] results = totpAdminService.resetTOTPBulk(new String[]{username});
+        Assert.assertEquals(1, results.length);
+        Assert.assertFalse(results[0].isSuccessful());
+        verify(mockUserRealm, never()).getUserStoreManager();
+        verify(mockUserStoreManager, never()).setUserClaimValues(anyString(),
+                anyMapOf(String.class, String.class), anyString());
+    }
+
+    @Test(description = "test validateTOTPBatch() method validates one code of each user of the tenant of the " +
+            "caller and never issues a secret key.")
+    public void validateTOTPBatchTest() throws Exception {
+
+        String tenantDomain = "carbon.super";
+        String[] usernames = {"admin", "user1", "user2"};
+        for (String username : usernames) {
+            when(MultitenantUtils.getTenantDomain(username)).thenReturn(tenantDomain);
+            when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn(username);
+            when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        }
+        when(MultitenantUtils.getTenantDomain("admin@wso2.com")).thenReturn("wso2.com");
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+        Map<String, String> userClaimValues = new HashMap<>();
+        userClaimValues.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, "encryptedSecretKey");
+        doReturn(userClaimValues).when(mockUserStoreManager).getUserClaimValues("admin",
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+        doReturn(new HashMap<String, String>()).when(mockUserStoreManager).getUserClaimValues("user1",
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+        when(TOTPUtil.decrypt(anyString())).thenReturn("6ZWSWRT4ZOCGH3R2");
+
+        TOTPValidationRequest[] requests = {new TOTPValidationRequest("admin", 1234),
+                new TOTPValidationRequest("admin", 4321), new TOTPValidationRequest("user1", 1234),
+                new TOTPValidationRequest("", 1234), new TOTPValidationRequest("admin@wso2.com", 1234),
+                new TOTPValidationRequest("user2", 12345678)};
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        TOTPValidationResult[] results = totpAdminService.validateTOTPBatch(requests);
+        Assert.assertEquals(6, results.length);
+        Assert.assertEquals("INVALID_TOKEN", results[0].getStatus());
+        Assert.assertNull(results[1].getStatus());
+        Assert.assertEquals("NOT_ENROLLED", results[2].getStatus());
+        Assert.assertNull(results[3].getStatus());
+        Assert.assertNull(results[4].getStatus());
+        Assert.assertEquals("MALFORMED_TOKEN", results[5].getStatus());
+        for (TOTPValidationResult result : results) {
+            Assert.assertFalse(result.isValid());
+        }
+        verify(mockUserStoreManager, times(1)).getUserClaimValues("admin",
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+        verify(mockUserStoreManager, never()).getUserClaimValues("user2",
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+        verify(mockUserStoreManager, never()).setUserClaimValues(anyString(),
+                anyMapOf(String.class, String.class), anyString());
+    }
+
+    @Test(description = "test validateTOTPBatch() method rejects the codes of locked and rate limited users without " +
+            "reading their secret keys.")
+    public void validateTOTPBatchForLockedAndRateLimitedUsersTest() throws Exception {
+
+        String[] usernames = {"admin", "user1"};
+        for (String username : usernames) {
+            when(MultitenantUtils.getTenantDomain(username)).thenReturn("carbon.super");
+            when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn(username);
+            when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        }
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+        String lockKey = TOTPFailedAttemptCounter.buildKey("carbon.super", "PRIMARY", "admin");
+        TOTPDataHolder.getInstance().getAccountLockCache().markLocked(lockKey, System.currentTimeMillis() + 60000);
+        TOTPRateLimiter userRateLimiter = new TOTPRateLimiter(10, 1, 1);
+        userRateLimiter.tryAcquire("user1");
+        TOTPDataHolder.getInstance().setUserRateLimiter(userRateLimiter);
+        try {
+            TOTPValidationRequest[] requests = {new TOTPValidationRequest("admin", 1234),
+                    new TOTPValidationRequest("user1", 1234)};
+            TOTPValidationResult[] results = new TOTPAdminService().validateTOTPBatch(requests);
+            Assert.assertEquals("ACCOUNT_LOCKED", results[0].getStatus());
+            Assert.assertEquals("RATE_LIMITED", results[1].getStatus());
+            verify(mockUserStoreManager, never()).getUserClaimValues(anyString(),
+                    eq(new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}), anyString());
+        } finally {
+            TOTPDataHolder.getInstance().getAccountLockCache().invalidate(lockKey);
+            TOTPDataHolder.getInstance().setUserRateLimiter(null);
+        }
+    }
+
+    @Test(description = "test generateSecret() and enableTOTP() confirm the pending secret key of a user, whichever " +
+            "form of the username is used.")
+    public void generateSecretAndEnableTOTPTest() throws Exception {
+
+        TOTPInMemoryStateStore stateStore = new TOTPInMemoryStateStore();
+        TOTPDataHolder.getInstance().setStateStore(stateStore);
+        mockSuperTenantUser("admin");
+        mockSuperTenantUser("admin@carbon.super");
+        when(TOTPUtil.getPendingEnrolmentTimeout()).thenReturn(300L);
+        when(TOTPUtil.encrypt(anyString())).thenReturn(ENCRYPTED_SECRET_KEY);
+        when(TOTPUtil.decrypt(ENCRYPTED_SECRET_KEY)).thenReturn(SECRET_KEY);
+        doReturn(new HashMap<String, String>()).when(mockUserStoreManager).getUserClaimValues("admin",
+                new String[]{TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL}, null);
+
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        Assert.assertNotNull(totpAdminService.generateSecret("admin"));
+        Assert.assertEquals(ENCRYPTED_SECRET_KEY, stateStore.getPendingSecretKey("admin@carbon.super"));
+        verify(mockUserStoreManager, never()).setUserClaimValues(anyString(),
+                anyMapOf(String.class, String.class), anyString());
+
+        Assert.assertTrue(totpAdminService.enableTOTP("admin@carbon.super", generateCode()));
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, ENCRYPTED_SECRET_KEY);
+        verify(mockUserStoreManager).setUserClaimValues("admin", claims, null);
+        Assert.assertNull(stateStore.getPendingSecretKey("admin@carbon.super"));
+    }
+
+    @Test(description = "test enableTOTP() confirms a secret key saved in the verify secret key claim and clears it.")
+    public void enableTOTPWithVerifySecretKeyClaimTest() throws Exception {
+
+        TOTPDataHolder.getInstance().setStateStore(new TOTPInMemoryStateStore());
+        mockSuperTenantUser("admin");
+        when(TOTPUtil.decrypt(ENCRYPTED_SECRET_KEY)).thenReturn(SECRET_KEY);
+        Map<String, String> userClaimValues = new HashMap<>();
+        userClaimValues.put(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL, ENCRYPTED_SECRET_KEY);
+        doReturn(userClaimValues).when(mockUserStoreManager).getUserClaimValues("admin",
+                new String[]{TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL}, null);
+
+        TOTPAdminService totpAdminService = new TOTPAdminService();
+        Assert.assertTrue(totpAdminService.enableTOTP("admin", generateCode()));
+        Map<String, String> claims = new HashMap<>();
+        claims.put(TOTPAuthenticatorConstants.SECRET_KEY_CLAIM_URL, ENCRYPTED_SECRET_KEY);
+        claims.put(TOTPAuthenticatorConstants.VERIFY_SECRET_KEY_CLAIM_URL, "");
+        verify(mockUserStoreManager).setUserClaimValues("admin", claims, null);
+    }
+
+    @Test(description = "test generateSecret() method fails when the user realm is not found.",
+            expectedExceptions = TOTPException.class)
+    public void generateSecretWithoutUserRealmTest() throws Exception {
+
+        when(MultitenantUtils.getTenantDomain("admin")).thenReturn("carbon.super");
+        when(MultitenantUtils.getTenantAwareUsername("admin")).thenReturn("admin");
+        when(TOTPUtil.getUserRealm("admin")).thenReturn(null);
+
+        new TOTPAdminService().generateSecret("admin");
+    }
+
+    /**
+     * Mock the user realm of a user of the super tenant, whose tenant aware username is "admin".
+     */
+    private void mockSuperTenantUser(String username) throws Exception {
+
+        when(MultitenantUtils.getTenantDomain(username)).thenReturn("carbon.super");
+        when(MultitenantUtils.getTenantAwareUsername(username)).thenReturn("admin");
+        when(TOTPUtil.getUserRealm(username)).thenReturn(mockUserRealm);
+        when(mockUserRealm.getUserStoreManager()).thenReturn(mockUserStoreManager);
+    }
+
+    /**
+     * Generate the current verification code of {@link #SECRET_KEY}.
+     */
+    private static int generateCode() throws Exception {
+
+        TOTPAuthenticatorCredentials credentials = new TOTPAuthenticatorCredentials(
+                new TOTPAuthenticatorConfig.TOTPAuthenticatorConfigBuilder()
+                        .setKeyRepresentation(TOTPKeyRepresentation.BASE32).build());
+        byte[] key = Whitebox.invokeMethod(credentials, "decodeSecret", SECRET_KEY);
+        long timeWindow = Whitebox.invokeMethod(credentials, "getTimeWindowFromTime", System.currentTimeMillis());
+        return Whitebox.invokeMethod(credentials, "calculateCode", key, timeWindow);
+    }
+
     @ObjectFactory
     public IObjectFactory getObjectFactory() {
         return new PowerMockObjectFactory();
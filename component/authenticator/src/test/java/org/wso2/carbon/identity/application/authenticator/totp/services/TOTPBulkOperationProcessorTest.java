@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.services;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+import org.wso2.carbon.identity.application.authenticator.totp.internal.TOTPDataHolder;
+import org.wso2.carbon.identity.application.authenticator.totp.util.TOTPAsyncExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({PrivilegedCarbonContext.class})
+public class TOTPBulkOperationProcessorTest {
+
+    private static final String TENANT_DOMAIN = "wso2.com";
+
+    @Mock
+    private PrivilegedCarbonContext privilegedCarbonContext;
+
+    @BeforeMethod
+    public void setUp() {
+
+        initMocks(this);
+        mockStatic(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(privilegedCarbonContext);
+        when(privilegedCarbonContext.getTenantDomain()).thenReturn(TENANT_DOMAIN);
+        when(privilegedCarbonContext.getTenantId()).thenReturn(1);
+        TOTPAsyncExecutor asyncExecutor = new TOTPAsyncExecutor(2, 10);
+        asyncExecutor.start();
+        TOTPDataHolder.getInstance().setAsyncExecutor(asyncExecutor);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        TOTPDataHolder.getInstance().getAsyncExecutor().shutdown();
+        TOTPDataHolder.getInstance().setAsyncExecutor(null);
+    }
+
+    @Test(description = "Test whether batches run on the shared async executor within the tenant flow of the " +
+            "calling thread, together with the calling thread.")
+    public void testExecute() throws Exception {
+
+        String callerThreadName = Thread.currentThread().getName();
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        // Both batches wait for each other, hence they can only complete on two threads.
+        CountDownLatch running = new CountDownLatch(2);
+        List<Runnable> batches = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            batches.add(() -> {
+                threadNames.add(Thread.currentThread().getName());
+                running.countDown();
+                try {
+                    Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        TOTPBulkOperationProcessor.execute(batches, 2);
+        Assert.assertEquals(threadNames.size(), 2);
+        Assert.assertTrue(threadNames.remove(callerThreadName));
+        Assert.assertTrue(threadNames.iterator().next().startsWith("TOTP-AsyncExecutor-"));
+        verify(privilegedCarbonContext, times(1)).setTenantDomain(TENANT_DOMAIN);
+        verify(privilegedCarbonContext, times(1)).setTenantId(1);
+    }
+
+    @Test(description = "Test whether all the batches are run on the calling thread when the async executor is " +
+            "stopped.")
+    public void testExecuteWithStoppedAsyncExecutor() throws Exception {
+
+        TOTPDataHolder.getInstance().getAsyncExecutor().shutdown();
+        List<String> threadNames = new ArrayList<>();
+        List<Runnable> batches = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batches.add(() -> threadNames.add(Thread.currentThread().getName()));
+        }
+        TOTPBulkOperationProcessor.execute(batches, 2);
+        Assert.assertEquals(threadNames.size(), 3);
+        threadNames.forEach(threadName -> Assert.assertEquals(threadName, Thread.currentThread().getName()));
+    }
+
+    @Test(description = "Test whether the failure of a batch is thrown to the caller.")
+    public void testExecuteWithFailedBatch() {
+
+        IllegalStateException failure = new IllegalStateException("User store is not available.");
+        List<Runnable> batches = new ArrayList<>();
+        batches.add(() -> {
+        });
+        batches.add(() -> {
+            throw failure;
+        });
+        try {
+            TOTPBulkOperationProcessor.execute(batches, 2);
+            Assert.fail("Failure of the batch is not reported.");
+        } catch (TOTPException e) {
+            Assert.assertSame(e.getCause(), failure);
+        }
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
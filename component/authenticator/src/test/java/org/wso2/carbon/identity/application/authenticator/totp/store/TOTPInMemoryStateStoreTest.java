@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.store;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authenticator.totp.cache.TOTPUsedCodeCache;
+
+public class TOTPInMemoryStateStoreTest {
+
+    private static final String KEY = "PRIMARY/admin@carbon.super";
+
+    @Test(description = "Test whether a used code is rejected.")
+    public void testMarkCodeUsed() throws Exception {
+
+        TOTPInMemoryStateStore stateStore = new TOTPInMemoryStateStore();
+        long expiryTime = System.currentTimeMillis() + 30000;
+        long[] expiryTimes = {expiryTime, expiryTime, expiryTime};
+        Assert.assertFalse(stateStore.isShared());
+        Assert.assertTrue(stateStore.markCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertFalse(stateStore.markCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(stateStore.isCodeUsed(KEY, 123456, new long[]{99, 100, 101}, expiryTimes));
+        Assert.assertFalse(stateStore.isCodeUsed(KEY, 123456, new long[]{101, 102, 103}, expiryTimes));
+    }
+
+    @Test(description = "Test incrementing and resetting the failed attempt count.")
+    public void testFailedAttempts() {
+
+        TOTPInMemoryStateStore stateStore = new TOTPInMemoryStateStore();
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 2), 3);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 2), 4);
+        stateStore.resetFailedAttempts(KEY);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 0), 1);
+    }
+
+    @Test(description = "Test whether an expired failed attempt count is replaced by the stored count.")
+    public void testExpiredFailedAttempts() throws Exception {
+
+        TOTPInMemoryStateStore stateStore = new TOTPInMemoryStateStore(new TOTPUsedCodeCache(), 10);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 0), 1);
+        Thread.sleep(50);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 5), 6);
+    }
+
+    @Test(description = "Test holding, replacing and removing the secret key pending confirmation.")
+    public void testPendingSecretKey() throws Exception {
+
+        TOTPInMemoryStateStore stateStore = new TOTPInMemoryStateStore();
+        Assert.assertNull(stateStore.getPendingSecretKey(KEY));
+        stateStore.putPendingSecretKey(KEY, "encrypted-1", System.currentTimeMillis() + 30000);
+        stateStore.putPendingSecretKey(KEY, "encrypted-2", System.currentTimeMillis() + 30000);
+        Assert.assertEquals(stateStore.getPendingSecretKey(KEY), "encrypted-2");
+        stateStore.removePendingSecretKey(KEY);
+        Assert.assertNull(stateStore.getPendingSecretKey(KEY));
+
+        stateStore.putPendingSecretKey(KEY, "encrypted-3", System.currentTimeMillis() + 10);
+        Thread.sleep(50);
+        Assert.assertNull(stateStore.getPendingSecretKey(KEY));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.store;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class TOTPJDBCStateStoreTest {
+
+    private static final String KEY = "PRIMARY/admin@carbon.super";
+    private static final long PARTITION_SIZE = 60000;
+    private static final long RETENTION = 86400000;
+
+    private JdbcDataSource dataSource;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:totp_state;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        execute("CREATE TABLE IDN_TOTP_USED_CODE (USER_KEY VARCHAR(255) NOT NULL, TIME_INDEX BIGINT NOT NULL, " +
+                "CODE INTEGER NOT NULL, EXPIRY_PARTITION BIGINT NOT NULL, PRIMARY KEY (USER_KEY, TIME_INDEX, CODE))");
+        execute("CREATE INDEX IDX_TOTP_USED_CODE_EXP ON IDN_TOTP_USED_CODE (EXPIRY_PARTITION)");
+        execute("CREATE TABLE IDN_TOTP_FAILED_ATTEMPT (USER_KEY VARCHAR(255) NOT NULL, FAILED_ATTEMPTS INTEGER " +
+                "NOT NULL, EXPIRY_PARTITION BIGINT NOT NULL, PRIMARY KEY (USER_KEY))");
+        execute("CREATE INDEX IDX_TOTP_FAILED_ATTEMPT_EXP ON IDN_TOTP_FAILED_ATTEMPT (EXPIRY_PARTITION)");
+        execute("CREATE TABLE IDN_TOTP_PENDING_ENROLMENT (USER_KEY VARCHAR(255) NOT NULL, SECRET_KEY VARCHAR(2048) " +
+                "NOT NULL, EXPIRY_TIME BIGINT NOT NULL, EXPIRY_PARTITION BIGINT NOT NULL, PRIMARY KEY (USER_KEY))");
+        execute("CREATE INDEX IDX_TOTP_PENDING_ENROLMENT_EXP ON IDN_TOTP_PENDING_ENROLMENT (EXPIRY_PARTITION)");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+
+        execute("DROP TABLE IDN_TOTP_USED_CODE");
+        execute("DROP TABLE IDN_TOTP_FAILED_ATTEMPT");
+        execute("DROP TABLE IDN_TOTP_PENDING_ENROLMENT");
+    }
+
+    @Test(description = "Test whether a used code is rejected by every store sharing the database.")
+    public void testMarkCodeUsed() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        TOTPJDBCStateStore otherNodeStateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        long expiryTime = System.currentTimeMillis() + 30000;
+        Assert.assertTrue(stateStore.isShared());
+        Assert.assertFalse(stateStore.isCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(stateStore.markCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(otherNodeStateStore.isCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertFalse(stateStore.markCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertFalse(otherNodeStateStore.markCodeUsed(KEY, 123456, 100, expiryTime));
+        Assert.assertTrue(otherNodeStateStore.markCodeUsed(KEY, 123456, 101, expiryTime));
+    }
+
+    @Test(description = "Test whether a used code is found among the time steps of the window with one query.")
+    public void testIsCodeUsedInWindow() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        long expiryTime = System.currentTimeMillis() + 30000;
+        long[] expiryTimes = {expiryTime, expiryTime, expiryTime};
+        Assert.assertTrue(stateStore.markCodeUsed(KEY, 123456, 101, expiryTime));
+        Assert.assertTrue(stateStore.isCodeUsed(KEY, 123456, new long[]{100, 101, 102}, expiryTimes));
+        Assert.assertFalse(stateStore.isCodeUsed(KEY, 654321, new long[]{100, 101, 102}, expiryTimes));
+        Assert.assertFalse(stateStore.isCodeUsed(KEY, 123456, new long[]{102, 103, 104}, expiryTimes));
+        Assert.assertFalse(stateStore.isCodeUsed(KEY, 123456, new long[0], new long[0]));
+    }
+
+    @Test(description = "Test whether the same code used by users with colliding hash codes is kept apart.")
+    public void testMarkCodeUsedByCollidingUsers() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        long expiryTime = System.currentTimeMillis() + 30000;
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        Assert.assertTrue(stateStore.markCodeUsed("PRIMARY/Aa@carbon.super", 123456, 100, expiryTime));
+        Assert.assertFalse(stateStore.isCodeUsed("PRIMARY/BB@carbon.super", 123456, 100, expiryTime));
+        Assert.assertTrue(stateStore.markCodeUsed("PRIMARY/BB@carbon.super", 123456, 100, expiryTime));
+    }
+
+    @Test(description = "Test whether failed attempts of all the nodes are counted together.")
+    public void testIncrementFailedAttempts() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        TOTPJDBCStateStore otherNodeStateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 2), 3);
+        Assert.assertEquals(otherNodeStateStore.incrementFailedAttempts(KEY, 2), 4);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 2), 5);
+    }
+
+    @Test(description = "Test whether a reset is visible to every store sharing the database at once.")
+    public void testResetFailedAttempts() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        TOTPJDBCStateStore otherNodeStateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        stateStore.incrementFailedAttempts(KEY, 0);
+        stateStore.incrementFailedAttempts("PRIMARY/user@carbon.super", 0);
+        otherNodeStateStore.resetFailedAttempts(KEY);
+        Assert.assertEquals(count("IDN_TOTP_FAILED_ATTEMPT"), 1);
+        Assert.assertEquals(stateStore.incrementFailedAttempts(KEY, 0), 1);
+        Assert.assertEquals(otherNodeStateStore.incrementFailedAttempts(KEY, 0), 2);
+    }
+
+    @Test(description = "Test whether a pending secret key is visible to every store sharing the database.")
+    public void testPendingSecretKey() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        TOTPJDBCStateStore otherNodeStateStore = new TOTPJDBCStateStore(dataSource, PARTITION_SIZE, RETENTION);
+        Assert.assertNull(stateStore.getPendingSecretKey(KEY));
+        stateStore.putPendingSecretKey(KEY, "encrypted-1", System.currentTimeMillis() + 30000);
+        otherNodeStateStore.putPendingSecretKey(KEY, "encrypted-2", System.currentTimeMillis() + 30000);
+        Assert.assertEquals(stateStore.getPendingSecretKey(KEY), "encrypted-2");
+        otherNodeStateStore.removePendingSecretKey(KEY);
+        Assert.assertNull(stateStore.getPendingSecretKey(KEY));
+
+        stateStore.putPendingSecretKey(KEY, "encrypted-3", System.currentTimeMillis() - 1);
+        Assert.assertNull(otherNodeStateStore.getPendingSecretKey(KEY));
+    }
+
+    @Test(description = "Test whether expired partitions are removed.")
+    public void testRemoveExpiredPartitions() throws Exception {
+
+        TOTPJDBCStateStore stateStore = new TOTPJDBCStateStore(dataSource, 10, 10);
+        stateStore.markCodeUsed(KEY, 123456, 100, System.currentTimeMillis() + 10);
+        stateStore.incrementFailedAttempts(KEY, 0);
+        stateStore.putPendingSecretKey(KEY, "encrypted", System.currentTimeMillis() + 10);
+        Assert.assertEquals(count("IDN_TOTP_USED_CODE"), 1);
+        Assert.assertEquals(count("IDN_TOTP_FAILED_ATTEMPT"), 1);
+        Assert.assertEquals(count("IDN_TOTP_PENDING_ENROLMENT"), 1);
+        Thread.sleep(50);
+        stateStore.removeExpiredPartitions();
+        Assert.assertEquals(count("IDN_TOTP_USED_CODE"), 0);
+        Assert.assertEquals(count("IDN_TOTP_FAILED_ATTEMPT"), 0);
+        Assert.assertEquals(count("IDN_TOTP_PENDING_ENROLMENT"), 0);
+    }
+
+    private void execute(String sql) throws SQLException {
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int count(String table) throws SQLException {
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
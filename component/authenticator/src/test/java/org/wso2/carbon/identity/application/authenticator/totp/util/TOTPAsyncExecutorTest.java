@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({PrivilegedCarbonContext.class})
+public class TOTPAsyncExecutorTest {
+
+    @Mock
+    private PrivilegedCarbonContext privilegedCarbonContext;
+
+    private TOTPAsyncExecutor asyncExecutor;
+
+    @BeforeMethod
+    public void setUp() {
+
+        initMocks(this);
+        mockStatic(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(privilegedCarbonContext);
+        when(privilegedCarbonContext.getTenantDomain()).thenReturn("wso2.com");
+        when(privilegedCarbonContext.getTenantId()).thenReturn(1);
+        asyncExecutor = new TOTPAsyncExecutor(1, 1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        asyncExecutor.shutdown();
+    }
+
+    @Test(description = "Test whether operations run on the worker threads and report their failures.")
+    public void testSubmit() throws Exception {
+
+        asyncExecutor.start();
+        CompletableFuture<String> result = asyncExecutor.submit(() -> Thread.currentThread().getName());
+        Assert.assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("TOTP-AsyncExecutor-"));
+
+        CompletableFuture<String> failure = asyncExecutor.submit(() -> {
+            throw new TOTPException("User store is not available.");
+        });
+        try {
+            failure.get(5, TimeUnit.SECONDS);
+            Assert.fail("Failure of the operation is not reported.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TOTPException);
+        }
+    }
+
+    @Test(description = "Test whether operations are rejected without blocking when the executor is saturated.")
+    public void testSaturation() throws Exception {
+
+        asyncExecutor.start();
+        CountDownLatch release = new CountDownLatch(1);
+        TOTPLookupExecutor.Loader<Boolean, InterruptedException> blocking = () -> release.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Boolean> running = asyncExecutor.submit(blocking);
+        CompletableFuture<Boolean> queued = asyncExecutor.submit(blocking);
+        CompletableFuture<Boolean> rejected = asyncExecutor.submit(blocking);
+        try {
+            rejected.join();
+            Assert.fail("Operation is accepted by a saturated executor.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        Assert.assertTrue(running.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(description = "Test whether operations are executed on the calling thread without an executor.")
+    public void testRun() throws Exception {
+
+        CompletableFuture<String> result = TOTPAsyncExecutor.run(() -> Thread.currentThread().getName());
+        Assert.assertTrue(result.isDone());
+        Assert.assertEquals(result.get(), Thread.currentThread().getName());
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
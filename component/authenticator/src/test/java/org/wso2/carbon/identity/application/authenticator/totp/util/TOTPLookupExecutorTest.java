@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.identity.application.authenticator.totp.exception.TOTPException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({PrivilegedCarbonContext.class})
+public class TOTPLookupExecutorTest {
+
+    private static final String TENANT_DOMAIN = "wso2.com";
+
+    @Mock
+    private PrivilegedCarbonContext privilegedCarbonContext;
+
+    private TOTPLookupExecutor lookupExecutor;
+
+    @BeforeMethod
+    public void setUp() {
+
+        initMocks(this);
+        mockStatic(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(privilegedCarbonContext);
+        when(privilegedCarbonContext.getTenantDomain()).thenReturn(TENANT_DOMAIN);
+        when(privilegedCarbonContext.getTenantId()).thenReturn(1);
+        lookupExecutor = new TOTPLookupExecutor(2, 10);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+
+        lookupExecutor.shutdown();
+    }
+
+    @Test(description = "Test whether lookups run concurrently within the tenant flow of the submitting thread.")
+    public void testSubmit() throws Exception {
+
+        lookupExecutor.start();
+        CountDownLatch started = new CountDownLatch(2);
+        TOTPLookupExecutor.Loader<String, InterruptedException> loader = () -> {
+            started.countDown();
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS), "Lookups were not executed concurrently.");
+            return Thread.currentThread().getName();
+        };
+        TOTPLookupExecutor.Lookup<String, InterruptedException> first = lookupExecutor.submit(loader);
+        TOTPLookupExecutor.Lookup<String, InterruptedException> second = lookupExecutor.submit(loader);
+        Assert.assertTrue(first.get().startsWith("TOTP-LookupExecutor-"));
+        Assert.assertTrue(second.get().startsWith("TOTP-LookupExecutor-"));
+        verify(privilegedCarbonContext, times(2)).setTenantDomain(TENANT_DOMAIN);
+        verify(privilegedCarbonContext, times(2)).setTenantId(1);
+    }
+
+    @Test(description = "Test whether lookups run on the calling thread when the executor is not started.")
+    public void testSubmitWhenNotStarted() throws Exception {
+
+        TOTPLookupExecutor.Lookup<String, TOTPException> lookup =
+                lookupExecutor.submit(() -> Thread.currentThread().getName());
+        Assert.assertEquals(lookup.get(), Thread.currentThread().getName());
+    }
+
+    @Test(description = "Test whether the exception of a failed lookup is thrown to the caller.",
+            expectedExceptions = TOTPException.class)
+    public void testFailedLookup() throws Exception {
+
+        lookupExecutor.start();
+        TOTPLookupExecutor.Lookup<String, TOTPException> lookup = lookupExecutor.submit(() -> {
+            throw new TOTPException("User store is not available.");
+        });
+        lookup.get();
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+
+        return new PowerMockObjectFactory();
+    }
+}
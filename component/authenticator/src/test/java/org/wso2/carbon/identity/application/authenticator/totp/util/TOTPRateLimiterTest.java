@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TOTPRateLimiterTest {
+
+    @Test(description = "Test whether a bucket allows a burst up to its capacity.")
+    public void testBurstCapacity() {
+
+        TOTPRateLimiter rateLimiter = new TOTPRateLimiter(16, 3, 1);
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Assert.assertFalse(rateLimiter.tryAcquire("admin"));
+    }
+
+    @Test(description = "Test whether an exhausted bucket is refilled over time.")
+    public void testRefill() throws Exception {
+
+        // One token per 10 milliseconds.
+        TOTPRateLimiter rateLimiter = new TOTPRateLimiter(16, 1, 6000);
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Assert.assertFalse(rateLimiter.tryAcquire("admin"));
+        Thread.sleep(50);
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+    }
+
+    @Test(description = "Test whether each key has a bucket of its own.")
+    public void testIndependentKeys() {
+
+        // "Aa" and "BB" have the same hash code.
+        TOTPRateLimiter rateLimiter = new TOTPRateLimiter(16, 1, 1);
+        Assert.assertTrue(rateLimiter.tryAcquire("Aa"));
+        Assert.assertFalse(rateLimiter.tryAcquire("Aa"));
+        Assert.assertTrue(rateLimiter.tryAcquire("BB"));
+    }
+
+    @Test(description = "Test whether new keys are not limited when all the tracked keys are in use.")
+    public void testMaxKeys() {
+
+        TOTPRateLimiter rateLimiter = new TOTPRateLimiter(1, 1, 1);
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Assert.assertTrue(rateLimiter.tryAcquire("user"));
+        Assert.assertTrue(rateLimiter.tryAcquire("user"));
+        Assert.assertFalse(rateLimiter.tryAcquire("admin"));
+        Assert.assertEquals(rateLimiter.size(), 1);
+    }
+
+    @Test(description = "Test whether refilled buckets are dropped to make room for new keys.")
+    public void testRefilledBucketsDropped() throws Exception {
+
+        // One token per 10 milliseconds.
+        TOTPRateLimiter rateLimiter = new TOTPRateLimiter(1, 1, 6000);
+        Assert.assertTrue(rateLimiter.tryAcquire("admin"));
+        Thread.sleep(50);
+        Assert.assertTrue(rateLimiter.tryAcquire("user"));
+        Assert.assertFalse(rateLimiter.tryAcquire("user"));
+        Assert.assertEquals(rateLimiter.size(), 1);
+    }
+
+    @Test(description = "Test invalid rate limiter configurations.", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidConfiguration() {
+
+        new TOTPRateLimiter(16, 0, 1);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+ *
+ * WSO2 LLC. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.application.authenticator.totp.verification;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.application.authentication.framework.exception.AuthenticationFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TOTPVerificationPipelineTest {
+
+    @Test(description = "Test whether all the stages are executed in order when they pass.")
+    public void testAllStagesPassed() throws Exception {
+
+        List<String> executed = new ArrayList<>();
+        List<String> completed = new ArrayList<>();
+        TOTPVerificationPipeline pipeline = new TOTPVerificationPipeline(Collections.singletonList(
+                (stageName, durationNanos, passed) -> completed.add(stageName + ":" + passed)))
+                .addStage("syntax", context -> executed.add("syntax"))
+                .addStage("hmac", context -> executed.add("hmac"));
+
+        TOTPVerificationContext context = new TOTPVerificationContext(null, "admin", "123456");
+        Assert.assertTrue(pipeline.execute(context));
+        Assert.assertEquals(executed, Arrays.asList("syntax", "hmac"));
+        Assert.assertEquals(completed, Arrays.asList("syntax:true", "hmac:true"));
+        Assert.assertNull(context.getRejectedStage());
+        Assert.assertTrue(context.getResult().isValid());
+    }
+
+    @Test(description = "Test whether the stages after a rejecting stage are skipped.")
+    public void testRejectedStage() throws Exception {
+
+        List<String> completed = new ArrayList<>();
+        TOTPVerificationPipeline pipeline = new TOTPVerificationPipeline(Collections.singletonList(
+                (stageName, durationNanos, passed) -> completed.add(stageName + ":" + passed)))
+                .addStage("syntax", context -> context.reject(TOTPVerificationStatus.MALFORMED_TOKEN, "Invalid Token."))
+                .addStage("hmac", context -> {
+                    throw new IllegalStateException("Stage after a rejection must not be executed.");
+                });
+
+        TOTPVerificationContext context = new TOTPVerificationContext(null, "admin", "abc");
+        Assert.assertFalse(pipeline.execute(context));
+        Assert.assertEquals(context.getRejectedStage(), "syntax");
+        Assert.assertEquals(context.getResult().getStatus(), TOTPVerificationStatus.MALFORMED_TOKEN);
+        Assert.assertEquals(context.getResult().getReason(), "Invalid Token.");
+        Assert.assertEquals(completed, Collections.singletonList("syntax:false"));
+    }
+
+    @Test(description = "Test whether listeners are notified of a failed stage and their errors are ignored.")
+    public void testFailedStage() {
+
+        List<String> completed = new ArrayList<>();
+        List<TOTPVerificationListener> listeners = new ArrayList<>();
+        listeners.add((stageName, durationNanos, passed) -> {
+            throw new IllegalStateException("Listener failure.");
+        });
+        listeners.add((stageName, durationNanos, passed) -> completed.add(stageName + ":" + passed));
+        TOTPVerificationPipeline pipeline = new TOTPVerificationPipeline(listeners)
+                .addStage("secretFetch", context -> {
+                    throw new AuthenticationFailedException("User store is not available.");
+                });
+
+        try {
+            pipeline.execute(new TOTPVerificationContext(null, "admin", "123456"));
+            Assert.fail("Stage failure is not propagated.");
+        } catch (AuthenticationFailedException e) {
+            Assert.assertEquals(e.getMessage(), "User store is not available.");
+        }
+        Assert.assertEquals(completed, Collections.singletonList("secretFetch:false"));
+    }
+}
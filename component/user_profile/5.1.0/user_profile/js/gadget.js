@@ -56,10 +56,7 @@ function drawPage() {
                                 "</div>"+
                                 "<div id=\"qrcanvdiv\" class=\"panel-collapse collapse\" style=\"display:none\">"+
                                     "<div id=\"qrdiv\">"+
-                                        "<form name=\"qrinp\">"+
-                                            "<input type=\"numeric\" name=\"ECC\" value=\"1\" size=\"1\" style=\"display:none\">"+
-                                            "<canvas id=\"qrcanv\" style=\"display:inline-block; float:right;\">"+
-                                        "</form>"+
+                                        "<img id=\"totpQRCode\" alt=\"QR Code\" style=\"display:inline-block; float:right; width:25vw; max-width:296px;\">"+
                                     "</div>"+
                                 "</div>"+
                             "</div>"+
@@ -79,10 +76,7 @@ function drawPage() {
                                 "</div>"+
                                 "<div id=\"qrcanvdiv\" class=\"panel-collapse collapse\" style=\"display:none\">"+
                                     "<div id=\"qrdiv\">"+
-                                        "<form name=\"qrinp\">"+
-                                            "<input type=\"numeric\" name=\"ECC\" value=\"1\" size=\"1\" style=\"display:none\">"+
-                                            "<canvas id=\"qrcanv\" style=\"display:inline-block; float:right;\">"+
-                                        "</form>"+
+                                        "<img id=\"totpQRCode\" alt=\"QR Code\" style=\"display:inline-block; float:right; width:25vw; max-width:296px;\">"+
                                     "</div>"+
                                 "</div>"+
                             "</div>"+
@@ -364,14 +358,25 @@ function getSecretKey(url){
 }
 
 function loadQRCode(url){
-    var key = jQuery.parseJSON(url).return;
-    var decodedKey = atob(key);
-    setupqr();
-    doqr(decodedKey);
+    // The QR code is rendered by the server. The timestamp prevents showing the image of a replaced secret key.
+    $('#totpQRCode').attr("src","/portal/gadgets/user_profile/controllers/my-profile/totp-qrcode.jag?t=" +
+            new Date().getTime());
+    $('#totpQRCode').css("visibility","visible");
 }
 
 function removeQRCode(){
     $('#totpQRCode').attr("src","");
     $('#totpQRCode').css("visibility","hidden");
     $('#totpQRCode').show();
+}
+
+function toggleFunction() {
+    var togglediv = document.getElementById('qrcanvdiv');
+    if (togglediv.style.display === 'none') {
+        togglediv.style.display = 'block';
+        document.getElementById("scanQR").innerHTML = "<span class=\"glyphicon glyphicon-collapse-up\"></span>";
+    } else {
+        togglediv.style.display = 'none';
+        document.getElementById("scanQR").innerHTML = "<span class=\"glyphicon glyphicon-collapse-down\"></span>";
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+-- Copyright (c) 2026, WSO2 LLC. (http://www.wso2.com) All Rights Reserved.
+--
+-- WSO2 LLC. licenses this file to you under the Apache License,
+-- Version 2.0 (the "License"); you may not use this file except
+-- in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+
+-- Tables of the JDBC TOTP state store, shared by all the nodes of a cluster.
+
+CREATE TABLE IDN_TOTP_USED_CODE (
+    USER_KEY VARCHAR2(255) NOT NULL,
+    TIME_INDEX NUMBER(19) NOT NULL,
+    CODE NUMBER(10) NOT NULL,
+    EXPIRY_PARTITION NUMBER(19) NOT NULL,
+    PRIMARY KEY (USER_KEY, TIME_INDEX, CODE)
+)
+/
+
+CREATE INDEX IDX_TOTP_USED_CODE_EXP ON IDN_TOTP_USED_CODE (EXPIRY_PARTITION)
+/
+
+CREATE TABLE IDN_TOTP_FAILED_ATTEMPT (
+    USER_KEY VARCHAR2(255) NOT NULL,
+    FAILED_ATTEMPTS NUMBER(10) NOT NULL,
+    EXPIRY_PARTITION NUMBER(19) NOT NULL,
+    PRIMARY KEY (USER_KEY)
+)
+/
+
+CREATE INDEX IDX_TOTP_FAILED_ATTEMPT_EXP ON IDN_TOTP_FAILED_ATTEMPT (EXPIRY_PARTITION)
+/
+
+CREATE TABLE IDN_TOTP_PENDING_ENROLMENT (
+    USER_KEY VARCHAR2(255) NOT NULL,
+    SECRET_KEY VARCHAR2(2048) NOT NULL,
+    EXPIRY_TIME NUMBER(19) NOT NULL,
+    EXPIRY_PARTITION NUMBER(19) NOT NULL,
+    PRIMARY KEY (USER_KEY)
+)
+/
+
+CREATE INDEX IDX_TOTP_PENDING_ENROLMENT_EXP ON IDN_TOTP_PENDING_ENROLMENT (EXPIRY_PARTITION)
+/